@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+
+public class ProjectContainerTest extends TestCase {
+
+    private static final String ENCODING = "UTF-8";
+
+    public void testXMLIsReadUnchanged() throws Exception {
+        String xml = "<?xml version=\"1.0\"?>\n<architect-project version=\"1.0\">\n</architect-project>\n";
+        InputStream in = new ByteArrayInputStream(xml.getBytes(ENCODING));
+        assertFalse(ProjectContainer.isContainer(in));
+        assertEquals(xml, IOUtils.toString(ProjectContainer.openProject(in), ENCODING));
+    }
+
+    public void testSectionsAreReadAsOneDocument() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream container = ProjectContainer.createContainer(bytes);
+        ProjectContainer.startSection(container, "project.xml");
+        container.write("<architect-project>\n".getBytes(ENCODING));
+        ProjectContainer.startSection(container, "empty.xml");
+        ProjectContainer.startSection(container, "target-database.xml");
+        container.write(" <target-database />\n".getBytes(ENCODING));
+        ProjectContainer.startSection(container, "end.xml");
+        container.write("</architect-project>\n".getBytes(ENCODING));
+        container.close();
+
+        InputStream in = ProjectContainer.openProject(new ByteArrayInputStream(bytes.toByteArray()));
+        assertTrue(in.markSupported());
+        assertEquals("<architect-project>\n <target-database />\n</architect-project>\n",
+                IOUtils.toString(in, ENCODING));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class ProjectLoadIdMapTest extends TestCase {
+
+    private ProjectLoadIdMap<String> map;
+
+    @Override
+    protected void setUp() throws Exception {
+        map = new ProjectLoadIdMap<String>();
+    }
+
+    public void testPackedIdsRoundTrip() throws Exception {
+        for (String id : new String[] {"TAB0", "COL98765", "IDC123456789", "DB1", "FOL12"}) {
+            long key = ProjectLoadIdMap.pack(id);
+            assertTrue(id, key != 0);
+            assertEquals(id, ProjectLoadIdMap.unpack(key));
+        }
+    }
+
+    public void testUnpackableIds() throws Exception {
+        for (String id : new String[] {"ppdb", "123", "TAB01", "TAB1.pk", "TABLE1", "COL1234567890", ""}) {
+            assertEquals(id, 0, ProjectLoadIdMap.pack(id));
+        }
+    }
+
+    public void testPutAndGet() throws Exception {
+        map.put("TAB1", "table");
+        map.put("COL1", "column");
+        map.put("ppdb", "target");
+        map.put("TAB1.pk", "table by key name");
+        assertEquals("table", map.get("TAB1"));
+        assertEquals("column", map.get("COL1"));
+        assertEquals("target", map.get("ppdb"));
+        assertEquals("table by key name", map.get("TAB1.pk"));
+        assertNull(map.get("TAB2"));
+        assertNull(map.get("COL10"));
+        assertEquals(4, map.size());
+    }
+
+    public void testReplace() throws Exception {
+        assertNull(map.put("COL5", "first"));
+        assertEquals("first", map.put("COL5", "second"));
+        assertEquals("second", map.get("COL5"));
+        assertEquals(1, map.size());
+    }
+
+    public void testGrowKeepsEntries() throws Exception {
+        for (int i = 0; i < 100000; i++) {
+            map.put("COL" + i, "c" + i);
+        }
+        assertEquals(100000, map.size());
+        for (int i = 0; i < 100000; i++) {
+            assertEquals("c" + i, map.get("COL" + i));
+        }
+    }
+
+    public void testEntrySet() throws Exception {
+        map.put("TAB1", "table");
+        map.put("COL7", "column");
+        map.put("ppdb", "target");
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("TAB1", "table");
+        expected.put("COL7", "column");
+        expected.put("ppdb", "target");
+        assertEquals(expected, new HashMap<String, String>(map));
+    }
+
+    public void testMissingIdsAreLookedUp() throws Exception {
+        map = new ProjectLoadIdMap<String>() {
+            @Override
+            protected String missing(String id) {
+                if (id.equals("TAB5")) {
+                    put("TAB5", "read later");
+                    return get(id);
+                }
+                return null;
+            }
+        };
+        map.put("TAB1", null);
+        assertNull(map.get("TAB1"));
+        assertFalse(map.containsKey("TAB5"));
+        assertEquals("read later", map.get("TAB5"));
+        assertNull(map.get("TAB6"));
+    }
+}
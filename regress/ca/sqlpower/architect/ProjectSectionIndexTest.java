@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect;
+
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+
+import ca.sqlpower.architect.ProjectSectionIndex.IdRemapping;
+import ca.sqlpower.architect.ProjectSectionIndex.Section;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class ProjectSectionIndexTest extends TestCase {
+
+    private static final String PROJECT =
+        "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n" +
+        "<architect-project version=\"1.0\">\n" +
+        " <source-databases>\n" +
+        "  <database id=\"DB0\" populated=\"true\" name=\"one\" >\n" +
+        "   <schema id=\"SCH1\" populated=\"true\" name=\"a &gt; b\" >\n" +
+        "    <table id=\"TAB2\" populated=\"true\" name=\"t\" >\n" +
+        "     <folder id=\"FOLTAB21\" populated=\"true\" name=\"Columns\" type=\"1\">\n" +
+        "      <column id=\"COL3\" populated=\"true\" name=\"c\" />\n" +
+        "     </folder>\n" +
+        "    </table>\n" +
+        "   </schema>\n" +
+        "   <schema id=\"SCH4\" populated=\"false\" name=\"empty\" >\n" +
+        "   </schema>\n" +
+        "   <schema id=\"SCH5\" populated=\"true\" name=\"s\" >\n" +
+        "    <table id=\"TAB6\" populated=\"true\" name=\"u\" >\n" +
+        "    </table>\n" +
+        "   </schema>\n" +
+        "   <relationships>\n" +
+        "    <relationship id=\"REL7\" fk-table-ref=\"TAB6\" pk-table-ref=\"TAB2\" >\n" +
+        "    </relationship>\n" +
+        "   </relationships>\n" +
+        "  </database>\n" +
+        "  <database id=\"DB8\" populated=\"false\" name=\"two\" >\n" +
+        "  </database>\n" +
+        " </source-databases>\n" +
+        " <target-database id=\"ppdb\" >\n" +
+        "  <schema id=\"SCH9\" populated=\"true\" >\n" +
+        "  </schema>\n" +
+        " </target-database>\n" +
+        "</architect-project>\n";
+
+    private ProjectSectionIndex index;
+
+    @Override
+    protected void setUp() throws Exception {
+        index = ProjectSectionIndex.scan(PROJECT.getBytes("ISO-8859-1"));
+    }
+
+    private static String read(InputStream in) throws Exception {
+        return new String(IOUtils.toByteArray(in), "ISO-8859-1");
+    }
+
+    public void testFindsSections() throws Exception {
+        assertEquals("ISO-8859-1", index.getEncoding());
+        List<Section> databases = index.getDatabases();
+        assertEquals(2, databases.size());
+        Section one = databases.get(0);
+        assertTrue(one.isDeferrable());
+        assertTrue(one.hasRelationships());
+        assertFalse(databases.get(1).isDeferrable());
+        assertEquals(3, one.getChildren().size());
+        assertTrue(one.getChildren().get(0).isDeferrable());
+        assertFalse(one.getChildren().get(1).isDeferrable());
+        assertTrue(one.getChildren().get(2).isDeferrable());
+        assertSame(one, one.getChildren().get(0).getParent());
+    }
+
+    public void testIdRanges() throws Exception {
+        Section one = index.getDatabases().get(0);
+        Section schema = one.getChildren().get(0);
+        assertTrue(one.containsId(0));
+        assertTrue(one.containsId(7));
+        assertFalse(one.containsId(8));
+        assertTrue(schema.containsId(3));
+        assertFalse("Folder ids are not numbered", schema.containsId(21));
+        assertFalse(schema.containsId(4));
+        assertTrue(one.getChildren().get(2).containsId(6));
+    }
+
+    public void testProjectLeavesOutDeferrableContent() throws Exception {
+        String project = read(index.openProject());
+        assertTrue(project.contains("<database id=\"DB0\" populated=\"true\" name=\"one\" ></database>"));
+        assertFalse(project.contains("TAB2"));
+        assertTrue(project.contains("<database id=\"DB8\""));
+        assertTrue(project.contains("SCH9"));
+    }
+
+    public void testSectionsAfterTrimming() throws Exception {
+        index.trimToSections();
+        Section one = index.getDatabases().get(0);
+        String database = read(one.openStream());
+        assertTrue(database.startsWith("<database id=\"DB0\""));
+        assertTrue(database.endsWith("</database>"));
+        assertTrue(database.contains("<schema id=\"SCH1\" populated=\"true\" name=\"a &gt; b\" ></schema>"));
+        assertTrue(database.contains("<schema id=\"SCH4\" populated=\"false\" name=\"empty\" >\n   </schema>"));
+        assertTrue(database.contains("REL7"));
+        assertFalse(database.contains("<table id=\"TAB6\""));
+
+        String schema = read(one.getChildren().get(2).openStream());
+        assertTrue(schema.startsWith("<schema id=\"SCH5\""));
+        assertTrue(schema.contains("TAB6"));
+        assertTrue(schema.endsWith("</schema>"));
+
+        String relationships = read(one.openRelationships());
+        assertTrue(relationships.startsWith("<relationships>"));
+        assertTrue(relationships.endsWith("</relationships>"));
+    }
+
+    public void testFindUnloaded() throws Exception {
+        Section one = index.getDatabases().get(0);
+        assertNull("Sections without objects are not read", index.findUnloaded(3));
+        one.setObject(new DeferredSQLDatabase());
+        assertSame(one, index.findUnloaded(3));
+        one.setLoaded(true);
+        Section schema = one.getChildren().get(0);
+        schema.setObject(new DeferredSQLSchema());
+        assertSame(schema, index.findUnloaded(3));
+        assertNull(index.findUnloaded(6));
+        assertEquals(1, index.getUnloaded().size());
+    }
+
+    public void testWriteContentMovesIds() throws Exception {
+        index.trimToSections();
+        Section schema = index.getDatabases().get(0).getChildren().get(0);
+        IdRemapping ids = new IdRemapping(new IdentityHashMap<SQLObject, String>());
+        assertEquals(2, ids.moveSection(schema, 10));
+        StringWriter out = new StringWriter();
+        schema.writeContent(out, ids);
+        String content = out.toString();
+        assertTrue(content.contains("<table id=\"TAB11\""));
+        assertTrue(content.contains("<folder id=\"FOLTAB111\""));
+        assertTrue(content.contains("<column id=\"COL12\""));
+        assertFalse(content.contains("TAB2"));
+        assertTrue(content.startsWith("\n"));
+        assertTrue(content.endsWith("</table>\n   "));
+    }
+
+    public void testUnreadRelationships() throws Exception {
+        index.trimToSections();
+        Map<String, SQLObject> loaded = new HashMap<String, SQLObject>();
+        index.setIdMap(loaded);
+        Section one = index.getDatabases().get(0);
+        assertEquals(Collections.singletonList("REL7"), one.getUnreadRelationshipIds());
+
+        IdRemapping ids = new IdRemapping(new IdentityHashMap<SQLObject, String>());
+        ids.moveSection(one.getChildren().get(0), 20);
+        ids.moveSection(one.getChildren().get(2), 30);
+        ids.renumber("REL7", 40);
+        StringWriter out = new StringWriter();
+        one.writeUnreadRelationships(out, ids);
+        assertEquals("    <relationship id=\"REL40\" fk-table-ref=\"TAB31\" pk-table-ref=\"TAB21\" >\n" +
+                "    </relationship>" + System.getProperty("line.separator"), out.toString());
+
+        loaded.put("REL7", new SQLTable());
+        assertTrue(one.getUnreadRelationshipIds().isEmpty());
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.catalog;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.catalog.SchemaMetadata.ColumnRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.ForeignKeyRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.IndexRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.PrimaryKeyRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.TableRow;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLSchema;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLRelationship.UpdateDeleteRule;
+
+public class BulkCatalogReaderTest extends TestCase {
+
+    private SQLDatabase db;
+    private SQLSchema schema;
+    private SchemaMetadata metadata;
+    private BulkCatalogReader reader;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        db = new SQLDatabase();
+        schema = new SQLSchema(false);
+        schema.setName("sales");
+        db.addChild(schema);
+        reader = new BulkCatalogReader(db);
+        
+        metadata = new SchemaMetadata("sales");
+        metadata.getTables().add(new TableRow("customer", "TABLE", "Customers"));
+        metadata.getTables().add(new TableRow("orders", "TABLE", null));
+        metadata.getColumns().add(new ColumnRow("customer", "id", "integer", 10, 0, false, null, null, true));
+        metadata.getColumns().add(new ColumnRow("customer", "name", "character varying", 50, 0, true, null, null, false));
+        metadata.getColumns().add(new ColumnRow("orders", "id", "integer", 10, 0, false, null, null, false));
+        metadata.getColumns().add(new ColumnRow("orders", "customer_id", "integer", 10, 0, true, null, null, false));
+        metadata.getColumns().add(new ColumnRow("orders", "total", "numeric", 12, 2, true, "0", null, false));
+        metadata.getPrimaryKeys().add(new PrimaryKeyRow("customer", "id", "customer_pk"));
+        metadata.getPrimaryKeys().add(new PrimaryKeyRow("orders", "id", "orders_pk"));
+        metadata.getForeignKeys().add(new ForeignKeyRow("orders_customer_fk", "orders", "customer_id", "sales",
+                "customer", "id", "NO ACTION", "CASCADE"));
+        metadata.setIndices(new ArrayList<IndexRow>());
+        metadata.getIndices().add(new IndexRow("orders", "orders_pk", true, "id", false));
+        metadata.getIndices().add(new IndexRow("orders", "orders_customer_idx", false, "customer_id", false));
+    }
+    
+    public void testFillCreatesTablesAndColumns() throws Exception {
+        reader.fill(schema, metadata);
+        assertTrue(schema.isPopulated());
+        assertEquals(2, schema.getChildrenWithoutPopulating(SQLTable.class).size());
+        
+        SQLTable orders = schema.getChildrenWithoutPopulating(SQLTable.class).get(1);
+        assertEquals("orders", orders.getName());
+        assertTrue(orders.isColumnsPopulated());
+        assertEquals(3, orders.getColumnsWithoutPopulating().size());
+        SQLColumn total = orders.getColumnByName("total");
+        assertEquals(Types.NUMERIC, total.getType());
+        assertEquals(12, total.getPrecision());
+        assertEquals(2, total.getScale());
+        assertEquals("0", total.getDefaultValue());
+        assertTrue(orders.getColumnByName("id").isPrimaryKey());
+        assertEquals("orders_pk", orders.getPrimaryKeyIndex().getName());
+    }
+    
+    public void testFillCreatesRelationshipsAndIndices() throws Exception {
+        reader.fill(schema, metadata);
+        SQLTable customer = schema.getChildrenWithoutPopulating(SQLTable.class).get(0);
+        SQLTable orders = schema.getChildrenWithoutPopulating(SQLTable.class).get(1);
+        
+        assertTrue(orders.isImportedKeysPopulated());
+        assertEquals(1, orders.getImportedKeysWithoutPopulating().size());
+        SQLRelationship r = orders.getImportedKeysWithoutPopulating().get(0).getRelationship();
+        assertSame(customer, r.getPkTable());
+        assertEquals(UpdateDeleteRule.CASCADE, r.getDeleteRule());
+        assertEquals(1, r.getChildren(SQLRelationship.ColumnMapping.class).size());
+        
+        assertTrue(orders.isIndicesPopulated());
+        boolean found = false;
+        for (SQLIndex index : orders.getIndicesWithoutPopulating()) {
+            if (index.getName().equals("orders_customer_idx")) {
+                found = true;
+                assertFalse(index.isUnique());
+            }
+        }
+        assertTrue(found);
+    }
+
+    /**
+     * Keys that refer to tables in other schemas and indices the catalog views
+     * cannot describe must be left for the tables to read themselves.
+     */
+    public void testFallbackForUnreadableParts() throws Exception {
+        metadata.getForeignKeys().add(new ForeignKeyRow("orders_region_fk", "orders", "customer_id", "geo",
+                "region", "id", "NO ACTION", "NO ACTION"));
+        metadata.setIndices(null);
+        reader.fill(schema, metadata);
+        SQLTable customer = schema.getChildrenWithoutPopulating(SQLTable.class).get(0);
+        SQLTable orders = schema.getChildrenWithoutPopulating(SQLTable.class).get(1);
+        assertFalse(orders.isImportedKeysPopulated());
+        assertTrue(customer.isImportedKeysPopulated());
+        assertFalse(orders.isIndicesPopulated());
+    }
+    
+    /**
+     * Reads a schema of the regression test database with the HSQLDB
+     * queries, which its type gets from its JDBC driver.
+     */
+    public void testPopulateFromHSQLDB() throws Exception {
+        PlDotIni plIni = new PlDotIni();
+        plIni.read(new File("pl.regression.ini"));
+        JDBCDataSource ds = plIni.getDataSource("regression_test", JDBCDataSource.class);
+        assertEquals(CatalogQueries.HSQLDB, BulkCatalogReader.getCatalogQueries(ds));
+        
+        Connection con = ds.createConnection();
+        Statement stmt = con.createStatement();
+        try {
+            stmt.execute("CREATE TABLE bulk_customer (id INTEGER PRIMARY KEY, name VARCHAR(50) NOT NULL)");
+            stmt.execute("CREATE TABLE bulk_orders (id INTEGER PRIMARY KEY, customer_id INTEGER," +
+                    " total NUMERIC(12, 2), CONSTRAINT bulk_orders_customer_fk FOREIGN KEY (customer_id)" +
+                    " REFERENCES bulk_customer (id) ON DELETE CASCADE)");
+            stmt.execute("CREATE INDEX bulk_orders_total_idx ON bulk_orders (total)");
+            
+            SQLDatabase hsqldb = new SQLDatabase(ds);
+            BulkCatalogReader hsqldbReader = new BulkCatalogReader(hsqldb);
+            assertTrue(hsqldbReader.populate(hsqldb) > 0);
+            
+            SQLSchema schema = hsqldb.getChildByName("PUBLIC", SQLSchema.class);
+            SQLTable customer = schema.getChildByName("BULK_CUSTOMER", SQLTable.class);
+            SQLTable orders = schema.getChildByName("BULK_ORDERS", SQLTable.class);
+            assertTrue(customer.isColumnsPopulated());
+            assertTrue(orders.isImportedKeysPopulated());
+            assertTrue(orders.isIndicesPopulated());
+            
+            assertEquals(Types.VARCHAR, customer.getColumnByName("NAME").getType());
+            assertEquals(50, customer.getColumnByName("NAME").getPrecision());
+            assertEquals(DatabaseMetaData.columnNoNulls, customer.getColumnByName("NAME").getNullable());
+            assertEquals(2, orders.getColumnByName("TOTAL").getScale());
+            assertTrue(orders.getColumnByName("ID").isPrimaryKey());
+            
+            assertEquals(1, orders.getImportedKeysWithoutPopulating().size());
+            SQLRelationship r = orders.getImportedKeysWithoutPopulating().get(0).getRelationship();
+            assertSame(customer, r.getPkTable());
+            assertEquals(UpdateDeleteRule.CASCADE, r.getDeleteRule());
+            assertFalse(customer.isExportedKeysPopulated());
+            
+            boolean found = false;
+            for (SQLIndex index : orders.getIndicesWithoutPopulating()) {
+                if (index.getName().equals("BULK_ORDERS_TOTAL_IDX")) {
+                    found = true;
+                    assertFalse(index.isUnique());
+                }
+            }
+            assertTrue(found);
+        } finally {
+            stmt.execute("DROP TABLE bulk_orders IF EXISTS");
+            stmt.execute("DROP TABLE bulk_customer IF EXISTS");
+            stmt.close();
+            con.close();
+        }
+    }
+    
+    /**
+     * Renaming a column to a name of the same length or changing whether it
+     * allows nulls has to change the fingerprint of the schema.
+     */
+    public void testFingerprintSeesDefinitionChanges() throws Exception {
+        PlDotIni plIni = new PlDotIni();
+        plIni.read(new File("pl.regression.ini"));
+        JDBCDataSource ds = plIni.getDataSource("regression_test", JDBCDataSource.class);
+        Connection con = ds.createConnection();
+        Statement stmt = con.createStatement();
+        try {
+            stmt.execute("CREATE TABLE print_job (id INTEGER, code VARCHAR(10), note VARCHAR(10))");
+            SQLDatabase hsqldb = new SQLDatabase(ds);
+            BulkCatalogReader hsqldbReader = new BulkCatalogReader(hsqldb);
+            SQLSchema schema = hsqldb.getChildByName("PUBLIC", SQLSchema.class);
+            String original = hsqldbReader.readFingerprint(schema);
+            assertNotNull(original);
+            assertEquals(original, hsqldbReader.readFingerprint(schema));
+            
+            stmt.execute("ALTER TABLE print_job ALTER COLUMN code RENAME TO kind");
+            String renamed = hsqldbReader.readFingerprint(schema);
+            assertFalse(original.equals(renamed));
+            
+            stmt.execute("ALTER TABLE print_job ALTER COLUMN note SET NOT NULL");
+            assertFalse(renamed.equals(hsqldbReader.readFingerprint(schema)));
+        } finally {
+            stmt.execute("DROP TABLE print_job IF EXISTS");
+            stmt.close();
+            con.close();
+        }
+    }
+    
+    public void testTypeNames() throws Exception {
+        assertEquals(Types.VARCHAR, BulkCatalogReader.getJdbcType("VARCHAR2"));
+        assertEquals(Types.TIMESTAMP, BulkCatalogReader.getJdbcType("TIMESTAMP(6)"));
+        assertEquals(Types.DOUBLE, BulkCatalogReader.getJdbcType("double precision"));
+        assertEquals(Types.OTHER, BulkCatalogReader.getJdbcType("geometry"));
+    }
+}
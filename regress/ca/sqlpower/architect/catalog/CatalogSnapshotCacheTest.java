@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.catalog;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.catalog.SchemaMetadata.ColumnRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.TableRow;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLCatalog;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLSchema;
+
+public class CatalogSnapshotCacheTest extends TestCase {
+
+    private File directory;
+    private JDBCDataSource ds;
+    private SchemaMetadata metadata;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("catalog", "cache");
+        directory.delete();
+        directory.mkdir();
+        
+        ds = new JDBCDataSource(new PlDotIni());
+        ds.setDisplayName("Sales Database");
+        ds.setUser("fake");
+        ds.setUrl("jdbc:mock:sales");
+        
+        metadata = new SchemaMetadata("sales");
+        metadata.getTables().add(new TableRow("customer", "TABLE", "Customers"));
+        metadata.getColumns().add(new ColumnRow("customer", "id", "integer", 10, 0, false, null, null, true));
+        metadata.setFingerprint("1|1|2");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    /**
+     * A snapshot has to survive being written by one cache and read back by
+     * another, as it would be between two runs of the Architect.
+     */
+    public void testRoundTrip() throws Exception {
+        new CatalogSnapshotCache(directory).put(ds, "sales", metadata);
+        assertTrue(new CatalogSnapshotCache(directory).getFile(ds).exists());
+        
+        SchemaMetadata read = new CatalogSnapshotCache(directory).get(ds, "sales");
+        assertNotNull(read);
+        assertEquals("1|1|2", read.getFingerprint());
+        assertEquals(1, read.getTables().size());
+        assertEquals("Customers", read.getTables().get(0).getRemarks());
+        assertEquals("id", read.getColumns().get(0).getName());
+        assertNull(read.getIndices());
+    }
+
+    public void testDifferentUserHasDifferentSnapshots() throws Exception {
+        CatalogSnapshotCache cache = new CatalogSnapshotCache(directory);
+        cache.put(ds, "sales", metadata);
+        
+        JDBCDataSource other = new JDBCDataSource(new PlDotIni());
+        other.setDisplayName("Sales Database");
+        other.setUser("other");
+        other.setUrl("jdbc:mock:sales");
+        assertNull(cache.get(other, "sales"));
+    }
+
+    public void testRemoveAndClear() throws Exception {
+        CatalogSnapshotCache cache = new CatalogSnapshotCache(directory);
+        cache.put(ds, "sales", metadata);
+        cache.put(ds, "hr", new SchemaMetadata("hr"));
+        cache.remove(ds, "sales");
+        assertNull(new CatalogSnapshotCache(directory).get(ds, "sales"));
+        assertNotNull(new CatalogSnapshotCache(directory).get(ds, "hr"));
+        
+        cache.clear(ds);
+        assertFalse(cache.getFile(ds).exists());
+        assertNull(cache.get(ds, "hr"));
+    }
+
+    public void testPutAll() throws Exception {
+        Map<String, SchemaMetadata> snapshots = new LinkedHashMap<String, SchemaMetadata>();
+        snapshots.put("sales", metadata);
+        snapshots.put("hr", new SchemaMetadata("hr"));
+        new CatalogSnapshotCache(directory).putAll(ds, snapshots);
+        
+        CatalogSnapshotCache cache = new CatalogSnapshotCache(directory);
+        assertNotNull(cache.get(ds, "sales"));
+        assertNotNull(cache.get(ds, "hr"));
+        cache.removeAll(ds, snapshots.keySet());
+        assertNull(new CatalogSnapshotCache(directory).get(ds, "hr"));
+    }
+
+    public void testUnreadableFileIsIgnored() throws Exception {
+        CatalogSnapshotCache cache = new CatalogSnapshotCache(directory);
+        File file = cache.getFile(ds);
+        FileWriter out = new FileWriter(file);
+        out.write("not a snapshot");
+        out.close();
+        assertNull(cache.get(ds, "sales"));
+        cache.put(ds, "sales", metadata);
+        assertNotNull(new CatalogSnapshotCache(directory).get(ds, "sales"));
+    }
+
+    public void testCacheKeyIncludesCatalog() throws Exception {
+        SQLDatabase db = new SQLDatabase();
+        SQLCatalog catalog = new SQLCatalog();
+        catalog.setName("warehouse");
+        db.addChild(catalog);
+        SQLSchema schema = new SQLSchema(false);
+        schema.setName("sales");
+        catalog.addChild(schema);
+        assertEquals("warehouse.sales", BulkCatalogReader.getCacheKey(schema));
+        assertEquals("warehouse", BulkCatalogReader.getCacheKey(catalog));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.catalog;
+
+import java.beans.PropertyChangeEvent;
+import java.io.File;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.catalog.SchemaMetadata.ColumnRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.ForeignKeyRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.IndexRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.PrimaryKeyRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.TableRow;
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLSchema;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLRelationship.UpdateDeleteRule;
+import ca.sqlpower.util.SQLPowerUtils;
+
+public class IncrementalCatalogRefresherTest extends TestCase {
+
+    /**
+     * Counts the events fired by a hierarchy of SQLObjects.
+     */
+    private static class CountingListener extends AbstractSPListener {
+        int events;
+        
+        @Override
+        public void childAdded(SPChildEvent e) {
+            events++;
+        }
+        
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            events++;
+        }
+        
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            events++;
+        }
+    }
+
+    private SQLDatabase db;
+    private SQLSchema schema;
+    private IncrementalCatalogRefresher refresher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        db = new SQLDatabase();
+        schema = new SQLSchema(false);
+        schema.setName("sales");
+        db.addChild(schema);
+        refresher = new IncrementalCatalogRefresher(db, 
+                new CatalogSnapshotCache(new File(System.getProperty("java.io.tmpdir"))));
+        new BulkCatalogReader(db).fill(schema, createMetadata());
+    }
+
+    private SchemaMetadata createMetadata() {
+        SchemaMetadata metadata = new SchemaMetadata("sales");
+        metadata.getTables().add(new TableRow("customer", "TABLE", "Customers"));
+        metadata.getTables().add(new TableRow("orders", "TABLE", null));
+        metadata.getColumns().add(new ColumnRow("customer", "id", "integer", 10, 0, false, null, null, true));
+        metadata.getColumns().add(new ColumnRow("customer", "name", "character varying", 50, 0, true, null, null, false));
+        metadata.getColumns().add(new ColumnRow("orders", "id", "integer", 10, 0, false, null, null, false));
+        metadata.getColumns().add(new ColumnRow("orders", "customer_id", "integer", 10, 0, true, null, null, false));
+        metadata.getPrimaryKeys().add(new PrimaryKeyRow("customer", "id", "customer_pk"));
+        metadata.getPrimaryKeys().add(new PrimaryKeyRow("orders", "id", "orders_pk"));
+        metadata.getForeignKeys().add(new ForeignKeyRow("orders_customer_fk", "orders", "customer_id", "sales",
+                "customer", "id", "NO ACTION", "CASCADE"));
+        metadata.setIndices(new ArrayList<IndexRow>());
+        metadata.getIndices().add(new IndexRow("orders", "orders_customer_idx", false, "customer_id", false));
+        return metadata;
+    }
+
+    private SQLTable getTable(String name) {
+        for (SQLTable table : schema.getChildrenWithoutPopulating(SQLTable.class)) {
+            if (table.getName().equals(name)) return table;
+        }
+        return null;
+    }
+
+    public void testUnchangedSchemaFiresNoEvents() throws Exception {
+        CountingListener listener = new CountingListener();
+        SQLPowerUtils.listenToHierarchy(schema, listener);
+        refresher.apply(schema, createMetadata());
+        assertEquals(0, listener.events);
+    }
+
+    public void testColumnChangesKeepOtherColumns() throws Exception {
+        SQLTable customer = getTable("customer");
+        SQLColumn id = customer.getColumnByName("id");
+        SQLColumn name = customer.getColumnByName("name");
+        
+        SchemaMetadata metadata = createMetadata();
+        metadata.getColumns().set(1, new ColumnRow("customer", "name", "character varying", 80, 0, true, null, null, false));
+        metadata.getColumns().add(2, new ColumnRow("customer", "email", "character varying", 100, 0, true, null, null, false));
+        refresher.apply(schema, metadata);
+        
+        assertSame(customer, getTable("customer"));
+        assertSame(id, customer.getColumnByName("id"));
+        assertSame(name, customer.getColumnByName("name"));
+        assertEquals(80, name.getPrecision());
+        assertEquals(3, customer.getColumnsWithoutPopulating().size());
+        assertEquals("email", customer.getColumnsWithoutPopulating().get(2).getName());
+        assertTrue(id.isPrimaryKey());
+    }
+
+    public void testDroppedColumnAndPrimaryKeyChange() throws Exception {
+        SchemaMetadata metadata = createMetadata();
+        metadata.getColumns().remove(1);
+        metadata.getPrimaryKeys().add(new PrimaryKeyRow("orders", "customer_id", "orders_pk"));
+        refresher.apply(schema, metadata);
+        
+        assertNull(getTable("customer").getColumnByName("name"));
+        assertTrue(getTable("orders").getColumnByName("customer_id").isPrimaryKey());
+    }
+
+    public void testTablesAddedAndDropped() throws Exception {
+        SQLTable customer = getTable("customer");
+        SchemaMetadata metadata = createMetadata();
+        metadata.getTables().remove(1);
+        metadata.getColumns().remove(3);
+        metadata.getColumns().remove(2);
+        metadata.getPrimaryKeys().remove(1);
+        metadata.getForeignKeys().clear();
+        metadata.getIndices().clear();
+        metadata.getTables().add(new TableRow("region", "TABLE", null));
+        metadata.getColumns().add(new ColumnRow("region", "code", "char", 2, 0, false, null, null, false));
+        refresher.apply(schema, metadata);
+        
+        assertSame(customer, getTable("customer"));
+        assertNull(getTable("orders"));
+        SQLTable region = getTable("region");
+        assertNotNull(region);
+        assertEquals(1, region.getColumnsWithoutPopulating().size());
+        assertTrue(customer.getExportedKeysWithoutPopulating().isEmpty());
+    }
+
+    public void testChangedKeysAndIndices() throws Exception {
+        SchemaMetadata metadata = createMetadata();
+        metadata.getForeignKeys().set(0, new ForeignKeyRow("orders_customer_fk", "orders", "customer_id", "sales",
+                "customer", "id", "NO ACTION", "NO ACTION"));
+        metadata.getIndices().set(0, new IndexRow("orders", "orders_customer_idx", true, "customer_id", false));
+        refresher.apply(schema, metadata);
+        
+        SQLTable orders = getTable("orders");
+        assertEquals(1, orders.getImportedKeysWithoutPopulating().size());
+        assertEquals(UpdateDeleteRule.NO_ACTION,
+                orders.getImportedKeysWithoutPopulating().get(0).getRelationship().getDeleteRule());
+        boolean found = false;
+        for (SQLIndex index : orders.getIndicesWithoutPopulating()) {
+            if (index.getName().equals("orders_customer_idx")) {
+                found = true;
+                assertTrue(index.isUnique());
+            }
+        }
+        assertTrue(found);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.ddl.critic;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.critic.CriticAndSettings.Severity;
+import ca.sqlpower.architect.ddl.critic.impl.DuplicateNameCritic;
+import ca.sqlpower.architect.ddl.critic.impl.PrimaryKeyCritic;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class CriticizerTest extends TestCase {
+
+    /**
+     * Wraps a critic to force it to be run as if it needed a global view of
+     * the model. Running all of the critics wrapped this way gives the same
+     * results as running the critics on a single thread.
+     */
+    private static class GlobalCritic implements Critic {
+        
+        private final Critic delegate;
+
+        public GlobalCritic(Critic delegate) {
+            this.delegate = delegate;
+        }
+
+        public void start() {
+            delegate.start();
+        }
+
+        public List<Criticism> criticize(Object subject) {
+            return delegate.criticize(subject);
+        }
+
+        public void end() {
+            delegate.end();
+        }
+
+        public Severity getSeverity() {
+            return delegate.getSeverity();
+        }
+
+        public boolean isStateless() {
+            return false;
+        }
+    }
+    
+    private SQLDatabase db;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        db = new SQLDatabase();
+        for (int i = 0; i < 300; i++) {
+            SQLTable table = new SQLTable(db, true);
+            table.setName("table_" + (i % 50));
+            table.setPhysicalName("table_" + (i % 50));
+            db.addChild(table);
+            for (int j = 0; j < 3; j++) {
+                SQLColumn col = new SQLColumn(table, "col", Types.INTEGER, 10, 0);
+                col.setPhysicalName("col");
+                table.addColumn(col);
+            }
+        }
+    }
+
+    /**
+     * Stateless critics are run in parallel but the criticisms must come
+     * back in the same order as a run on a single thread.
+     */
+    public void testParallelCriticismsInSequentialOrder() throws Exception {
+        Critic pkCritic = new PrimaryKeyCritic();
+        Critic duplicateCritic = new DuplicateNameCritic();
+        
+        List<Critic> sequentialCritics = new ArrayList<Critic>();
+        sequentialCritics.add(new GlobalCritic(pkCritic));
+        sequentialCritics.add(new GlobalCritic(duplicateCritic));
+        List<Criticism> expected = new Criticizer(sequentialCritics).criticize(db);
+        
+        List<Critic> critics = new ArrayList<Critic>();
+        critics.add(pkCritic);
+        critics.add(duplicateCritic);
+        assertTrue(pkCritic.isStateless());
+        assertFalse(duplicateCritic.isStateless());
+        List<Criticism> actual = new Criticizer(critics).criticize(db);
+        
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i).getSubject(), actual.get(i).getSubject());
+            assertSame(expected.get(i).getCritic(), actual.get(i).getCritic());
+            assertEquals(expected.get(i).getDescription(), actual.get(i).getDescription());
+        }
+    }
+}
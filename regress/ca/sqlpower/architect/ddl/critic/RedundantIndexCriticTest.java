@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.ddl.critic;
+
+import java.sql.Types;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.critic.impl.Messages;
+import ca.sqlpower.architect.ddl.critic.impl.RedundantIndexCritic;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+
+/**
+ * Tests which indexes {@link RedundantIndexCritic} finds redundant because
+ * another index on the table starts with the same columns.
+ */
+public class RedundantIndexCriticTest extends TestCase {
+
+    private SQLTable table;
+    private SQLColumn id;
+    private SQLColumn customer;
+    private SQLColumn placed;
+    
+    private RedundantIndexCritic critic;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SQLDatabase db = new SQLDatabase();
+        table = new SQLTable(db, true);
+        table.setName("orders");
+        db.addChild(table);
+        id = new SQLColumn(table, "id", Types.INTEGER, 10, 0);
+        table.addColumn(id);
+        table.addToPK(id);
+        customer = new SQLColumn(table, "customer", Types.INTEGER, 10, 0);
+        table.addColumn(customer);
+        placed = new SQLColumn(table, "placed", Types.TIMESTAMP, 0, 0);
+        table.addColumn(placed);
+        critic = new RedundantIndexCritic();
+    }
+    
+    private SQLIndex addIndex(String name, boolean unique, SQLColumn ... columns) throws Exception {
+        SQLIndex index = new SQLIndex(name, unique, null, null, null);
+        table.addIndex(index);
+        for (SQLColumn col : columns) {
+            index.addIndexColumn(col, AscendDescend.ASCENDING);
+        }
+        return index;
+    }
+
+    /**
+     * An index on the leading columns of another index is redundant, but the
+     * wider index is not.
+     */
+    public void testPrefixIsRedundant() throws Exception {
+        SQLIndex wide = addIndex("customer_placed", false, customer, placed);
+        SQLIndex prefix = addIndex("customer_idx", false, customer);
+        
+        List<Criticism> criticisms = critic.criticize(prefix);
+        assertEquals(1, criticisms.size());
+        assertEquals(Messages.getString("RedundantIndexCritic.prefixCriticism", "customer_idx", "customer_placed"),
+                criticisms.get(0).getDescription());
+        assertTrue(critic.criticize(wide).isEmpty());
+        
+        criticisms.get(0).getFixes().get(0).apply();
+        assertNull(prefix.getParent());
+        assertFalse(table.getChildren(SQLIndex.class).contains(prefix));
+    }
+
+    /**
+     * Columns that are in the other index but not at its start do not make
+     * an index redundant.
+     */
+    public void testTrailingColumnsAreNotAPrefix() throws Exception {
+        addIndex("customer_placed", false, customer, placed);
+        SQLIndex placedIndex = addIndex("placed_idx", false, placed);
+        assertTrue(critic.criticize(placedIndex).isEmpty());
+    }
+
+    public void testDirectionMustMatch() throws Exception {
+        addIndex("customer_placed", false, customer, placed);
+        SQLIndex descending = new SQLIndex("customer_desc", false, null, null, null);
+        table.addIndex(descending);
+        descending.addIndexColumn(customer, AscendDescend.DESCENDING);
+        assertTrue(critic.criticize(descending).isEmpty());
+    }
+
+    /**
+     * A unique index enforces a constraint, so it is not redundant because a
+     * wider index starts with its columns.
+     */
+    public void testUniquePrefixIsNotRedundant() throws Exception {
+        addIndex("customer_placed", false, customer, placed);
+        SQLIndex unique = addIndex("customer_unique", true, customer);
+        assertTrue(critic.criticize(unique).isEmpty());
+    }
+
+    /**
+     * Of two indexes with the same columns only one is criticized, so
+     * removing it leaves the other.
+     */
+    public void testDuplicatesCriticizeOnlyOne() throws Exception {
+        SQLIndex first = addIndex("customer_1", false, customer);
+        SQLIndex second = addIndex("customer_2", false, customer);
+        
+        assertTrue(critic.criticize(first).isEmpty());
+        List<Criticism> criticisms = critic.criticize(second);
+        assertEquals(1, criticisms.size());
+        assertEquals(Messages.getString("RedundantIndexCritic.duplicateCriticism", "customer_2", "customer_1"),
+                criticisms.get(0).getDescription());
+    }
+
+    /**
+     * A non-unique index on the primary key columns duplicates the primary
+     * key, which is never criticized itself.
+     */
+    public void testDuplicateOfPrimaryKey() throws Exception {
+        SQLIndex idIndex = addIndex("id_idx", false, id);
+        
+        assertTrue(critic.criticize(table.getPrimaryKeyIndex()).isEmpty());
+        List<Criticism> criticisms = critic.criticize(idIndex);
+        assertEquals(1, criticisms.size());
+        assertEquals(Messages.getString("RedundantIndexCritic.duplicateCriticism", "id_idx", 
+                table.getPrimaryKeyIndex().getName()),
+                criticisms.get(0).getDescription());
+    }
+}
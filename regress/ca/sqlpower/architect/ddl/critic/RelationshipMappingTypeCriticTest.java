@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.ddl.critic;
+
+import java.sql.Types;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.critic.impl.Messages;
+import ca.sqlpower.architect.ddl.critic.impl.RelationshipMappingTypeCritic;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLTypePhysicalPropertiesProvider;
+import ca.sqlpower.sqlobject.UserDefinedSQLType;
+import ca.sqlpower.sqlobject.SQLRelationship.ColumnMapping;
+import ca.sqlpower.sqlobject.SQLTypePhysicalPropertiesProvider.PropertyType;
+
+/**
+ * Tests the descriptions {@link RelationshipMappingTypeCritic} gives for the
+ * different ways the columns of a relationship can differ.
+ */
+public class RelationshipMappingTypeCriticTest extends TestCase {
+
+    private static final int NVARCHAR = -9; // Java6/JDBC 4.0
+    
+    private SQLColumn parentColumn;
+    private SQLColumn childColumn;
+    private ColumnMapping mapping;
+    
+    private RelationshipMappingTypeCritic critic;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SQLDatabase db = new SQLDatabase();
+        SQLTable parent = new SQLTable(db, true);
+        parent.setName("customer");
+        db.addChild(parent);
+        parentColumn = new SQLColumn(parent, "code", Types.VARCHAR, 10, 0);
+        parent.addColumn(parentColumn);
+        parent.addToPK(parentColumn);
+        // set before the relationship copies the column into the child
+        setType(parentColumn, createType("VARCHAR", Types.VARCHAR), Types.VARCHAR);
+        
+        SQLTable child = new SQLTable(db, true);
+        child.setName("orders");
+        db.addChild(child);
+        
+        SQLRelationship r = new SQLRelationship();
+        r.setName("customer_orders");
+        r.attachRelationship(parent, child, true);
+        mapping = r.getChildren(ColumnMapping.class).get(0);
+        childColumn = mapping.getFkColumn();
+        critic = new RelationshipMappingTypeCritic();
+    }
+    
+    private static UserDefinedSQLType createType(String name, int jdbcType) {
+        String platform = SQLTypePhysicalPropertiesProvider.GENERIC_PLATFORM;
+        UserDefinedSQLType type = new UserDefinedSQLType();
+        type.setName(name);
+        type.setType(jdbcType);
+        type.setPrecision(platform, 10);
+        type.setScale(platform, 0);
+        type.setPrecisionType(platform, PropertyType.VARIABLE);
+        type.setScaleType(platform, PropertyType.NOT_APPLICABLE);
+        return type;
+    }
+    
+    private static void setType(SQLColumn col, UserDefinedSQLType upstreamType, int jdbcType) {
+        col.getUserDefinedSQLType().setUpstreamType(upstreamType);
+        col.setType(jdbcType);
+    }
+
+    public void testSameTypesAreNotCriticized() throws Exception {
+        setType(childColumn, createType("VARCHAR", Types.VARCHAR), Types.VARCHAR);
+        assertTrue(critic.criticize(mapping).isEmpty());
+    }
+
+    public void testDifferentPrecision() throws Exception {
+        setType(childColumn, createType("VARCHAR", Types.VARCHAR), Types.VARCHAR);
+        childColumn.setPrecision(20);
+        List<Criticism> criticisms = critic.criticize(mapping);
+        assertEquals(1, criticisms.size());
+        assertSame(mapping.getParent(), criticisms.get(0).getSubject());
+        assertEquals("Columns " + parentColumn.getShortDisplayName() + " and " + 
+                childColumn.getShortDisplayName() + " related by FK constraint " +
+                "have different types, scale, or precision",
+                criticisms.get(0).getDescription());
+    }
+
+    public void testCharacterTypesDescribeCharacterSets() throws Exception {
+        setType(childColumn, createType("NVARCHAR", NVARCHAR), NVARCHAR);
+        List<Criticism> criticisms = critic.criticize(mapping);
+        assertEquals(1, criticisms.size());
+        assertEquals(Messages.getString("RelationshipMappingTypeCritic.characterSetCriticism", 
+                parentColumn.getShortDisplayName(), childColumn.getShortDisplayName()),
+                criticisms.get(0).getDescription());
+    }
+
+    public void testOtherTypesDescribeConversion() throws Exception {
+        setType(childColumn, createType("INTEGER", Types.INTEGER), Types.INTEGER);
+        List<Criticism> criticisms = critic.criticize(mapping);
+        assertEquals(1, criticisms.size());
+        assertEquals(Messages.getString("RelationshipMappingTypeCritic.conversionCriticism", 
+                parentColumn.getShortDisplayName(), childColumn.getShortDisplayName()),
+                criticisms.get(0).getDescription());
+        
+        // the fixes make the child match the parent, or the parent the child
+        assertEquals(2, criticisms.get(0).getFixes().size());
+        criticisms.get(0).getFixes().get(0).apply();
+        assertEquals(Types.VARCHAR, childColumn.getType());
+        assertTrue(critic.criticize(mapping).isEmpty());
+    }
+}
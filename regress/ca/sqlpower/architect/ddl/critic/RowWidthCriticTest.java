@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.ddl.critic;
+
+import java.sql.Types;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.DB2DDLGenerator;
+import ca.sqlpower.architect.ddl.PostgresDDLGenerator;
+import ca.sqlpower.architect.ddl.SQLServer2005DDLGenerator;
+import ca.sqlpower.architect.ddl.critic.impl.Messages;
+import ca.sqlpower.architect.ddl.critic.impl.RowWidthCritic;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.JDBCDataSourceType;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Tests that {@link RowWidthCritic} compares rows against the page size of
+ * the platform of their database, and against its threshold when the
+ * platform is not known.
+ */
+public class RowWidthCriticTest extends TestCase {
+
+    private JDBCDataSourceType dsType;
+    
+    private SQLTable table;
+    
+    private RowWidthCritic critic;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dsType = new JDBCDataSourceType();
+        JDBCDataSource ds = new JDBCDataSource(new PlDotIni());
+        ds.setParentType(dsType);
+        ds.setDisplayName("Orders Database");
+        SQLDatabase db = new SQLDatabase(ds);
+        db.setPopulated(true);
+        table = new SQLTable(db, true);
+        table.setName("orders");
+        db.addChild(table);
+        
+        // 4 + 4002 + 4 = 4010 bytes
+        table.addColumn(new SQLColumn(table, "id", Types.INTEGER, 10, 0));
+        table.addColumn(new SQLColumn(table, "notes", Types.VARCHAR, 4000, 0));
+        table.addColumn(new SQLColumn(table, "customer", Types.INTEGER, 10, 0));
+        
+        critic = new RowWidthCritic(4000);
+    }
+    
+    private void setPlatform(Class<?> ddlGenerator) {
+        dsType.putProperty(JDBCDataSourceType.DDL_GENERATOR, ddlGenerator.getName());
+    }
+
+    public void testPlatformPageSize() throws Exception {
+        setPlatform(DB2DDLGenerator.class);
+        List<Criticism> criticisms = critic.criticize(table);
+        assertEquals(1, criticisms.size());
+        assertEquals(Messages.getString("RowWidthCritic.criticismDesc", "orders", "4010", "4005"),
+                criticisms.get(0).getDescription());
+        
+        setPlatform(PostgresDDLGenerator.class);
+        assertTrue(critic.criticize(table).isEmpty());
+        
+        setPlatform(SQLServer2005DDLGenerator.class);
+        assertTrue(critic.criticize(table).isEmpty());
+    }
+
+    /**
+     * The page size of a known platform is used whatever the threshold.
+     */
+    public void testPlatformPageSizeIgnoresThreshold() throws Exception {
+        setPlatform(PostgresDDLGenerator.class);
+        critic.setThreshold(100);
+        assertTrue(critic.criticize(table).isEmpty());
+    }
+
+    public void testUnknownPlatformUsesThreshold() throws Exception {
+        setPlatform(RowWidthCriticTest.class);
+        List<Criticism> criticisms = critic.criticize(table);
+        assertEquals(1, criticisms.size());
+        assertEquals(Messages.getString("RowWidthCritic.criticismDesc", "orders", "4010", "4000"),
+                criticisms.get(0).getDescription());
+        
+        critic.setThreshold(4010);
+        assertTrue(critic.criticize(table).isEmpty());
+    }
+
+    public void testNoPlatformUsesThreshold() throws Exception {
+        assertEquals(1, critic.criticize(table).size());
+        
+        critic.setThreshold(RowWidthCritic.DEFAULT_PAGE_SIZE);
+        assertTrue(critic.criticize(table).isEmpty());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.ddl.critic;
+
+import java.beans.PropertyChangeEvent;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ArchitectUtils;
+import ca.sqlpower.architect.ddl.critic.impl.Messages;
+import ca.sqlpower.architect.ddl.critic.impl.RowWidthCritic;
+import ca.sqlpower.architect.ddl.critic.impl.WideIndexKeyCritic;
+import ca.sqlpower.architect.ddl.critic.impl.WidePrimaryKeyCritic;
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLIndex.Column;
+
+/**
+ * Tests the critics that compare the estimated width of keys and rows
+ * against a {@link ThresholdCritic} threshold. An object exactly at the
+ * threshold is fine, one byte over it is criticized.
+ */
+public class ThresholdCriticTest extends TestCase {
+
+    private static final int NVARCHAR = -9; // Java6/JDBC 4.0
+    
+    private SQLTable table;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SQLDatabase db = new SQLDatabase();
+        table = new SQLTable(db, true);
+        table.setName("orders");
+        db.addChild(table);
+    }
+    
+    private SQLColumn addColumn(String name, int type, int precision) throws Exception {
+        SQLColumn col = new SQLColumn(table, name, type, precision, 0);
+        table.addColumn(col);
+        return col;
+    }
+
+    public void testEstimateColumnWidth() throws Exception {
+        assertEquals(1, ArchitectUtils.estimateColumnWidth(Types.BOOLEAN, 1, 0));
+        assertEquals(4, ArchitectUtils.estimateColumnWidth(Types.INTEGER, 10, 0));
+        assertEquals(8, ArchitectUtils.estimateColumnWidth(Types.TIMESTAMP, 0, 0));
+        assertEquals(6, ArchitectUtils.estimateColumnWidth(Types.DECIMAL, 10, 2));
+        assertEquals(20, ArchitectUtils.estimateColumnWidth(Types.NUMERIC, 0, 0));
+        assertEquals(10, ArchitectUtils.estimateColumnWidth(Types.CHAR, 10, 0));
+        assertEquals(12, ArchitectUtils.estimateColumnWidth(Types.VARCHAR, 10, 0));
+        assertEquals(22, ArchitectUtils.estimateColumnWidth(NVARCHAR, 10, 0));
+        assertEquals(16, ArchitectUtils.estimateColumnWidth(Types.CLOB, 1000000, 0));
+        assertEquals(3, ArchitectUtils.estimateColumnWidth(Types.VARCHAR, 0, 0));
+    }
+
+    public void testWidePrimaryKeyAtThreshold() throws Exception {
+        table.addToPK(addColumn("id", Types.INTEGER, 10));
+        table.addToPK(addColumn("line", Types.INTEGER, 10));
+        addColumn("notes", Types.VARCHAR, 1000);
+        WidePrimaryKeyCritic critic = new WidePrimaryKeyCritic(8);
+        
+        assertTrue(critic.criticize(table).isEmpty());
+        
+        table.addToPK(addColumn("part", Types.SMALLINT, 5));
+        List<Criticism> criticisms = critic.criticize(table);
+        assertEquals(1, criticisms.size());
+        assertSame(table, criticisms.get(0).getSubject());
+        assertEquals(Messages.getString("WidePrimaryKeyCritic.criticismDesc", "orders", "10", "8"),
+                criticisms.get(0).getDescription());
+        
+        critic.setThreshold(10);
+        assertTrue(critic.criticize(table).isEmpty());
+    }
+
+    public void testRowWidthAtThreshold() throws Exception {
+        addColumn("id", Types.INTEGER, 10);
+        addColumn("notes", Types.VARCHAR, 94);
+        RowWidthCritic critic = new RowWidthCritic(100);
+        
+        assertTrue(critic.criticize(table).isEmpty());
+        
+        addColumn("flag", Types.BOOLEAN, 1);
+        List<Criticism> criticisms = critic.criticize(table);
+        assertEquals(1, criticisms.size());
+        assertEquals(Messages.getString("RowWidthCritic.criticismDesc", "orders", "101", "100"),
+                criticisms.get(0).getDescription());
+    }
+
+    public void testWideIndexKeyAtThreshold() throws Exception {
+        SQLColumn code = addColumn("code", Types.VARCHAR, 10);
+        SQLColumn id = addColumn("id", Types.INTEGER, 10);
+        SQLIndex index = new SQLIndex();
+        index.setName("code_idx");
+        index.addIndexColumn(code);
+        index.addIndexColumn(id);
+        table.addIndex(index);
+        Column codeKey = index.getChildren(Column.class).get(0);
+        WideIndexKeyCritic critic = new WideIndexKeyCritic(12);
+        
+        assertTrue(critic.criticize(codeKey).isEmpty());
+        
+        code.setPrecision(11);
+        List<Criticism> criticisms = critic.criticize(codeKey);
+        assertEquals(1, criticisms.size());
+        assertSame(index, criticisms.get(0).getSubject());
+        assertEquals(Messages.getString("WideIndexKeyCritic.wideColumnCriticism", 
+                code.getShortDisplayName(), "code_idx", "13", "12"),
+                criticisms.get(0).getDescription());
+        // the column can be dropped from the key as the index has others
+        assertEquals(1, criticisms.get(0).getFixes().size());
+        criticisms.get(0).getFixes().get(0).apply();
+        assertEquals(1, index.getChildren(Column.class).size());
+        assertSame(id, index.getChildren(Column.class).get(0).getColumn());
+    }
+
+    /**
+     * Large objects are criticized as index keys whatever the threshold.
+     */
+    public void testLargeObjectIndexKey() throws Exception {
+        SQLColumn doc = addColumn("doc", Types.CLOB, 1000000);
+        SQLIndex index = new SQLIndex();
+        index.setName("doc_idx");
+        index.addIndexColumn(doc);
+        table.addIndex(index);
+        WideIndexKeyCritic critic = new WideIndexKeyCritic(Integer.MAX_VALUE);
+        
+        List<Criticism> criticisms = critic.criticize(index.getChildren(Column.class).get(0));
+        assertEquals(1, criticisms.size());
+        assertEquals(Messages.getString("WideIndexKeyCritic.largeObjectCriticism", 
+                doc.getShortDisplayName(), "doc_idx"),
+                criticisms.get(0).getDescription());
+        // removing the only column would leave an empty index
+        assertTrue(criticisms.get(0).getFixes().isEmpty());
+    }
+
+    public void testThresholdFiresPropertyChange() throws Exception {
+        WidePrimaryKeyCritic critic = new WidePrimaryKeyCritic();
+        assertEquals(WidePrimaryKeyCritic.DEFAULT_MAX_PRIMARY_KEY_BYTES, critic.getThreshold());
+        final List<PropertyChangeEvent> events = new ArrayList<PropertyChangeEvent>();
+        critic.addSPListener(new AbstractSPListener() {
+            @Override
+            public void propertyChanged(PropertyChangeEvent evt) {
+                events.add(evt);
+            }
+        });
+        critic.setThreshold(64);
+        assertEquals(64, critic.getThreshold());
+        assertEquals(1, events.size());
+        assertEquals("threshold", events.get(0).getPropertyName());
+    }
+}
@@ -845,6 +845,41 @@ public class CompareSQLTest extends TestCase {
         }
     }
 
+	/**
+	 * Comparing on several threads must give the same diffs in the same order
+	 * as comparing on one thread.
+	 */
+	public void testParallelCompareKeepsOrder() throws Exception {
+	    List<SQLTable> sourceTables = new ArrayList<SQLTable>();
+	    List<SQLTable> targetTables = new ArrayList<SQLTable>();
+	    for (int i = 0; i < 20; i++) {
+	        sourceTables.add(makeTable(i, 4));
+	        if (i % 3 != 0) {
+	            SQLTable t = makeTable(i, 5);
+	            if (i % 2 == 0) {
+	                t.getColumn(0).setPrecision(10);
+	            }
+	            targetTables.add(t);
+	        }
+	    }
+	    targetTables.add(makeTable(99, 2));
+	    
+	    CompareSQL serial = new CompareSQL(sourceTables, targetTables, false);
+	    serial.setThreadCount(1);
+	    List<DiffChunk<SQLObject>> expected = serial.generateTableDiffs();
+	    
+	    CompareSQL parallel = new CompareSQL(sourceTables, targetTables, false);
+	    parallel.setThreadCount(4);
+	    List<DiffChunk<SQLObject>> actual = parallel.generateTableDiffs();
+	    
+	    assertEquals(expected.size(), actual.size());
+	    for (int i = 0; i < expected.size(); i++) {
+	        assertSame(expected.get(i).getData(), actual.get(i).getData());
+	        assertEquals(expected.get(i).getType(), actual.get(i).getType());
+	    }
+	    assertTrue(parallel.isFinished());
+	}
+
 	/**
 	 * Creates a table with the name <tt>table_<i>i</i></tt> (where <i>i</i> is the
 	 * argument given to this function.  The new table will have i columns called
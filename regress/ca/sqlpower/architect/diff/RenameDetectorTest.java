@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.diff;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.diff.DiffType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class RenameDetectorTest extends TestCase {
+
+    private RenameDetector detector;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        detector = new RenameDetector();
+    }
+
+    /**
+     * Makes a table whose columns are given as name and type pairs.
+     */
+    private SQLTable makeTable(String name, Object... columns) throws SQLObjectException {
+        SQLTable table = new SQLTable(null, name, "", "TABLE", true);
+        for (int i = 0; i < columns.length; i += 2) {
+            int type = (Integer) columns[i + 1];
+            int precision = type == Types.VARCHAR ? 50 : 10;
+            table.addColumn(new SQLColumn(table, (String) columns[i], type, precision, 0));
+        }
+        return table;
+    }
+
+    private SQLTable makeCustomerTable(String name, String phoneColumn) throws SQLObjectException {
+        return makeTable(name, "id", Types.INTEGER, "first_name", Types.VARCHAR,
+                "last_name", Types.VARCHAR, "email", Types.VARCHAR, "created", Types.DATE,
+                phoneColumn, Types.VARCHAR);
+    }
+
+    private List<SQLTable> list(SQLTable... tables) {
+        List<SQLTable> list = new ArrayList<SQLTable>();
+        for (SQLTable t : tables) {
+            list.add(t);
+        }
+        return list;
+    }
+
+    public void testRenamedTableMatched() throws Exception {
+        SQLTable customer = makeCustomerTable("customer", "phone");
+        SQLTable orders = makeTable("orders", "order_id", Types.INTEGER, "total", Types.DECIMAL);
+        SQLTable client = makeCustomerTable("client", "phone");
+        SQLTable invoice = makeTable("invoice", "invoice_no", Types.VARCHAR, "paid", Types.BOOLEAN);
+
+        Map<SQLTable, SQLTable> renames = detector.matchTables(list(customer, orders), list(client, invoice));
+        assertEquals(1, renames.size());
+        assertSame(client, renames.get(customer));
+    }
+
+    public void testTableWithRenamedColumnMatched() throws Exception {
+        SQLTable customer = makeCustomerTable("customer", "phone");
+        SQLTable client = makeCustomerTable("client", "telephone");
+
+        Map<SQLTable, SQLTable> renames = detector.matchTables(list(customer), list(client));
+        assertSame(client, renames.get(customer));
+    }
+
+    public void testDissimilarTablesNotMatched() throws Exception {
+        SQLTable customer = makeCustomerTable("customer", "phone");
+        SQLTable orders = makeTable("orders", "id", Types.INTEGER, "total", Types.DECIMAL,
+                "shipped", Types.DATE);
+
+        assertTrue(detector.matchTables(list(customer), list(orders)).isEmpty());
+    }
+
+    public void testTablesWithoutColumnsNotMatched() throws Exception {
+        SQLTable empty1 = makeTable("empty1");
+        SQLTable empty2 = makeTable("empty2");
+
+        assertTrue(detector.matchTables(list(empty1), list(empty2)).isEmpty());
+    }
+
+    public void testTablesMatchedOneToOne() throws Exception {
+        SQLTable customer = makeCustomerTable("customer", "phone");
+        SQLTable customerCopy = makeCustomerTable("customer_copy", "phone");
+        SQLTable client = makeCustomerTable("client", "phone");
+
+        Map<SQLTable, SQLTable> renames = detector.matchTables(list(customer, customerCopy), list(client));
+        assertEquals(1, renames.size());
+        assertSame(client, renames.get(customer));
+    }
+
+    public void testBestMatchWins() throws Exception {
+        SQLTable customer = makeCustomerTable("customer", "phone");
+        SQLTable closeClient = makeCustomerTable("client", "telephone");
+        SQLTable exactClient = makeCustomerTable("client2", "phone");
+
+        Map<SQLTable, SQLTable> renames = detector.matchTables(list(customer), list(closeClient, exactClient));
+        assertSame(exactClient, renames.get(customer));
+    }
+
+    /**
+     * Each renamed table in a large schema should find the table it was
+     * renamed to among all of the others.
+     */
+    public void testManyRenamedTables() throws Exception {
+        List<SQLTable> sourceTables = new ArrayList<SQLTable>();
+        List<SQLTable> targetTables = new ArrayList<SQLTable>();
+        for (int i = 0; i < 500; i++) {
+            Object[] columns = new Object[8];
+            for (int j = 0; j < 4; j++) {
+                columns[j * 2] = "t" + i + "_c" + j;
+                columns[j * 2 + 1] = j % 2 == 0 ? Types.INTEGER : Types.VARCHAR;
+            }
+            sourceTables.add(makeTable("old" + i, columns));
+            targetTables.add(0, makeTable("new" + i, columns));
+        }
+
+        Map<SQLTable, SQLTable> renames = detector.matchTables(sourceTables, targetTables);
+        assertEquals(500, renames.size());
+        for (Map.Entry<SQLTable, SQLTable> rename : renames.entrySet()) {
+            assertEquals(rename.getKey().getName().substring(3), rename.getValue().getName().substring(3));
+        }
+    }
+
+    public void testColumnMatchedBySimilarName() throws Exception {
+        SQLTable customer = makeCustomerTable("customer", "phone");
+        SQLTable client = makeTable("client", "phone_no", Types.VARCHAR, "id", Types.INTEGER);
+
+        Map<SQLColumn, SQLColumn> renames = detector.matchColumns(
+                list(customer.getColumnByName("phone")), list(client.getColumnByName("phone_no")));
+        assertSame(client.getColumnByName("phone_no"), renames.get(customer.getColumnByName("phone")));
+    }
+
+    /**
+     * A name that is only somewhat similar should be enough for a column in
+     * the same position among the unmatched columns, even if a column that
+     * was matched by name moved in front of it.
+     */
+    public void testColumnMatchedByPositionAmongUnmatched() throws Exception {
+        SQLTable customer = makeTable("customer", "id", Types.INTEGER, "name", Types.VARCHAR, "addr", Types.VARCHAR);
+        SQLTable client = makeTable("client", "id", Types.INTEGER, "address", Types.VARCHAR, "name", Types.VARCHAR);
+
+        Map<SQLColumn, SQLColumn> renames = detector.matchColumns(
+                list(customer.getColumnByName("addr")), list(client.getColumnByName("address")));
+        assertSame(client.getColumnByName("address"), renames.get(customer.getColumnByName("addr")));
+    }
+
+    /**
+     * A column that was dropped and an unrelated column of the same type
+     * added in its place is not a rename.
+     */
+    public void testSamePositionAloneNotMatched() throws Exception {
+        SQLTable customer = makeCustomerTable("customer", "phone");
+        SQLTable client = makeCustomerTable("client", "contact_no");
+
+        Map<SQLColumn, SQLColumn> renames = detector.matchColumns(
+                list(customer.getColumnByName("phone")), list(client.getColumnByName("contact_no")));
+        assertTrue(renames.isEmpty());
+    }
+
+    public void testColumnWithDifferentDefinitionNotMatched() throws Exception {
+        SQLTable customer = makeCustomerTable("customer", "phone");
+        SQLTable client = makeCustomerTable("client", "telephone");
+        client.getColumnByName("telephone").setPrecision(20);
+
+        Map<SQLColumn, SQLColumn> renames = detector.matchColumns(
+                list(customer.getColumnByName("phone")), list(client.getColumnByName("telephone")));
+        assertTrue(renames.isEmpty());
+    }
+
+    public void testUnrelatedColumnNotMatched() throws Exception {
+        SQLTable customer = makeTable("customer", "id", Types.INTEGER, "phone", Types.VARCHAR);
+        SQLTable client = makeTable("client", "id", Types.INTEGER, "name", Types.VARCHAR, "notes", Types.VARCHAR);
+
+        Map<SQLColumn, SQLColumn> renames = detector.matchColumns(
+                list(customer.getColumnByName("phone")), list(client.getColumnByName("notes")));
+        assertTrue(renames.isEmpty());
+    }
+
+    /**
+     * A renamed table and a renamed column in it should each come out of
+     * the comparison as a single name change.
+     */
+    public void testCompareSQLReportsRenames() throws Exception {
+        SQLTable customer = makeCustomerTable("customer", "phone");
+        SQLTable client = makeCustomerTable("client", "telephone");
+
+        CompareSQL compare = new CompareSQL(list(customer), list(client), true);
+        compare.setDetectRenames(true);
+        List<DiffChunk<SQLObject>> diffs = compare.generateTableDiffs();
+
+        assertEquals(2, diffs.size());
+        assertEquals(DiffType.NAME_CHANGED, diffs.get(0).getType());
+        assertSame(client, diffs.get(0).getData());
+        assertSame(customer, diffs.get(0).getOriginalData());
+        assertEquals(DiffType.NAME_CHANGED, diffs.get(1).getType());
+        assertSame(client.getColumnByName("telephone"), diffs.get(1).getData());
+        assertSame(customer.getColumnByName("phone"), diffs.get(1).getOriginalData());
+    }
+
+    public void testCompareSQLWithoutRenameDetection() throws Exception {
+        SQLTable customer = makeCustomerTable("customer", "phone");
+        SQLTable client = makeCustomerTable("client", "telephone");
+
+        CompareSQL compare = new CompareSQL(list(customer), list(client), true);
+        List<DiffChunk<SQLObject>> diffs = compare.generateTableDiffs();
+
+        assertEquals(2, diffs.size());
+        assertEquals(DiffType.RIGHTONLY, diffs.get(0).getType());
+        assertEquals(DiffType.LEFTONLY, diffs.get(1).getType());
+    }
+
+    private List<SQLColumn> list(SQLColumn column) {
+        List<SQLColumn> list = new ArrayList<SQLColumn>();
+        list.add(column);
+        return list;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.diff;
+
+import java.sql.Types;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.diff.DiffType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.UserDefinedSQLType;
+
+public class SQLObjectHasherTest extends TestCase {
+
+    private SQLDatabase db;
+    private SQLTable table;
+    private SQLTable copy;
+    private SQLObjectHasher hasher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        db = new SQLDatabase();
+        table = createTable(db);
+        copy = createTable(new SQLDatabase());
+        hasher = new SQLObjectHasher();
+    }
+    
+    private SQLTable createTable(SQLDatabase parent) throws Exception {
+        SQLTable t = new SQLTable(parent, true);
+        t.setName("customer");
+        parent.addChild(t);
+        SQLColumn id = new SQLColumn(t, "id", Types.INTEGER, 10, 0);
+        t.addColumn(id);
+        t.addToPK(id);
+        t.addColumn(new SQLColumn(t, "name", Types.VARCHAR, 50, 0));
+        return t;
+    }
+    
+    public void testSameTablesHaveSameHash() throws Exception {
+        assertEquals(hasher.getHash(table), hasher.getHash(copy));
+        assertEquals(hasher.getHash(Collections.singletonList(table)), 
+                hasher.getHash(Collections.singletonList(copy)));
+    }
+    
+    public void testColumnChangeChangesTableHash() throws Exception {
+        copy.getColumn(1).setPrecision(60);
+        assertFalse(hasher.getHash(table) == hasher.getHash(copy));
+        assertEquals(hasher.getHash(table.getColumn(0)), hasher.getHash(copy.getColumn(0)));
+    }
+    
+    /**
+     * Cached hashes of watched objects must be dropped when the objects
+     * or their descendants change.
+     */
+    public void testWatchedHashesInvalidatedOnChange() throws Exception {
+        hasher.watch(db);
+        long before = hasher.getHash(table);
+        table.getColumn(1).setPrecision(60);
+        assertFalse(before == hasher.getHash(table));
+        
+        table.getColumn(1).setPrecision(50);
+        assertEquals(before, hasher.getHash(table));
+        
+        table.addColumn(new SQLColumn(table, "address", Types.VARCHAR, 100, 0));
+        assertFalse(before == hasher.getHash(table));
+    }
+    
+    /**
+     * Skipping tables with the same hash must give the same diffs as comparing
+     * every column.
+     */
+    public void testCompareWithSameTables() throws Exception {
+        hasher.watch(db);
+        CompareSQL compare = new CompareSQL(Collections.singletonList(table), 
+                Collections.singletonList(copy), false);
+        compare.setHasher(hasher);
+        List<DiffChunk<SQLObject>> diffs = compare.generateTableDiffs();
+        assertEquals(3, diffs.size());
+        for (DiffChunk<SQLObject> chunk : diffs) {
+            assertEquals(DiffType.SAME, chunk.getType());
+        }
+        
+        compare = new CompareSQL(Collections.singletonList(table), 
+                Collections.singletonList(copy), true);
+        compare.setHasher(hasher);
+        assertTrue(compare.generateTableDiffs().isEmpty());
+    }
+    
+    /**
+     * Columns must only hash the same when the comparison finds no property
+     * changes between them, whichever property differs.
+     */
+    public void testHashDiffersWheneverComparedPropertiesDiffer() throws Exception {
+        SQLColumn col = table.getColumn(1);
+        SQLColumn copyCol = copy.getColumn(1);
+        
+        copyCol.setRemarks("changed");
+        assertHashMatchesComparison(col, copyCol);
+        copyCol.setRemarks(col.getRemarks());
+        
+        copyCol.setDefaultValue("'none'");
+        assertHashMatchesComparison(col, copyCol);
+        copyCol.setDefaultValue(col.getDefaultValue());
+        
+        UserDefinedSQLType otherType = new UserDefinedSQLType();
+        otherType.setName("other type");
+        copyCol.getUserDefinedSQLType().setUpstreamType(otherType);
+        assertHashMatchesComparison(col, copyCol);
+    }
+    
+    private void assertHashMatchesComparison(SQLColumn col, SQLColumn other) throws Exception {
+        boolean sameProperties = CompareSQL.getComparedProperties(col).equals(
+                CompareSQL.getComparedProperties(other));
+        assertEquals(sameProperties, hasher.getHash(col) == hasher.getHash(other));
+    }
+}
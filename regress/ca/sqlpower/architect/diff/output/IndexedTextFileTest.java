@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.diff.output;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.GenericDDLGenerator;
+import ca.sqlpower.diff.DiffType;
+
+public class IndexedTextFileTest extends TestCase {
+
+    private IndexedTextFile file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = IndexedTextFile.createTempFile("test");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.dispose();
+    }
+
+    public void testReadLinesWhileWriting() throws Exception {
+        file.writeLine("first", null);
+        file.writeText("second\r\nthird\n", DiffType.LEFTONLY);
+        assertEquals(3, file.getLineCount());
+        assertEquals(Arrays.asList("second", "third"), file.getLines(1, 10));
+        file.writeLine("fourth", DiffType.RIGHTONLY);
+        assertEquals(Arrays.asList("third", "fourth"), file.getLines(2, 2));
+    }
+
+    public void testLineTypes() throws Exception {
+        file.writeLine("none", null);
+        file.writeText("left", DiffType.LEFTONLY);
+        file.writeLine("renamed", DiffType.NAME_CHANGED);
+        assertNull(file.getLineType(0));
+        assertEquals(DiffType.LEFTONLY, file.getLineType(1));
+        assertEquals(DiffType.NAME_CHANGED, file.getLineType(2));
+    }
+
+    public void testNonAsciiLines() throws Exception {
+        file.writeLine("caf\u00e9", null);
+        file.writeLine("na\u00efve", null);
+        file.finish();
+        assertEquals(Arrays.asList("caf\u00e9", "na\u00efve"), file.getLines(0, 2));
+        assertEquals(5, file.getMaxLineLength());
+    }
+
+    public void testManyLines() throws Exception {
+        for (int i = 0; i < 5000; i++) {
+            file.writeLine("line " + i, i % 2 == 0 ? DiffType.SAME : null);
+        }
+        assertEquals(5000, file.getLineCount());
+        assertEquals(Arrays.asList("line 4321", "line 4322"), file.getLines(4321, 2));
+        assertEquals(DiffType.SAME, file.getLineType(4322));
+        assertNull(file.getLineType(4321));
+    }
+
+    public void testAppend() throws Exception {
+        IndexedTextFile other = IndexedTextFile.createTempFile("test");
+        try {
+            other.writeLine("a", DiffType.MODIFIED);
+            other.writeLine("b", null);
+            file.writeLine("start", null);
+            file.append(other);
+            assertEquals(Arrays.asList("start", "a", "b"), file.getLines(0, 3));
+            assertEquals(DiffType.MODIFIED, file.getLineType(1));
+        } finally {
+            other.dispose();
+        }
+    }
+
+    public void testDisposeDeletesTemporaryFile() throws Exception {
+        file.writeLine("x", null);
+        file.dispose();
+        assertFalse(file.getFile().exists());
+    }
+
+    /**
+     * A script writer that is disposed without being finished, as when a
+     * comparison fails or is cancelled, should delete its part files as well
+     * as its output.
+     */
+    public void testUnfinishedScriptWriterDisposeDeletesParts() throws Exception {
+        File tempDir = file.getFile().getParentFile();
+        FilenameFilter scriptFiles = new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith("compare-script");
+            }
+        };
+        int before = tempDir.list(scriptFiles).length;
+        ScriptDiffWriter writer = new ScriptDiffWriter(new GenericDDLGenerator(), file);
+        assertTrue(tempDir.list(scriptFiles).length > before);
+        writer.dispose();
+        assertEquals(before, tempDir.list(scriptFiles).length);
+        assertFalse(file.getFile().exists());
+    }
+
+    public void testJSONQuote() throws Exception {
+        assertEquals("null", JSONDiffWriter.quote(null));
+        assertEquals("\"a\\\"b\\\\c\\n\\u0001\"", JSONDiffWriter.quote("a\"b\\c\n\u0001"));
+    }
+}
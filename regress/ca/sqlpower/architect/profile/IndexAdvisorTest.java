@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.profile;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.profile.IndexSuggestion.SuggestionType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLIndex.Column;
+import ca.sqlpower.sqlobject.SQLRelationship.ColumnMapping;
+
+public class IndexAdvisorTest extends TestCase {
+    
+    private SQLTable child;
+    private SQLColumn fkCol;
+    private SQLColumn statusCol;
+    private SQLColumn notesCol;
+    private TableProfileResult childProfile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SQLDatabase db = new SQLDatabase();
+        SQLTable parent = new SQLTable(db, true);
+        parent.setName("parent");
+        db.addChild(parent);
+        SQLColumn parentId = new SQLColumn(parent, "parent_id", Types.INTEGER, 10, 0);
+        parent.addColumn(parentId);
+        parent.addToPK(parentId);
+        
+        child = new SQLTable(db, true);
+        child.setName("child");
+        db.addChild(child);
+        SQLColumn childId = new SQLColumn(child, "child_id", Types.INTEGER, 10, 0);
+        child.addColumn(childId);
+        child.addToPK(childId);
+        statusCol = new SQLColumn(child, "status", Types.CHAR, 1, 0);
+        child.addColumn(statusCol);
+        notesCol = new SQLColumn(child, "notes", Types.VARCHAR, 200, 0);
+        child.addColumn(notesCol);
+        
+        SQLRelationship r = new SQLRelationship();
+        r.setName("parent_child");
+        r.attachRelationship(parent, child, true);
+        fkCol = r.getChildren(ColumnMapping.class).get(0).getFkColumn();
+        
+        childProfile = new TableProfileResult(child, new ProfileSettings());
+        childProfile.setRowCount(1000);
+        addColumnProfile(childId, 1000, 0);
+        addColumnProfile(fkCol, 200, 0);
+        addColumnProfile(statusCol, 3, 0);
+        addColumnProfile(notesCol, 100, 900);
+        childProfile.setCreateEndTime(System.currentTimeMillis());
+    }
+    
+    private void addColumnProfile(SQLColumn col, int distinctCount, int nullCount) {
+        ColumnProfileResult cpr = new ColumnProfileResult(col);
+        cpr.setDistinctValueCount(distinctCount);
+        cpr.setNullCount(nullCount);
+        childProfile.addColumnProfileResult(cpr);
+    }
+    
+    private SQLIndex addIndex(String name, SQLColumn ... columns) throws Exception {
+        SQLIndex index = new SQLIndex();
+        index.setName(name);
+        for (SQLColumn col : columns) {
+            index.addIndexColumn(col);
+        }
+        child.addIndex(index);
+        return index;
+    }
+    
+    private IndexSuggestion findSuggestion(List<IndexSuggestion> suggestions, SuggestionType type) {
+        for (IndexSuggestion suggestion : suggestions) {
+            if (suggestion.getType() == type) return suggestion;
+        }
+        return null;
+    }
+
+    /**
+     * An index should be suggested for FK columns that are not indexed, and
+     * once the suggestion is applied it should not be suggested again.
+     */
+    public void testSuggestsIndexOnUnindexedForeignKey() throws Exception {
+        IndexAdvisor advisor = new IndexAdvisor(Collections.singletonList(childProfile));
+        IndexSuggestion suggestion = findSuggestion(advisor.suggestIndexes(child), SuggestionType.CREATE_INDEX);
+        assertNotNull(suggestion);
+        assertEquals(Collections.singletonList(fkCol), suggestion.getColumns());
+        assertNull(suggestion.getFilterCondition());
+        assertTrue(suggestion.getEstimatedSize() > 0);
+        
+        advisor.applySuggestions(Collections.singletonList(suggestion));
+        
+        boolean found = false;
+        for (SQLIndex index : child.getIndices()) {
+            List<Column> columns = index.getChildren(Column.class);
+            if (columns.size() == 1 && columns.get(0).getColumn() == fkCol) {
+                found = true;
+            }
+        }
+        assertTrue(found);
+        assertNull(findSuggestion(advisor.suggestIndexes(child), SuggestionType.CREATE_INDEX));
+    }
+    
+    public void testSuggestsDropForLowSelectivityIndex() throws Exception {
+        SQLIndex statusIndex = addIndex("status_idx", statusCol);
+        IndexAdvisor advisor = new IndexAdvisor(Collections.singletonList(childProfile));
+        IndexSuggestion suggestion = findSuggestion(advisor.suggestIndexes(child), SuggestionType.DROP_INDEX);
+        assertNotNull(suggestion);
+        assertSame(statusIndex, suggestion.getExistingIndex());
+        
+        advisor.applySuggestions(Collections.singletonList(suggestion));
+        assertFalse(child.getIndices().contains(statusIndex));
+    }
+    
+    public void testSuggestsFilterForMostlyNullColumn() throws Exception {
+        SQLIndex notesIndex = addIndex("notes_idx", notesCol);
+        IndexAdvisor advisor = new IndexAdvisor(Collections.singletonList(childProfile));
+        IndexSuggestion suggestion = findSuggestion(advisor.suggestIndexes(child), SuggestionType.ADD_FILTER);
+        assertNotNull(suggestion);
+        assertSame(notesIndex, suggestion.getExistingIndex());
+        assertEquals("notes IS NOT NULL", suggestion.getFilterCondition());
+        
+        advisor.applySuggestions(Collections.singletonList(suggestion));
+        assertEquals("notes IS NOT NULL", notesIndex.getFilterCondition());
+    }
+    
+    public void testSuggestsCompositeOrderBySelectivity() throws Exception {
+        SQLIndex compositeIndex = addIndex("status_notes_idx", statusCol, notesCol);
+        IndexAdvisor advisor = new IndexAdvisor(Collections.singletonList(childProfile));
+        advisor.setLowSelectivityThreshold(0);
+        IndexSuggestion suggestion = findSuggestion(advisor.suggestIndexes(child), SuggestionType.REORDER_COLUMNS);
+        assertNotNull(suggestion);
+        assertSame(compositeIndex, suggestion.getExistingIndex());
+        assertEquals(notesCol, suggestion.getColumns().get(0));
+        assertEquals(statusCol, suggestion.getColumns().get(1));
+    }
+    
+    /**
+     * A column missing from the profile of its own table but whose source
+     * column was profiled must be paired with the row count of the source
+     * column's profile, not the row count of its own table's profile.
+     */
+    public void testLookupUsesRowCountOfProfileColumnCameFrom() throws Exception {
+        SQLDatabase sourceDb = new SQLDatabase();
+        SQLTable sourceTable = new SQLTable(sourceDb, true);
+        sourceTable.setName("source");
+        sourceDb.addChild(sourceTable);
+        SQLColumn sourceCol = new SQLColumn(sourceTable, "code", Types.VARCHAR, 10, 0);
+        sourceTable.addColumn(sourceCol);
+        TableProfileResult sourceProfile = new TableProfileResult(sourceTable, new ProfileSettings());
+        sourceProfile.setRowCount(10);
+        ColumnProfileResult sourceColProfile = new ColumnProfileResult(sourceCol);
+        sourceColProfile.setDistinctValueCount(5);
+        sourceProfile.addColumnProfileResult(sourceColProfile);
+        sourceProfile.setCreateEndTime(System.currentTimeMillis());
+        
+        SQLColumn copiedCol = new SQLColumn(child, "code", Types.VARCHAR, 10, 0);
+        copiedCol.setSourceColumn(sourceCol);
+        child.addColumn(copiedCol);
+        
+        ColumnProfileLookup lookup = new ColumnProfileLookup(Arrays.asList(childProfile, sourceProfile));
+        assertSame(sourceProfile, lookup.getTableProfile(copiedCol));
+        assertSame(sourceColProfile, lookup.getColumnProfile(copiedCol));
+        assertEquals(10, lookup.getRowCount(copiedCol));
+        assertEquals(0.5, lookup.getSelectivity(copiedCol), 0.0001);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+package ca.sqlpower.architect.profile;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.UserDefinedSQLType;
+
+public class TypeRightSizingAdvisorTest extends TestCase {
+
+    private SQLTable table;
+    private SQLColumn nameCol;
+    private SQLColumn countCol;
+    private SQLColumn amountCol;
+    private SQLColumn codeCol;
+    private TableProfileResult tableProfile;
+    private List<UserDefinedSQLType> sqlTypes;
+    private TypeRightSizingAdvisor advisor;
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SQLDatabase db = new SQLDatabase();
+        table = new SQLTable(db, true);
+        table.setName("orders");
+        db.addChild(table);
+        nameCol = new SQLColumn(table, "name", Types.VARCHAR, 255, 0);
+        table.addColumn(nameCol);
+        countCol = new SQLColumn(table, "item_count", Types.BIGINT, 19, 0);
+        table.addColumn(countCol);
+        amountCol = new SQLColumn(table, "amount", Types.DECIMAL, 30, 2);
+        table.addColumn(amountCol);
+        codeCol = new SQLColumn(table, "code", Types.CHAR, 2, 0);
+        table.addColumn(codeCol);
+        
+        tableProfile = new TableProfileResult(table, new ProfileSettings());
+        tableProfile.setRowCount(1000);
+        addColumnProfile(nameCol, 20, null, null);
+        addColumnProfile(countCol, 0, Long.valueOf(-5), Long.valueOf(400));
+        addColumnProfile(amountCol, 0, Double.valueOf(0.5), Double.valueOf(9999.99));
+        addColumnProfile(codeCol, 2, null, null);
+        tableProfile.setCreateEndTime(System.currentTimeMillis());
+        
+        sqlTypes = new ArrayList<UserDefinedSQLType>();
+        sqlTypes.add(createType("SMALLINT", Types.SMALLINT));
+        sqlTypes.add(createType("INTEGER", Types.INTEGER));
+        sqlTypes.add(createType("BIGINT", Types.BIGINT));
+        advisor = new TypeRightSizingAdvisor(Collections.singletonList(tableProfile), sqlTypes);
+    }
+    
+    private void addColumnProfile(SQLColumn col, int maxLength, Object minValue, Object maxValue) {
+        ColumnProfileResult cpr = new ColumnProfileResult(col);
+        cpr.setMaxLength(maxLength);
+        cpr.setMinValue(minValue);
+        cpr.setMaxValue(maxValue);
+        cpr.setNullCount(0);
+        tableProfile.addColumnProfileResult(cpr);
+    }
+    
+    private UserDefinedSQLType createType(String name, int jdbcType) {
+        UserDefinedSQLType type = new UserDefinedSQLType();
+        type.setName(name);
+        type.setType(jdbcType);
+        return type;
+    }
+    
+    private TypeSizeSuggestion findSuggestion(List<TypeSizeSuggestion> suggestions, SQLColumn col) {
+        for (TypeSizeSuggestion suggestion : suggestions) {
+            if (suggestion.getColumn() == col) return suggestion;
+        }
+        return null;
+    }
+    
+    public void testShortensCharacterColumnWithHeadroom() throws Exception {
+        TypeSizeSuggestion suggestion = advisor.suggestType(nameCol);
+        assertNotNull(suggestion);
+        assertNull(suggestion.getSuggestedType());
+        assertEquals(Types.VARCHAR, suggestion.getSuggestedJdbcType());
+        assertEquals(30, suggestion.getSuggestedPrecision());
+        assertTrue(suggestion.getSavedBytesPerRow() > 0);
+        assertEquals(suggestion.getSavedBytesPerRow() * 1000L, suggestion.getSavedBytes());
+    }
+    
+    public void testNarrowsIntegerType() throws Exception {
+        TypeSizeSuggestion suggestion = advisor.suggestType(countCol);
+        assertNotNull(suggestion);
+        assertSame(sqlTypes.get(0), suggestion.getSuggestedType());
+        assertEquals(Types.SMALLINT, suggestion.getSuggestedJdbcType());
+    }
+    
+    public void testReducesNumericPrecision() throws Exception {
+        TypeSizeSuggestion suggestion = advisor.suggestType(amountCol);
+        assertNotNull(suggestion);
+        assertEquals(7, suggestion.getSuggestedPrecision());
+        assertEquals(2, suggestion.getSuggestedScale());
+    }
+    
+    /**
+     * Columns that are already as narrow as their data with headroom should
+     * not be changed.
+     */
+    public void testNoSuggestionForNarrowColumn() throws Exception {
+        assertNull(findSuggestion(advisor.suggestTypes(Collections.singletonList(table)), codeCol));
+    }
+    
+    public void testHeadroomMustBeAtLeastOne() throws Exception {
+        try {
+            advisor.setHeadroom(0.5);
+            fail("A headroom factor below 1 would truncate profiled data");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+    
+    public void testApplySuggestions() throws Exception {
+        List<TypeSizeSuggestion> suggestions = advisor.suggestTypes(Collections.singletonList(table));
+        assertEquals(3, suggestions.size());
+        long expectedSavings = 0;
+        for (TypeSizeSuggestion suggestion : suggestions) {
+            expectedSavings += suggestion.getSavedBytes();
+        }
+        assertEquals(Long.valueOf(expectedSavings), advisor.estimateTableSavings(suggestions).get(table));
+        
+        advisor.applySuggestions(suggestions);
+        assertEquals(30, nameCol.getPrecision());
+        assertEquals(Types.SMALLINT, countCol.getType());
+        assertEquals(7, amountCol.getPrecision());
+        assertTrue(advisor.suggestTypes(Collections.singletonList(table)).isEmpty());
+    }
+}
@@ -20,7 +20,10 @@ package ca.sqlpower.architect.swingui;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyDescriptor;
 import java.sql.Connection;
 import java.sql.Statement;
@@ -30,6 +33,10 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
 
 import junit.framework.TestCase;
 
@@ -37,11 +44,14 @@ import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.sql.DataSourceCollection;
 import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObject;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLRelationship;
 import ca.sqlpower.sqlobject.SQLTable;
@@ -361,6 +371,11 @@ public class TestPlayPen extends TestCase {
 	        // it might mess up printing?!?!?
 	        copyIgnoreProperties.add("zoom");
 	        
+	        // copies are for printing, which always paints in full detail
+	        copyIgnoreProperties.add("detailLevel");
+	        copyIgnoreProperties.add("plainBoxZoom");
+	        copyIgnoreProperties.add("titledBoxZoom");
+	        
 	        // individual lists (e.g. tables) checked instead
 	        copyIgnoreProperties.add("components");
 	        
@@ -542,6 +557,92 @@ public class TestPlayPen extends TestCase {
         assertTrue(table.getColumnByName("newcol1") != copy.getColumnByName("NewCol1").getSourceColumn());
         assertTrue(table.getColumnByName("newcol2") != copy.getColumnByName("NewCol2").getSourceColumn());
     }
+
+    /**
+     * Returns a database from the regression data source with the given
+     * number of tables in it, which are populated so importing them does not
+     * connect to the database.
+     */
+    private SQLDatabase createSourceDatabase(int tableCount) throws SQLObjectException {
+        ArchitectSwingSessionContext context = session.getContext();
+        context.setPlDotIniPath("pl.regression.ini");
+        SQLDatabase sourceDB = new SQLDatabase(context.getPlDotIni().getDataSource("regression_test"));
+        sourceDB.setPopulated(true);
+        session.getRootObject().addChild(sourceDB);
+        for (int i = 0; i < tableCount; i++) {
+            SQLTable table = new SQLTable(sourceDB, "source_" + i, "", "TABLE", true);
+            table.addColumn(new SQLColumn(table, "key", Types.INTEGER, 10, 0));
+            sourceDB.addChild(table);
+        }
+        return sourceDB;
+    }
+
+    /**
+     * Imports the given database's tables in batches of two, so each batch
+     * is its own compound edit while the Swing thread is free between them,
+     * and checks the import is still one step to undo.
+     */
+    public void testImportInBatchesUndoesInOneStep() throws Exception {
+        SQLDatabase sourceDB = createSourceDatabase(5);
+        
+        PlayPen.AddObjectsTask task = pp.new AddObjectsTask(new ArrayList<SQLObject>(sourceDB.getChildren()),
+                new Point(10, 10), new ProgressMonitor(null, "", "", 0, 100), session, TransferStyles.COPY);
+        task.setBatchSize(2);
+        task.run();
+        flushSwingThread();
+        
+        assertEquals(5, ppdb.getTables().size());
+        assertEquals(5, pp.getContentPane().getChildren(TablePane.class).size());
+        assertEquals("Drag to Playpen", session.getUndoManager().getEditToBeUndone().getPresentationName());
+        
+        session.getUndoManager().undo();
+        assertEquals(0, ppdb.getTables().size());
+        assertEquals(0, pp.getContentPane().getChildren(TablePane.class).size());
+        
+        session.getUndoManager().redo();
+        assertEquals(5, ppdb.getTables().size());
+    }
+
+    /**
+     * Cancels an import part way through its first batch and checks no more
+     * tables are added, and the ones that were are undone in one step.
+     */
+    public void testCancelImportStopsBatches() throws Exception {
+        SQLDatabase sourceDB = createSourceDatabase(5);
+        
+        final PlayPen.AddObjectsTask task = pp.new AddObjectsTask(new ArrayList<SQLObject>(sourceDB.getChildren()),
+                new Point(10, 10), new ProgressMonitor(null, "", "", 0, 100), session, TransferStyles.COPY);
+        task.setBatchSize(3);
+        ppdb.addSPListener(new AbstractSPListener() {
+            @Override
+            public void childAdded(SPChildEvent e) {
+                if (ppdb.getChildrenWithoutPopulating(SQLTable.class).size() == 2) {
+                    task.setCancelled(true);
+                }
+            }
+        });
+        task.run();
+        flushSwingThread();
+        
+        assertEquals(2, ppdb.getTables().size());
+        assertEquals(2, pp.getContentPane().getChildren(TablePane.class).size());
+        
+        session.getUndoManager().undo();
+        assertEquals(0, ppdb.getTables().size());
+        assertEquals(0, pp.getContentPane().getChildren(TablePane.class).size());
+    }
+
+    /**
+     * Waits for everything the import queued on the Swing thread, such as
+     * its cleanup, to run.
+     */
+    private void flushSwingThread() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                // nothing to do
+            }
+        });
+    }
 	
     /**
      * Returns a new value that is not equal to oldVal. The
@@ -638,4 +739,141 @@ public class TestPlayPen extends TestCase {
                     + property.getPropertyType().getName() + ") in isPropertyInstanceMutable()");
         }
     }
-}
\ No newline at end of file
+
+	/**
+	 * Components are found where they are after they move, and not where they
+	 * used to be.
+	 */
+	public void testComponentAtFollowsMovedTable() throws Exception {
+		SQLTable t = new SQLTable(ppdb, "moving", "", "TABLE", true);
+		ppdb.addChild(t);
+		TablePane tp = new TablePane(t, pp.getContentPane());
+		pp.addTablePane(tp, new Point(10, 10));
+		Point inside = new Point(tp.getX() + 2, tp.getY() + 2);
+		assertSame(tp, pp.getContentPane().getComponentAt(inside));
+
+		tp.setLocation(2000, 3000);
+		assertNull(pp.getContentPane().getComponentAt(inside));
+		assertSame(tp, pp.getContentPane().getComponentAt(new Point(2002, 3002)));
+	}
+
+	public void testComponentsIntersectingAreInChildOrder() throws Exception {
+		List<TablePane> panes = new ArrayList<TablePane>();
+		for (int i = 0; i < 5; i++) {
+			SQLTable t = new SQLTable(ppdb, "table_" + i, "", "TABLE", true);
+			ppdb.addChild(t);
+			TablePane tp = new TablePane(t, pp.getContentPane());
+			pp.addTablePane(tp, new Point(i * 400, 0));
+			panes.add(tp);
+		}
+		Rectangle region = new Rectangle(0, 0, 900, 10);
+		assertEquals(Arrays.asList(panes.get(0), panes.get(1), panes.get(2)),
+				pp.getContentPane().getComponentsIntersecting(region));
+
+		pp.getContentPane().removeChild(panes.get(1));
+		assertEquals(Arrays.asList(panes.get(0), panes.get(2)),
+				pp.getContentPane().getComponentsIntersecting(region));
+	}
+
+	public void testFindTablePaneByNameFollowsRename() throws Exception {
+		SQLTable t = new SQLTable(ppdb, "Old_Name", "", "TABLE", true);
+		ppdb.addChild(t);
+		TablePane tp = new TablePane(t, pp.getContentPane());
+		pp.addTablePane(tp, new Point(10, 10));
+		assertSame(tp, pp.findTablePaneByName("old_name"));
+
+		t.setName("New_Name");
+		assertNull(pp.findTablePaneByName("old_name"));
+		assertSame(tp, pp.findTablePaneByName("NEW_NAME"));
+
+		pp.getContentPane().removeChild(tp);
+		assertNull(pp.findTablePaneByName("new_name"));
+		assertNull(pp.findTablePane(t));
+	}
+
+	public void testDetailLevelFollowsZoom() throws Exception {
+		pp.setTitledBoxZoom(0.5);
+		pp.setPlainBoxZoom(0.2);
+		pp.setZoom(1.0);
+		assertEquals(PlayPen.DetailLevel.FULL, pp.getDetailLevel());
+		pp.setZoom(0.3);
+		assertEquals(PlayPen.DetailLevel.TITLED_BOX, pp.getDetailLevel());
+		pp.setZoom(0.1);
+		assertEquals(PlayPen.DetailLevel.PLAIN_BOX, pp.getDetailLevel());
+	}
+
+	public void testRepaintInvalidatesOnlyTouchedTiles() throws Exception {
+		PlayPenTileCache cache = new PlayPenTileCache(pp);
+		Graphics2D g2 = new BufferedImage(512, 512, BufferedImage.TYPE_INT_RGB).createGraphics();
+		cache.paint(g2, new Rectangle(0, 0, 512, 512));
+		assertEquals(4, cache.size());
+
+		cache.invalidate(new Rectangle(300, 300, 10, 10));
+		assertEquals(3, cache.size());
+		cache.paint(g2, new Rectangle(0, 0, 512, 512));
+		assertEquals(4, cache.size());
+
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+		g2.dispose();
+	}
+
+	public void testPlayPenRepaintInvalidatesItsTiles() throws Exception {
+		final PlayPenTileCache cache = pp.getTileCache();
+		if (cache == null) return; // painting without the cache
+		final int[] sizes = new int[2];
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+				Graphics2D g2 = new BufferedImage(512, 512, BufferedImage.TYPE_INT_RGB).createGraphics();
+				cache.paint(g2, new Rectangle(0, 0, 512, 512));
+				g2.dispose();
+				sizes[0] = cache.size();
+				pp.repaint(new Rectangle(300, 300, 10, 10));
+				sizes[1] = cache.size();
+			}
+		});
+		assertEquals(sizes[0] - 1, sizes[1]);
+	}
+
+	/**
+	 * A repaint asked for off the Event Dispatch Thread must leave the tile
+	 * cache alone until the Event Dispatch Thread gets to it, and then
+	 * invalidate the tiles there.
+	 */
+	public void testRepaintOffSwingThreadInvalidatesTilesOnSwingThread() throws Exception {
+		final PlayPenTileCache cache = pp.getTileCache();
+		if (cache == null) return; // painting without the cache
+		final int[] size = new int[1];
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+				Graphics2D g2 = new BufferedImage(512, 512, BufferedImage.TYPE_INT_RGB).createGraphics();
+				cache.paint(g2, new Rectangle(0, 0, 512, 512));
+				g2.dispose();
+				size[0] = cache.size();
+			}
+		});
+		
+		// holds up the Swing thread so the repaint is still queued behind it
+		final CountDownLatch release = new CountDownLatch(1);
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		pp.repaint(new Rectangle(300, 300, 10, 10));
+		assertEquals(size[0], cache.size());
+		release.countDown();
+		
+		final int[] sizeAfterRepaint = new int[1];
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+				sizeAfterRepaint[0] = cache.size();
+			}
+		});
+		assertEquals(size[0] - 1, sizeAfterRepaint[0]);
+	}
+}
@@ -20,12 +20,17 @@ package ca.sqlpower.architect.swingui;
 
 import java.awt.Point;
 import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.Types;
 import java.util.ArrayList;
@@ -35,6 +40,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.swing.ProgressMonitor;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
@@ -44,6 +50,8 @@ import org.apache.tools.ant.filters.StringInputStream;
 import ca.sqlpower.ArchitectTestCase;
 import ca.sqlpower.architect.ArchitectSession;
 import ca.sqlpower.architect.ArchitectSessionContext;
+import ca.sqlpower.architect.DeferredLoadable;
+import ca.sqlpower.architect.ProjectContainer;
 import ca.sqlpower.architect.ProjectLoader;
 import ca.sqlpower.architect.TestUtils;
 import ca.sqlpower.architect.TestingArchitectSessionContext;
@@ -381,7 +389,313 @@ public class TestSwingUIProject extends ArchitectTestCase {
 		
         assertEquals(byteArrayOutputStream.toString(), byteArrayOutputStream2.toString());
 	}
-    
+
+    /**
+     * Saves the same project twice and checks the sections written at the
+     * same time come out the same way both times, references included.
+     */
+    public void testSaveIsRepeatable() throws Exception {
+        testLoad();
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        project.save(first, ENCODING);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        project.save(second, ENCODING);
+        assertEquals(first.toString(ENCODING), second.toString(ENCODING));
+        assertTrue(first.toString(ENCODING).indexOf("<reference ref-id=") >= 0);
+    }
+
+    /**
+     * Loads the same saved project with the streaming reader and with the
+     * Digester and checks that saving both gives the same file.
+     */
+    public void testStreamingLoadMatchesDigesterLoad() throws Exception {
+        project.setStreamingLoad(false);
+        testLoad();
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        project.save(saved, ENCODING);
+
+        ArchitectSwingSessionContext context = session.getContext();
+        SwingUIProjectLoader digesterLoader = new SwingUIProjectLoader(context.createSession());
+        digesterLoader.setStreamingLoad(false);
+        digesterLoader.load(new ByteArrayInputStream(saved.toByteArray()), plIni);
+        ByteArrayOutputStream digesterSaved = new ByteArrayOutputStream();
+        digesterLoader.save(digesterSaved, ENCODING);
+
+        SwingUIProjectLoader streamingLoader = new SwingUIProjectLoader(context.createSession());
+        assertTrue(streamingLoader.isStreamingLoad());
+        streamingLoader.load(new ByteArrayInputStream(saved.toByteArray()), plIni);
+        ByteArrayOutputStream streamingSaved = new ByteArrayOutputStream();
+        streamingLoader.save(streamingSaved, ENCODING);
+
+        assertEquals(digesterSaved.toString(ENCODING), streamingSaved.toString(ENCODING));
+    }
+
+    /**
+     * The passes that run after the project is read, such as assigning the
+     * upstream types of the play pen's columns, should run for the streaming
+     * reader as they do for the Digester.
+     */
+    public void testStreamingLoadAssignsUpstreamTypes() throws Exception {
+        ArchitectSwingSessionContext context = session.getContext();
+        ArchitectSwingSession digesterSession = context.createSession();
+        SwingUIProjectLoader digesterLoader = new SwingUIProjectLoader(digesterSession);
+        digesterLoader.setStreamingLoad(false);
+        digesterLoader.load(new ByteArrayInputStream(testData.getBytes()), plIni);
+
+        ArchitectSwingSession streamingSession = context.createSession();
+        SwingUIProjectLoader streamingLoader = new SwingUIProjectLoader(streamingSession);
+        streamingLoader.load(new ByteArrayInputStream(testData.getBytes()), plIni);
+
+        int columns = 0;
+        for (SQLTable digesterTable : digesterSession.getTargetDatabase().getTables()) {
+            SQLTable streamingTable = streamingSession.getTargetDatabase().getTableByName(digesterTable.getName());
+            for (SQLColumn digesterColumn : digesterTable.getColumns()) {
+                SQLColumn streamingColumn = streamingTable.getColumnByName(digesterColumn.getName());
+                assertNotNull(streamingColumn.getUserDefinedSQLType().getUpstreamType());
+                assertSame(digesterColumn.getUserDefinedSQLType().getUpstreamType(),
+                        streamingColumn.getUserDefinedSQLType().getUpstreamType());
+                columns++;
+            }
+        }
+        assertTrue(columns > 0);
+    }
+
+    public void testDeferredSourceLoadMatchesEagerLoad() throws Exception {
+        testLoad();
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        project.save(saved, ENCODING);
+
+        ArchitectSwingSessionContext context = session.getContext();
+        SwingUIProjectLoader eagerLoader = new SwingUIProjectLoader(context.createSession());
+        eagerLoader.setDeferredSourceLoad(false);
+        eagerLoader.load(new ByteArrayInputStream(saved.toByteArray()), plIni);
+        ByteArrayOutputStream eagerSaved = new ByteArrayOutputStream();
+        eagerLoader.save(eagerSaved, ENCODING);
+
+        ArchitectSwingSession deferredSession = context.createSession();
+        SwingUIProjectLoader deferredLoader = new SwingUIProjectLoader(deferredSession);
+        assertTrue(deferredLoader.isDeferredSourceLoad());
+        deferredLoader.load(new ByteArrayInputStream(saved.toByteArray()), plIni);
+        boolean deferred = false;
+        for (SQLDatabase db : deferredSession.getRootObject().getChildren(SQLDatabase.class)) {
+            if (db instanceof DeferredLoadable && !((DeferredLoadable) db).isLoaded()) {
+                deferred = true;
+            }
+        }
+        assertTrue("No source database was left to read later", deferred);
+        ByteArrayOutputStream deferredSaved = new ByteArrayOutputStream();
+        deferredLoader.save(deferredSaved, ENCODING);
+        deferred = false;
+        for (SQLDatabase db : deferredSession.getRootObject().getChildren(SQLDatabase.class)) {
+            if (db instanceof DeferredLoadable && !((DeferredLoadable) db).isLoaded()) {
+                deferred = true;
+            }
+        }
+        assertTrue("Saving read the source databases", deferred);
+
+        assertEquals(eagerSaved.toString(ENCODING), deferredSaved.toString(ENCODING));
+    }
+
+    /**
+     * Saves the project as a compressed container and checks that it loads
+     * back to the same project as the XML save.
+     */
+    public void testCompressedSaveLoadsLikeXML() throws Exception {
+        testLoad();
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        project.save(xml, ENCODING);
+
+        File file = File.createTempFile("test", ".architect");
+        if (deleteOnExit) {
+            file.deleteOnExit();
+        }
+        project.setCompressedSave(true);
+        project.clearFileVersion();
+        project.setFile(file);
+        project.save((ProgressMonitor) null);
+        assertTrue(ProjectContainer.isContainer(file));
+        assertTrue(file.length() < xml.size());
+
+        SwingUIProjectLoader p2 = new SwingUIProjectLoader(context.createSession());
+        p2.load(new BufferedInputStream(new FileInputStream(file)), plIni);
+        ByteArrayOutputStream reloaded = new ByteArrayOutputStream();
+        p2.save(reloaded, ENCODING);
+        assertEquals(xml.toString(ENCODING), reloaded.toString(ENCODING));
+    }
+
+    /**
+     * Saves a change with a journal and checks that the project file is left
+     * alone and that opening it replays the change.
+     */
+    public void testJournaledSaveIsReplayedOnOpen() throws Exception {
+        testLoad();
+        File file = File.createTempFile("test", ".architect");
+        File journalFile = ProjectJournal.getJournalFile(file);
+        if (deleteOnExit) {
+            file.deleteOnExit();
+            journalFile.deleteOnExit();
+        }
+        project.setJournaledSave(true);
+        project.clearFileVersion();
+        project.setFile(file);
+        project.save((ProgressMonitor) null);
+        long snapshotLength = file.length();
+
+        SQLTable table = session.getTargetDatabase().getChildren(SQLTable.class).get(0);
+        table.setName("journaled_table");
+        project.save((ProgressMonitor) null);
+        assertFalse(project.isModified());
+        assertEquals(snapshotLength, file.length());
+        assertTrue(journalFile.length() > 0);
+
+        ArchitectSwingSession session2 = context.createSession();
+        SwingUIProjectLoader p2 = session2.getProjectLoader();
+        p2.load(new BufferedInputStream(new FileInputStream(file)), plIni);
+        assertNull(session2.getTargetDatabase().getTableByName("journaled_table"));
+        p2.setFile(file);
+        p2.replayJournal();
+        assertNotNull(session2.getTargetDatabase().getTableByName("journaled_table"));
+    }
+
+    /**
+     * Changes the project name along with a journaled change and checks that
+     * the save writes the whole project, as the journal cannot record the
+     * name.
+     */
+    public void testChangedSettingsForceSnapshot() throws Exception {
+        testLoad();
+        File file = File.createTempFile("test", ".architect");
+        File journalFile = ProjectJournal.getJournalFile(file);
+        if (deleteOnExit) {
+            file.deleteOnExit();
+            journalFile.deleteOnExit();
+        }
+        project.setJournaledSave(true);
+        project.clearFileVersion();
+        project.setFile(file);
+        project.save((ProgressMonitor) null);
+        long emptyJournalLength = journalFile.length();
+
+        SQLTable table = session.getTargetDatabase().getChildren(SQLTable.class).get(0);
+        table.setName("journaled_table");
+        session.setName("renamed project");
+        project.save((ProgressMonitor) null);
+        assertEquals(emptyJournalLength, journalFile.length());
+
+        ArchitectSwingSession session2 = context.createSession();
+        SwingUIProjectLoader p2 = session2.getProjectLoader();
+        p2.load(new BufferedInputStream(new FileInputStream(file)), plIni);
+        assertEquals("renamed project", session2.getName());
+        assertNotNull(session2.getTargetDatabase().getTableByName("journaled_table"));
+    }
+
+    /**
+     * Damages the journal after its first record and checks that replaying
+     * stops there and leaves the project modified, so the next save writes a
+     * journal without the damaged records.
+     */
+    public void testReplayStopsAtCutOffRecord() throws Exception {
+        testLoad();
+        File file = File.createTempFile("test", ".architect");
+        File journalFile = ProjectJournal.getJournalFile(file);
+        if (deleteOnExit) {
+            file.deleteOnExit();
+            journalFile.deleteOnExit();
+        }
+        project.setJournaledSave(true);
+        project.clearFileVersion();
+        project.setFile(file);
+        project.save((ProgressMonitor) null);
+
+        SQLTable table = session.getTargetDatabase().getChildren(SQLTable.class).get(0);
+        table.setName("journaled_table");
+        project.save((ProgressMonitor) null);
+        table.setName("after_the_cut");
+        project.save((ProgressMonitor) null);
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), ENCODING));
+        String generation = in.readLine();
+        String first = in.readLine();
+        String second = in.readLine();
+        in.close();
+        Writer out = new OutputStreamWriter(new FileOutputStream(journalFile), ENCODING);
+        out.write(generation + "\n" + first + "\n" + "[{\"method\":" + "\n" + second + "\n");
+        out.close();
+
+        ArchitectSwingSession session2 = context.createSession();
+        SwingUIProjectLoader p2 = session2.getProjectLoader();
+        p2.load(new BufferedInputStream(new FileInputStream(file)), plIni);
+        p2.setFile(file);
+        p2.replayJournal();
+        assertNotNull(session2.getTargetDatabase().getTableByName("journaled_table"));
+        assertNull(session2.getTargetDatabase().getTableByName("after_the_cut"));
+        assertTrue(p2.isModified());
+    }
+
+    /**
+     * Autosaves a change and checks that the project is still modified, that
+     * the autosave file holds the change, and that saving deletes it.
+     */
+    public void testAutosaveLeavesProjectModified() throws Exception {
+        testLoad();
+        File file = File.createTempFile("test", ".architect");
+        File autosaveFile = SwingUIProjectLoader.getAutosaveFile(file);
+        if (deleteOnExit) {
+            file.deleteOnExit();
+            autosaveFile.deleteOnExit();
+        }
+        project.clearFileVersion();
+        project.setFile(file);
+        project.save((ProgressMonitor) null);
+        long savedLength = file.length();
+
+        SQLTable table = session.getTargetDatabase().getChildren(SQLTable.class).get(0);
+        table.setName("autosaved_table");
+        project.autosave();
+        assertTrue(project.isModified());
+        assertEquals(savedLength, file.length());
+
+        ArchitectSwingSession session2 = context.createSession();
+        SwingUIProjectLoader p2 = session2.getProjectLoader();
+        p2.load(new BufferedInputStream(new FileInputStream(autosaveFile)), plIni);
+        assertNotNull(session2.getTargetDatabase().getTableByName("autosaved_table"));
+
+        project.save((ProgressMonitor) null);
+        assertFalse(project.isModified());
+        assertFalse(autosaveFile.exists());
+    }
+
+    /**
+     * Checks that opening a project offers to recover an autosave file that
+     * is newer than the project file, and stops offering it once the project
+     * is saved.
+     */
+    public void testRecoverAutosaveOnlyWhenNewer() throws Exception {
+        testLoad();
+        File file = File.createTempFile("test", ".architect");
+        File autosaveFile = SwingUIProjectLoader.getAutosaveFile(file);
+        if (deleteOnExit) {
+            file.deleteOnExit();
+            autosaveFile.deleteOnExit();
+        }
+        project.clearFileVersion();
+        project.setFile(file);
+        project.save((ProgressMonitor) null);
+        assertFalse(project.promptToRecoverAutosave(file));
+
+        SQLTable table = session.getTargetDatabase().getChildren(SQLTable.class).get(0);
+        table.setName("autosaved_table");
+        project.autosave();
+        file.setLastModified(autosaveFile.lastModified() - 60000);
+
+        // the testing session's prompter answers with the default response
+        ArchitectSwingSession session2 = context.createSession();
+        assertTrue(session2.getProjectLoader().promptToRecoverAutosave(file));
+
+        project.save((ProgressMonitor) null);
+        assertFalse(session2.getProjectLoader().promptToRecoverAutosave(file));
+    }
+
     /*
      * Test method for 'ca.sqlpower.architect.swingui.SwingUIProject.save(PrintWriter)'
      * Create two temp files, save our testData project to the first, load that
@@ -42,6 +42,7 @@ import ca.sqlpower.architect.ProjectSettings.ColumnVisibility;
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.GenericDDLGenerator;
 import ca.sqlpower.architect.ddl.LiquibaseSettings;
+import ca.sqlpower.architect.diff.SQLObjectHasher;
 import ca.sqlpower.architect.enterprise.ArchitectClientSideSession;
 import ca.sqlpower.architect.etl.kettle.KettleJob;
 import ca.sqlpower.architect.olap.OLAPRootObject;
@@ -81,6 +82,7 @@ public class TestingArchitectSwingSession implements ArchitectSwingSession {
     private ArchitectUndoManager undoManager;
     private DBTree sourceDatabases;
     private CompareDMSettings compareDMSettings;
+    private SQLObjectHasher modelHasher;
 	private LiquibaseSettings liquibaseSettings;
     private DDLGenerator ddlGenerator;
     private KettleJob kettleJob;
@@ -209,6 +211,14 @@ public class TestingArchitectSwingSession implements ArchitectSwingSession {
         return compareDMSettings;
     }
 
+    public synchronized SQLObjectHasher getModelHasher() {
+        if (modelHasher == null) {
+            modelHasher = new SQLObjectHasher();
+            modelHasher.watch(getTargetDatabase());
+        }
+        return modelHasher;
+    }
+
     public DDLGenerator getDDLGenerator() {
         return ddlGenerator;
     }
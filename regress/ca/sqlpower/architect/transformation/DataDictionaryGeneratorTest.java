@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.transformation;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
+import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.architect.swingui.TestingArchitectSwingSessionContext;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class DataDictionaryGeneratorTest extends TestCase {
+
+    private static final String testData =
+        "<?xml version='1.0'?>" +
+        "<architect-project version='0.1'>" +
+        " <project-name>TestDataDictionary</project-name>" +
+        " <project-data-sources>" +
+        "  <data-source id='DS0'>" +
+        "   <property key='Logical' value='Not Configured' />" +
+        "  </data-source>" +
+        " </project-data-sources>" +
+        " <source-databases>" +
+        " </source-databases>" +
+        " <target-database dbcs-ref='DS0'>" +
+        "  <table id='TAB0' populated='true' primaryKeyName='id' remarks='' name='Customers' >" +
+        "   <folder id='FOL1' populated='true' name='Columns' type='1' >" +
+        "    <column id='COL2' populated='true' autoIncrement='false' name='id' defaultValue='' nullable='0' precision='10' primaryKeySeq='0' referenceCount='1' remarks='' scale='0' type='12' />" +
+        "    <column id='COL3' populated='true' autoIncrement='false' name='name' defaultValue='' nullable='0' precision='10' referenceCount='1' remarks='' scale='0' type='12' />" +
+        "   </folder>" +
+        "   <folder id='FOL4' populated='true' name='Exported Keys' type='3' >" +
+        "   </folder>" +
+        "   <folder id='FOL5' populated='true' name='Imported Keys' type='2' >" +
+        "   </folder>" +
+        "   <folder id='FOL13' populated='true' name='Indices' type='4' >" +
+        "   </folder>" +
+        "  </table>" +
+        "  <table id='TAB6' populated='true' primaryKeyName='id' remarks='' name='Orders' >" +
+        "   <folder id='FOL7' populated='true' name='Columns' type='1' >" +
+        "    <column id='COL8' populated='true' autoIncrement='false' name='id' defaultValue='' nullable='0' precision='10' primaryKeySeq='0' referenceCount='1' scale='0' type='12' />" +
+        "    <column id='COL9' populated='true' autoIncrement='false' name='customer_id' defaultValue='' nullable='0' precision='10' referenceCount='1' remarks='' scale='0' type='4' />" +
+        "   </folder>" +
+        "   <folder id='FOL10' populated='true' name='Exported Keys' type='3' >" +
+        "   </folder>" +
+        "   <folder id='FOL11' populated='true' name='Imported Keys' type='2' >" +
+        "   </folder>" +
+        "   <folder id='FOL14' populated='true' name='Indices' type='4' >" +
+        "   </folder>" +
+        "  </table>" +
+        " </target-database>" +
+        " <play-pen>" +
+        "  <table-pane table-ref='TAB0' x='85' y='101' />" +
+        "  <table-pane table-ref='TAB6' x='196' y='38' />" +
+        " </play-pen>" +
+        "</architect-project>";
+
+    private ArchitectSwingSession session;
+
+    private File outputDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        session = new TestingArchitectSwingSessionContext().createSession();
+        PlDotIni plIni = new PlDotIni();
+        plIni.read(new File("pl.regression.ini"));
+        session.getProjectLoader().load(new ByteArrayInputStream(testData.getBytes()), plIni);
+
+        outputDir = new File(System.getProperty("java.io.tmpdir"), "test-data-dictionary");
+        FileUtils.deleteDirectory(outputDir);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(outputDir);
+    }
+
+    public void testGenerate() throws Exception {
+        List<File> written = new DataDictionaryGenerator(session).generate(outputDir);
+
+        assertTrue(written.contains(new File(outputDir, DataDictionaryGenerator.INDEX_PAGE)));
+        assertTrue(written.contains(new File(outputDir, DataDictionaryGenerator.SEARCH_INDEX)));
+        assertTrue(written.contains(new File(outputDir, "table-Customers.html")));
+        assertTrue(written.contains(new File(outputDir, "table-Orders.html")));
+
+        String orders = FileUtils.readFileToString(new File(outputDir, "table-Orders.html"), "UTF-8");
+        assertTrue(orders.contains("customer_id"));
+        String index = FileUtils.readFileToString(new File(outputDir, DataDictionaryGenerator.INDEX_PAGE), "UTF-8");
+        assertTrue(index.contains("<a href=\"table-Orders.html\">Orders</a>"));
+        String searchIndex = FileUtils.readFileToString(new File(outputDir, DataDictionaryGenerator.SEARCH_INDEX), "UTF-8");
+        assertTrue(searchIndex.contains("\"cus\":[0,1]"));
+    }
+
+    /**
+     * Generating the dictionary again only writes the pages that show
+     * something that changed.
+     */
+    public void testOnlyChangedPagesAreWritten() throws Exception {
+        DataDictionaryGenerator generator = new DataDictionaryGenerator(session);
+        generator.generate(outputDir);
+        assertTrue(generator.generate(outputDir).isEmpty());
+
+        SQLTable orders = session.getTargetDatabase().getTableByName("Orders");
+        orders.setRemarks("Placed by customers");
+        List<File> written = generator.generate(outputDir);
+        assertEquals(2, written.size());
+        assertTrue(written.contains(new File(outputDir, DataDictionaryGenerator.INDEX_PAGE)));
+        assertTrue(written.contains(new File(outputDir, "table-Orders.html")));
+    }
+
+    /**
+     * Table pages whose part of the model has not changed are not rendered
+     * again; the index, search index and script still are.
+     */
+    public void testUnchangedTablePagesAreNotRendered() throws Exception {
+        DataDictionaryGenerator generator = new DataDictionaryGenerator(session);
+        generator.generate(outputDir);
+        assertEquals(5, generator.getRenderedPageCount());
+
+        generator.generate(outputDir);
+        assertEquals(3, generator.getRenderedPageCount());
+
+        SQLTable orders = session.getTargetDatabase().getTableByName("Orders");
+        orders.getColumn(1).setRemarks("The customer who placed the order");
+        List<File> written = generator.generate(outputDir);
+        assertEquals(4, generator.getRenderedPageCount());
+        assertEquals(1, written.size());
+        String page = FileUtils.readFileToString(new File(outputDir, "table-Orders.html"), "UTF-8");
+        assertTrue(page.contains("The customer who placed the order"));
+    }
+
+    public void testPagesOfRemovedTablesAreDeleted() throws Exception {
+        DataDictionaryGenerator generator = new DataDictionaryGenerator(session);
+        generator.generate(outputDir);
+        File ordersPage = new File(outputDir, "table-Orders.html");
+        assertTrue(ordersPage.exists());
+
+        SQLTable orders = session.getTargetDatabase().getTableByName("Orders");
+        session.getTargetDatabase().removeChild(orders);
+        generator.generate(outputDir);
+        assertFalse(ordersPage.exists());
+    }
+}
@@ -183,4 +183,26 @@ public class VelocityTransformationTest extends TestCase {
         assertEquals("     vision: DECIMAL(20, 20)", lines.get(11));
 	}
 
+	public void testTransformEachTable() throws Exception {
+		File tempdir = new File(System.getProperty("java.io.tmpdir"));
+		File vm = new File(tempdir, "test_table.txt.vm");
+
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(vm), ENCODING));
+		writer.print("Table: $table.name of $tables.size() in $projectName\n");
+		writer.close();
+
+		File outputDir = new File(tempdir, "test-output-tables");
+		VelocityTransformation vt = new VelocityTransformation();
+		List<File> files = vt.transformEachTable(vm, outputDir, session);
+		assertEquals(3, files.size());
+		assertEquals(new File(outputDir, "Customers.txt"), files.get(0));
+		assertEquals(new File(outputDir, "Orders.txt"), files.get(1));
+		assertEquals(new File(outputDir, "mm_project.txt"), files.get(2));
+
+		InputStreamReader in = new InputStreamReader(new FileInputStream(files.get(1)), ENCODING);
+		List<String> lines = IOUtils.readLines(in);
+		in.close();
+		assertEquals("Table: Orders of 3 in " + session.getName(), lines.get(0));
+	}
+
 }
@@ -22,6 +22,9 @@ package ca.sqlpower.architect.transformation;
 import java.io.File;
 
 import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
 import ca.sqlpower.architect.swingui.ArchitectSwingSession;
 import ca.sqlpower.architect.swingui.ArchitectSwingSessionContextImpl;
 import ca.sqlpower.architect.transformation.ReportTransformer;
@@ -57,4 +60,38 @@ public class XsltTransformationTest extends TestCase {
 
         assertTrue(output.exists());
     }
+
+    /**
+     * Tests a stylesheet file is compiled again after it changes, and that the
+     * project is read through the stylesheet.
+     */
+    public void testModifiedStylesheetIsRecompiled() throws Exception {
+        ArchitectSwingSessionContextImpl context = new ArchitectSwingSessionContextImpl("pl.regression.ini", false);
+        ArchitectSwingSession session = context.createSession();
+        session.setName("Stylesheet project");
+
+        File xslt = File.createTempFile("TestArchitectTransformer", ".xslt");
+        xslt.deleteOnExit();
+        File output = File.createTempFile("TestArchitectTransformer", "");
+        output.deleteOnExit();
+        ReportTransformer transformer = TransformerFactory.getTransformer(xslt);
+
+        writeStylesheet(xslt, "first");
+        xslt.setLastModified(1000000000000L);
+        transformer.transform(xslt, output, session);
+        assertEquals("first Stylesheet project", FileUtils.readFileToString(output));
+
+        writeStylesheet(xslt, "second");
+        xslt.setLastModified(1000000001000L);
+        transformer.transform(xslt, output, session);
+        assertEquals("second Stylesheet project", FileUtils.readFileToString(output));
+    }
+
+    private void writeStylesheet(File xslt, String text) throws Exception {
+        FileUtils.writeStringToFile(xslt,
+                "<xsl:stylesheet version='1.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'>" +
+                "<xsl:output method='text'/>" +
+                "<xsl:template match='/'>" + text + " <xsl:value-of select='architect-project/project-name'/></xsl:template>" +
+                "</xsl:stylesheet>");
+    }
 }
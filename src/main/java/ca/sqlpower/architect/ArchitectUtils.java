@@ -230,6 +230,82 @@ public class ArchitectUtils {
         }
     }
 
+    /**
+     * Returns true if the given type is a large object type whose values are
+     * normally stored out of the row (BLOB, CLOB, LONGVARCHAR and the like).
+     */
+    public static boolean isLargeObjectType(int type) {
+        final int NCLOB = 2011; // Java6/JDBC 4.0
+        final int LONGNVARCHAR = -16; // Java6/JDBC 4.0
+        return (type == Types.BLOB ||
+                type == Types.CLOB ||
+                type == NCLOB ||
+                type == Types.LONGVARCHAR ||
+                type == LONGNVARCHAR ||
+                type == Types.LONGVARBINARY);
+    }
+
+    /**
+     * Estimates the largest number of bytes a value of the given type will
+     * take up in a row. This is not exact for any one platform but is close
+     * enough to compare the width of keys and rows against platform limits.
+     * Variable length types are assumed to be full and large objects are
+     * counted as the size of the in-row pointer to their data.
+     *
+     * @param type
+     *            The JDBC type code from {@link Types}.
+     * @param precision
+     *            The precision or length of the type.
+     * @param scale
+     *            The scale of the type.
+     */
+    public static int estimateColumnWidth(int type, int precision, int scale) {
+        final int NCHAR = -15; // Java6/JDBC 4.0
+        final int NVARCHAR = -9; // Java6/JDBC 4.0
+        if (isLargeObjectType(type)) return 16;
+        switch (type) {
+        case Types.BIT:
+        case Types.BOOLEAN:
+        case Types.TINYINT:
+            return 1;
+        case Types.SMALLINT:
+            return 2;
+        case Types.INTEGER:
+        case Types.REAL:
+        case Types.DATE:
+        case Types.TIME:
+            return 4;
+        case Types.BIGINT:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+        case Types.TIMESTAMP:
+            return 8;
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            return precision > 0 ? precision / 2 + 1 : 20;
+        case Types.CHAR:
+        case Types.BINARY:
+            return Math.max(precision, 1);
+        case Types.VARCHAR:
+        case Types.VARBINARY:
+            return Math.max(precision, 1) + 2;
+        case NCHAR:
+            return Math.max(precision, 1) * 2;
+        case NVARCHAR:
+            return Math.max(precision, 1) * 2 + 2;
+        default:
+            return 8;
+        }
+    }
+
+    /**
+     * Estimates the largest number of bytes a value of the given column will
+     * take up in a row. See {@link #estimateColumnWidth(int, int, int)}.
+     */
+    public static int estimateColumnWidth(SQLColumn column) {
+        return estimateColumnWidth(column.getType(), column.getPrecision(), column.getScale());
+    }
+
     /**
      * This will check if the path of the PlDotIni file is valid. If it is not,
      * it will display a message asking the user to either browse for the file
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect;
+
+import ca.sqlpower.architect.ProjectSectionIndex.Section;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObjectException;
+
+/**
+ * A source database of a project whose catalogs, schemas and tables are read
+ * from its section of the project file the first time it is populated,
+ * instead of when the project is opened. Until then it is not populated, so
+ * anything that needs its children, such as expanding it in the tree, will
+ * populate it. Once read, it populates from its data source like any other
+ * database.
+ */
+public class DeferredSQLDatabase extends SQLDatabase implements DeferredLoadable {
+
+    private final ProjectLoader loader;
+
+    private final Section section;
+
+    /**
+     * Creates a database that has nothing to read from a project file.
+     */
+    public DeferredSQLDatabase() {
+        this(null, null);
+    }
+
+    DeferredSQLDatabase(ProjectLoader loader, Section section) {
+        this.loader = loader;
+        this.section = section;
+        setPopulated(false);
+    }
+
+    /**
+     * Returns the section of the project file this is read from, or null if
+     * there is none.
+     */
+    Section getSection() {
+        return section;
+    }
+
+    public boolean isLoaded() {
+        return section == null || section.isLoaded();
+    }
+
+    public void loadNow() throws SQLObjectException {
+        if (!isLoaded()) {
+            populate();
+        }
+    }
+
+    @Override
+    protected void populateImpl() throws SQLObjectException {
+        if (isLoaded()) {
+            super.populateImpl();
+        } else {
+            loader.loadSection(section);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect;
+
+import ca.sqlpower.architect.ProjectSectionIndex.Section;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLSchema;
+
+/**
+ * A schema of a source database whose tables are read from its section of
+ * the project file the first time it is populated. See
+ * {@link DeferredSQLDatabase}.
+ */
+public class DeferredSQLSchema extends SQLSchema implements DeferredLoadable {
+
+    private final ProjectLoader loader;
+
+    private final Section section;
+
+    /**
+     * Creates a schema that has nothing to read from a project file.
+     */
+    public DeferredSQLSchema() {
+        this(null, null);
+    }
+
+    DeferredSQLSchema(ProjectLoader loader, Section section) {
+        super(false);
+        this.loader = loader;
+        this.section = section;
+    }
+
+    /**
+     * Returns the section of the project file this is read from, or null if
+     * there is none.
+     */
+    Section getSection() {
+        return section;
+    }
+
+    public boolean isLoaded() {
+        return section == null || section.isLoaded();
+    }
+
+    public void loadNow() throws SQLObjectException {
+        if (!isLoaded()) {
+            populate();
+        }
+    }
+
+    @Override
+    protected void populateImpl() throws SQLObjectException {
+        if (isLoaded()) {
+            super.populateImpl();
+        } else {
+            loader.loadSection(section);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The compressed container format of project files. A container is a zip
+ * file whose entries are consecutive pieces of the XML project file, one for
+ * each section of the project (data sources, source databases, target
+ * database, play pen, profiles, OLAP and so on), stored with deflate
+ * compression. Deflate already encodes the element names, UUIDs and type names
+ * that repeat throughout a project as references to their earlier occurrences,
+ * which is where most of the size of the XML comes from.
+ * <p>
+ * Reading a container gives back the XML of the whole project, so the loaders
+ * handle both formats the same way. The plain XML format is still written
+ * when a project is exported to a stream.
+ */
+public class ProjectContainer {
+
+    /**
+     * The first bytes of every zip file, which can never start an XML file.
+     */
+    private static final byte[] ZIP_SIGNATURE = { 'P', 'K', 3, 4 };
+
+    private ProjectContainer() {
+        // static utility class
+    }
+
+    /**
+     * Returns true if the given stream starts with a container rather than an
+     * XML project. The stream must support mark, and is left where it was.
+     */
+    public static boolean isContainer(InputStream in) throws IOException {
+        in.mark(ZIP_SIGNATURE.length);
+        try {
+            for (byte b : ZIP_SIGNATURE) {
+                if (in.read() != b) return false;
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Returns true if the given file is a container.
+     */
+    public static boolean isContainer(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return isContainer(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns a stream of the XML of the project in the given stream, which
+     * may hold either a container or an XML project. The returned stream
+     * supports mark, and closing it closes the given stream.
+     */
+    public static InputStream openProject(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in);
+        }
+        if (!isContainer(in)) {
+            return in;
+        }
+        return new BufferedInputStream(new EntriesInputStream(new ZipInputStream(in)));
+    }
+
+    /**
+     * Starts a container on the given stream. Each section of the project
+     * is written to it after a call to {@link #startSection(ZipOutputStream, String)}.
+     */
+    public static ZipOutputStream createContainer(OutputStream out) {
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out));
+        zip.setMethod(ZipOutputStream.DEFLATED);
+        return zip;
+    }
+
+    /**
+     * Ends the current section of the container and starts a new one with the
+     * given name. Anything buffered on top of the container stream must be
+     * flushed before this is called.
+     */
+    public static void startSection(ZipOutputStream zip, String name) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+    }
+
+    /**
+     * Writes the XML of the project in the given container file to a new
+     * temporary file, for tools that only understand the XML format. Returns
+     * the given file if it is not a container.
+     */
+    public static File toXMLFile(File file) throws IOException {
+        if (!isContainer(file)) {
+            return file;
+        }
+        File xmlFile = File.createTempFile(file.getName(), ".xml"); //$NON-NLS-1$
+        xmlFile.deleteOnExit();
+        InputStream in = openProject(new FileInputStream(file));
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(xmlFile));
+        try {
+            IOUtils.copy(in, out);
+        } finally {
+            in.close();
+            out.close();
+        }
+        return xmlFile;
+    }
+
+    /**
+     * Reads the entries of a zip stream one after the other as one stream.
+     */
+    private static class EntriesInputStream extends InputStream {
+
+        private final ZipInputStream zip;
+
+        /**
+         * False once the last entry has been read.
+         */
+        private boolean inEntry;
+
+        EntriesInputStream(ZipInputStream zip) throws IOException {
+            this.zip = zip;
+            inEntry = zip.getNextEntry() != null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int count = read(b, 0, 1);
+            return count == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (inEntry) {
+                int count = zip.read(b, off, len);
+                if (count != -1) {
+                    return count;
+                }
+                inEntry = zip.getNextEntry() != null;
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+}
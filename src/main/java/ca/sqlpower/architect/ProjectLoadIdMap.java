@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Maps the ids of the objects in a project file to the objects loaded for
+ * them. The ids the project writer gives out are a short prefix followed by
+ * a number, such as "TAB1234" or "COL98765", so each of those is packed into
+ * a long and kept in an open addressing table of longs instead of being
+ * hashed as a string. This makes looking up the references of a large
+ * project, which has an entry for every column, index column and relationship
+ * column mapping, about as cheap as indexing an array. Ids of any other form
+ * are kept in an ordinary hash map.
+ */
+public class ProjectLoadIdMap<V> extends AbstractMap<String, V> {
+
+    /**
+     * Used for keys that are not in the packed table.
+     */
+    private static final long NO_KEY = 0L;
+
+    private long[] keys = new long[1024];
+
+    private Object[] values = new Object[1024];
+
+    /**
+     * The number of entries in the packed table.
+     */
+    private int packedSize;
+
+    /**
+     * The entries whose ids could not be packed into a long.
+     */
+    private final Map<String, V> others = new HashMap<String, V>();
+
+    /**
+     * Returns the id packed into a long, or {@link #NO_KEY} if it does not
+     * have the form of a prefix of one to four characters that are not digits
+     * followed by a number of at most nine digits with no leading zero. The
+     * prefix takes the high four bytes of the key and the number the low
+     * four, so no two ids share a key.
+     */
+    static long pack(String id) {
+        int length = id.length();
+        int prefixLength = 0;
+        long prefix = 0;
+        while (prefixLength < length) {
+            char c = id.charAt(prefixLength);
+            if (c >= '0' && c <= '9') break;
+            if (c <= ' ' || c > '~' || prefixLength == 4) return NO_KEY;
+            prefix = (prefix << 8) | c;
+            prefixLength++;
+        }
+        int digits = length - prefixLength;
+        if (prefixLength == 0 || digits == 0 || digits > 9) return NO_KEY;
+        if (digits > 1 && id.charAt(prefixLength) == '0') return NO_KEY;
+        long number = 0;
+        for (int i = prefixLength; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') return NO_KEY;
+            number = number * 10 + (c - '0');
+        }
+        return (prefix << 32) | number;
+    }
+
+    /**
+     * Turns a key made by {@link #pack(String)} back into its id.
+     */
+    static String unpack(long key) {
+        StringBuilder id = new StringBuilder(13);
+        long prefix = key >>> 32;
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            char c = (char) ((prefix >>> shift) & 0xff);
+            if (c != 0) {
+                id.append(c);
+            }
+        }
+        id.append(key & 0xffffffffL);
+        return id.toString();
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        int mask = keys.length - 1;
+        int i = (int) (h ^ (h >>> 32)) & mask;
+        while (keys[i] != NO_KEY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object id) {
+        if (!(id instanceof String)) return null;
+        long key = pack((String) id);
+        if (key == NO_KEY) {
+            V value = others.get(id);
+            return value != null || others.containsKey(id) ? value : missing((String) id);
+        }
+        int i = slot(key);
+        return keys[i] == key ? (V) values[i] : missing((String) id);
+    }
+
+    /**
+     * Called by {@link #get(Object)} for an id that is not in the map, and
+     * returns what get returns for it. Subclasses can find the object for the
+     * id here if the part of the project file that has it has not been read
+     * yet. Returns null.
+     */
+    protected V missing(String id) {
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object id) {
+        if (!(id instanceof String)) return false;
+        long key = pack((String) id);
+        if (key == NO_KEY) {
+            return others.containsKey(id);
+        }
+        return keys[slot(key)] == key;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(String id, V value) {
+        long key = pack(id);
+        if (key == NO_KEY) {
+            return others.put(id, value);
+        }
+        int i = slot(key);
+        if (keys[i] == key) {
+            V old = (V) values[i];
+            values[i] = value;
+            return old;
+        }
+        keys[i] = key;
+        values[i] = value;
+        packedSize++;
+        if (packedSize * 2 > keys.length) {
+            grow();
+        }
+        return null;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != NO_KEY) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Entries can not be removed one at a time; a map for loading a project
+     * only grows until it is {@link #clear() cleared}.
+     */
+    @Override
+    public V remove(Object id) {
+        throw new UnsupportedOperationException("Ids can not be removed from a load id map");
+    }
+
+    @Override
+    public void clear() {
+        keys = new long[1024];
+        values = new Object[1024];
+        packedSize = 0;
+        others.clear();
+    }
+
+    @Override
+    public int size() {
+        return packedSize + others.size();
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        return new AbstractSet<Map.Entry<String, V>>() {
+            @Override
+            public int size() {
+                return ProjectLoadIdMap.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, V>> iterator() {
+                final Iterator<Map.Entry<String, V>> otherEntries = others.entrySet().iterator();
+                return new Iterator<Map.Entry<String, V>>() {
+                    private int next = advance(0);
+
+                    private int advance(int from) {
+                        while (from < keys.length && keys[from] == NO_KEY) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    public boolean hasNext() {
+                        return next < keys.length || otherEntries.hasNext();
+                    }
+
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry<String, V> next() {
+                        if (next < keys.length) {
+                            Map.Entry<String, V> entry = new SimpleImmutableEntry<String, V>(
+                                    unpack(keys[next]), (V) values[next]);
+                            next = advance(next + 1);
+                            return entry;
+                        }
+                        if (!otherEntries.hasNext()) throw new NoSuchElementException();
+                        return otherEntries.next();
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException("Ids can not be removed from a load id map");
+                    }
+                };
+            }
+        };
+    }
+}
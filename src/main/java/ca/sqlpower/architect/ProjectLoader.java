@@ -28,22 +28,26 @@ import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import javax.swing.JOptionPane;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.Location;
 
 import org.apache.commons.beanutils.ConvertUtils;
 import org.apache.commons.digester.AbstractObjectCreationFactory;
 import org.apache.commons.digester.Digester;
 import org.apache.commons.digester.Rule;
 import org.apache.commons.digester.SetPropertiesRule;
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
+import ca.sqlpower.architect.ProjectSectionIndex.Section;
 import ca.sqlpower.architect.ddl.GenericDDLGenerator;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ColumnValueCount;
@@ -185,10 +189,78 @@ public class ProjectLoader {
      */
     protected String fileVersion;
 
+    /**
+     * The generation of the save journal that continues the project file most
+     * recently read or written, from the <code>journal-generation</code>
+     * attribute of its project element. A journal next to the file is only
+     * replayed if its header names the same generation. This will be null if
+     * the file was not saved with a journal.
+     */
+    protected String journalGeneration;
+
+    /**
+     * True if project files are read with the {@link StaxProjectReader}, false
+     * if they are read with the Digester rules of {@link #setupDigester()}.
+     * The Digester can be made the default by setting the system property
+     * <code>ca.sqlpower.architect.digesterLoad</code> to true.
+     */
+    private boolean streamingLoad = !Boolean.getBoolean("ca.sqlpower.architect.digesterLoad");
+
+    /**
+     * True if the populated source databases of a project, and the schemas in
+     * them, are left out when the project is loaded and read from the project
+     * file when they are first populated. See {@link DeferredSQLDatabase}.
+     * This only applies to the streaming load, and can be turned off by
+     * setting the system property
+     * <code>ca.sqlpower.architect.eagerSourceLoad</code> to true.
+     */
+    private boolean deferredSourceLoad = !Boolean.getBoolean("ca.sqlpower.architect.eagerSourceLoad");
+
+    /**
+     * The sections of the source databases of the last project loaded with
+     * {@link #deferredSourceLoad}, or null.
+     */
+    private ProjectSectionIndex sourceSections;
+
+    /**
+     * The sections of the database elements the streaming reader has not
+     * reached yet, and of the schema elements of the database it is reading.
+     */
+    private Iterator<Section> databaseSections;
+    private Iterator<Section> schemaSections;
+
     public ProjectLoader(ArchitectSession session) {
         this.session = session;
     }
 
+    /**
+     * See {@link #streamingLoad}.
+     */
+    public boolean isStreamingLoad() {
+        return streamingLoad;
+    }
+
+    /**
+     * See {@link #streamingLoad}.
+     */
+    public void setStreamingLoad(boolean streamingLoad) {
+        this.streamingLoad = streamingLoad;
+    }
+
+    /**
+     * See {@link #deferredSourceLoad}.
+     */
+    public boolean isDeferredSourceLoad() {
+        return deferredSourceLoad;
+    }
+
+    /**
+     * See {@link #deferredSourceLoad}.
+     */
+    public void setDeferredSourceLoad(boolean deferredSourceLoad) {
+        this.deferredSourceLoad = deferredSourceLoad;
+    }
+
 
     // ------------- READING THE PROJECT FILE ---------------
 
@@ -202,139 +274,346 @@ public class ProjectLoader {
      * Note: the input stream is always closed afterwards.
      *
      * @param in
-     *            Used to load in the project data, must support mark.
+     *            Used to load in the project data, must support mark. It may
+     *            hold an XML project or a {@link ProjectContainer}.
      * @param dataSources
      *            Collection of the data sources used in the project
      */
     public void load(InputStream in, DataSourceCollection<? extends SPDataSource> dataSources,
             ArchitectSession messageDelegate) throws IOException, SQLObjectException {
-        UnclosableInputStream uin = new UnclosableInputStream(in);
+        UnclosableInputStream uin = new UnclosableInputStream(ProjectContainer.openProject(in));
         siblingSession = messageDelegate;
         try {
             dbcsLoadIdMap = new HashMap<String, JDBCDataSource>();
-            sqlObjectLoadIdMap = new HashMap<String, SQLObject>();
+            DeferredIdMap idMap = new DeferredIdMap();
+            sqlObjectLoadIdMap = idMap;
+            sourceSections = null;
 
-            Digester digester = null;
+            if (streamingLoad) {
+                readStreaming(uin, idMap);
+            } else {
+                readWithDigester(uin);
+            }
 
-            // use digester to read from file
-            try {
-                digester = setupDigester();
-                digester.parse(uin);
-            } catch (SAXException ex) {
-                //The digester likes to wrap the cancelled exception in a SAXException.
-                if (ex.getException() instanceof DigesterCancelledException) {
-                    //Digeseter was cancelled by the user. Do not load anything.
-                    throw new RuntimeException(new InterruptedIOException("progress"));
+            finishLoad(dataSources);
+
+            setModified(false);
+        } finally {
+            uin.forceClose();
+        }
+    }
+
+    /**
+     * Does the work that needs the whole project to have been read, after
+     * either the streaming reader or the Digester has read it: hooking up the
+     * data sources' parent types, fixing up the primary key indexes of
+     * projects saved by old versions, and assigning upstream types to the
+     * columns of the play pen. The sections of source databases read later by
+     * {@link #loadSection(Section)} do not need these, since the fixups only
+     * apply to the target database.
+     */
+    private void finishLoad(DataSourceCollection<? extends SPDataSource> dataSources) throws SQLObjectException {
+        SQLObject dbConnectionContainer = ((SQLObject) getSession().getRootObject());
+
+        // hook up data source parent types
+        for (SQLDatabase db : dbConnectionContainer.getChildren(SQLDatabase.class)) {
+            JDBCDataSource ds = db.getDataSource();
+            String parentTypeId = ds.getPropertiesMap().get(JDBCDataSource.DBCS_CONNECTION_TYPE);
+            if (parentTypeId != null) {
+                for (JDBCDataSourceType dstype : dataSources.getDataSourceTypes()) {
+                    if (dstype.getName().equals(parentTypeId)) {
+                        ds.setParentType(dstype);
+                        // TODO unit test that this works
+                    }
                 }
-                logger.error("SAX Exception in project file parse!", ex);
-                String message;
-                if (digester == null) {
-                    message = "Couldn't create an XML parser";
+                if (ds.getParentType() == null) {
+                    logger.error("Data Source \""+ds.getName()+"\" has type \""+parentTypeId+"\", which is not configured in the user prefs.");
+                    // TODO either reconstruct the parent type, or bring this problem to the attention of the user.
+                    // TODO test this
                 } else {
-                    message = "There is an XML parsing error in project file at Line:" +
-                    digester.getDocumentLocator().getLineNumber() + " Column:" +
-                    digester.getDocumentLocator().getColumnNumber();
+                    // TODO test that the referenced parent type is properly configured (has a driver, etc)
+                    // TODO test for this behaviour
                 }
-                throw new SQLObjectException(message, ex);
-            } catch (IOException ex) {
-                logger.error("IO Exception in project file parse!", ex);
-                throw new SQLObjectException("There was an I/O error while reading the file", ex);
-            } catch (Exception ex) {
-                logger.error("General Exception in project file parse!", ex);
-                throw new SQLObjectException("Unexpected Exception", ex);
             }
 
-            SQLObject dbConnectionContainer = ((SQLObject) getSession().getRootObject());
-
-            // hook up data source parent types
-            for (SQLDatabase db : dbConnectionContainer.getChildren(SQLDatabase.class)) {
-                JDBCDataSource ds = db.getDataSource();
-                String parentTypeId = ds.getPropertiesMap().get(JDBCDataSource.DBCS_CONNECTION_TYPE);
-                if (parentTypeId != null) {
-                    for (JDBCDataSourceType dstype : dataSources.getDataSourceTypes()) {
-                        if (dstype.getName().equals(parentTypeId)) {
-                            ds.setParentType(dstype);
-                            // TODO unit test that this works
-                        }
-                    }
-                    if (ds.getParentType() == null) {
-                        logger.error("Data Source \""+ds.getName()+"\" has type \""+parentTypeId+"\", which is not configured in the user prefs.");
-                        // TODO either reconstruct the parent type, or bring this problem to the attention of the user.
-                        // TODO test this
-                    } else {
-                        // TODO test that the referenced parent type is properly configured (has a driver, etc)
-                        // TODO test for this behaviour
-                    }
-                }
+        }
 
+        /*
+         * for backward compatibilty, in the old project file, we have
+         * primaryKeyName in the table attrbute, but nothing
+         * in the sqlIndex that indicates primary key index,
+         * so, we have to set the index as primary key index
+         * if the index name == table.primaryKeyName after load the project,
+         * table.primaryKeyName is save in the map now, not in the table object
+         */
+        for (SQLTable table : (List<SQLTable>)getSession().getTargetDatabase().getTables()) {
+
+            if (logger.isDebugEnabled()) {
+                if (!table.isPopulated()) {
+                    logger.debug("Table ["+table.getName()+"] not populated");
+                } else {
+                    logger.debug("Table ["+table.getName()+"] index folder contents: "+table.getIndices());
+                }
             }
 
-            /*
-             * for backward compatibilty, in the old project file, we have
-             * primaryKeyName in the table attrbute, but nothing
-             * in the sqlIndex that indicates primary key index,
-             * so, we have to set the index as primary key index
-             * if the index name == table.primaryKeyName after load the project,
-             * table.primaryKeyName is save in the map now, not in the table object
-             */
-            for (SQLTable table : (List<SQLTable>)getSession().getTargetDatabase().getTables()) {
-
-                if (logger.isDebugEnabled()) {
-                    if (!table.isPopulated()) {
-                        logger.debug("Table ["+table.getName()+"] not populated");
-                    } else {
-                        logger.debug("Table ["+table.getName()+"] index folder contents: "+table.getIndices());
+            if ( table.getPrimaryKeyIndex() == null) {
+                logger.debug("primary key index is null in table: " + table);
+                logger.debug("number of children found in indices folder: " + table.getIndices().size());
+                for (SQLIndex index : table.getIndices()) {
+                    if (sqlObjectLoadIdMap.get(table.getName()+"."+index.getName()) != null) {
+                        table.getPrimaryKeyIndex().updateToMatch(index);
+                        break;
                     }
                 }
+            }
+            logger.debug("Table ["+table.getName()+"]2 index folder contents: "+table.getIndices());
+            logger.debug("Table ["+table.getName()+"]3 index folder contents: "+table.getIndices());
 
-                if ( table.getPrimaryKeyIndex() == null) {
-                    logger.debug("primary key index is null in table: " + table);
-                    logger.debug("number of children found in indices folder: " + table.getIndices().size());
-                    for (SQLIndex index : table.getIndices()) {
-                        if (sqlObjectLoadIdMap.get(table.getName()+"."+index.getName()) != null) {
-                            table.getPrimaryKeyIndex().updateToMatch(index);
-                            break;
-                        }
-                    }
+            if (logger.isDebugEnabled()) {
+                if (!table.isPopulated()) {
+                    logger.debug("Table ["+table.getName()+"] not populated");
+                } else {
+                    logger.debug("Table ["+table.getName()+"] index folder contents: "+table.getIndices().size());
                 }
-                logger.debug("Table ["+table.getName()+"]2 index folder contents: "+table.getIndices());
-                logger.debug("Table ["+table.getName()+"]3 index folder contents: "+table.getIndices());
-
-                if (logger.isDebugEnabled()) {
-                    if (!table.isPopulated()) {
-                        logger.debug("Table ["+table.getName()+"] not populated");
-                    } else {
-                        logger.debug("Table ["+table.getName()+"] index folder contents: "+table.getIndices().size());
-                    }
+            }
+
+        }
+
+        /*
+         * In old versions of the architect, user defined types weren't
+         * available, so all columns stored their type as a JDBC type code.
+         * For all columns in the playpen, we need to hook up upstream user
+         * defined types.
+         */
+        ListMultimap<String, SQLColumn> columns = ArrayListMultimap.create();
+        for (SQLTable table : getSession().getTargetDatabase().getTables()) {
+            for (SQLColumn column : table.getChildren(SQLColumn.class)) {
+                SQLColumn sourceColumn = column.getSourceColumn();
+                if (sourceColumn != null && sourceColumn.getPlatform() != null) {
+                    columns.put(column.getSourceColumn().getPlatform(), column);
+                } else {
+                    columns.put(SQLTypePhysicalPropertiesProvider.GENERIC_PLATFORM, column);
                 }
+            }
+        }
+        for (String platform : columns.keySet()) {
+            SQLColumn.assignTypes(columns.get(platform), dataSources, platform, new DefaultUserPrompterFactory());
+        }
+    }
 
+    /**
+     * Reads the project file with the Digester rules of {@link #setupDigester()}.
+     */
+    private void readWithDigester(InputStream in) throws SQLObjectException {
+        Digester digester = null;
+        try {
+            digester = setupDigester();
+            digester.parse(in);
+        } catch (SAXException ex) {
+            //The digester likes to wrap the cancelled exception in a SAXException.
+            if (ex.getException() instanceof DigesterCancelledException) {
+                //Digeseter was cancelled by the user. Do not load anything.
+                throw new RuntimeException(new InterruptedIOException("progress"));
+            }
+            logger.error("SAX Exception in project file parse!", ex);
+            String message;
+            if (digester == null) {
+                message = "Couldn't create an XML parser";
+            } else {
+                message = "There is an XML parsing error in project file at Line:" +
+                digester.getDocumentLocator().getLineNumber() + " Column:" +
+                digester.getDocumentLocator().getColumnNumber();
             }
+            throw new SQLObjectException(message, ex);
+        } catch (IOException ex) {
+            logger.error("IO Exception in project file parse!", ex);
+            throw new SQLObjectException("There was an I/O error while reading the file", ex);
+        } catch (Exception ex) {
+            logger.error("General Exception in project file parse!", ex);
+            throw new SQLObjectException("Unexpected Exception", ex);
+        }
+    }
 
-            /*
-             * In old versions of the architect, user defined types weren't
-             * available, so all columns stored their type as a JDBC type code.
-             * For all columns in the playpen, we need to hook up upstream user
-             * defined types.
-             */
-            ListMultimap<String, SQLColumn> columns = ArrayListMultimap.create();
-            for (SQLTable table : getSession().getTargetDatabase().getTables()) {
-                for (SQLColumn column : table.getChildren(SQLColumn.class)) {
-                    SQLColumn sourceColumn = column.getSourceColumn();
-                    if (sourceColumn != null && sourceColumn.getPlatform() != null) {
-                        columns.put(column.getSourceColumn().getPlatform(), column);
-                    } else {
-                        columns.put(SQLTypePhysicalPropertiesProvider.GENERIC_PLATFORM, column);
-                    }
-                }
+    /**
+     * Reads the project file with a {@link StaxProjectReader} that hands each
+     * element to {@link #startElement(StaxProjectReader, String, Object, Attributes)}
+     * and {@link #endElement(StaxProjectReader, Object, Object)}.
+     */
+    private void readStreaming(InputStream in, DeferredIdMap idMap) throws SQLObjectException {
+        StaxProjectReader reader = new StaxProjectReader(this);
+        databaseSections = null;
+        schemaSections = null;
+        try {
+            if (deferredSourceLoad) {
+                sourceSections = ProjectSectionIndex.scan(IOUtils.toByteArray(in));
+                sourceSections.setIdMap(idMap);
+                idMap.sections = sourceSections;
+                databaseSections = sourceSections.getDatabases().iterator();
+                reader.read(sourceSections.openProject(), session);
+                sourceSections.trimToSections();
+            } else {
+                reader.read(in, session);
             }
-            for (String platform : columns.keySet()) {
-                SQLColumn.assignTypes(columns.get(platform), dataSources, platform, new DefaultUserPrompterFactory());
+        } catch (DigesterCancelledException ex) {
+            // the user cancelled loading. Do not load anything.
+            throw new RuntimeException(new InterruptedIOException("progress"));
+        } catch (IOException ex) {
+            logger.error("IO Exception in project file parse!", ex);
+            throw new SQLObjectException("There was an I/O error while reading the file", ex);
+        } catch (Exception ex) {
+            logger.error("Exception in project file parse at " + reader.getPath(), ex);
+            Location location = reader.getLocation();
+            String message;
+            if (location == null) {
+                message = "Couldn't create an XML parser";
+            } else {
+                message = "There is an XML parsing error in project file at Line:" +
+                location.getLineNumber() + " Column:" + location.getColumnNumber();
             }
+            throw new SQLObjectException(message, ex);
+        }
+    }
 
-            setModified(false);
+    /**
+     * Reads the content of a section of the project file that was left out
+     * when the project was loaded into the object that stands in for it, and
+     * marks the object populated. After the tables of a schema are read, the
+     * relationships of its database are read again for the ones between its
+     * tables and the tables that were read before.
+     */
+    void loadSection(Section section) throws SQLObjectException {
+        if (section.isLoaded()) return;
+        section.setLoaded(true);
+        ProjectSectionIndex index = section.getIndex();
+        Map<String, SQLObject> savedIdMap = sqlObjectLoadIdMap;
+        Iterator<Section> savedSchemaSections = schemaSections;
+        SQLTable savedTable = currentTable;
+        String savedSourceDataTypeName = columnSourceDataTypeName;
+        sqlObjectLoadIdMap = index.getIdMap();
+        try {
+            if (section.getParent() == null) {
+                schemaSections = section.getChildren().iterator();
+                new StaxProjectReader(this).readSection(section.openStream(), index.getEncoding(),
+                        section.getObject(), SOURCE_DATABASES_PATH);
+            } else {
+                schemaSections = null;
+                new StaxProjectReader(this).readSection(section.openStream(), index.getEncoding(),
+                        section.getObject(), SOURCE_DATABASES_PATH + "/database");
+                Section database = section.getParent();
+                if (database.hasRelationships()) {
+                    new StaxProjectReader(this).readSection(database.openRelationships(), index.getEncoding(),
+                            database.getObject(), SOURCE_DATABASES_PATH + "/database");
+                }
+            }
+            section.getObject().setPopulated(true);
+        } catch (SQLObjectException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            logger.error("Exception reading " + section.getElement() + " section of project file", ex);
+            throw new SQLObjectException("Couldn't read " + section.getObject().getName() +
+                    " from the project file", ex);
         } finally {
-            uin.forceClose();
+            sqlObjectLoadIdMap = savedIdMap;
+            schemaSections = savedSchemaSections;
+            currentTable = savedTable;
+            columnSourceDataTypeName = savedSourceDataTypeName;
+        }
+    }
+
+    /**
+     * Returns the section of the project file that the given source database
+     * or schema was left out of the project as, if it has not been read yet,
+     * or null if it has nothing left to read. A save writes such a section
+     * back from its bytes instead of reading it.
+     */
+    protected static Section getUnreadSection(SQLObject o) {
+        Section section = null;
+        if (o instanceof DeferredSQLDatabase) {
+            section = ((DeferredSQLDatabase) o).getSection();
+        } else if (o instanceof DeferredSQLSchema) {
+            section = ((DeferredSQLSchema) o).getSection();
         }
+        return section == null || section.isLoaded() ? null : section;
+    }
+
+    /**
+     * Returns the section of the project file the given source database was
+     * read from if some of its schemas have not been read yet, or null.
+     * Those schemas may have relationships between them that were not read
+     * either.
+     */
+    protected static Section getPartlyReadSection(SQLDatabase db) {
+        for (SQLObject child : db.getChildrenWithoutPopulating()) {
+            if (child instanceof SQLCatalog) {
+                for (SQLObject schema : child.getChildrenWithoutPopulating()) {
+                    Section section = getUnreadSection(schema);
+                    if (section != null) return section.getParent();
+                }
+            } else {
+                Section section = getUnreadSection(child);
+                if (section != null) return section.getParent();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The map of ids to the objects loaded for them, which reads the
+     * section of the project file an id that is not in the map yet is in.
+     * This is how references into sections that were left out are resolved,
+     * such as the source columns of the columns in the play pen and the
+     * tables of profile results.
+     */
+    private class DeferredIdMap extends ProjectLoadIdMap<SQLObject> {
+
+        private ProjectSectionIndex sections;
+
+        @Override
+        protected SQLObject missing(String id) {
+            if (sections == null) return null;
+            long key = pack(id);
+            if (key == 0) return null;
+            long number = key & 0xffffffffL;
+            Section section;
+            while ((section = sections.findUnloaded(number)) != null) {
+                try {
+                    loadSection(section);
+                } catch (SQLObjectException e) {
+                    logger.error("Couldn't read the section of the project file with id " + id, e);
+                    return null;
+                }
+                if (containsKey(id)) return get(id);
+            }
+            return null;
+        }
+    }
+
+    private static Section nextSection(Iterator<Section> sections) {
+        return sections != null && sections.hasNext() ? sections.next() : null;
+    }
+
+    /**
+     * Returns false if the relationship element of a source database with the
+     * given attributes is to be skipped because it was read already or
+     * because neither of its tables has been read. If one of its tables has
+     * been read the section with the other one is read, which may read the
+     * relationship too.
+     */
+    private boolean isRelationshipReadable(Attributes attributes) {
+        if (!(sqlObjectLoadIdMap instanceof DeferredIdMap) || ((DeferredIdMap) sqlObjectLoadIdMap).sections == null) {
+            return true;
+        }
+        String id = attributes.getValue("id");
+        String fkTableId = attributes.getValue("fk-table-ref");
+        String pkTableId = attributes.getValue("pk-table-ref");
+        if (id == null || fkTableId == null || pkTableId == null) return true;
+        if (sqlObjectLoadIdMap.containsKey(id)) return false;
+        if (!sqlObjectLoadIdMap.containsKey(fkTableId) && !sqlObjectLoadIdMap.containsKey(pkTableId)) {
+            return false;
+        }
+        sqlObjectLoadIdMap.get(fkTableId);
+        sqlObjectLoadIdMap.get(pkTableId);
+        return !sqlObjectLoadIdMap.containsKey(id);
     }
 
     protected Digester setupDigester() throws ParserConfigurationException, SAXException {
@@ -346,20 +625,7 @@ public class ProjectLoader {
         d.addRule("architect-enterprise-project", new Rule() {
             @Override
             public void begin(String namespace, String name, Attributes attributes) throws Exception {
-                UserPrompter loadingWarningPrompt = messageOwner.createUserPrompter(
-                        "This file contains an Enterprise project and can only\n" + 
-                        "be opened in the Architect Enterprise Edition.",
-                        UserPromptType.BOOLEAN, UserPromptOptions.OK_CANCEL,
-                        UserPromptResponse.CANCEL, UserPromptResponse.CANCEL, "Get Enterprise", "Cancel");
-                UserPromptResponse upr = loadingWarningPrompt.promptUser();
-                if (upr == UserPromptResponse.OK) {
-                    try {
-                        BrowserUtil.launch("http://www.sqlpower.ca/page/architect-e");
-                    } catch (IOException e) {
-                        throw new DigesterCancelledException();
-                    }
-                }
-                throw new DigesterCancelledException();
+                promptForEnterpriseProject(messageOwner);
             }
         });
         
@@ -367,36 +633,8 @@ public class ProjectLoader {
         d.addRule("architect-project", new Rule() {
             @Override
             public void begin(String namespace, String name, Attributes attributes) throws Exception {
-                fileVersion = attributes.getValue("appversion");
-                String loadingMessage;
-                try {
-                    if (fileVersion == null) {
-                        loadingMessage = "The version of the file cannot be found.";
-                        fileVersion = "0";
-                    } else if (ArchitectVersion.APP_FULL_VERSION.compareTo(
-                            new ArchitectVersion(fileVersion)) < 0) {
-                        loadingMessage = "This file was last saved with a newer version.\n" +
-                        		"Loading with an older version may cause data loss.";
-                    } else {
-                        return;
-                    }
-                } catch (Exception e) {
-                    loadingMessage = "The version of the file cannot be understood.";
-                }
-                UserPrompter loadingWarningPrompt = messageOwner.createUserPrompter(
-                        loadingMessage + "\nDo you wish to try and open the file?",
-                        UserPromptType.BOOLEAN, UserPromptOptions.OK_NOTOK_CANCEL,
-                        UserPromptResponse.OK, UserPromptResponse.OK, "Try loading",
-                        "Upgrade...", "Cancel");
-                UserPromptResponse response = loadingWarningPrompt.promptUser();
-                if (response == UserPromptResponse.OK) {
-                    //continue to try loading
-                } else if (response == UserPromptResponse.NOT_OK) {
-                    BrowserUtil.launch(SPSUtils.SQLP_ARCHITECT_URL);
-                    throw new DigesterCancelledException();
-                } else if (response == UserPromptResponse.CANCEL) {
-                    throw new DigesterCancelledException();
-                }
+                checkFileVersion(messageOwner, attributes.getValue("appversion"));
+                journalGeneration = attributes.getValue("journal-generation");
             }
         });
 
@@ -404,7 +642,6 @@ public class ProjectLoader {
         d.addCallMethod("architect-project/project-name", "setName", 0); // argument is element body text
 
         // source DB connection specs (deprecated in favour of project-data-sources; this is only here for backward compatibility)
-        DBCSFactory dbcsFactory = new DBCSFactory();
         d.addFactoryCreate("architect-project/project-connection-specs/dbcs", dbcsFactory);
         d.addSetProperties
         ("architect-project/project-connection-specs/dbcs",
@@ -429,7 +666,6 @@ public class ProjectLoader {
         d.addObjectCreate("architect-project/source-databases", LinkedList.class);
         d.addSetNext("architect-project/source-databases", "setSourceDatabaseList");
 
-        SQLDatabaseFactory dbFactory = new SQLDatabaseFactory();
         d.addFactoryCreate("architect-project/source-databases/database", dbFactory);
         d.addSetProperties("architect-project/source-databases/database");
         d.addSetNext("architect-project/source-databases/database", "add");
@@ -438,20 +674,17 @@ public class ProjectLoader {
         d.addSetProperties("architect-project/source-databases/database/catalog");
         d.addSetNext("architect-project/source-databases/database/catalog", "addChild");
 
-        SQLSchemaFactory schemaFactory = new SQLSchemaFactory();
         d.addFactoryCreate("*/schema", schemaFactory);
         d.addSetProperties("*/schema");
         d.addSetNext("*/schema", "addChild");
 
-        SQLTableFactory tableFactory = new SQLTableFactory();
         d.addFactoryCreate("*/table", tableFactory);
         d.addSetProperties("*/table");
         d.addCallMethod("*/remarks", "setRemarks", 0);
         d.addSetNext("*/table", "addChild");
 
-        d.addFactoryCreate("*/folder", new SQLFolderFactory());
+        d.addFactoryCreate("*/folder", folderFactory);
 
-        SQLColumnFactory columnFactory = new SQLColumnFactory();
         d.addFactoryCreate("*/column", columnFactory);
         d.addSetProperties("*/column");
         d.addCallMethod("*/remarks", "setRemarks", 0);
@@ -467,47 +700,38 @@ public class ProjectLoader {
         d.addCallParam("*/column",0,"sourceDataTypeName");
         d.addSetNext("*/column", "addChild");
 
-        SQLRelationshipFactory relationshipFactory = new SQLRelationshipFactory();
         d.addFactoryCreate("*/relationship", relationshipFactory);
         d.addSetProperties("*/relationship");
         // the factory adds the relationships to the correct PK and FK tables
 
-        ColumnMappingFactory columnMappingFactory = new ColumnMappingFactory();
         d.addFactoryCreate("*/column-mapping", columnMappingFactory);
         d.addSetProperties("*/column-mapping");
         d.addSetNext("*/column-mapping", "addChild");
 
-        SQLIndexFactory indexFactory = new SQLIndexFactory();
         d.addFactoryCreate("*/index", indexFactory);
         d.addSetProperties("*/index");
         d.addSetNext("*/index", "addChild");
 
-        SQLIndexColumnFactory indexColumnFactory = new SQLIndexColumnFactory();
         d.addFactoryCreate("*/index-column", indexColumnFactory);
         d.addSetProperties("*/index-column");
         d.addSetNext("*/index-column", "addChild");
 
-        SQLExceptionFactory exceptionFactory = new SQLExceptionFactory();
         d.addFactoryCreate("*/sql-exception", exceptionFactory);
         d.addSetProperties("*/sql-exception");
         d.addSetNext("*/sql-exception", "setChildrenInaccessibleReason");
 
-        TargetDBFactory targetDBFactory = new TargetDBFactory();
         // target database hierarchy
         d.addFactoryCreate("architect-project/target-database", targetDBFactory);
         d.addSetProperties("architect-project/target-database");
 
-        DDLGeneratorFactory ddlgFactory = new DDLGeneratorFactory();
         d.addFactoryCreate("architect-project/ddl-generator", ddlgFactory);
         d.addSetProperties("architect-project/ddl-generator");
         d.addSetNext("architect-project/ddl-generator", "setDDLGenerator");
 
-        LiquibaseSettingsFactory lbFactory = new LiquibaseSettingsFactory();
         d.addFactoryCreate("architect-project/liquibase-settings", lbFactory);
         d.addSetProperties("architect-project/liquibase-settings");
         d.addSetNext("architect-project/liquibase-settings", "setLiquibaseSettings");
 
-        ProfileManagerFactory profileManagerFactory = new ProfileManagerFactory();
         d.addFactoryCreate("*/profiles", profileManagerFactory);
         d.addSetProperties("*/profiles");
 
@@ -516,7 +740,6 @@ public class ProjectLoader {
          * stored as siblings to each other, with the parent of a column result
          * being the last table result that was read.
          */
-        ProfileResultFactory profileResultFactory = new ProfileResultFactory();
         d.addFactoryCreate("*/profiles/profile-result", profileResultFactory);
         /*
          * backward compatibility: the exception property used to be a boolean, and now it's an actual exception.
@@ -526,15 +749,14 @@ public class ProjectLoader {
         d.addRule("*/profiles/profile-result", new SetPropertiesRule(new String[] {"exception"}, new String[] {}));
         d.addSetNext("*/profiles/profile-result", "loadResult");
         
-        d.addFactoryCreate("*/profiles/table-profile-result", new TableProfileResultFactory());
+        d.addFactoryCreate("*/profiles/table-profile-result", tableProfileResultFactory);
         d.addRule("*/profiles/table-profile-result", new SetPropertiesRule(new String[] {"exception"}, new String[] {}));
         d.addSetNext("*/profiles/table-profile-result", "addTableProfileResult");
         
-        d.addFactoryCreate("*/profiles/table-profile-result/column-profile-result", new ColumnProfileResultFactory());
+        d.addFactoryCreate("*/profiles/table-profile-result/column-profile-result", columnProfileResultFactory);
         d.addRule("*/profiles/table-profile-result/column-profile-result", new SetPropertiesRule(new String[] {"exception"}, new String[] {}));
         d.addSetNext("*/profiles/table-profile-result/column-profile-result", "addColumnProfileResult");
 
-        ProfileResultValueFactory profileResultValueFactory = new ProfileResultValueFactory();
         d.addFactoryCreate("*/profiles/table-profile-result/column-profile-result/avgValue", profileResultValueFactory );
         d.addSetNext("*/profiles/table-profile-result/column-profile-result/avgValue", "setAvgValue");
         d.addFactoryCreate("*/profiles/table-profile-result/column-profile-result/minValue", profileResultValueFactory);
@@ -542,11 +764,9 @@ public class ProjectLoader {
         d.addFactoryCreate("*/profiles/table-profile-result/column-profile-result/maxValue", profileResultValueFactory);
         d.addSetNext("*/profiles/table-profile-result/column-profile-result/maxValue", "setMaxValue");
 
-        ProfileResultTopNValueFactory topNValueFactory = new ProfileResultTopNValueFactory();
         d.addFactoryCreate("*/profiles/table-profile-result/column-profile-result/topNvalue", topNValueFactory );
         d.addSetNext("*/profiles/table-profile-result/column-profile-result/topNvalue", "addValueCount");
 
-        FileFactory fileFactory = new FileFactory();
         d.addFactoryCreate("*/file", fileFactory);
         d.addSetNext("*/file", "setFile");
 
@@ -555,6 +775,314 @@ public class ProjectLoader {
         return d;
     }
 
+    /**
+     * Tells the user that the file holds an Enterprise project, which can not
+     * be opened here, and cancels loading it.
+     */
+    private void promptForEnterpriseProject(ArchitectSession messageOwner) {
+        UserPrompter loadingWarningPrompt = messageOwner.createUserPrompter(
+                "This file contains an Enterprise project and can only\n" + 
+                "be opened in the Architect Enterprise Edition.",
+                UserPromptType.BOOLEAN, UserPromptOptions.OK_CANCEL,
+                UserPromptResponse.CANCEL, UserPromptResponse.CANCEL, "Get Enterprise", "Cancel");
+        UserPromptResponse upr = loadingWarningPrompt.promptUser();
+        if (upr == UserPromptResponse.OK) {
+            try {
+                BrowserUtil.launch("http://www.sqlpower.ca/page/architect-e");
+            } catch (IOException e) {
+                throw new DigesterCancelledException();
+            }
+        }
+        throw new DigesterCancelledException();
+    }
+
+    /**
+     * Records the version of the Architect the file was saved with and asks
+     * the user whether to go on loading if it is newer than this one or can
+     * not be understood.
+     *
+     * @throws DigesterCancelledException
+     *             If the user chooses not to load the file.
+     */
+    private void checkFileVersion(ArchitectSession messageOwner, String appversion) throws IOException {
+        fileVersion = appversion;
+        String loadingMessage;
+        try {
+            if (fileVersion == null) {
+                loadingMessage = "The version of the file cannot be found.";
+                fileVersion = "0";
+            } else if (ArchitectVersion.APP_FULL_VERSION.compareTo(
+                    new ArchitectVersion(fileVersion)) < 0) {
+                loadingMessage = "This file was last saved with a newer version.\n" +
+                		"Loading with an older version may cause data loss.";
+            } else {
+                return;
+            }
+        } catch (Exception e) {
+            loadingMessage = "The version of the file cannot be understood.";
+        }
+        UserPrompter loadingWarningPrompt = messageOwner.createUserPrompter(
+                loadingMessage + "\nDo you wish to try and open the file?",
+                UserPromptType.BOOLEAN, UserPromptOptions.OK_NOTOK_CANCEL,
+                UserPromptResponse.OK, UserPromptResponse.OK, "Try loading",
+                "Upgrade...", "Cancel");
+        UserPromptResponse response = loadingWarningPrompt.promptUser();
+        if (response == UserPromptResponse.OK) {
+            //continue to try loading
+        } else if (response == UserPromptResponse.NOT_OK) {
+            BrowserUtil.launch(SPSUtils.SQLP_ARCHITECT_URL);
+            throw new DigesterCancelledException();
+        } else if (response == UserPromptResponse.CANCEL) {
+            throw new DigesterCancelledException();
+        }
+    }
+
+    /*
+     * The factories that create the objects of the elements, for both the
+     * Digester and the streaming reader.
+     */
+    private final DBCSFactory dbcsFactory = new DBCSFactory();
+    private final SQLDatabaseFactory dbFactory = new SQLDatabaseFactory();
+    private final SQLSchemaFactory schemaFactory = new SQLSchemaFactory();
+    private final SQLTableFactory tableFactory = new SQLTableFactory();
+    private final SQLFolderFactory folderFactory = new SQLFolderFactory();
+    private final SQLColumnFactory columnFactory = new SQLColumnFactory();
+    private final SQLRelationshipFactory relationshipFactory = new SQLRelationshipFactory();
+    private final ColumnMappingFactory columnMappingFactory = new ColumnMappingFactory();
+    private final SQLIndexFactory indexFactory = new SQLIndexFactory();
+    private final SQLIndexColumnFactory indexColumnFactory = new SQLIndexColumnFactory();
+    private final SQLExceptionFactory exceptionFactory = new SQLExceptionFactory();
+    private final TargetDBFactory targetDBFactory = new TargetDBFactory();
+    private final DDLGeneratorFactory ddlgFactory = new DDLGeneratorFactory();
+    private final LiquibaseSettingsFactory lbFactory = new LiquibaseSettingsFactory();
+    private final ProfileManagerFactory profileManagerFactory = new ProfileManagerFactory();
+    private final ProfileResultFactory profileResultFactory = new ProfileResultFactory();
+    private final TableProfileResultFactory tableProfileResultFactory = new TableProfileResultFactory();
+    private final ColumnProfileResultFactory columnProfileResultFactory = new ColumnProfileResultFactory();
+    private final ProfileResultValueFactory profileResultValueFactory = new ProfileResultValueFactory();
+    private final ProfileResultTopNValueFactory topNValueFactory = new ProfileResultTopNValueFactory();
+    private final FileFactory fileFactory = new FileFactory();
+
+    /**
+     * Attribute names that are not set as properties of profile results. The
+     * exception property used to be a boolean, and now it's an actual
+     * exception.
+     */
+    private static final String[] PROFILE_RESULT_IGNORED = new String[] {"exception"};
+
+    /**
+     * Attribute names that are not set as properties of the databases and
+     * schemas whose content is read later, which are not populated until
+     * then.
+     */
+    private static final String[] DEFERRED_IGNORED = new String[] {"populated"};
+
+    private static final String SOURCE_DATABASES_PATH = "architect-project/source-databases";
+
+    /**
+     * The source data type name of the column being read by the streaming
+     * reader, which is set again after the column is added to its table as
+     * the Digester does.
+     */
+    private String columnSourceDataTypeName;
+
+    /**
+     * Creates the object for an element read by the {@link StaxProjectReader},
+     * doing what the rules of {@link #setupDigester()} for the element do when
+     * it starts. Subclasses that add rules to the Digester have to handle
+     * their elements here too, calling this method for the elements they do
+     * not know.
+     * 
+     * @param name
+     *            The name of the element; use
+     *            {@link StaxProjectReader#matches(String)} to compare its path
+     *            to a Digester pattern.
+     * @param parent
+     *            The object of the closest enclosing element that has one.
+     * @return The object of the element, which is the parent of the objects of
+     *         its child elements and is passed to
+     *         {@link #endElement(StaxProjectReader, Object, Object)}, or null
+     *         if the element has no object of its own.
+     */
+    protected Object startElement(StaxProjectReader reader, String name, Object parent, Attributes attributes) throws Exception {
+        Object obj = null;
+        if (reader.matches("*/column")) {
+            obj = columnFactory.createObject(attributes);
+            reader.setProperties(obj);
+            // the old name of the attribute wins, as it does in the Digester
+            columnSourceDataTypeName = attributes.getValue("sourceDBTypeName");
+            if (columnSourceDataTypeName == null) {
+                columnSourceDataTypeName = attributes.getValue("sourceDataTypeName");
+            }
+        } else if (reader.matches("*/index-column")) {
+            obj = indexColumnFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("*/column-mapping")) {
+            obj = columnMappingFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("*/remarks")) {
+            reader.invoke(parent, "setRemarks", reader.getElementText());
+        } else if (reader.matches("*/folder")) {
+            obj = folderFactory.createObject(attributes);
+        } else if (reader.matches("*/index")) {
+            obj = indexFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("*/relationship")) {
+            if (reader.getPath().startsWith(SOURCE_DATABASES_PATH) && !isRelationshipReadable(attributes)) {
+                reader.skipElement();
+            } else {
+                obj = relationshipFactory.createObject(attributes);
+                reader.setProperties(obj);
+            }
+        } else if (reader.matches("*/table")) {
+            obj = tableFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("*/schema")) {
+            Section section = reader.getPath().startsWith(SOURCE_DATABASES_PATH) ? nextSection(schemaSections) : null;
+            if (section != null && section.isDeferrable()) {
+                DeferredSQLSchema schema = new DeferredSQLSchema(this, section);
+                section.setObject(schema);
+                obj = schemaFactory.createObject(schema, attributes);
+                reader.setProperties(obj, DEFERRED_IGNORED, new String[0]);
+            } else {
+                obj = schemaFactory.createObject(attributes);
+                reader.setProperties(obj);
+            }
+        } else if (reader.matches("architect-project/source-databases/database/catalog")) {
+            obj = new SQLCatalog();
+            reader.setProperties(obj);
+        } else if (reader.matches("architect-project/source-databases/database")) {
+            Section section = nextSection(databaseSections);
+            if (section != null && section.isDeferrable()) {
+                DeferredSQLDatabase db = new DeferredSQLDatabase(this, section);
+                section.setObject(db);
+                obj = dbFactory.createObject(db, attributes);
+                reader.setProperties(obj, DEFERRED_IGNORED, new String[0]);
+            } else {
+                obj = dbFactory.createObject(attributes);
+                reader.setProperties(obj);
+                if (section != null) {
+                    section.setObject((SQLObject) obj);
+                    section.setLoaded(true);
+                    schemaSections = section.getChildren().iterator();
+                }
+            }
+        } else if (reader.matches("architect-project/source-databases")) {
+            obj = new LinkedList<SQLDatabase>();
+        } else if (reader.matches("architect-project/target-database")) {
+            obj = targetDBFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("architect-project")) {
+            checkFileVersion(siblingSession == null ? session : siblingSession, attributes.getValue("appversion"));
+            journalGeneration = attributes.getValue("journal-generation");
+        } else if (reader.matches("architect-enterprise-project")) {
+            promptForEnterpriseProject(siblingSession == null ? session : siblingSession);
+        } else if (reader.matches("architect-project/project-name")) {
+            reader.invoke(parent, "setName", reader.getElementText());
+        } else if (reader.matches("architect-project/project-connection-specs/dbcs")) {
+            JDBCDataSource dbcs = (JDBCDataSource) dbcsFactory.createObject(attributes);
+            reader.setProperties(dbcs,
+                    new String[] {"connection-name", "driver-class", "jdbc-url", "user-name",
+                    "user-pass", "sequence-number", "single-login"},
+                    new String[] {"displayName", "driverClass", "url", "user",
+                    "pass", "seqNo", "singleLogin"});
+            dbcs.setName(reader.getElementText());
+        } else if (reader.matches("architect-project/project-data-sources/data-source")) {
+            obj = dbcsFactory.createObject(attributes);
+        } else if (reader.matches("architect-project/project-data-sources/data-source/property")) {
+            ((JDBCDataSource) parent).put(attributes.getValue("key"), attributes.getValue("value"));
+        } else if (reader.matches("*/sql-exception")) {
+            obj = exceptionFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("architect-project/ddl-generator")) {
+            obj = ddlgFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("architect-project/liquibase-settings")) {
+            obj = lbFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("*/profiles")) {
+            obj = profileManagerFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("*/profiles/profile-result")) {
+            obj = profileResultFactory.createObject(attributes);
+            reader.setProperties(obj, PROFILE_RESULT_IGNORED, new String[0]);
+        } else if (reader.matches("*/profiles/table-profile-result")) {
+            obj = tableProfileResultFactory.createObject(attributes);
+            reader.setProperties(obj, PROFILE_RESULT_IGNORED, new String[0]);
+        } else if (reader.matches("*/profiles/table-profile-result/column-profile-result")) {
+            obj = columnProfileResultFactory.createObject(attributes);
+            reader.setProperties(obj, PROFILE_RESULT_IGNORED, new String[0]);
+        } else if (reader.matches("*/profiles/table-profile-result/column-profile-result/avgValue")
+                || reader.matches("*/profiles/table-profile-result/column-profile-result/minValue")
+                || reader.matches("*/profiles/table-profile-result/column-profile-result/maxValue")) {
+            obj = profileResultValueFactory.createObject(attributes);
+        } else if (reader.matches("*/profiles/table-profile-result/column-profile-result/topNvalue")) {
+            obj = topNValueFactory.createObject(attributes);
+        } else if (reader.matches("*/file")) {
+            obj = fileFactory.createObject(attributes);
+        }
+        return obj;
+    }
+
+    /**
+     * Finishes the object of an element read by the {@link StaxProjectReader}
+     * after its child elements have been read, doing what the rules of
+     * {@link #setupDigester()} for the element do when it ends. This is
+     * usually adding the object to its parent.
+     */
+    protected void endElement(StaxProjectReader reader, Object obj, Object parent) throws Exception {
+        if (reader.matches("*/column")) {
+            reader.invoke(parent, "addChild", obj);
+            if (columnSourceDataTypeName != null) {
+                ((SQLColumn) obj).setSourceDataTypeName(columnSourceDataTypeName);
+            }
+        } else if (reader.matches("*/index-column") || reader.matches("*/column-mapping")
+                || reader.matches("*/index") || reader.matches("*/table") || reader.matches("*/schema")
+                || reader.matches("architect-project/source-databases/database/catalog")) {
+            reader.invoke(parent, "addChild", obj);
+        } else if (reader.matches("architect-project/source-databases/database")) {
+            reader.invoke(parent, "add", obj);
+        } else if (reader.matches("architect-project/source-databases")) {
+            reader.invoke(parent, "setSourceDatabaseList", obj);
+        } else if (reader.matches("*/sql-exception")) {
+            reader.invoke(parent, "setChildrenInaccessibleReason", obj);
+        } else if (reader.matches("architect-project/ddl-generator")) {
+            reader.invoke(parent, "setDDLGenerator", obj);
+        } else if (reader.matches("architect-project/liquibase-settings")) {
+            reader.invoke(parent, "setLiquibaseSettings", obj);
+        } else if (reader.matches("*/profiles/profile-result")) {
+            reader.invoke(parent, "loadResult", obj);
+        } else if (reader.matches("*/profiles/table-profile-result")) {
+            reader.invoke(parent, "addTableProfileResult", obj);
+        } else if (reader.matches("*/profiles/table-profile-result/column-profile-result")) {
+            reader.invoke(parent, "addColumnProfileResult", obj);
+        } else if (reader.matches("*/profiles/table-profile-result/column-profile-result/avgValue")) {
+            reader.invoke(parent, "setAvgValue", obj);
+        } else if (reader.matches("*/profiles/table-profile-result/column-profile-result/minValue")) {
+            reader.invoke(parent, "setMinValue", obj);
+        } else if (reader.matches("*/profiles/table-profile-result/column-profile-result/maxValue")) {
+            reader.invoke(parent, "setMaxValue", obj);
+        } else if (reader.matches("*/profiles/table-profile-result/column-profile-result/topNvalue")) {
+            reader.invoke(parent, "addValueCount", obj);
+        } else if (reader.matches("*/file")) {
+            reader.invoke(parent, "setFile", obj);
+        }
+    }
+
+    /**
+     * A factory for objects that are made from the object of their enclosing
+     * element, which is the top of the Digester's stack when the Digester uses
+     * it and is passed in by the streaming reader.
+     */
+    protected abstract static class NestedObjectFactory extends AbstractObjectCreationFactory {
+        @Override
+        public Object createObject(Attributes attributes) throws Exception {
+            return createObject(getDigester().peek(), attributes);
+        }
+
+        public abstract Object createObject(Object topItem, Attributes attributes) throws Exception;
+    }
+
     /**
      * Creates a SPDataSource object and puts a mapping from its
      * id (in the attributes) to the new instance into the dbcsIdMap.
@@ -612,8 +1140,10 @@ public class ProjectLoader {
      */
     private class SQLDatabaseFactory extends AbstractObjectCreationFactory {
         public Object createObject(Attributes attributes) {
-            SQLDatabase db = new SQLDatabase();
+            return createObject(new SQLDatabase(), attributes);
+        }
 
+        public SQLDatabase createObject(SQLDatabase db, Attributes attributes) {
             String id = attributes.getValue("id");
             if (id != null) {
                 sqlObjectLoadIdMap.put(id, db);
@@ -646,7 +1176,10 @@ public class ProjectLoader {
             String populated = attributes.getValue("populated");
             startPopulated = (populated != null && populated.equals("true"));
 
-            SQLSchema schema = new SQLSchema(startPopulated);
+            return createObject(new SQLSchema(startPopulated), attributes);
+        }
+
+        public SQLSchema createObject(SQLSchema schema, Attributes attributes) {
             String id = attributes.getValue("id");
             if (id != null) {
                 sqlObjectLoadIdMap.put(id, schema);
@@ -1147,11 +1680,12 @@ public class ProjectLoader {
     }
 
     /**
-     * Clears the file version if the file to save to is being changed to a
-     * new location.
+     * Clears the file version and journal generation if the file to save to is
+     * being changed to a new location.
      */
     public void clearFileVersion() {
         fileVersion = null;
+        journalGeneration = null;
     }
 
     /**
@@ -0,0 +1,662 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ca.sqlpower.sqlobject.SQLObject;
+
+/**
+ * The byte offsets of the source databases in a project file, and of the
+ * schemas in each of them, found by scanning the bytes of the file for their
+ * tags before it is parsed. The content of a populated database or schema
+ * can be left out of the stream the file is parsed from and read later from
+ * its own bytes, so a project with large source databases does not need to
+ * create their objects until they are used.
+ * <p>
+ * The project writer numbers the objects it saves in the order it writes
+ * them, so each section also keeps the range of the numbers in the ids of
+ * its elements. This finds the section a reference to an object that has
+ * not been created yet has to be read from. Sections that were never read
+ * are written back to the next save of the project from their bytes, with
+ * the numbers of their ids moved to where the new save puts them; see
+ * {@link IdRemapping}.
+ */
+public class ProjectSectionIndex {
+
+    /**
+     * The attributes of the elements in a section whose values are ids of
+     * SQLObjects in the project file.
+     */
+    private static final Pattern ID_ATTRIBUTE = Pattern.compile(" (id|ref-id|fk-table|[a-z-]+-ref)=\"([^\"]*)\"");
+
+    /**
+     * The new ids of the elements of sections that are copied into a new save
+     * of the project without being read. A section keeps the order of its
+     * ids, so the ids of a copied section are moved by the same amount as the
+     * section's own id, which is the first of them. Other ids are given their
+     * new ids one at a time, and the ids of objects that were read are given
+     * the ids the save gave those objects.
+     */
+    public static class IdRemapping {
+
+        /**
+         * The ids the save gave the SQLObjects it writes.
+         */
+        private final Map<SQLObject, String> savedIds;
+
+        /**
+         * The map of the ids in the project file the sections are from to
+         * the objects read for them.
+         */
+        private Map<String, SQLObject> loadedIds;
+
+        private final List<Section> movedSections = new ArrayList<Section>();
+
+        private final List<Long> movedFirstIds = new ArrayList<Long>();
+
+        private final Map<String, String> renumbered = new HashMap<String, String>();
+
+        public IdRemapping(Map<SQLObject, String> savedIds) {
+            this.savedIds = savedIds;
+        }
+
+        /**
+         * Gives the ids of the given section numbers starting at the given
+         * number, and returns how many numbers after that one the section's
+         * ids take up.
+         */
+        public long moveSection(Section section, long firstId) {
+            loadedIds = section.getIndex().getIdMap();
+            movedSections.add(section);
+            movedFirstIds.add(firstId);
+            return section.lastId - section.firstId;
+        }
+
+        /**
+         * Gives the given id the given number, keeping its prefix.
+         */
+        public void renumber(String id, long number) {
+            int prefixLength = 0;
+            while (prefixLength < id.length() && !Character.isDigit(id.charAt(prefixLength))) {
+                prefixLength++;
+            }
+            renumbered.put(id, id.substring(0, prefixLength) + number);
+        }
+
+        /**
+         * Returns the id in the new save of the object that had the given id
+         * in the project file the sections are from, or the id itself if it
+         * is not one this knows about.
+         */
+        public String map(String id) {
+            String mapped = renumbered.get(id);
+            if (mapped != null) return mapped;
+            if (loadedIds != null && loadedIds.containsKey(id)) {
+                mapped = savedIds.get(loadedIds.get(id));
+                if (mapped != null) return mapped;
+            }
+            long key = ProjectLoadIdMap.pack(id);
+            if (key != 0) {
+                long number = key & 0xffffffffL;
+                for (int i = 0; i < movedSections.size(); i++) {
+                    Section section = movedSections.get(i);
+                    if (section.containsId(number)) {
+                        long prefix = key & ~0xffffffffL;
+                        return ProjectLoadIdMap.unpack(prefix | (movedFirstIds.get(i) + number - section.firstId));
+                    }
+                }
+            }
+            if (id.startsWith("FOL") && id.length() > 4) {
+                // the id of a folder is its table's id between a prefix and
+                // the folder type
+                String table = id.substring(3, id.length() - 1);
+                String mappedTable = map(table);
+                if (!mappedTable.equals(table)) {
+                    return "FOL" + mappedTable + id.charAt(id.length() - 1);
+                }
+            }
+            return id;
+        }
+    }
+
+    /**
+     * A source database or schema element of the project file.
+     */
+    public static class Section {
+
+        private final ProjectSectionIndex index;
+
+        private final Section parent;
+
+        private final String element;
+
+        private final List<Section> children = new ArrayList<Section>();
+
+        /**
+         * The offsets of the start of the element's start tag, the end of its
+         * start tag, the start of its end tag, and the end of its end tag.
+         */
+        private int start;
+        private int contentStart;
+        private int contentEnd;
+        private int end;
+
+        /**
+         * The offsets of the start and end of the relationships element of a
+         * database, or -1 if it has none.
+         */
+        private int relationshipsStart = -1;
+        private int relationshipsEnd = -1;
+
+        private boolean populated;
+
+        private long firstId = Long.MAX_VALUE;
+        private long lastId = -1;
+
+        /**
+         * The object that stands in for the element until its content is read.
+         */
+        private SQLObject object;
+
+        private boolean loaded;
+
+        Section(ProjectSectionIndex index, Section parent, String element, int start) {
+            this.index = index;
+            this.parent = parent;
+            this.element = element;
+            this.start = start;
+        }
+
+        public ProjectSectionIndex getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the database section of a schema section, or null for a
+         * database section.
+         */
+        public Section getParent() {
+            return parent;
+        }
+
+        /**
+         * Returns the name of the element, which is "database" or "schema".
+         */
+        public String getElement() {
+            return element;
+        }
+
+        /**
+         * Returns the schema sections of a database section.
+         */
+        public List<Section> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        public boolean hasRelationships() {
+            return relationshipsStart >= 0 && relationshipsEnd > relationshipsStart;
+        }
+
+        /**
+         * Returns true if the element was saved populated and has content,
+         * which is what can be read later.
+         */
+        public boolean isDeferrable() {
+            return populated && contentEnd > contentStart;
+        }
+
+        /**
+         * Returns true if the number of an id of one of the section's
+         * elements could be the given number.
+         */
+        public boolean containsId(long number) {
+            return number >= firstId && number <= lastId;
+        }
+
+        public SQLObject getObject() {
+            return object;
+        }
+
+        /**
+         * Sets the object that stands in for the element until the content of
+         * the section is read.
+         */
+        public void setObject(SQLObject object) {
+            this.object = object;
+        }
+
+        public boolean isLoaded() {
+            return loaded;
+        }
+
+        public void setLoaded(boolean loaded) {
+            this.loaded = loaded;
+        }
+
+        /**
+         * Returns the bytes of the section with the content of its deferrable
+         * schemas left out.
+         */
+        public InputStream openStream() {
+            return index.openStream(start, end, children);
+        }
+
+        /**
+         * Returns the bytes of the relationships element of a database
+         * section.
+         */
+        public InputStream openRelationships() {
+            return index.openStream(relationshipsStart, relationshipsEnd, Collections.<Section>emptyList());
+        }
+
+        /**
+         * Writes the content of the element, all of the bytes between its
+         * start and end tags, with its ids changed to their ids in the new
+         * save. This is how a section that was never read is saved.
+         */
+        public void writeContent(Writer out, IdRemapping ids) throws IOException {
+            index.copy(contentStart, contentEnd, out, ids);
+        }
+
+        /**
+         * Returns the ids of the relationship elements of a database section
+         * that were not read, because neither of their tables was, and of the
+         * column mappings in them, in the order they are in the file.
+         */
+        public List<String> getUnreadRelationshipIds() throws IOException {
+            List<String> ids = new ArrayList<String>();
+            for (int[] relationship : findUnreadRelationships()) {
+                Matcher m = ID_ATTRIBUTE.matcher(index.text(relationship[0], relationship[1]));
+                while (m.find()) {
+                    if (m.group(1).equals("id")) {
+                        ids.add(m.group(2));
+                    }
+                }
+            }
+            return ids;
+        }
+
+        /**
+         * Writes the relationship elements of a database section that were
+         * not read, with their ids changed to their ids in the new save. Each
+         * is written on a line of its own.
+         */
+        public void writeUnreadRelationships(Writer out, IdRemapping ids) throws IOException {
+            for (int[] relationship : findUnreadRelationships()) {
+                int lineStart = relationship[0];
+                while (lineStart > relationshipsStart && index.data[lineStart - 1 - index.base] == ' ') {
+                    lineStart--;
+                }
+                index.copy(lineStart, relationship[1], out, ids);
+                out.write(System.getProperty("line.separator"));
+            }
+        }
+
+        /**
+         * Returns the offsets of the start and end of each relationship
+         * element of a database section whose id is not in the id map of the
+         * index.
+         */
+        private List<int[]> findUnreadRelationships() throws IOException {
+            List<int[]> unread = new ArrayList<int[]>();
+            if (!hasRelationships()) return unread;
+            byte[] data = index.data;
+            int base = index.base;
+            int i = relationshipsStart;
+            int found;
+            while ((found = indexOf(data, "<relationship", i - base, relationshipsEnd - base)) >= 0) {
+                i = found + base;
+                int tagEndInData = tagEnd(data, found, relationshipsEnd - base);
+                if (tagEndInData < 0) break;
+                int tagEnd = tagEndInData + base;
+                if (!isTag(data, found + 1, "relationship")) {
+                    i = tagEnd;
+                    continue;
+                }
+                int end;
+                if (data[tagEndInData - 2] == '/') {
+                    end = tagEnd;
+                } else {
+                    int endTag = indexOf(data, "</relationship>", tagEndInData, relationshipsEnd - base);
+                    if (endTag < 0) break;
+                    end = endTag + base + "</relationship>".length();
+                }
+                Matcher m = ID_ATTRIBUTE.matcher(index.text(i, tagEnd));
+                String id = null;
+                while (m.find()) {
+                    if (m.group(1).equals("id")) {
+                        id = m.group(2);
+                    }
+                }
+                if (id != null && (index.idMap == null || !index.idMap.containsKey(id))) {
+                    unread.add(new int[] { i, end });
+                }
+                i = end;
+            }
+            return unread;
+        }
+
+        private void addId(long number) {
+            firstId = Math.min(firstId, number);
+            lastId = Math.max(lastId, number);
+        }
+    }
+
+    private byte[] data;
+
+    /**
+     * The offset in the project file of the first byte of {@link #data}.
+     */
+    private int base;
+
+    private String encoding = "UTF-8";
+
+    private final List<Section> databases = new ArrayList<Section>();
+
+    /**
+     * The map of ids to objects the sections are read into.
+     */
+    private Map<String, SQLObject> idMap;
+
+    private ProjectSectionIndex(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Finds the sections of the given project file. The file is not parsed;
+     * its tags are found by looking for the angle brackets around them, which
+     * the project writer always escapes in text and attribute values.
+     */
+    public static ProjectSectionIndex scan(byte[] data) {
+        ProjectSectionIndex index = new ProjectSectionIndex(data);
+        index.readEncoding();
+        int regionStart = indexOf(data, "<source-databases>", 0, data.length);
+        if (regionStart < 0) return index;
+        int regionEnd = indexOf(data, "</source-databases>", regionStart, data.length);
+        if (regionEnd < 0) return index;
+
+        Section database = null;
+        Section schema = null;
+        int i = regionStart + "<source-databases>".length();
+        while (i < regionEnd) {
+            if (data[i] != '<') {
+                i++;
+                continue;
+            }
+            int tagEnd = tagEnd(data, i, regionEnd);
+            if (tagEnd < 0) break;
+            boolean emptyElement = data[tagEnd - 2] == '/';
+            if (data[i + 1] == '/') {
+                if (isTag(data, i + 2, "database") && database != null) {
+                    database.contentEnd = i;
+                    database.end = tagEnd;
+                    database = null;
+                } else if (isTag(data, i + 2, "schema") && schema != null) {
+                    schema.contentEnd = i;
+                    schema.end = tagEnd;
+                    schema = null;
+                } else if (isTag(data, i + 2, "relationships") && database != null) {
+                    database.relationshipsEnd = tagEnd;
+                }
+            } else if (data[i + 1] != '!' && data[i + 1] != '?') {
+                Section started = null;
+                if (database == null && isTag(data, i + 1, "database")) {
+                    started = database = new Section(index, null, "database", i);
+                    index.databases.add(database);
+                } else if (database != null && schema == null && isTag(data, i + 1, "schema")) {
+                    started = schema = new Section(index, database, "schema", i);
+                    database.children.add(schema);
+                } else if (database != null && schema == null && isTag(data, i + 1, "relationships")) {
+                    database.relationshipsStart = i;
+                    if (emptyElement) {
+                        database.relationshipsEnd = tagEnd;
+                    }
+                }
+                if (started != null) {
+                    started.populated = indexOf(data, " populated=\"true\"", i, tagEnd) >= 0;
+                    started.contentStart = tagEnd;
+                    if (emptyElement) {
+                        started.contentEnd = tagEnd;
+                        started.end = tagEnd;
+                        if (started == schema) {
+                            schema = null;
+                        } else {
+                            database = null;
+                        }
+                    }
+                }
+                long number = idNumber(data, i, tagEnd);
+                if (number >= 0) {
+                    if (database != null) database.addId(number);
+                    if (schema != null) schema.addId(number);
+                    if (started != null) started.addId(number);
+                }
+            }
+            i = tagEnd;
+        }
+        return index;
+    }
+
+    /**
+     * Reads the encoding from the XML declaration of the file, which the
+     * sections do not have.
+     */
+    private void readEncoding() {
+        if (indexOf(data, "<?xml", 0, Math.min(data.length, 5)) != 0) return;
+        int declarationEnd = tagEnd(data, 0, data.length);
+        int attribute = indexOf(data, "encoding=\"", 0, declarationEnd);
+        if (attribute < 0) return;
+        int valueStart = attribute + "encoding=\"".length();
+        int valueEnd = valueStart;
+        while (valueEnd < declarationEnd && data[valueEnd] != '"') {
+            valueEnd++;
+        }
+        encoding = new String(data, valueStart, valueEnd - valueStart);
+    }
+
+    /**
+     * Returns the offset just past the end of the tag that starts at the
+     * given offset, or -1 if it does not end before the limit.
+     */
+    private static int tagEnd(byte[] data, int tagStart, int limit) {
+        boolean quoted = false;
+        for (int i = tagStart + 1; i < limit; i++) {
+            if (data[i] == '"') {
+                quoted = !quoted;
+            } else if (data[i] == '>' && !quoted) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if the tag name at the given offset is the given name.
+     */
+    private static boolean isTag(byte[] data, int nameStart, String name) {
+        int nameEnd = nameStart + name.length();
+        if (nameEnd >= data.length) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (data[nameStart + i] != name.charAt(i)) return false;
+        }
+        byte next = data[nameEnd];
+        return next == ' ' || next == '>' || next == '/' || next == '\t' || next == '\r' || next == '\n';
+    }
+
+    /**
+     * Returns the number in the id attribute of the tag between the given
+     * offsets, or -1 if it has no id with a number. The ids of the folders
+     * the project writer still saves are made from the ids of their tables
+     * and are ignored.
+     */
+    private static long idNumber(byte[] data, int tagStart, int tagEnd) {
+        int attribute = indexOf(data, " id=\"", tagStart, tagEnd);
+        if (attribute < 0) return -1;
+        int valueStart = attribute + " id=\"".length();
+        int valueEnd = valueStart;
+        while (valueEnd < tagEnd && data[valueEnd] != '"') {
+            valueEnd++;
+        }
+        long key = ProjectLoadIdMap.pack(new String(data, valueStart, valueEnd - valueStart));
+        return key == 0 ? -1 : key & 0xffffffffL;
+    }
+
+    private static int indexOf(byte[] data, String s, int from, int limit) {
+        int last = limit - s.length();
+        byte first = (byte) s.charAt(0);
+        outer:
+        for (int i = from; i <= last; i++) {
+            if (data[i] != first) continue;
+            for (int j = 1; j < s.length(); j++) {
+                if (data[i + j] != s.charAt(j)) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the bytes between the given offsets of the project file,
+     * leaving out the content of the given sections that are deferrable.
+     */
+    InputStream openStream(int from, int to, List<Section> cut) {
+        Vector<InputStream> parts = new Vector<InputStream>();
+        int position = from;
+        for (Section section : cut) {
+            if (section.isDeferrable()) {
+                parts.add(new ByteArrayInputStream(data, position - base, section.contentStart - position));
+                position = section.contentEnd;
+            }
+        }
+        parts.add(new ByteArrayInputStream(data, position - base, to - position));
+        return new SequenceInputStream(parts.elements());
+    }
+
+    /**
+     * Returns the text between the given offsets of the project file.
+     */
+    private String text(int from, int to) throws IOException {
+        return new String(data, from - base, to - from, encoding);
+    }
+
+    /**
+     * Writes the text between the given offsets of the project file, changing
+     * the ids in it with the given remapping.
+     */
+    private void copy(int from, int to, Writer out, IdRemapping ids) throws IOException {
+        String text = text(from, to);
+        Matcher m = ID_ATTRIBUTE.matcher(text);
+        int position = 0;
+        while (m.find()) {
+            out.write(text, position, m.start(2) - position);
+            out.write(ids.map(m.group(2)));
+            position = m.end(2);
+        }
+        out.write(text, position, text.length() - position);
+    }
+
+    /**
+     * Returns the whole project file with the content of the deferrable
+     * databases left out.
+     */
+    public InputStream openProject() {
+        return openStream(base, base + data.length, databases);
+    }
+
+    /**
+     * Lets go of the bytes of the project file outside of the source
+     * databases, once the rest of the file has been read.
+     */
+    public void trimToSections() {
+        if (databases.isEmpty()) {
+            data = new byte[0];
+            return;
+        }
+        int from = databases.get(0).start;
+        int to = databases.get(databases.size() - 1).end;
+        byte[] trimmed = new byte[to - from];
+        System.arraycopy(data, from - base, trimmed, 0, trimmed.length);
+        data = trimmed;
+        base = from;
+    }
+
+    /**
+     * Returns the encoding of the project file.
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public List<Section> getDatabases() {
+        return Collections.unmodifiableList(databases);
+    }
+
+    public Map<String, SQLObject> getIdMap() {
+        return idMap;
+    }
+
+    public void setIdMap(Map<String, SQLObject> idMap) {
+        this.idMap = idMap;
+    }
+
+    /**
+     * Returns a section that has not been read yet, whose object exists and
+     * whose elements may have an id with the given number, or null if there
+     * is none. A schema is only returned once its database has been read.
+     */
+    public Section findUnloaded(long number) {
+        for (Section database : databases) {
+            if (!database.containsId(number)) continue;
+            if (database.object != null && !database.loaded) return database;
+            for (Section schema : database.children) {
+                if (schema.containsId(number) && schema.object != null && !schema.loaded) return schema;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the sections whose objects exist and that have not been read
+     * yet.
+     */
+    public List<Section> getUnloaded() {
+        List<Section> unloaded = new ArrayList<Section>();
+        for (Section database : databases) {
+            if (database.object != null && !database.loaded) unloaded.add(database);
+            for (Section schema : database.children) {
+                if (schema.object != null && !schema.loaded) unloaded.add(schema);
+            }
+        }
+        return unloaded;
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect;
+
+import java.beans.PropertyDescriptor;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.beanutils.ConvertUtils;
+import org.apache.commons.beanutils.MethodUtils;
+import org.apache.commons.beanutils.PropertyUtils;
+import org.xml.sax.Attributes;
+
+/**
+ * Reads a project file with a StAX stream reader and hands each element to
+ * the {@link ProjectLoader}, which creates the objects it describes directly.
+ * This replaces the rule matching of the Digester with a walk of the
+ * elements that keeps the object of each enclosing element on a stack, the
+ * same way the Digester's object stack works, so the loader can use the
+ * object creation factories it already has for the Digester.
+ * <p>
+ * The properties that the Digester sets on an object from the attributes of
+ * its element by introspecting the object every time are set with setters
+ * that are looked up once for each class and property name. The methods the
+ * Digester calls to add an object to its parent are looked up the same way.
+ * <p>
+ * Characters that are not allowed in XML are written to the project file as
+ * <code>\\uXXXX</code> escapes; those are turned back into the characters
+ * in the attributes and the text of the elements.
+ */
+public class StaxProjectReader {
+
+    /**
+     * Stands for a property that has no setter in the setter cache.
+     */
+    private static final Method NO_METHOD;
+    static {
+        try {
+            NO_METHOD = Object.class.getMethod("toString");
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private final ProjectLoader loader;
+
+    private XMLStreamReader xml;
+
+    /**
+     * The names of the current element and the elements that enclose it,
+     * separated by slashes as in the Digester's patterns.
+     */
+    private final StringBuilder path = new StringBuilder();
+
+    /**
+     * Set when the loader reads the text of the current element, which moves
+     * the stream past the end of the element.
+     */
+    private boolean elementConsumed;
+
+    private final Attributes attributes = new StreamAttributes();
+
+    /**
+     * The setter of each property name of each class, or {@link #NO_METHOD}
+     * for the names of properties a class can not have set.
+     */
+    private final Map<Class<?>, Map<String, Method>> setters = new HashMap<Class<?>, Map<String, Method>>();
+
+    /**
+     * The single argument methods found by {@link #invoke(Object, String, Object)}
+     * keyed on the class of the target, the method name and the class of the
+     * argument.
+     */
+    private final Map<String, Method> methods = new HashMap<String, Method>();
+
+    public StaxProjectReader(ProjectLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Reads the whole project file.
+     *
+     * @param root
+     *            The object that is the parent of the objects of the
+     *            top-level element.
+     */
+    public void read(InputStream in, Object root) throws Exception {
+        xml = createFactory().createXMLStreamReader(in);
+        try {
+            while (xml.hasNext()) {
+                if (xml.next() == XMLStreamConstants.START_ELEMENT) {
+                    readElement(root);
+                }
+            }
+        } finally {
+            xml.close();
+        }
+    }
+
+    /**
+     * Reads one section cut out of a project file, such as a source database
+     * whose objects were not created when the rest of the file was read. The
+     * object of the top element of the section already exists, so only the
+     * child elements are handed to the loader, with that object as their
+     * parent.
+     * 
+     * @param encoding
+     *            The encoding of the project file, which the section has no
+     *            XML declaration to give.
+     * @param object
+     *            The object of the top element of the section.
+     * @param parentPath
+     *            The path of the element that encloses the section in the
+     *            project file.
+     */
+    public void readSection(InputStream in, String encoding, Object object, String parentPath) throws Exception {
+        xml = createFactory().createXMLStreamReader(in, encoding);
+        try {
+            while (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                // skip to the top element of the section
+            }
+            path.setLength(0);
+            path.append(parentPath).append('/').append(xml.getLocalName());
+            int event;
+            while ((event = xml.next()) != XMLStreamConstants.END_ELEMENT) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    readElement(object);
+                }
+            }
+        } finally {
+            xml.close();
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Reads the element the stream is at the start of along with all of its
+     * children.
+     */
+    private void readElement(Object parent) throws Exception {
+        int parentPathLength = path.length();
+        if (parentPathLength > 0) {
+            path.append('/');
+        }
+        path.append(xml.getLocalName());
+        elementConsumed = false;
+
+        Object obj = loader.startElement(this, xml.getLocalName(), parent, attributes);
+        if (!elementConsumed) {
+            Object childParent = (obj == null ? parent : obj);
+            int event;
+            while ((event = xml.next()) != XMLStreamConstants.END_ELEMENT) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    readElement(childParent);
+                }
+            }
+        }
+        if (obj != null) {
+            loader.endElement(this, obj, parent);
+        }
+        path.setLength(parentPathLength);
+    }
+
+    /**
+     * Returns true if the path of the current element matches the given
+     * Digester pattern, which is either the full path of the element or a
+     * path that starts with "*&#47;" to match the element at the end of any
+     * path.
+     */
+    public boolean matches(String pattern) {
+        boolean wildcard = pattern.startsWith("*/");
+        int patternStart = wildcard ? 2 : 0;
+        int patternLength = pattern.length() - patternStart;
+        int pathLength = path.length();
+        if (pathLength < patternLength || (!wildcard && pathLength != patternLength)) {
+            return false;
+        }
+        for (int i = 1; i <= patternLength; i++) {
+            if (path.charAt(pathLength - i) != pattern.charAt(patternStart + patternLength - i)) {
+                return false;
+            }
+        }
+        return pathLength == patternLength || path.charAt(pathLength - patternLength - 1) == '/';
+    }
+
+    /**
+     * Returns the path of the current element, for error messages.
+     */
+    public String getPath() {
+        return path.toString();
+    }
+
+    /**
+     * Returns the location of the stream in the file, or null if there is no
+     * file being read.
+     */
+    public Location getLocation() {
+        return xml == null ? null : xml.getLocation();
+    }
+
+    /**
+     * Reads the text of the current element, which must not have any child
+     * elements, with the white space around it trimmed as the Digester does
+     * for the text it passes to methods. The attributes of the element can not
+     * be read after this.
+     */
+    public String getElementText() throws XMLStreamException {
+        elementConsumed = true;
+        return unescape(xml.getElementText().trim());
+    }
+
+    /**
+     * Moves the stream past the end of the current element without handing
+     * its child elements to the loader. The attributes of the element can not
+     * be read after this.
+     */
+    public void skipElement() throws XMLStreamException {
+        elementConsumed = true;
+        int depth = 1;
+        while (depth > 0) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Sets each property of the bean that has the name of an attribute of the
+     * current element to the attribute's value, converted to the type of the
+     * property the way BeanUtils converts it. Attributes that do not name a
+     * writable property are ignored.
+     */
+    public void setProperties(Object bean) throws Exception {
+        setProperties(bean, new String[0], new String[0]);
+    }
+
+    /**
+     * Sets the properties of the bean from the attributes of the current
+     * element like {@link #setProperties(Object)}, except that the attributes
+     * with the given names set the property at the same position in the
+     * property names instead, or no property if there is none there. This is
+     * the mapping of the Digester's SetPropertiesRule.
+     */
+    public void setProperties(Object bean, String[] attributeNames, String[] propertyNames) throws Exception {
+        int count = xml.getAttributeCount();
+        for (int i = 0; i < count; i++) {
+            String name = xml.getAttributeLocalName(i);
+            for (int j = 0; j < attributeNames.length; j++) {
+                if (attributeNames[j].equals(name)) {
+                    name = j < propertyNames.length ? propertyNames[j] : null;
+                    break;
+                }
+            }
+            if (name != null) {
+                setProperty(bean, name, unescape(xml.getAttributeValue(i)));
+            }
+        }
+    }
+
+    private void setProperty(Object bean, String name, String value) throws Exception {
+        Map<String, Method> classSetters = setters.get(bean.getClass());
+        if (classSetters == null) {
+            classSetters = new HashMap<String, Method>();
+            setters.put(bean.getClass(), classSetters);
+        }
+        Method setter = classSetters.get(name);
+        if (setter == null) {
+            setter = NO_METHOD;
+            PropertyDescriptor descriptor = null;
+            try {
+                descriptor = PropertyUtils.getPropertyDescriptor(bean, name);
+            } catch (Exception e) {
+                // not a property name BeanUtils understands
+            }
+            if (descriptor != null && PropertyUtils.getWriteMethod(descriptor) != null) {
+                setter = PropertyUtils.getWriteMethod(descriptor);
+            }
+            classSetters.put(name, setter);
+        }
+        if (setter != NO_METHOD) {
+            Class<?> type = setter.getParameterTypes()[0];
+            setter.invoke(bean, type == String.class ? value : ConvertUtils.convert(value, type));
+        }
+    }
+
+    /**
+     * Calls the single argument method with the given name that accepts the
+     * argument, as the Digester's SetNextRule does.
+     */
+    public void invoke(Object target, String methodName, Object arg) throws Exception {
+        String key = target.getClass().getName() + '#' + methodName + '#' + arg.getClass().getName();
+        Method method = methods.get(key);
+        if (method == null) {
+            method = MethodUtils.getMatchingAccessibleMethod(target.getClass(), methodName,
+                    new Class[] { arg.getClass() });
+            if (method == null) {
+                throw new NoSuchMethodException("No method " + methodName + "(" + arg.getClass().getName() +
+                        ") in " + target.getClass().getName());
+            }
+            methods.put(key, method);
+        }
+        method.invoke(target, arg);
+    }
+
+    /**
+     * Replaces the <code>\\uXXXX</code> escapes in the given text with the
+     * characters they stand for and <code>\\\\</code> with a single
+     * backslash.
+     */
+    static String unescape(String text) {
+        if (text == null || text.indexOf('\\') < 0) return text;
+        StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length() && text.charAt(i + 1) == '\\') {
+                unescaped.append('\\');
+                i++;
+            } else if (c == '\\' && i + 5 < text.length() && text.charAt(i + 1) == 'u' && isHex(text, i + 2, i + 6)) {
+                unescaped.append((char) Integer.parseInt(text.substring(i + 2, i + 6), 16));
+                i += 5;
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    private static boolean isHex(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (Character.digit(text.charAt(i), 16) < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The attributes of the current element, as the object creation factories
+     * of the loader expect them.
+     */
+    private class StreamAttributes implements Attributes {
+
+        public int getLength() {
+            return xml.getAttributeCount();
+        }
+
+        public String getURI(int index) {
+            String uri = xml.getAttributeNamespace(index);
+            return uri == null ? "" : uri;
+        }
+
+        public String getLocalName(int index) {
+            return xml.getAttributeLocalName(index);
+        }
+
+        public String getQName(int index) {
+            String prefix = xml.getAttributePrefix(index);
+            String localName = xml.getAttributeLocalName(index);
+            return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+        }
+
+        public String getType(int index) {
+            return xml.getAttributeType(index);
+        }
+
+        public String getValue(int index) {
+            return unescape(xml.getAttributeValue(index));
+        }
+
+        public int getIndex(String uri, String localName) {
+            for (int i = 0; i < xml.getAttributeCount(); i++) {
+                if (localName.equals(xml.getAttributeLocalName(i)) && uri.equals(getURI(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public int getIndex(String qName) {
+            boolean prefixed = qName.indexOf(':') >= 0;
+            for (int i = 0; i < xml.getAttributeCount(); i++) {
+                if (prefixed ? qName.equals(getQName(i)) : qName.equals(xml.getAttributeLocalName(i))
+                        && (xml.getAttributePrefix(i) == null || xml.getAttributePrefix(i).length() == 0)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public String getType(String uri, String localName) {
+            int index = getIndex(uri, localName);
+            return index < 0 ? null : getType(index);
+        }
+
+        public String getType(String qName) {
+            int index = getIndex(qName);
+            return index < 0 ? null : getType(index);
+        }
+
+        public String getValue(String uri, String localName) {
+            int index = getIndex(uri, localName);
+            return index < 0 ? null : getValue(index);
+        }
+
+        public String getValue(String qName) {
+            int index = getIndex(qName);
+            return index < 0 ? null : getValue(index);
+        }
+    }
+}
@@ -0,0 +1,985 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.catalog;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.DeferredLoadable;
+import ca.sqlpower.architect.catalog.SchemaMetadata.ColumnRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.ForeignKeyRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.IndexRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.PrimaryKeyRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.TableRow;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sqlobject.SQLCatalog;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLSchema;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+import ca.sqlpower.sqlobject.SQLRelationship.UpdateDeleteRule;
+import ca.sqlpower.util.RunnableDispatcher;
+
+/**
+ * Populates the tables of a schema with a few set-based queries against the
+ * database's catalog views instead of asking the JDBC driver's
+ * {@link DatabaseMetaData} for the columns, keys and indices of one table at
+ * a time, which takes a long time on large remote schemas.
+ * <p>
+ * The queries for each kind of database are defined in
+ * {@link CatalogQueries}. A data source type chooses one of them with the
+ * {@link #CATALOG_QUERIES_KEY} property, and types without it use the
+ * queries for their JDBC driver if there are any (see
+ * {@link CatalogQueries#forDriver(String)}). Setting the property to
+ * <code>NONE</code> turns bulk reading off for a type. Databases without
+ * queries, schemas whose queries fail, and anything the catalog views cannot
+ * describe (such as indices in the standard information schema) are left
+ * unpopulated so the SQLObjects read them the usual way when they are asked
+ * for.
+ * <p>
+ * The catalog is read on the calling thread, which should not be the
+ * foreground thread, and when several schemas are populated at once they are
+ * read in parallel. The SQLObjects are always built on the database's
+ * foreground thread, and the calling thread waits for them to be built.
+ * <p>
+ * A reader given a {@link CatalogSnapshotCache} builds the tables of schemas
+ * it has a snapshot of from the snapshot without going to the database, and
+ * stores each schema it reads from the database in the cache. The schemas
+ * built from snapshots must then be checked with {@link #validate()} or
+ * {@link #validateInBackground()}, which compare the fingerprint of each one
+ * with the database and read and cache the ones that changed again.
+ */
+public class BulkCatalogReader {
+
+    private static final Logger logger = Logger.getLogger(BulkCatalogReader.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The data source type property naming the {@link CatalogQueries} used
+     * to read the catalogs of databases of that type, or <code>NONE</code>
+     * to read them the usual way.
+     */
+    public static final String CATALOG_QUERIES_KEY = "ca.sqlpower.architect.catalog.queries";
+
+    /**
+     * The default number of schemas read from the database at the same time.
+     * Each one uses its own connection from the database's pool.
+     */
+    public static final int DEFAULT_THREAD_COUNT = 4;
+
+    /**
+     * Runs the validations started by {@link #validateInBackground()}. There
+     * is one thread for all readers so checking many databases at once does
+     * not use up the connections of the database pools.
+     */
+    private static final ExecutorService validationExecutor =
+        Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Catalog snapshot validation");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+    private final SQLDatabase db;
+
+    /**
+     * The queries for the database, or null if its data source type does not
+     * declare any.
+     */
+    private final CatalogQueries queries;
+
+    /**
+     * The cache schemas are taken from and stored in, or null if every
+     * schema is read from the database.
+     */
+    private final CatalogSnapshotCache cache;
+
+    /**
+     * The schemas (or catalogs) this reader built from a snapshot that have
+     * not been validated yet.
+     */
+    private final List<SQLObject> unvalidated = new ArrayList<SQLObject>();
+
+    /**
+     * True if the last call to {@link #populate(SQLObject)} populated every
+     * schema under the object it was given.
+     */
+    private boolean complete;
+
+    private int threadCount = DEFAULT_THREAD_COUNT;
+
+    public BulkCatalogReader(SQLDatabase db) {
+        this(db, null);
+    }
+
+    /**
+     * Creates a reader that takes snapshots of the database's schemas from
+     * the given cache when it has them and stores the schemas it reads in
+     * it.
+     */
+    public BulkCatalogReader(SQLDatabase db, CatalogSnapshotCache cache) {
+        this.db = db;
+        this.queries = getCatalogQueries(db.getDataSource());
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the catalog queries the given data source's type declares, or
+     * the ones for its JDBC driver if it does not declare any. Returns null
+     * if there are none or the type turns them off.
+     */
+    public static CatalogQueries getCatalogQueries(JDBCDataSource ds) {
+        if (ds == null || ds.getParentType() == null) return null;
+        String name = ds.getParentType().getProperty(CATALOG_QUERIES_KEY);
+        if (name == null || name.trim().length() == 0) {
+            return CatalogQueries.forDriver(ds.getParentType().getJdbcDriver());
+        }
+        if (name.trim().equalsIgnoreCase("NONE")) return null;
+        try {
+            return CatalogQueries.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown catalog queries \"" + name + "\" for data source type " +
+                    ds.getParentType().getName());
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if there are catalog queries for the database's data
+     * source type, so {@link #populate(SQLObject)} can do anything.
+     */
+    public boolean isSupported() {
+        return queries != null;
+    }
+
+    /**
+     * Populates the tables in the given database, catalog or schema that have
+     * not been populated yet. Each schema is read with the catalog queries if
+     * possible; schemas that cannot be are left for the SQLObjects to read the
+     * usual way.
+     *
+     * If this reader has a cache, schemas it has a snapshot of are built
+     * from the snapshot and have to be validated afterwards.
+     * <p>
+     * This reads the database on the calling thread and builds the
+     * SQLObjects on the foreground thread, so it is meant to be called from
+     * a worker.
+     *
+     * @return The number of schemas (or catalogs) populated by this reader.
+     */
+    public int populate(SQLObject root) throws SQLObjectException {
+        complete = false;
+        if (queries == null) return 0;
+        List<SQLObject> containers = new ArrayList<SQLObject>();
+        boolean allUnpopulated = findTableContainers(root, containers);
+        if (containers.isEmpty()) return 0;
+
+        int populated = 0;
+        List<SQLObject> toRead = new ArrayList<SQLObject>();
+        for (SQLObject container : containers) {
+            if (populateFromCache(container)) {
+                populated++;
+            } else {
+                toRead.add(container);
+            }
+        }
+
+        final List<SchemaMetadata> metadata = readAll(toRead);
+        final List<SQLObject> read = toRead;
+        runInForeground(new TreeChange() {
+            public void run() throws SQLObjectException {
+                for (int i = 0; i < read.size(); i++) {
+                    if (metadata.get(i) != null) {
+                        fill(read.get(i), metadata.get(i));
+                    }
+                }
+            }
+        });
+        Map<SQLObject, SchemaMetadata> readMetadata = new LinkedHashMap<SQLObject, SchemaMetadata>();
+        for (int i = 0; i < toRead.size(); i++) {
+            if (metadata.get(i) != null) {
+                readMetadata.put(toRead.get(i), metadata.get(i));
+                populated++;
+            }
+        }
+        store(readMetadata);
+        complete = allUnpopulated && populated == containers.size();
+        logger.debug("Populated " + populated + " of " + containers.size() + " schemas in bulk, " +
+                (containers.size() - toRead.size()) + " from snapshots");
+        return populated;
+    }
+
+    /**
+     * Populates the given schema or catalog from this reader's cache if it
+     * has a snapshot of it, without going to the database. The schema has to
+     * be validated afterwards.
+     *
+     * @return True if the schema was populated from a snapshot.
+     */
+    public boolean populateFromCache(final SQLObject container) throws SQLObjectException {
+        if (cache == null || queries == null || !needsPopulating(container)) return false;
+        final SchemaMetadata snapshot = cache.get(db.getDataSource(), getCacheKey(container));
+        if (snapshot == null) return false;
+        runInForeground(new TreeChange() {
+            public void run() throws SQLObjectException {
+                fill(container, snapshot);
+            }
+        });
+        synchronized (unvalidated) {
+            unvalidated.add(container);
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the last call to {@link #populate(SQLObject)} populated
+     * every schema under the object it was given, either from the database
+     * or from snapshots, and none of them had been populated before. Once
+     * the snapshots are validated, the tables under the object are then as
+     * current as a refresh of the database would make them.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns true if some schemas this reader built from snapshots have not
+     * been validated yet.
+     */
+    public boolean hasUnvalidated() {
+        synchronized (unvalidated) {
+            return !unvalidated.isEmpty();
+        }
+    }
+
+    /**
+     * Checks the fingerprint of each schema this reader built from a
+     * snapshot against the database. The schemas that have changed are read
+     * again and their new rows replace the snapshot in the cache, but the
+     * SQLObjects already built from the old snapshot are left alone; it is up
+     * to the caller to bring them up to date, usually with an
+     * {@link IncrementalCatalogRefresher}.
+     *
+     * @return The schemas (or catalogs) whose snapshots were out of date,
+     *         each mapped to its current rows, or to null if they could not
+     *         be read in bulk.
+     */
+    public Map<SQLObject, SchemaMetadata> validate() throws SQLObjectException {
+        List<SQLObject> toValidate;
+        synchronized (unvalidated) {
+            toValidate = new ArrayList<SQLObject>(unvalidated);
+            unvalidated.clear();
+        }
+        Map<SQLObject, SchemaMetadata> stale = new LinkedHashMap<SQLObject, SchemaMetadata>();
+        List<String> unreadable = new ArrayList<String>();
+        for (SQLObject container : toValidate) {
+            String key = getCacheKey(container);
+            SchemaMetadata snapshot = cache.get(db.getDataSource(), key);
+            String fingerprint = readFingerprint(container);
+            if (snapshot != null && fingerprint != null && fingerprint.equals(snapshot.getFingerprint())) {
+                continue;
+            }
+            logger.debug("Catalog snapshot of " + key + " is out of date");
+            SchemaMetadata metadata = read(container);
+            stale.put(container, metadata);
+            if (metadata == null) {
+                unreadable.add(key);
+            }
+        }
+        store(stale);
+        if (!unreadable.isEmpty()) {
+            cache.removeAll(db.getDataSource(), unreadable);
+        }
+        return stale;
+    }
+
+    /**
+     * Runs {@link #validate()} on a background thread shared by all readers.
+     */
+    public Future<Map<SQLObject, SchemaMetadata>> validateInBackground() {
+        return validationExecutor.submit(new Callable<Map<SQLObject, SchemaMetadata>>() {
+            public Map<SQLObject, SchemaMetadata> call() throws Exception {
+                return validate();
+            }
+        });
+    }
+
+    /**
+     * Returns the key the snapshot of the given schema or catalog is stored
+     * under in the cache, which is the names of the catalog and schema it is
+     * in or is, separated by dots.
+     */
+    static String getCacheKey(SQLObject container) {
+        StringBuilder key = new StringBuilder();
+        for (SQLObject o = container; o != null && !(o instanceof SQLDatabase); o = o.getParent()) {
+            if (key.length() > 0) key.insert(0, '.');
+            key.insert(0, o.getName());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Stores the given metadata of each schema (or catalog) in the cache,
+     * writing the cache's file once. Schemas mapped to null, or read without
+     * a fingerprint, are skipped.
+     */
+    void store(Map<SQLObject, SchemaMetadata> metadata) {
+        if (cache == null) return;
+        Map<String, SchemaMetadata> snapshots = new LinkedHashMap<String, SchemaMetadata>();
+        for (Map.Entry<SQLObject, SchemaMetadata> entry : metadata.entrySet()) {
+            if (entry.getValue() != null && entry.getValue().getFingerprint() != null) {
+                snapshots.put(getCacheKey(entry.getKey()), entry.getValue());
+            }
+        }
+        if (!snapshots.isEmpty()) {
+            cache.putAll(db.getDataSource(), snapshots);
+        }
+    }
+
+    /**
+     * Adds the objects under the given object that directly hold tables and
+     * have tables that still need to be populated to the given list.
+     *
+     * @return True if none of the objects under the given object that hold
+     *         tables were fully populated already.
+     */
+    private boolean findTableContainers(SQLObject o, List<SQLObject> containers) throws SQLObjectException {
+        boolean allUnpopulated = true;
+        if (o instanceof DeferredLoadable && !((DeferredLoadable) o).isLoaded()) {
+            // tables saved in the project file are read from it, not the database
+            final DeferredLoadable deferred = (DeferredLoadable) o;
+            runInForeground(new TreeChange() {
+                public void run() throws SQLObjectException {
+                    deferred.loadNow();
+                }
+            });
+        }
+        if (o instanceof SQLSchema) {
+            if (needsPopulating(o)) {
+                containers.add(o);
+            } else {
+                allUnpopulated = false;
+            }
+        } else if (o instanceof SQLCatalog) {
+            SQLCatalog catalog = (SQLCatalog) o;
+            catalog.populate();
+            if (catalog.isSchemaContainer()) {
+                for (SQLSchema schema : catalog.getChildren(SQLSchema.class)) {
+                    allUnpopulated &= findTableContainers(schema, containers);
+                }
+            } else if (needsPopulating(catalog)) {
+                containers.add(catalog);
+            } else {
+                allUnpopulated = false;
+            }
+        } else if (o instanceof SQLDatabase) {
+            SQLDatabase database = (SQLDatabase) o;
+            database.populate();
+            if (database.isCatalogContainer()) {
+                for (SQLCatalog catalog : database.getChildren(SQLCatalog.class)) {
+                    allUnpopulated &= findTableContainers(catalog, containers);
+                }
+            } else if (database.isSchemaContainer()) {
+                for (SQLSchema schema : database.getChildren(SQLSchema.class)) {
+                    allUnpopulated &= findTableContainers(schema, containers);
+                }
+            } else {
+                // Databases that hold their tables directly are read the usual way
+                allUnpopulated = false;
+            }
+        } else {
+            allUnpopulated = false;
+        }
+        return allUnpopulated;
+    }
+
+    private boolean needsPopulating(SQLObject container) {
+        if (!container.isPopulated()) return true;
+        for (SQLTable table : container.getChildrenWithoutPopulating(SQLTable.class)) {
+            if (!table.isColumnsPopulated() || !table.isImportedKeysPopulated() || !table.isIndicesPopulated()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A change to the SQLObjects of the database, which has to be made on its
+     * foreground thread.
+     */
+    interface TreeChange {
+        void run() throws SQLObjectException;
+    }
+
+    /**
+     * Makes the given change on the database's foreground thread and waits
+     * for it to finish. The change is made right away if this is the
+     * foreground thread, or if the database is not in a session.
+     */
+    void runInForeground(final TreeChange change) throws SQLObjectException {
+        RunnableDispatcher dispatcher = db.getParent() == null ? null : db.getRunnableDispatcher();
+        if (dispatcher == null || dispatcher.isForegroundThread()) {
+            change.run();
+            return;
+        }
+        FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+            public Void call() throws Exception {
+                change.run();
+                return null;
+            }
+        });
+        dispatcher.runInForeground(task);
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            throw new SQLObjectException("Interrupted while building the database catalog", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLObjectException) {
+                throw (SQLObjectException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new SQLObjectException("Error building the database catalog", e.getCause());
+        }
+    }
+
+    /**
+     * Reads the metadata of each of the given containers on a pool of
+     * {@link #getThreadCount()} threads. The list returned has the metadata
+     * of each container at the same index, or null if it could not be read.
+     */
+    List<SchemaMetadata> readAll(List<SQLObject> containers) throws SQLObjectException {
+        return forEachInParallel(containers, new ContainerTask<SchemaMetadata>() {
+            public SchemaMetadata run(SQLObject container) throws SQLObjectException {
+                return read(container);
+            }
+        });
+    }
+
+    /**
+     * Reads the fingerprint of each of the given containers on a pool of
+     * {@link #getThreadCount()} threads. The list returned has the
+     * fingerprint of each container at the same index, or null if it could
+     * not be read.
+     */
+    List<String> readFingerprints(List<SQLObject> containers) throws SQLObjectException {
+        return forEachInParallel(containers, new ContainerTask<String>() {
+            public String run(SQLObject container) throws SQLObjectException {
+                return readFingerprint(container);
+            }
+        });
+    }
+
+    /**
+     * Something done to each schema (or catalog) of a list, possibly on
+     * several threads at once.
+     */
+    private interface ContainerTask<T> {
+        T run(SQLObject container) throws SQLObjectException;
+    }
+
+    private <T> List<T> forEachInParallel(List<SQLObject> containers, final ContainerTask<T> task)
+            throws SQLObjectException {
+        List<T> results = new ArrayList<T>();
+        if (threadCount <= 1 || containers.size() <= 1) {
+            for (SQLObject container : containers) {
+                results.add(task.run(container));
+            }
+            return results;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threadCount, containers.size()));
+        try {
+            List<Future<T>> futures = new ArrayList<Future<T>>();
+            for (final SQLObject container : containers) {
+                futures.add(pool.submit(new Callable<T>() {
+                    public T call() throws Exception {
+                        return task.run(container);
+                    }
+                }));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            throw new SQLObjectException("Interrupted while reading the database catalog", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLObjectException) {
+                throw (SQLObjectException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new SQLObjectException("Error reading the database catalog", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Reads the metadata of the tables in the given schema or catalog on its
+     * own connection. Returns null if the catalog queries cannot be used for
+     * it, in which case it will be populated the usual way.
+     */
+    SchemaMetadata read(SQLObject container) throws SQLObjectException {
+        Connection con = null;
+        try {
+            con = db.getConnection();
+            if (!isInConnectionCatalog(con, container)) return null;
+            SchemaMetadata metadata = readSchema(con, container.getName());
+            if (cache != null) {
+                metadata.setFingerprint(readFingerprint(con, container.getName()));
+            }
+            return metadata;
+        } catch (SQLException e) {
+            logger.warn("Could not read the catalog of " + container.getName() +
+                    " in bulk, it will be read the usual way", e);
+            return null;
+        } finally {
+            try {
+                if (con != null) con.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't close connection", ex);
+            }
+        }
+    }
+
+    /**
+     * Reads the fingerprint of the given schema or catalog on its own
+     * connection. Returns null if it cannot be read, in which case any
+     * snapshot of it is treated as out of date.
+     */
+    String readFingerprint(SQLObject container) throws SQLObjectException {
+        Connection con = null;
+        try {
+            con = db.getConnection();
+            if (!isInConnectionCatalog(con, container)) return null;
+            return readFingerprint(con, container.getName());
+        } catch (SQLException e) {
+            logger.warn("Could not read the catalog fingerprint of " + container.getName(), e);
+            return null;
+        } finally {
+            try {
+                if (con != null) con.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't close connection", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns a digest of the rows of the fingerprint queries, in hex. Each
+     * value is followed by a separator, and nulls are told apart from empty
+     * strings, so values cannot run into each other.
+     */
+    private String readFingerprint(Connection con, String schemaName) throws SQLException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        for (String query : queries.getFingerprintQueries()) {
+            readRows(con, query, schemaName, new RowReader() {
+                public void read(ResultSet rs) throws SQLException {
+                    for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
+                        String value = rs.getString(i);
+                        if (value == null) {
+                            digest.update((byte) 1);
+                        } else {
+                            digest.update(value.getBytes(UTF8));
+                        }
+                        digest.update((byte) 0);
+                    }
+                    digest.update((byte) '\n');
+                }
+            });
+            digest.update((byte) 2);
+        }
+        StringBuilder fingerprint = new StringBuilder();
+        for (byte b : digest.digest()) {
+            fingerprint.append(Character.forDigit((b >> 4) & 0xf, 16));
+            fingerprint.append(Character.forDigit(b & 0xf, 16));
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * The catalog views only describe the connection's own catalog, so a
+     * schema in a different catalog has to be read the usual way.
+     */
+    private boolean isInConnectionCatalog(Connection con, SQLObject container) throws SQLException {
+        if (container instanceof SQLSchema && container.getParent() instanceof SQLCatalog
+                && !container.getParent().getName().equals(con.getCatalog())) {
+            logger.debug("Schema " + container.getName() + " is not in the current catalog " +
+                    con.getCatalog() + ", it will be read the usual way");
+            return false;
+        }
+        return true;
+    }
+
+    private SchemaMetadata readSchema(Connection con, String schemaName) throws SQLException {
+        final SchemaMetadata metadata = new SchemaMetadata(schemaName);
+
+        readRows(con, queries.getTablesQuery(), schemaName, new RowReader() {
+            public void read(ResultSet rs) throws SQLException {
+                metadata.getTables().add(new TableRow(rs.getString("TABLE_NAME"),
+                        toObjectType(rs.getString("TABLE_TYPE")), rs.getString("REMARKS")));
+            }
+        });
+
+        readRows(con, queries.getColumnsQuery(), schemaName, new RowReader() {
+            public void read(ResultSet rs) throws SQLException {
+                metadata.getColumns().add(new ColumnRow(rs.getString("TABLE_NAME"), rs.getString("COLUMN_NAME"),
+                        rs.getString("TYPE_NAME"), rs.getInt("COLUMN_SIZE"), rs.getInt("DECIMAL_DIGITS"),
+                        "YES".equalsIgnoreCase(rs.getString("IS_NULLABLE")), rs.getString("COLUMN_DEF"),
+                        rs.getString("REMARKS"), "YES".equalsIgnoreCase(rs.getString("IS_AUTOINCREMENT"))));
+            }
+        });
+
+        readRows(con, queries.getPrimaryKeysQuery(), schemaName, new RowReader() {
+            public void read(ResultSet rs) throws SQLException {
+                metadata.getPrimaryKeys().add(new PrimaryKeyRow(rs.getString("TABLE_NAME"),
+                        rs.getString("COLUMN_NAME"), rs.getString("PK_NAME")));
+            }
+        });
+
+        readRows(con, queries.getForeignKeysQuery(), schemaName, new RowReader() {
+            public void read(ResultSet rs) throws SQLException {
+                metadata.getForeignKeys().add(new ForeignKeyRow(rs.getString("FK_NAME"),
+                        rs.getString("FKTABLE_NAME"), rs.getString("FKCOLUMN_NAME"), rs.getString("PKTABLE_SCHEM"),
+                        rs.getString("PKTABLE_NAME"), rs.getString("PKCOLUMN_NAME"),
+                        rs.getString("UPDATE_RULE"), rs.getString("DELETE_RULE")));
+            }
+        });
+
+        if (queries.getIndicesQuery() != null) {
+            final List<IndexRow> indices = new ArrayList<IndexRow>();
+            readRows(con, queries.getIndicesQuery(), schemaName, new RowReader() {
+                public void read(ResultSet rs) throws SQLException {
+                    indices.add(new IndexRow(rs.getString("TABLE_NAME"), rs.getString("INDEX_NAME"),
+                            rs.getInt("NON_UNIQUE") == 0, rs.getString("COLUMN_NAME"),
+                            "D".equalsIgnoreCase(rs.getString("ASC_OR_DESC"))));
+                }
+            });
+            metadata.setIndices(indices);
+        }
+        return metadata;
+    }
+
+    /**
+     * Reads one row of a catalog query.
+     */
+    private interface RowReader {
+        void read(ResultSet rs) throws SQLException;
+    }
+
+    private void readRows(Connection con, String sql, String schemaName, RowReader reader) throws SQLException {
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = con.prepareStatement(sql);
+            int parameterCount = 0;
+            for (int i = 0; i < sql.length(); i++) {
+                if (sql.charAt(i) == '?') {
+                    stmt.setString(++parameterCount, schemaName);
+                }
+            }
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+                reader.read(rs);
+            }
+        } finally {
+            try {
+                if (rs != null) rs.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+            try {
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up statement", ex);
+            }
+        }
+    }
+
+    /**
+     * Builds the tables, columns, keys and indices described by the metadata
+     * under the given schema or catalog. Tables already in the container are
+     * reused, and only the parts of them that are not populated yet are
+     * filled in. Each part is marked populated before its children are added
+     * so adding them does not make the table read them itself.
+     * <p>
+     * This must be called on the database's foreground thread.
+     */
+    void fill(SQLObject container, SchemaMetadata metadata) throws SQLObjectException {
+        if (!container.isPopulated()) {
+            container.setPopulated(true);
+        }
+
+        Map<String, SQLTable> tables = new HashMap<String, SQLTable>();
+        for (SQLTable table : container.getChildrenWithoutPopulating(SQLTable.class)) {
+            tables.put(table.getName(), table);
+        }
+        Set<SQLTable> fillColumns = new HashSet<SQLTable>();
+        Set<SQLTable> fillKeys = new HashSet<SQLTable>();
+        Set<SQLTable> fillIndices = new HashSet<SQLTable>();
+        for (TableRow row : metadata.getTables()) {
+            SQLTable table = tables.get(row.getName());
+            if (table == null) {
+                table = new SQLTable(container, row.getName(), row.getRemarks(), row.getType(), false);
+                container.addChild(table);
+                tables.put(table.getName(), table);
+            }
+            if (!table.isColumnsPopulated()) {
+                table.setColumnsPopulated(true);
+                fillColumns.add(table);
+            }
+            if (!table.isImportedKeysPopulated()) {
+                fillKeys.add(table);
+            }
+            if (!table.isIndicesPopulated() && metadata.getIndices() != null) {
+                table.setIndicesPopulated(true);
+                fillIndices.add(table);
+            }
+        }
+
+        for (ColumnRow row : metadata.getColumns()) {
+            SQLTable table = tables.get(row.getTableName());
+            if (!fillColumns.contains(table)) continue;
+            table.addColumn(createColumn(table, row));
+        }
+
+        for (PrimaryKeyRow row : metadata.getPrimaryKeys()) {
+            SQLTable table = tables.get(row.getTableName());
+            if (!fillColumns.contains(table)) continue;
+            SQLColumn col = table.getColumnByName(row.getColumnName());
+            if (col == null) continue;
+            table.addToPK(col);
+            table.getPrimaryKeyIndex().setName(row.getKeyName());
+        }
+
+        fillForeignKeys(container, metadata, tables, fillKeys);
+
+        if (metadata.getIndices() != null) {
+            SQLIndex index = null;
+            for (IndexRow row : metadata.getIndices()) {
+                SQLTable table = tables.get(row.getTableName());
+                if (!fillIndices.contains(table)) continue;
+                if (table.getPrimaryKeyIndex() != null && row.getName().equals(table.getPrimaryKeyIndex().getName())) {
+                    continue;
+                }
+                if (index == null || index.getParent() != table || !index.getName().equals(row.getName())) {
+                    index = new SQLIndex(row.getName(), row.isUnique(), null, null, null);
+                    table.addIndex(index);
+                }
+                SQLColumn col = table.getColumnByName(row.getColumnName());
+                if (col != null) {
+                    index.addIndexColumn(col, row.isDescending() ? AscendDescend.DESCENDING : AscendDescend.ASCENDING);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the relationships described by the metadata. A table that
+     * refers to a table in another schema keeps all of its imported keys
+     * unpopulated so they are read the usual way, which can find the other
+     * schema. The exported keys of the tables are left unpopulated too,
+     * since tables in schemas that were not read may refer to them.
+     */
+    private void fillForeignKeys(SQLObject container, SchemaMetadata metadata,
+            Map<String, SQLTable> tables, Set<SQLTable> fillKeys) throws SQLObjectException {
+        Set<SQLTable> crossSchema = new HashSet<SQLTable>();
+        for (ForeignKeyRow row : metadata.getForeignKeys()) {
+            if ((row.getPkSchemaName() != null && !row.getPkSchemaName().equals(container.getName()))
+                    || !tables.containsKey(row.getPkTableName())) {
+                crossSchema.add(tables.get(row.getFkTableName()));
+            }
+        }
+        for (SQLTable table : fillKeys) {
+            if (!crossSchema.contains(table)) {
+                table.setImportedKeysPopulated(true);
+            }
+        }
+
+        SQLRelationship relationship = null;
+        String relationshipKey = null;
+        for (ForeignKeyRow row : metadata.getForeignKeys()) {
+            SQLTable fkTable = tables.get(row.getFkTableName());
+            if (!fillKeys.contains(fkTable) || crossSchema.contains(fkTable)) continue;
+            SQLTable pkTable = tables.get(row.getPkTableName());
+            String key = row.getFkTableName() + "." + row.getName();
+            if (relationship == null || !key.equals(relationshipKey)) {
+                relationship = new SQLRelationship();
+                relationship.setName(row.getName());
+                relationship.attachRelationship(pkTable, fkTable, false);
+                relationship.setUpdateRule(toRule(row.getUpdateRule()));
+                relationship.setDeleteRule(toRule(row.getDeleteRule()));
+                relationshipKey = key;
+            }
+            SQLColumn pkCol = pkTable.getColumnByName(row.getPkColumnName());
+            SQLColumn fkCol = fkTable.getColumnByName(row.getFkColumnName());
+            if (pkCol != null && fkCol != null) {
+                relationship.addMapping(pkCol, fkCol);
+            }
+        }
+    }
+
+    /**
+     * Creates the column described by a column row, without adding it to
+     * the table.
+     */
+    static SQLColumn createColumn(SQLTable table, ColumnRow row) {
+        SQLColumn col = new SQLColumn(table, row.getName(), getJdbcType(row.getTypeName()),
+                row.getSize(), row.getDecimalDigits());
+        col.setSourceDataTypeName(row.getTypeName());
+        col.setNullable(getNullable(row));
+        col.setDefaultValue(row.getDefaultValue());
+        col.setRemarks(row.getRemarks());
+        col.setAutoIncrement(isAutoIncrement(row));
+        return col;
+    }
+
+    static int getNullable(ColumnRow row) {
+        return row.isNullable() ? DatabaseMetaData.columnNullable : DatabaseMetaData.columnNoNulls;
+    }
+
+    static boolean isAutoIncrement(ColumnRow row) {
+        return row.isAutoIncrement() ||
+            (row.getDefaultValue() != null && row.getDefaultValue().startsWith("nextval("));
+    }
+
+    /**
+     * Converts the table types of the catalog views to the ones JDBC uses.
+     */
+    private static String toObjectType(String tableType) {
+        if (tableType == null || tableType.equalsIgnoreCase("BASE TABLE")) return "TABLE";
+        return tableType.toUpperCase();
+    }
+
+    static UpdateDeleteRule toRule(String rule) {
+        if (rule == null) return UpdateDeleteRule.NO_ACTION;
+        rule = rule.trim().toUpperCase();
+        if (rule.equals("CASCADE")) return UpdateDeleteRule.CASCADE;
+        if (rule.equals("SET NULL")) return UpdateDeleteRule.SET_NULL;
+        if (rule.equals("SET DEFAULT")) return UpdateDeleteRule.SET_DEFAULT;
+        if (rule.equals("RESTRICT")) return UpdateDeleteRule.RESTRICT;
+        return UpdateDeleteRule.NO_ACTION;
+    }
+
+    /**
+     * Returns the JDBC type for a type name reported by a catalog view. Types
+     * that are not known are reported as {@link Types#OTHER}, as JDBC drivers
+     * do.
+     */
+    static int getJdbcType(String typeName) {
+        final int NCHAR = -15; // Java6/JDBC 4.0
+        final int NVARCHAR = -9; // Java6/JDBC 4.0
+        final int NCLOB = 2011; // Java6/JDBC 4.0
+        if (typeName == null) return Types.OTHER;
+        String name = typeName.trim().toUpperCase();
+        int paren = name.indexOf('(');
+        if (paren > 0) {
+            // Oracle reports types like TIMESTAMP(6)
+            name = name.substring(0, paren).trim();
+        }
+        if (name.equals("CHAR") || name.equals("CHARACTER") || name.equals("BPCHAR")) return Types.CHAR;
+        if (name.equals("VARCHAR") || name.equals("CHARACTER VARYING") || name.equals("VARCHAR2")
+                || name.equals("TEXT") || name.equals("TINYTEXT") || name.equals("MEDIUMTEXT")) return Types.VARCHAR;
+        if (name.equals("NCHAR")) return NCHAR;
+        if (name.equals("NVARCHAR") || name.equals("NVARCHAR2")) return NVARCHAR;
+        if (name.equals("CLOB") || name.equals("LONGTEXT") || name.equals("LONG")) return Types.CLOB;
+        if (name.equals("NCLOB")) return NCLOB;
+        if (name.equals("TINYINT")) return Types.TINYINT;
+        if (name.equals("SMALLINT") || name.equals("INT2")) return Types.SMALLINT;
+        if (name.equals("INTEGER") || name.equals("INT") || name.equals("INT4")
+                || name.equals("MEDIUMINT")) return Types.INTEGER;
+        if (name.equals("BIGINT") || name.equals("INT8")) return Types.BIGINT;
+        if (name.equals("NUMERIC") || name.equals("NUMBER")) return Types.NUMERIC;
+        if (name.equals("DECIMAL")) return Types.DECIMAL;
+        if (name.equals("REAL") || name.equals("FLOAT4")) return Types.REAL;
+        if (name.equals("FLOAT") || name.equals("BINARY_FLOAT")) return Types.FLOAT;
+        if (name.equals("DOUBLE") || name.equals("DOUBLE PRECISION") || name.equals("FLOAT8")
+                || name.equals("BINARY_DOUBLE")) return Types.DOUBLE;
+        if (name.equals("BIT")) return Types.BIT;
+        if (name.equals("BOOLEAN") || name.equals("BOOL")) return Types.BOOLEAN;
+        if (name.equals("DATE")) return Types.DATE;
+        if (name.equals("TIME") || name.startsWith("TIME WITH")) return Types.TIME;
+        if (name.equals("TIMESTAMP") || name.startsWith("TIMESTAMP WITH") || name.equals("DATETIME")
+                || name.equals("DATETIME2") || name.equals("SMALLDATETIME")) return Types.TIMESTAMP;
+        if (name.equals("BINARY")) return Types.BINARY;
+        if (name.equals("VARBINARY") || name.equals("BYTEA") || name.equals("RAW")) return Types.VARBINARY;
+        if (name.equals("BLOB") || name.equals("LONGBLOB") || name.equals("LONG RAW")) return Types.BLOB;
+        return Types.OTHER;
+    }
+
+    public SQLDatabase getDatabase() {
+        return db;
+    }
+
+    /**
+     * Returns the cache this reader uses, or null if it does not use one.
+     */
+    public CatalogSnapshotCache getCache() {
+        return cache;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of schemas read from the database at the same time.
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.catalog;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The set-based catalog queries {@link BulkCatalogReader} uses for each kind
+ * of database. A data source type declares which set its databases use with
+ * the {@link BulkCatalogReader#CATALOG_QUERIES_KEY} property.
+ * <p>
+ * Every query takes the name of the schema (or catalog, for databases like
+ * MySQL whose catalogs hold the tables) as its only parameter, which may
+ * appear more than once, and returns its columns under the aliases
+ * {@link BulkCatalogReader} reads.
+ * <p>
+ * The fingerprint queries of each set return the names and definitions of
+ * the tables, columns, keys and indices of the schema in a fixed order, or
+ * the time each object was last altered where the database keeps one, so
+ * that any change to the schema changes their rows. The reader only keeps a
+ * digest of the rows, which it compares to tell whether a snapshot in the
+ * {@link CatalogSnapshotCache} is still current without building the
+ * schema's SQLObjects again.
+ */
+public enum CatalogQueries {
+
+    /**
+     * The views defined by the SQL standard, for PostgreSQL, SQL Server, H2
+     * and other databases that support them. The standard has no view
+     * of indices, so indices are left to be read one table at a time.
+     */
+    INFORMATION_SCHEMA(
+            "SELECT table_name AS TABLE_NAME, table_type AS TABLE_TYPE, NULL AS REMARKS" +
+            " FROM information_schema.tables WHERE table_schema = ?" +
+            " ORDER BY table_name",
+            
+            "SELECT table_name AS TABLE_NAME, column_name AS COLUMN_NAME, data_type AS TYPE_NAME," +
+            " COALESCE(character_maximum_length, numeric_precision, 0) AS COLUMN_SIZE," +
+            " COALESCE(numeric_scale, 0) AS DECIMAL_DIGITS, is_nullable AS IS_NULLABLE," +
+            " column_default AS COLUMN_DEF, NULL AS REMARKS, 'NO' AS IS_AUTOINCREMENT" +
+            " FROM information_schema.columns WHERE table_schema = ?" +
+            " ORDER BY table_name, ordinal_position",
+            
+            "SELECT kcu.table_name AS TABLE_NAME, kcu.column_name AS COLUMN_NAME," +
+            " kcu.ordinal_position AS KEY_SEQ, tc.constraint_name AS PK_NAME" +
+            " FROM information_schema.table_constraints tc" +
+            " JOIN information_schema.key_column_usage kcu" +
+            "  ON kcu.constraint_schema = tc.constraint_schema AND kcu.constraint_name = tc.constraint_name" +
+            "  AND kcu.table_name = tc.table_name" +
+            " WHERE tc.constraint_type = 'PRIMARY KEY' AND tc.table_schema = ?" +
+            " ORDER BY kcu.table_name, kcu.ordinal_position",
+            
+            "SELECT fk.table_name AS FKTABLE_NAME, fk.column_name AS FKCOLUMN_NAME," +
+            " pk.table_schema AS PKTABLE_SCHEM, pk.table_name AS PKTABLE_NAME, pk.column_name AS PKCOLUMN_NAME," +
+            " fk.ordinal_position AS KEY_SEQ, rc.constraint_name AS FK_NAME," +
+            " rc.update_rule AS UPDATE_RULE, rc.delete_rule AS DELETE_RULE" +
+            " FROM information_schema.referential_constraints rc" +
+            " JOIN information_schema.key_column_usage fk" +
+            "  ON fk.constraint_schema = rc.constraint_schema AND fk.constraint_name = rc.constraint_name" +
+            " JOIN information_schema.key_column_usage pk" +
+            "  ON pk.constraint_schema = rc.unique_constraint_schema AND pk.constraint_name = rc.unique_constraint_name" +
+            "  AND pk.ordinal_position = fk.position_in_unique_constraint" +
+            " WHERE rc.constraint_schema = ?" +
+            " ORDER BY fk.table_name, rc.constraint_name, fk.ordinal_position",
+            
+            null,
+            
+            "SELECT table_name, table_type FROM information_schema.tables" +
+            " WHERE table_schema = ? ORDER BY table_name",
+            "SELECT table_name, ordinal_position, column_name, data_type, character_maximum_length," +
+            " numeric_precision, numeric_scale, is_nullable, column_default" +
+            " FROM information_schema.columns WHERE table_schema = ?" +
+            " ORDER BY table_name, ordinal_position",
+            "SELECT tc.table_name, tc.constraint_name, tc.constraint_type, kcu.ordinal_position, kcu.column_name" +
+            " FROM information_schema.table_constraints tc" +
+            " LEFT JOIN information_schema.key_column_usage kcu" +
+            "  ON kcu.constraint_schema = tc.constraint_schema AND kcu.constraint_name = tc.constraint_name" +
+            "  AND kcu.table_name = tc.table_name" +
+            " WHERE tc.table_schema = ?" +
+            " ORDER BY tc.table_name, tc.constraint_name, kcu.ordinal_position",
+            "SELECT constraint_name, unique_constraint_schema, unique_constraint_name, update_rule, delete_rule" +
+            " FROM information_schema.referential_constraints WHERE constraint_schema = ?" +
+            " ORDER BY constraint_name"),
+
+    /**
+     * MySQL's information schema, which adds comments, auto-increment flags
+     * and indices to the standard views. MySQL catalogs hold the tables, so
+     * the parameter is the catalog name.
+     */
+    MYSQL(
+            "SELECT table_name AS TABLE_NAME, table_type AS TABLE_TYPE, table_comment AS REMARKS" +
+            " FROM information_schema.tables WHERE table_schema = ?" +
+            " ORDER BY table_name",
+            
+            "SELECT table_name AS TABLE_NAME, column_name AS COLUMN_NAME, data_type AS TYPE_NAME," +
+            " COALESCE(character_maximum_length, numeric_precision, 0) AS COLUMN_SIZE," +
+            " COALESCE(numeric_scale, 0) AS DECIMAL_DIGITS, is_nullable AS IS_NULLABLE," +
+            " column_default AS COLUMN_DEF, column_comment AS REMARKS," +
+            " CASE WHEN extra LIKE '%auto_increment%' THEN 'YES' ELSE 'NO' END AS IS_AUTOINCREMENT" +
+            " FROM information_schema.columns WHERE table_schema = ?" +
+            " ORDER BY table_name, ordinal_position",
+            
+            "SELECT table_name AS TABLE_NAME, column_name AS COLUMN_NAME," +
+            " ordinal_position AS KEY_SEQ, constraint_name AS PK_NAME" +
+            " FROM information_schema.key_column_usage" +
+            " WHERE constraint_name = 'PRIMARY' AND table_schema = ?" +
+            " ORDER BY table_name, ordinal_position",
+            
+            "SELECT kcu.table_name AS FKTABLE_NAME, kcu.column_name AS FKCOLUMN_NAME," +
+            " kcu.referenced_table_schema AS PKTABLE_SCHEM, kcu.referenced_table_name AS PKTABLE_NAME," +
+            " kcu.referenced_column_name AS PKCOLUMN_NAME, kcu.ordinal_position AS KEY_SEQ," +
+            " rc.constraint_name AS FK_NAME, rc.update_rule AS UPDATE_RULE, rc.delete_rule AS DELETE_RULE" +
+            " FROM information_schema.referential_constraints rc" +
+            " JOIN information_schema.key_column_usage kcu" +
+            "  ON kcu.constraint_schema = rc.constraint_schema AND kcu.constraint_name = rc.constraint_name" +
+            "  AND kcu.table_name = rc.table_name" +
+            " WHERE rc.constraint_schema = ?" +
+            " ORDER BY kcu.table_name, rc.constraint_name, kcu.ordinal_position",
+            
+            "SELECT table_name AS TABLE_NAME, index_name AS INDEX_NAME, non_unique AS NON_UNIQUE," +
+            " column_name AS COLUMN_NAME, seq_in_index AS ORDINAL_POSITION," +
+            " collation AS ASC_OR_DESC" +
+            " FROM information_schema.statistics WHERE table_schema = ?" +
+            " ORDER BY table_name, index_name, seq_in_index",
+            
+            // Not every ALTER TABLE changes the create time, so the definitions are compared
+            "SELECT table_name, table_type, table_comment FROM information_schema.tables" +
+            " WHERE table_schema = ? ORDER BY table_name",
+            "SELECT table_name, ordinal_position, column_name, column_type, is_nullable, column_default," +
+            " extra, column_comment" +
+            " FROM information_schema.columns WHERE table_schema = ?" +
+            " ORDER BY table_name, ordinal_position",
+            "SELECT table_name, index_name, seq_in_index, column_name, non_unique, collation" +
+            " FROM information_schema.statistics WHERE table_schema = ?" +
+            " ORDER BY table_name, index_name, seq_in_index",
+            "SELECT kcu.table_name, kcu.constraint_name, kcu.ordinal_position, kcu.column_name," +
+            " kcu.referenced_table_schema, kcu.referenced_table_name, kcu.referenced_column_name," +
+            " rc.update_rule, rc.delete_rule" +
+            " FROM information_schema.referential_constraints rc" +
+            " JOIN information_schema.key_column_usage kcu" +
+            "  ON kcu.constraint_schema = rc.constraint_schema AND kcu.constraint_name = rc.constraint_name" +
+            "  AND kcu.table_name = rc.table_name" +
+            " WHERE rc.constraint_schema = ?" +
+            " ORDER BY kcu.table_name, kcu.constraint_name, kcu.ordinal_position"),
+
+    /**
+     * Oracle's data dictionary views. The parameter is the owner of the
+     * tables, which Oracle calls a schema.
+     */
+    ORACLE(
+            "SELECT t.table_name AS TABLE_NAME, 'TABLE' AS TABLE_TYPE, c.comments AS REMARKS" +
+            " FROM all_tables t LEFT JOIN all_tab_comments c" +
+            "  ON c.owner = t.owner AND c.table_name = t.table_name" +
+            " WHERE t.owner = ?" +
+            " ORDER BY t.table_name",
+            
+            "SELECT c.table_name AS TABLE_NAME, c.column_name AS COLUMN_NAME, c.data_type AS TYPE_NAME," +
+            " COALESCE(c.data_precision, c.char_length, c.data_length) AS COLUMN_SIZE," +
+            " COALESCE(c.data_scale, 0) AS DECIMAL_DIGITS," +
+            " CASE c.nullable WHEN 'Y' THEN 'YES' ELSE 'NO' END AS IS_NULLABLE," +
+            " c.data_default AS COLUMN_DEF, cc.comments AS REMARKS, 'NO' AS IS_AUTOINCREMENT" +
+            " FROM all_tab_columns c LEFT JOIN all_col_comments cc" +
+            "  ON cc.owner = c.owner AND cc.table_name = c.table_name AND cc.column_name = c.column_name" +
+            " WHERE c.owner = ?" +
+            " ORDER BY c.table_name, c.column_id",
+            
+            "SELECT cc.table_name AS TABLE_NAME, cc.column_name AS COLUMN_NAME," +
+            " cc.position AS KEY_SEQ, con.constraint_name AS PK_NAME" +
+            " FROM all_constraints con JOIN all_cons_columns cc" +
+            "  ON cc.owner = con.owner AND cc.constraint_name = con.constraint_name" +
+            " WHERE con.constraint_type = 'P' AND con.owner = ?" +
+            " ORDER BY cc.table_name, cc.position",
+            
+            "SELECT fkc.table_name AS FKTABLE_NAME, fkc.column_name AS FKCOLUMN_NAME," +
+            " pkc.owner AS PKTABLE_SCHEM, pkc.table_name AS PKTABLE_NAME, pkc.column_name AS PKCOLUMN_NAME," +
+            " fkc.position AS KEY_SEQ, con.constraint_name AS FK_NAME," +
+            " 'NO ACTION' AS UPDATE_RULE, con.delete_rule AS DELETE_RULE" +
+            " FROM all_constraints con" +
+            " JOIN all_cons_columns fkc ON fkc.owner = con.owner AND fkc.constraint_name = con.constraint_name" +
+            " JOIN all_cons_columns pkc ON pkc.owner = con.r_owner AND pkc.constraint_name = con.r_constraint_name" +
+            "  AND pkc.position = fkc.position" +
+            " WHERE con.constraint_type = 'R' AND con.owner = ?" +
+            " ORDER BY fkc.table_name, con.constraint_name, fkc.position",
+            
+            "SELECT i.table_name AS TABLE_NAME, i.index_name AS INDEX_NAME," +
+            " CASE i.uniqueness WHEN 'UNIQUE' THEN 0 ELSE 1 END AS NON_UNIQUE," +
+            " ic.column_name AS COLUMN_NAME, ic.column_position AS ORDINAL_POSITION," +
+            " CASE ic.descend WHEN 'DESC' THEN 'D' ELSE 'A' END AS ASC_OR_DESC" +
+            " FROM all_indexes i JOIN all_ind_columns ic" +
+            "  ON ic.index_owner = i.owner AND ic.index_name = i.index_name" +
+            " WHERE i.table_owner = ?" +
+            " ORDER BY i.table_name, i.index_name, ic.column_position",
+            
+            // Oracle records the time of the last DDL statement on each object
+            "SELECT object_name, object_type, last_ddl_time FROM all_objects" +
+            " WHERE object_type IN ('TABLE', 'VIEW', 'INDEX') AND owner = ?" +
+            " ORDER BY object_name, object_type"),
+
+    /**
+     * The system tables of HSQLDB, which mirror the results of the JDBC
+     * {@link java.sql.DatabaseMetaData} methods. Older versions of HSQLDB do
+     * not have the standard views.
+     */
+    HSQLDB(
+            "SELECT table_name AS TABLE_NAME, table_type AS TABLE_TYPE, remarks AS REMARKS" +
+            " FROM information_schema.system_tables WHERE table_schem = ?" +
+            " ORDER BY table_name",
+            
+            "SELECT table_name AS TABLE_NAME, column_name AS COLUMN_NAME, type_name AS TYPE_NAME," +
+            " column_size AS COLUMN_SIZE, COALESCE(decimal_digits, 0) AS DECIMAL_DIGITS," +
+            " is_nullable AS IS_NULLABLE, column_def AS COLUMN_DEF, remarks AS REMARKS," +
+            " 'NO' AS IS_AUTOINCREMENT" +
+            " FROM information_schema.system_columns WHERE table_schem = ?" +
+            " ORDER BY table_name, ordinal_position",
+            
+            "SELECT table_name AS TABLE_NAME, column_name AS COLUMN_NAME," +
+            " key_seq AS KEY_SEQ, pk_name AS PK_NAME" +
+            " FROM information_schema.system_primarykeys WHERE table_schem = ?" +
+            " ORDER BY table_name, key_seq",
+            
+            "SELECT fktable_name AS FKTABLE_NAME, fkcolumn_name AS FKCOLUMN_NAME," +
+            " pktable_schem AS PKTABLE_SCHEM, pktable_name AS PKTABLE_NAME, pkcolumn_name AS PKCOLUMN_NAME," +
+            " key_seq AS KEY_SEQ, fk_name AS FK_NAME," +
+            " CASE update_rule WHEN 0 THEN 'CASCADE' WHEN 1 THEN 'RESTRICT' WHEN 2 THEN 'SET NULL'" +
+            "  WHEN 4 THEN 'SET DEFAULT' ELSE 'NO ACTION' END AS UPDATE_RULE," +
+            " CASE delete_rule WHEN 0 THEN 'CASCADE' WHEN 1 THEN 'RESTRICT' WHEN 2 THEN 'SET NULL'" +
+            "  WHEN 4 THEN 'SET DEFAULT' ELSE 'NO ACTION' END AS DELETE_RULE" +
+            " FROM information_schema.system_crossreference WHERE fktable_schem = ?" +
+            " ORDER BY fktable_name, fk_name, key_seq",
+            
+            "SELECT table_name AS TABLE_NAME, index_name AS INDEX_NAME," +
+            " CASE WHEN non_unique THEN 1 ELSE 0 END AS NON_UNIQUE," +
+            " column_name AS COLUMN_NAME, ordinal_position AS ORDINAL_POSITION, asc_or_desc AS ASC_OR_DESC" +
+            " FROM information_schema.system_indexinfo WHERE table_schem = ?" +
+            " ORDER BY table_name, index_name, ordinal_position",
+            
+            "SELECT table_name, table_type, remarks FROM information_schema.system_tables" +
+            " WHERE table_schem = ? ORDER BY table_name",
+            "SELECT table_name, ordinal_position, column_name, type_name, column_size, decimal_digits," +
+            " is_nullable, column_def, remarks" +
+            " FROM information_schema.system_columns WHERE table_schem = ?" +
+            " ORDER BY table_name, ordinal_position",
+            "SELECT table_name, index_name, ordinal_position, column_name, non_unique, asc_or_desc" +
+            " FROM information_schema.system_indexinfo WHERE table_schem = ?" +
+            " ORDER BY table_name, index_name, ordinal_position",
+            "SELECT fktable_name, fk_name, key_seq, fkcolumn_name, pktable_schem, pktable_name, pkcolumn_name," +
+            " update_rule, delete_rule" +
+            " FROM information_schema.system_crossreference WHERE fktable_schem = ?" +
+            " ORDER BY fktable_name, fk_name, key_seq");
+    
+    private final String tablesQuery;
+    private final String columnsQuery;
+    private final String primaryKeysQuery;
+    private final String foreignKeysQuery;
+    private final String indicesQuery;
+    private final String[] fingerprintQueries;
+    
+    private CatalogQueries(String tablesQuery, String columnsQuery, String primaryKeysQuery,
+            String foreignKeysQuery, String indicesQuery, String... fingerprintQueries) {
+        this.tablesQuery = tablesQuery;
+        this.columnsQuery = columnsQuery;
+        this.primaryKeysQuery = primaryKeysQuery;
+        this.foreignKeysQuery = foreignKeysQuery;
+        this.indicesQuery = indicesQuery;
+        this.fingerprintQueries = fingerprintQueries;
+    }
+
+    /**
+     * Returns the queries for databases whose JDBC driver is the given class,
+     * or null if there are none. This is used for data source types that do
+     * not name their queries with the
+     * {@link BulkCatalogReader#CATALOG_QUERIES_KEY} property.
+     */
+    public static CatalogQueries forDriver(String driverClass) {
+        if (driverClass == null) return null;
+        if (driverClass.startsWith("org.postgresql.")) return INFORMATION_SCHEMA;
+        if (driverClass.startsWith("com.microsoft.sqlserver.")) return INFORMATION_SCHEMA;
+        if (driverClass.startsWith("com.mysql.")) return MYSQL;
+        if (driverClass.startsWith("oracle.jdbc.")) return ORACLE;
+        if (driverClass.startsWith("org.hsqldb.")) return HSQLDB;
+        return null;
+    }
+
+    public String getTablesQuery() {
+        return tablesQuery;
+    }
+
+    public String getColumnsQuery() {
+        return columnsQuery;
+    }
+
+    public String getPrimaryKeysQuery() {
+        return primaryKeysQuery;
+    }
+
+    public String getForeignKeysQuery() {
+        return foreignKeysQuery;
+    }
+
+    /**
+     * Returns the query for the indices of all tables, or null if this kind
+     * of database has no catalog view of indices.
+     */
+    public String getIndicesQuery() {
+        return indicesQuery;
+    }
+
+    /**
+     * Returns the queries for the fingerprint of a schema. Their rows are
+     * only compared with an earlier result, so the meaning of their columns
+     * does not matter, but they must come in the same order each time.
+     */
+    public List<String> getFingerprintQueries() {
+        return Collections.unmodifiableList(Arrays.asList(fingerprintQueries));
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sql.JDBCDataSource;
+
+/**
+ * Keeps the catalog rows {@link BulkCatalogReader} reads for each source
+ * database in a file on disk, so the tables of a large schema can be shown
+ * as soon as it is opened again instead of after it has been read from the
+ * database. Each data source has its own file, holding the
+ * {@link SchemaMetadata} of every schema read from it along with the
+ * fingerprint of the schema at the time it was read.
+ * <p>
+ * The snapshots are only a starting point: the reader checks the fingerprint
+ * of each schema it was given from this cache against the database in the
+ * background and reads the schemas that have changed again.
+ * <p>
+ * A data source's file is read the first time one of its schemas is asked
+ * for and is rewritten each time schemas are stored, so schemas read
+ * together should be stored together with {@link #putAll(JDBCDataSource, Map)}.
+ * Files that cannot be read, such as ones written by an older version, are
+ * ignored and replaced.
+ */
+public class CatalogSnapshotCache {
+
+    private static final Logger logger = Logger.getLogger(CatalogSnapshotCache.class);
+
+    /**
+     * The directory under the user's home directory the default cache keeps
+     * its files in.
+     */
+    public static final String DEFAULT_DIRECTORY_NAME = ".architect-catalog-cache";
+
+    private static final String FILE_SUFFIX = ".catalog";
+
+    private static CatalogSnapshotCache defaultCache;
+
+    private final File directory;
+
+    /**
+     * The snapshots of each data source that have been read from or written
+     * to its file, by file. Each data source's map is keyed by the
+     * {@link BulkCatalogReader#getCacheKey(ca.sqlpower.sqlobject.SQLObject)
+     * cache key} of the schema.
+     */
+    private final Map<File, Map<String, SchemaMetadata>> snapshots =
+        new HashMap<File, Map<String, SchemaMetadata>>();
+
+    /**
+     * Returns the cache that keeps its files in
+     * {@link #DEFAULT_DIRECTORY_NAME} under the user's home directory.
+     */
+    public static synchronized CatalogSnapshotCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new CatalogSnapshotCache(
+                    new File(System.getProperty("user.home"), DEFAULT_DIRECTORY_NAME));
+        }
+        return defaultCache;
+    }
+
+    public CatalogSnapshotCache(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the snapshot of the given schema of the data source, or null if
+     * there is none.
+     */
+    public synchronized SchemaMetadata get(JDBCDataSource ds, String key) {
+        return getSnapshots(ds).get(key);
+    }
+
+    /**
+     * Stores the snapshot of a schema of the data source, replacing any
+     * older one, and writes the data source's file.
+     */
+    public synchronized void put(JDBCDataSource ds, String key, SchemaMetadata metadata) {
+        putAll(ds, Collections.singletonMap(key, metadata));
+    }
+
+    /**
+     * Stores the snapshots of several schemas of the data source, replacing
+     * any older ones, and writes the data source's file once.
+     */
+    public synchronized void putAll(JDBCDataSource ds, Map<String, SchemaMetadata> metadata) {
+        if (metadata.isEmpty()) return;
+        getSnapshots(ds).putAll(metadata);
+        write(ds);
+    }
+
+    /**
+     * Forgets the snapshot of a schema of the data source.
+     */
+    public synchronized void remove(JDBCDataSource ds, String key) {
+        removeAll(ds, Collections.singleton(key));
+    }
+
+    /**
+     * Forgets the snapshots of several schemas of the data source, writing
+     * its file at most once.
+     */
+    public synchronized void removeAll(JDBCDataSource ds, Collection<String> keys) {
+        if (getSnapshots(ds).keySet().removeAll(keys)) {
+            write(ds);
+        }
+    }
+
+    /**
+     * Forgets all of the snapshots of the data source and deletes its file.
+     */
+    public synchronized void clear(JDBCDataSource ds) {
+        File file = getFile(ds);
+        snapshots.remove(file);
+        if (file.exists() && !file.delete()) {
+            logger.warn("Could not delete catalog snapshot file " + file);
+        }
+    }
+
+    /**
+     * Returns the file the snapshots of the given data source are kept in.
+     * The file is named after the data source, followed by a hash of the URL
+     * and user it connects with, so a data source that is renamed or pointed
+     * at a different database starts with an empty cache.
+     */
+    File getFile(JDBCDataSource ds) {
+        String identity = ds.getUrl() + "\u0000" + ds.getUser();
+        String name = ds.getName() == null ? "" : ds.getName().replaceAll("[^A-Za-z0-9_-]", "_");
+        return new File(directory, name + "-" + Integer.toHexString(identity.hashCode()) + FILE_SUFFIX);
+    }
+
+    private Map<String, SchemaMetadata> getSnapshots(JDBCDataSource ds) {
+        File file = getFile(ds);
+        Map<String, SchemaMetadata> dsSnapshots = snapshots.get(file);
+        if (dsSnapshots == null) {
+            dsSnapshots = read(file);
+            snapshots.put(file, dsSnapshots);
+        }
+        return dsSnapshots;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, SchemaMetadata> read(File file) {
+        if (!file.exists()) return new HashMap<String, SchemaMetadata>();
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))));
+            return (Map<String, SchemaMetadata>) in.readObject();
+        } catch (Exception e) {
+            logger.warn("Could not read catalog snapshot file " + file + ", it will be replaced", e);
+            return new HashMap<String, SchemaMetadata>();
+        } finally {
+            try {
+                if (in != null) in.close();
+            } catch (IOException ex) {
+                logger.error("Couldn't close catalog snapshot file", ex);
+            }
+        }
+    }
+
+    /**
+     * Writes the data source's snapshots to a temporary file and then moves
+     * it over the old one, so a failure part way through does not leave a
+     * broken file behind.
+     */
+    private void write(JDBCDataSource ds) {
+        File file = getFile(ds);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn("Could not create catalog snapshot directory " + directory);
+            return;
+        }
+        File temp = new File(directory, file.getName() + ".tmp");
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp))));
+            out.writeObject(snapshots.get(file));
+            out.close();
+            out = null;
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Could not replace " + file);
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write catalog snapshot file " + file, e);
+        } finally {
+            try {
+                if (out != null) out.close();
+            } catch (IOException ex) {
+                logger.error("Couldn't close catalog snapshot file", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,557 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.catalog;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.catalog.SchemaMetadata.ColumnRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.ForeignKeyRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.IndexRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.PrimaryKeyRow;
+import ca.sqlpower.architect.catalog.SchemaMetadata.TableRow;
+import ca.sqlpower.sqlobject.SQLCatalog;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLSchema;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+import ca.sqlpower.sqlobject.SQLRelationship.ColumnMapping;
+import ca.sqlpower.sqlobject.SQLRelationship.SQLImportedKey;
+
+/**
+ * Brings the populated schemas of a source database up to date with the
+ * database without reading and rebuilding all of it the way
+ * {@link SQLDatabase#refresh()} does.
+ * <p>
+ * The refresh has two steps. {@link #findChanges()} reads the fingerprint of
+ * every populated schema (see {@link CatalogQueries#getFingerprintQueries()})
+ * in parallel and compares it with the one stored in the
+ * {@link CatalogSnapshotCache} when the schema was last read; the schemas
+ * whose fingerprints differ, or that were never read in bulk, are read again
+ * in parallel. It does not touch the SQLObjects, so it can run on a worker
+ * thread. {@link #apply(Map)} then updates the SQLObjects of each changed
+ * schema to match what was read, on the thread that owns the tree. Objects
+ * that still exist keep their identity and only the properties that changed
+ * are set, so listeners such as the DBTreeModel, and columns in the play pen
+ * that refer to source columns, only see the actual differences.
+ * <p>
+ * Only parts that are already populated are compared. A table whose columns
+ * have not been read yet will read the current ones when they are asked for,
+ * so there is nothing to refresh. Schemas the catalog queries cannot read
+ * are reported by {@link #isComplete()} so the caller can fall back to
+ * {@link SQLDatabase#refresh()}.
+ */
+public class IncrementalCatalogRefresher {
+
+    private static final Logger logger = Logger.getLogger(IncrementalCatalogRefresher.class);
+
+    private final SQLDatabase db;
+
+    private final BulkCatalogReader reader;
+
+    /**
+     * False if {@link #findChanges()} found a schema it could not check or
+     * read with the catalog queries.
+     */
+    private boolean complete = true;
+
+    /**
+     * @param cache
+     *            The cache holding the fingerprints of the schemas when they
+     *            were last read. It must be the cache the schemas were read
+     *            into.
+     */
+    public IncrementalCatalogRefresher(SQLDatabase db, CatalogSnapshotCache cache) {
+        if (cache == null) throw new NullPointerException("An incremental refresh needs a snapshot cache");
+        this.db = db;
+        this.reader = new BulkCatalogReader(db, cache);
+    }
+
+    /**
+     * Returns true if the database's type has catalog queries, without which
+     * nothing can be refreshed incrementally.
+     */
+    public boolean isSupported() {
+        return reader.isSupported();
+    }
+
+    /**
+     * Returns false if the last call to {@link #findChanges()} found a
+     * populated schema that could not be checked with the catalog queries,
+     * in which case the database needs a full refresh.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Finds the populated schemas (or catalogs) of the database whose
+     * fingerprint has changed since they were read, and reads them again.
+     * This does not modify any SQLObjects.
+     *
+     * @return Each changed schema mapped to its current rows.
+     */
+    public Map<SQLObject, SchemaMetadata> findChanges() throws SQLObjectException {
+        complete = true;
+        Map<SQLObject, SchemaMetadata> changes = new LinkedHashMap<SQLObject, SchemaMetadata>();
+        if (!isSupported()) {
+            complete = false;
+            return changes;
+        }
+        if (!containersMatch()) {
+            logger.debug("Catalogs or schemas of " + db.getName() + " were added or dropped");
+            complete = false;
+            return changes;
+        }
+        List<SQLObject> containers = new ArrayList<SQLObject>();
+        findPopulatedContainers(db, containers);
+        if (containers.isEmpty()) return changes;
+
+        List<String> fingerprints = reader.readFingerprints(containers);
+        List<SQLObject> changed = new ArrayList<SQLObject>();
+        for (int i = 0; i < containers.size(); i++) {
+            SQLObject container = containers.get(i);
+            SchemaMetadata snapshot = reader.getCache().get(db.getDataSource(),
+                    BulkCatalogReader.getCacheKey(container));
+            String fingerprint = fingerprints.get(i);
+            if (fingerprint == null) {
+                complete = false;
+            } else if (snapshot == null || !fingerprint.equals(snapshot.getFingerprint())) {
+                changed.add(container);
+            }
+        }
+        logger.debug(changed.size() + " of " + containers.size() + " schemas of " + db.getName() + " changed");
+
+        List<SchemaMetadata> metadata = reader.readAll(changed);
+        for (int i = 0; i < changed.size(); i++) {
+            if (metadata.get(i) == null) {
+                complete = false;
+            } else {
+                changes.put(changed.get(i), metadata.get(i));
+            }
+        }
+        reader.store(changes);
+        return changes;
+    }
+
+    /**
+     * Updates the SQLObjects of each of the given schemas to match the rows
+     * read from the database. Schemas mapped to null are skipped. This must
+     * be called on the database's foreground thread.
+     */
+    public void apply(Map<SQLObject, SchemaMetadata> changes) throws SQLObjectException {
+        for (Map.Entry<SQLObject, SchemaMetadata> change : changes.entrySet()) {
+            if (change.getValue() != null) {
+                apply(change.getKey(), change.getValue());
+            }
+        }
+    }
+
+    /**
+     * Does both steps of the refresh on the calling thread.
+     *
+     * @return The number of schemas that changed.
+     */
+    public int refresh() throws SQLObjectException {
+        Map<SQLObject, SchemaMetadata> changes = findChanges();
+        apply(changes);
+        return changes.size();
+    }
+
+    /**
+     * Returns true if the database still has the same catalogs, or schemas
+     * if it has no catalogs, as the SQLObjects. Adding and removing those is
+     * left to a full refresh.
+     */
+    private boolean containersMatch() throws SQLObjectException {
+        if (!db.isPopulated()) return true;
+        Set<String> names = new HashSet<String>();
+        Class<? extends SQLObject> childType;
+        Connection con = null;
+        ResultSet rs = null;
+        try {
+            con = db.getConnection();
+            DatabaseMetaData dbmd = con.getMetaData();
+            if (db.isCatalogContainer()) {
+                childType = SQLCatalog.class;
+                rs = dbmd.getCatalogs();
+            } else if (db.isSchemaContainer()) {
+                childType = SQLSchema.class;
+                rs = dbmd.getSchemas();
+            } else {
+                return true;
+            }
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new SQLObjectException("Could not read the catalogs of " + db.getName(), e);
+        } finally {
+            try {
+                if (rs != null) rs.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+            try {
+                if (con != null) con.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't close connection", ex);
+            }
+        }
+        Set<String> existing = new HashSet<String>();
+        for (SQLObject child : db.getChildrenWithoutPopulating(childType)) {
+            existing.add(child.getName());
+        }
+        return existing.equals(names);
+    }
+
+    private void findPopulatedContainers(SQLObject o, List<SQLObject> containers) {
+        if (!o.isPopulated()) return;
+        if (o instanceof SQLSchema || (o instanceof SQLCatalog && !((SQLCatalog) o).isSchemaContainer())) {
+            containers.add(o);
+        } else if (o instanceof SQLCatalog || o instanceof SQLDatabase) {
+            if (o instanceof SQLDatabase && !((SQLDatabase) o).isCatalogContainer()
+                    && !((SQLDatabase) o).isSchemaContainer()
+                    && !o.getChildrenWithoutPopulating(SQLTable.class).isEmpty()) {
+                // Databases that hold their tables directly cannot be read in bulk
+                complete = false;
+            }
+            for (SQLObject child : o.getChildrenWithoutPopulating()) {
+                findPopulatedContainers(child, containers);
+            }
+        }
+    }
+
+    /**
+     * Updates one schema. Relationships that no longer exist or have changed
+     * are removed first, since the tables and columns they refer to may be
+     * about to go away, and new or changed ones are added last, once the
+     * tables and columns they refer to exist.
+     */
+    void apply(SQLObject container, SchemaMetadata metadata) throws SQLObjectException {
+        Map<String, SQLTable> tables = new HashMap<String, SQLTable>();
+        for (SQLTable table : container.getChildrenWithoutPopulating(SQLTable.class)) {
+            tables.put(table.getName(), table);
+        }
+        Map<String, TableRow> tableRows = new LinkedHashMap<String, TableRow>();
+        for (TableRow row : metadata.getTables()) {
+            tableRows.put(row.getName(), row);
+        }
+        Map<String, List<ForeignKeyRow>> keyRows = groupKeys(metadata);
+
+        for (SQLTable table : tables.values()) {
+            if (table.isImportedKeysPopulated()) {
+                removeChangedKeys(table, tableRows.containsKey(table.getName()) ? keyRows : null);
+            }
+        }
+
+        for (SQLTable table : new ArrayList<SQLTable>(tables.values())) {
+            TableRow row = tableRows.get(table.getName());
+            if (row == null) {
+                logger.debug("Table " + table.getName() + " was dropped");
+                container.removeChild(table);
+                tables.remove(table.getName());
+            } else {
+                if (!ObjectUtils.equals(table.getRemarks(), row.getRemarks())) {
+                    table.setRemarks(row.getRemarks());
+                }
+                if (!ObjectUtils.equals(table.getObjectType(), row.getType())) {
+                    table.setObjectType(row.getType());
+                }
+                if (table.isColumnsPopulated()) {
+                    updateColumns(table, metadata);
+                }
+            }
+        }
+
+        // Builds the tables that are new, along with their keys and indices
+        Set<SQLTable> existing = new HashSet<SQLTable>(tables.values());
+        reader.fill(container, metadata);
+        for (SQLTable table : container.getChildrenWithoutPopulating(SQLTable.class)) {
+            tables.put(table.getName(), table);
+        }
+
+        for (SQLTable table : existing) {
+            if (table.isImportedKeysPopulated()) {
+                addMissingKeys(table, tables, keyRows.get(table.getName()));
+            }
+            if (table.isIndicesPopulated() && metadata.getIndices() != null) {
+                updateIndices(table, metadata);
+            }
+        }
+    }
+
+    private void updateColumns(SQLTable table, SchemaMetadata metadata) throws SQLObjectException {
+        List<ColumnRow> rows = new ArrayList<ColumnRow>();
+        Set<String> names = new HashSet<String>();
+        for (ColumnRow row : metadata.getColumns()) {
+            if (row.getTableName().equals(table.getName())) {
+                rows.add(row);
+                names.add(row.getName());
+            }
+        }
+        for (SQLColumn col : new ArrayList<SQLColumn>(table.getColumnsWithoutPopulating())) {
+            if (!names.contains(col.getName())) {
+                table.removeColumn(col);
+            }
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            ColumnRow row = rows.get(i);
+            SQLColumn col = table.getColumnByName(row.getName());
+            if (col == null) {
+                col = BulkCatalogReader.createColumn(table, row);
+                table.addColumn(col, Math.min(i, table.getColumnsWithoutPopulating().size()));
+            } else {
+                updateColumn(col, row);
+            }
+        }
+
+        Set<String> pkNames = new HashSet<String>();
+        String pkName = null;
+        for (PrimaryKeyRow row : metadata.getPrimaryKeys()) {
+            if (row.getTableName().equals(table.getName())) {
+                pkNames.add(row.getColumnName());
+                pkName = row.getKeyName();
+            }
+        }
+        SQLIndex pk = table.getPrimaryKeyIndex();
+        for (SQLColumn col : table.getColumnsWithoutPopulating()) {
+            boolean inPk = pkNames.contains(col.getName());
+            if (inPk && !col.isPrimaryKey()) {
+                table.addToPK(col);
+            } else if (!inPk && col.isPrimaryKey()) {
+                for (SQLIndex.Column indexCol : pk.getChildren(SQLIndex.Column.class)) {
+                    if (indexCol.getColumn() == col) {
+                        pk.removeChild(indexCol);
+                        break;
+                    }
+                }
+            }
+        }
+        if (pkName != null && !pkName.equals(pk.getName())) {
+            pk.setName(pkName);
+        }
+    }
+
+    /**
+     * Sets the properties of the column that differ from the row. The type
+     * name is compared rather than the JDBC type so a column whose type the
+     * catalog reports differently than the driver did is not changed for
+     * nothing.
+     */
+    private void updateColumn(SQLColumn col, ColumnRow row) {
+        if (!ObjectUtils.equals(col.getSourceDataTypeName(), row.getTypeName())) {
+            col.setSourceDataTypeName(row.getTypeName());
+            col.setType(BulkCatalogReader.getJdbcType(row.getTypeName()));
+        }
+        if (col.getPrecision() != row.getSize()) {
+            col.setPrecision(row.getSize());
+        }
+        if (col.getScale() != row.getDecimalDigits()) {
+            col.setScale(row.getDecimalDigits());
+        }
+        if (col.getNullable() != BulkCatalogReader.getNullable(row)) {
+            col.setNullable(BulkCatalogReader.getNullable(row));
+        }
+        if (!ObjectUtils.equals(col.getDefaultValue(), row.getDefaultValue())) {
+            col.setDefaultValue(row.getDefaultValue());
+        }
+        if (!ObjectUtils.equals(col.getRemarks(), row.getRemarks())) {
+            col.setRemarks(row.getRemarks());
+        }
+        if (col.isAutoIncrement() != BulkCatalogReader.isAutoIncrement(row)) {
+            col.setAutoIncrement(BulkCatalogReader.isAutoIncrement(row));
+        }
+    }
+
+    /**
+     * Groups the foreign key rows of the metadata by the name of the table
+     * that has the key and then by key name.
+     */
+    private Map<String, List<ForeignKeyRow>> groupKeys(SchemaMetadata metadata) {
+        Map<String, List<ForeignKeyRow>> keys = new HashMap<String, List<ForeignKeyRow>>();
+        for (ForeignKeyRow row : metadata.getForeignKeys()) {
+            List<ForeignKeyRow> rows = keys.get(row.getFkTableName());
+            if (rows == null) {
+                rows = new ArrayList<ForeignKeyRow>();
+                keys.put(row.getFkTableName(), rows);
+            }
+            rows.add(row);
+        }
+        return keys;
+    }
+
+    private List<ForeignKeyRow> getKeyRows(List<ForeignKeyRow> tableRows, String keyName) {
+        List<ForeignKeyRow> rows = new ArrayList<ForeignKeyRow>();
+        if (tableRows == null) return rows;
+        for (ForeignKeyRow row : tableRows) {
+            if (row.getName().equals(keyName)) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Removes the relationships the table imports that no longer exist or no
+     * longer match their rows. If the rows are null, the table has been
+     * dropped and all of its relationships are removed.
+     */
+    private void removeChangedKeys(SQLTable table, Map<String, List<ForeignKeyRow>> keyRows) {
+        for (SQLImportedKey key : new ArrayList<SQLImportedKey>(table.getImportedKeysWithoutPopulating())) {
+            SQLRelationship r = key.getRelationship();
+            List<ForeignKeyRow> rows = keyRows == null ? new ArrayList<ForeignKeyRow>()
+                    : getKeyRows(keyRows.get(table.getName()), r.getName());
+            if (!matches(r, rows)) {
+                logger.debug("Relationship " + r.getName() + " changed or was dropped");
+                r.getPkTable().removeExportedKey(r);
+            }
+        }
+    }
+
+    private boolean matches(SQLRelationship r, List<ForeignKeyRow> rows) {
+        if (rows.isEmpty() || r.getPkTable() == null) return false;
+        ForeignKeyRow first = rows.get(0);
+        if (!r.getPkTable().getName().equals(first.getPkTableName())
+                || r.getPkTable().getParent() != r.getFkTable().getParent()
+                || r.getUpdateRule() != BulkCatalogReader.toRule(first.getUpdateRule())
+                || r.getDeleteRule() != BulkCatalogReader.toRule(first.getDeleteRule())) {
+            return false;
+        }
+        List<ColumnMapping> mappings = r.getChildren(ColumnMapping.class);
+        if (mappings.size() != rows.size()) return false;
+        for (int i = 0; i < rows.size(); i++) {
+            ColumnMapping m = mappings.get(i);
+            if (m.getPkColumn() == null || m.getFkColumn() == null
+                    || !m.getPkColumn().getName().equals(rows.get(i).getPkColumnName())
+                    || !m.getFkColumn().getName().equals(rows.get(i).getFkColumnName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the relationships in the rows that the table does not import yet.
+     * Keys that refer to a table in another schema are left alone, as they
+     * are when the schema is first read.
+     */
+    private void addMissingKeys(SQLTable fkTable, Map<String, SQLTable> tables, List<ForeignKeyRow> rows)
+            throws SQLObjectException {
+        if (rows == null) return;
+        Set<String> existing = new HashSet<String>();
+        for (SQLImportedKey key : fkTable.getImportedKeysWithoutPopulating()) {
+            existing.add(key.getRelationship().getName());
+        }
+        SQLRelationship relationship = null;
+        for (ForeignKeyRow row : rows) {
+            if (existing.contains(row.getName())) continue;
+            SQLTable pkTable = tables.get(row.getPkTableName());
+            if (pkTable == null) continue;
+            if (relationship == null || !relationship.getName().equals(row.getName())) {
+                logger.debug("Adding relationship " + row.getName());
+                relationship = new SQLRelationship();
+                relationship.setName(row.getName());
+                relationship.attachRelationship(pkTable, fkTable, false);
+                relationship.setUpdateRule(BulkCatalogReader.toRule(row.getUpdateRule()));
+                relationship.setDeleteRule(BulkCatalogReader.toRule(row.getDeleteRule()));
+            }
+            SQLColumn pkCol = pkTable.getColumnByName(row.getPkColumnName());
+            SQLColumn fkCol = fkTable.getColumnByName(row.getFkColumnName());
+            if (pkCol != null && fkCol != null) {
+                relationship.addMapping(pkCol, fkCol);
+            }
+        }
+    }
+
+    /**
+     * Replaces the indices of the table, other than its primary key, that no
+     * longer match their rows, removes the ones that are gone and adds the
+     * new ones.
+     */
+    private void updateIndices(SQLTable table, SchemaMetadata metadata) throws SQLObjectException {
+        Map<String, List<IndexRow>> indexRows = new LinkedHashMap<String, List<IndexRow>>();
+        for (IndexRow row : metadata.getIndices()) {
+            if (!row.getTableName().equals(table.getName())) continue;
+            if (table.getPrimaryKeyIndex() != null && row.getName().equals(table.getPrimaryKeyIndex().getName())) {
+                continue;
+            }
+            List<IndexRow> rows = indexRows.get(row.getName());
+            if (rows == null) {
+                rows = new ArrayList<IndexRow>();
+                indexRows.put(row.getName(), rows);
+            }
+            rows.add(row);
+        }
+
+        for (SQLIndex index : new ArrayList<SQLIndex>(table.getIndicesWithoutPopulating())) {
+            if (index.isPrimaryKeyIndex()) continue;
+            List<IndexRow> rows = indexRows.get(index.getName());
+            if (rows != null && matches(index, rows)) {
+                indexRows.remove(index.getName());
+            } else {
+                logger.debug("Index " + index.getName() + " changed or was dropped");
+                table.removeChild(index);
+            }
+        }
+
+        for (List<IndexRow> rows : indexRows.values()) {
+            SQLIndex index = new SQLIndex(rows.get(0).getName(), rows.get(0).isUnique(), null, null, null);
+            table.addIndex(index);
+            for (IndexRow row : rows) {
+                SQLColumn col = table.getColumnByName(row.getColumnName());
+                if (col != null) {
+                    index.addIndexColumn(col, row.isDescending() ? AscendDescend.DESCENDING : AscendDescend.ASCENDING);
+                }
+            }
+        }
+    }
+
+    private boolean matches(SQLIndex index, List<IndexRow> rows) {
+        if (index.isUnique() != rows.get(0).isUnique()) return false;
+        List<SQLIndex.Column> cols = index.getChildren(SQLIndex.Column.class);
+        if (cols.size() != rows.size()) return false;
+        for (int i = 0; i < rows.size(); i++) {
+            AscendDescend order = rows.get(i).isDescending() ? AscendDescend.DESCENDING : AscendDescend.ASCENDING;
+            if (!cols.get(i).getName().equals(rows.get(i).getColumnName())
+                    || cols.get(i).getAscendingOrDescending() != order) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.catalog;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The rows read by the set-based catalog queries for one schema (or catalog,
+ * for databases whose catalogs hold tables). This is kept separate from the
+ * SQLObjects built from it so the slow part, reading the rows from the
+ * database, can happen on a different thread than building the tree.
+ */
+public class SchemaMetadata implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * One table in the schema.
+     */
+    public static class TableRow implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final String name;
+        private final String type;
+        private final String remarks;
+        
+        public TableRow(String name, String type, String remarks) {
+            this.name = name;
+            this.type = type;
+            this.remarks = remarks;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public String getType() {
+            return type;
+        }
+        
+        public String getRemarks() {
+            return remarks;
+        }
+    }
+
+    /**
+     * One column of a table, in the order the columns are defined in the
+     * table.
+     */
+    public static class ColumnRow implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final String tableName;
+        private final String name;
+        private final String typeName;
+        private final int size;
+        private final int decimalDigits;
+        private final boolean nullable;
+        private final String defaultValue;
+        private final String remarks;
+        private final boolean autoIncrement;
+        
+        public ColumnRow(String tableName, String name, String typeName, int size, int decimalDigits,
+                boolean nullable, String defaultValue, String remarks, boolean autoIncrement) {
+            this.tableName = tableName;
+            this.name = name;
+            this.typeName = typeName;
+            this.size = size;
+            this.decimalDigits = decimalDigits;
+            this.nullable = nullable;
+            this.defaultValue = defaultValue;
+            this.remarks = remarks;
+            this.autoIncrement = autoIncrement;
+        }
+        
+        public String getTableName() {
+            return tableName;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        /**
+         * The database's own name for the type of this column.
+         */
+        public String getTypeName() {
+            return typeName;
+        }
+        
+        public int getSize() {
+            return size;
+        }
+        
+        public int getDecimalDigits() {
+            return decimalDigits;
+        }
+        
+        public boolean isNullable() {
+            return nullable;
+        }
+        
+        public String getDefaultValue() {
+            return defaultValue;
+        }
+        
+        public String getRemarks() {
+            return remarks;
+        }
+        
+        public boolean isAutoIncrement() {
+            return autoIncrement;
+        }
+    }
+
+    /**
+     * One column of a table's primary key, in key order.
+     */
+    public static class PrimaryKeyRow implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final String tableName;
+        private final String columnName;
+        private final String keyName;
+        
+        public PrimaryKeyRow(String tableName, String columnName, String keyName) {
+            this.tableName = tableName;
+            this.columnName = columnName;
+            this.keyName = keyName;
+        }
+        
+        public String getTableName() {
+            return tableName;
+        }
+        
+        public String getColumnName() {
+            return columnName;
+        }
+        
+        public String getKeyName() {
+            return keyName;
+        }
+    }
+
+    /**
+     * One column mapping of a foreign key, in key order.
+     */
+    public static class ForeignKeyRow implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final String name;
+        private final String fkTableName;
+        private final String fkColumnName;
+        private final String pkSchemaName;
+        private final String pkTableName;
+        private final String pkColumnName;
+        private final String updateRule;
+        private final String deleteRule;
+        
+        public ForeignKeyRow(String name, String fkTableName, String fkColumnName, String pkSchemaName,
+                String pkTableName, String pkColumnName, String updateRule, String deleteRule) {
+            this.name = name;
+            this.fkTableName = fkTableName;
+            this.fkColumnName = fkColumnName;
+            this.pkSchemaName = pkSchemaName;
+            this.pkTableName = pkTableName;
+            this.pkColumnName = pkColumnName;
+            this.updateRule = updateRule;
+            this.deleteRule = deleteRule;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public String getFkTableName() {
+            return fkTableName;
+        }
+        
+        public String getFkColumnName() {
+            return fkColumnName;
+        }
+        
+        /**
+         * The schema of the referenced table. This is null if the database
+         * does not report it, in which case the table is assumed to be in the
+         * same schema.
+         */
+        public String getPkSchemaName() {
+            return pkSchemaName;
+        }
+        
+        public String getPkTableName() {
+            return pkTableName;
+        }
+        
+        public String getPkColumnName() {
+            return pkColumnName;
+        }
+        
+        /**
+         * The update rule as the catalog views spell it, for example
+         * "SET NULL".
+         */
+        public String getUpdateRule() {
+            return updateRule;
+        }
+        
+        public String getDeleteRule() {
+            return deleteRule;
+        }
+    }
+
+    /**
+     * One column of an index, in index order.
+     */
+    public static class IndexRow implements Serializable {
+        private static final long serialVersionUID = 1L;
+        
+        private final String tableName;
+        private final String name;
+        private final boolean unique;
+        private final String columnName;
+        private final boolean descending;
+        
+        public IndexRow(String tableName, String name, boolean unique, String columnName, boolean descending) {
+            this.tableName = tableName;
+            this.name = name;
+            this.unique = unique;
+            this.columnName = columnName;
+            this.descending = descending;
+        }
+        
+        public String getTableName() {
+            return tableName;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public boolean isUnique() {
+            return unique;
+        }
+        
+        public String getColumnName() {
+            return columnName;
+        }
+        
+        public boolean isDescending() {
+            return descending;
+        }
+    }
+    
+    private final String schemaName;
+    
+    private final List<TableRow> tables = new ArrayList<TableRow>();
+    
+    private final List<ColumnRow> columns = new ArrayList<ColumnRow>();
+    
+    private final List<PrimaryKeyRow> primaryKeys = new ArrayList<PrimaryKeyRow>();
+    
+    private final List<ForeignKeyRow> foreignKeys = new ArrayList<ForeignKeyRow>();
+
+    /**
+     * The index rows, or null if the indices could not be read in bulk and
+     * have to be read one table at a time.
+     */
+    private List<IndexRow> indices;
+
+    /**
+     * The result of the schema's fingerprint query when the rows were read,
+     * or null if it could not be read.
+     */
+    private String fingerprint;
+
+    /**
+     * The time the rows were read from the database, in milliseconds.
+     */
+    private long readTime = System.currentTimeMillis();
+    
+    public SchemaMetadata(String schemaName) {
+        this.schemaName = schemaName;
+    }
+    
+    public String getSchemaName() {
+        return schemaName;
+    }
+    
+    public List<TableRow> getTables() {
+        return tables;
+    }
+    
+    public List<ColumnRow> getColumns() {
+        return columns;
+    }
+    
+    public List<PrimaryKeyRow> getPrimaryKeys() {
+        return primaryKeys;
+    }
+    
+    public List<ForeignKeyRow> getForeignKeys() {
+        return foreignKeys;
+    }
+    
+    public List<IndexRow> getIndices() {
+        return indices;
+    }
+    
+    public void setIndices(List<IndexRow> indices) {
+        this.indices = indices;
+    }
+    
+    public String getFingerprint() {
+        return fingerprint;
+    }
+    
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+    
+    public long getReadTime() {
+        return readTime;
+    }
+}
@@ -212,6 +212,15 @@ public interface DDLGenerator {
      */
     public List<DDLStatement> getDdlStatements();
 
+    /**
+     * Returns the DDL statements that have been created since this method was
+     * last called and forgets them, so a long script can be written out as
+     * it is generated instead of being kept in memory. Unlike
+     * {@link #getDdlStatements()}, the statements are never wrapped in
+     * anything the generator puts around a whole script.
+     */
+    public List<DDLStatement> removeDdlStatements();
+
     /**
      * Converts an arbitrary string (which may contain spaces, mixed case,
      * punctuation, and so on) into a valid identifier in the target
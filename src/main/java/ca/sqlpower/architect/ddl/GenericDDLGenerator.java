@@ -1324,6 +1324,12 @@ public class GenericDDLGenerator implements DDLGenerator {
 		return ddlStatements;
 	}
 
+	public List<DDLStatement> removeDdlStatements() {
+	    List<DDLStatement> statements = ddlStatements;
+	    ddlStatements = new ArrayList<DDLStatement>();
+	    return statements;
+	}
+
 	public void dropPrimaryKey(SQLTable t) throws SQLObjectException {
 	    SQLIndex pk = t.getPrimaryKeyIndex();
 	    print("\nALTER TABLE " + toQualifiedName(t.getName())
@@ -20,6 +20,7 @@ package ca.sqlpower.architect.ddl;
 
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -206,10 +207,24 @@ public class LiquibaseDDLGenerator extends GenericDDLGenerator implements DDLGen
 	public List<DDLStatement> getDdlStatements() {
 		List<DDLStatement> result = super.getDdlStatements();
 		if (!separateChangeSets) {
-			DDLStatement startTag = new DDLStatement((SQLObject)null, StatementType.XMLTAG, getChangeSetStartTag() + EOL, "", null, null);
-			result.add(0, startTag);
-			DDLStatement endTag = new DDLStatement((SQLObject)null, StatementType.XMLTAG, "</changeSet>", "", null, null);
-			result.add(endTag);
+			List<DDLStatement> enclosing = getEnclosingStatements();
+			result.add(0, enclosing.get(0));
+			result.add(enclosing.get(1));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the opening and closing tags of the change set the whole
+	 * script is enclosed in, or an empty list if each statement is in a
+	 * change set of its own. {@link #getDdlStatements()} includes these, but
+	 * {@link #removeDdlStatements()} does not.
+	 */
+	public List<DDLStatement> getEnclosingStatements() {
+		List<DDLStatement> result = new ArrayList<DDLStatement>();
+		if (!separateChangeSets) {
+			result.add(new DDLStatement((SQLObject)null, StatementType.XMLTAG, getChangeSetStartTag() + EOL, "", null, null));
+			result.add(new DDLStatement((SQLObject)null, StatementType.XMLTAG, "</changeSet>", "", null, null));
 		}
 		return result;
 	}
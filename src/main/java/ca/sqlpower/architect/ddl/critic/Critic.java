@@ -66,5 +66,15 @@ public interface Critic {
      * as the object is immutable.
      */
     public Severity getSeverity();
+
+    /**
+     * Returns true if this critic only looks at the subject it is given in
+     * {@link #criticize(Object)} and keeps no state between calls. Stateless
+     * critics may be run on many subjects at the same time by the
+     * {@link Criticizer}. Critics that need a global view of the model, like
+     * one that looks for duplicate names, must return false and will be given
+     * each subject in order on a single thread.
+     */
+    public boolean isStateless();
     
 }
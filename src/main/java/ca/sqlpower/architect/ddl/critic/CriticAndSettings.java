@@ -40,6 +40,7 @@ import ca.sqlpower.object.annotation.Accessor;
 import ca.sqlpower.object.annotation.Constructor;
 import ca.sqlpower.object.annotation.ConstructorParameter;
 import ca.sqlpower.object.annotation.Mutator;
+import ca.sqlpower.object.annotation.Transient;
 
 /**
  * The settings of a specific {@link Critic}. Includes if the critic is enabled
@@ -76,6 +77,12 @@ public abstract class CriticAndSettings extends AbstractSPObject implements Crit
         DB2("DB2", DB2DDLGenerator.class),
         H2("H2", H2DDLGenerator.class),
         HSQLDB("HSQLDB", HSQLDBDDLGenerator.class),
+        /**
+         * Critics in this group do not look for illegal models but for
+         * physical designs that will perform badly once they are in
+         * production. These critics apply to all platforms.
+         */
+        PERFORMANCE("Performance", DDLGenerator.class),
         /**
          * All configuration critics can belong to this group. These errors
          * are in a special class because they are not model specific and
@@ -191,6 +198,17 @@ public abstract class CriticAndSettings extends AbstractSPObject implements Crit
         started = false;
     }
     
+    /**
+     * Critics are assumed to need a global view of the objects they criticize
+     * unless they declare otherwise. Critics that only look at the single
+     * object given to {@link #criticize(Object)} should override this to
+     * return true so they can be run in parallel.
+     */
+    @Transient @Accessor
+    public boolean isStateless() {
+        return false;
+    }
+    
     @Mutator
     public void setSeverity(Severity severity) {
         Severity oldSeverity = this.severity;
@@ -45,13 +45,17 @@ import ca.sqlpower.architect.ddl.critic.impl.OracleReservedWordsCritic;
 import ca.sqlpower.architect.ddl.critic.impl.OracleUnsupportedFeaturesCritic;
 import ca.sqlpower.architect.ddl.critic.impl.PostgreSQLReservedWordsCritic;
 import ca.sqlpower.architect.ddl.critic.impl.PrimaryKeyCritic;
+import ca.sqlpower.architect.ddl.critic.impl.RedundantIndexCritic;
 import ca.sqlpower.architect.ddl.critic.impl.RelationshipMappingTypeCritic;
+import ca.sqlpower.architect.ddl.critic.impl.RowWidthCritic;
 import ca.sqlpower.architect.ddl.critic.impl.SQLServer2000UnsupportedFeaturesCritic;
 import ca.sqlpower.architect.ddl.critic.impl.SQLServer2005UnsupportedFeaturesCritic;
 import ca.sqlpower.architect.ddl.critic.impl.SQLServerReservedWordsCritic;
 import ca.sqlpower.architect.ddl.critic.impl.SQLServerUnsupportedFeaturesCritic;
 import ca.sqlpower.architect.ddl.critic.impl.SetDefaultOnColumnWithNoDefaultCritic;
 import ca.sqlpower.architect.ddl.critic.impl.SetNullOnNonNullableColumnCritic;
+import ca.sqlpower.architect.ddl.critic.impl.WideIndexKeyCritic;
+import ca.sqlpower.architect.ddl.critic.impl.WidePrimaryKeyCritic;
 import ca.sqlpower.object.AbstractSPObject;
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.object.annotation.Accessor;
@@ -114,7 +118,12 @@ public class CriticManager extends AbstractSPObject {
                 //SQL Server 2000
                 new SQLServer2000UnsupportedFeaturesCritic(),
                 //SQL Server 2005
-                new SQLServer2005UnsupportedFeaturesCritic()
+                new SQLServer2005UnsupportedFeaturesCritic(),
+                //Performance
+                new WidePrimaryKeyCritic(),
+                new RowWidthCritic(),
+                new RedundantIndexCritic(),
+                new WideIndexKeyCritic()
                 ));
 
     /**
@@ -335,6 +344,10 @@ public class CriticManager extends AbstractSPObject {
             //its class or name.
             for (CriticAndSettings settings : group.getSettings()) {
                 prefs.put(settings.getClass().getSimpleName() + ".severity", settings.getSeverity().name());
+                if (settings instanceof ThresholdCritic) {
+                    prefs.putInt(settings.getClass().getSimpleName() + ".threshold", 
+                            ((ThresholdCritic) settings).getThreshold());
+                }
             }
         }
         prefs.flush();
@@ -350,9 +363,21 @@ public class CriticManager extends AbstractSPObject {
         Preferences prefs = Preferences.userNodeForPackage(CriticManager.class);
         for (CriticGrouping group : getCriticGroupings()) {
             group.setEnabled(prefs.getBoolean(CriticGrouping.class.getSimpleName() + "." + group.getPlatformType() + ".enabled", true));
+            //performance critics only warn unless the user has decided otherwise
+            final Severity defaultSeverity;
+            if (StarterPlatformTypes.PERFORMANCE.getName().equals(group.getPlatformType())) {
+                defaultSeverity = Severity.WARNING;
+            } else {
+                defaultSeverity = Severity.ERROR;
+            }
             for (CriticAndSettings settings : group.getSettings()) {
-                String severity = prefs.get(settings.getClass().getSimpleName() + ".severity", Severity.ERROR.name());
+                String severity = prefs.get(settings.getClass().getSimpleName() + ".severity", defaultSeverity.name());
                 settings.setSeverity(Severity.valueOf(severity));
+                if (settings instanceof ThresholdCritic) {
+                    ThresholdCritic thresholdCritic = (ThresholdCritic) settings;
+                    thresholdCritic.setThreshold(prefs.getInt(settings.getClass().getSimpleName() + ".threshold", 
+                            thresholdCritic.getThreshold()));
+                }
             }
         }
     }
@@ -22,6 +22,9 @@ package ca.sqlpower.architect.ddl.critic;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.sqlobject.SQLDatabase;
@@ -36,11 +39,30 @@ import ca.sqlpower.sqlobject.SQLRelationship.SQLImportedKey;
  * object and its descendants will be traversed as well as which critics will be
  * informed of objects to criticize.
  * <p>
+ * Critics that declare themselves stateless (see {@link Critic#isStateless()})
+ * are run across the subjects in parallel on a shared fork-join pool. All
+ * other critics are given every subject in traversal order on the calling
+ * thread while the pool works. The resulting criticisms are always returned
+ * in the same order as if every critic had been run on a single thread.
+ * <p>
  * Package private because classes outside of the critics do not need to know about
  * the implementation.
  */
 class Criticizer {
 
+    /**
+     * The pool stateless critics are run on. This is shared by all
+     * criticizers as it is normal for a criticizer to be created for each
+     * run of the critics.
+     */
+    private static final ForkJoinPool criticPool = new ForkJoinPool();
+
+    /**
+     * The number of subjects a single task will criticize before it will
+     * be split into smaller tasks.
+     */
+    private static final int SUBJECTS_PER_TASK = 64;
+
     private final List<Critic> critics;
 
     public Criticizer(List<Critic> critics) {
@@ -56,36 +78,34 @@ class Criticizer {
             for (Critic c : critics) {
                 c.start();
             }
-            return recursivelyCriticize(subject);
+            List<Object> subjects = new ArrayList<Object>();
+            collectSubjects(subject, subjects);
+            return criticizeSubjects(subjects);
         } finally {
             for (Critic c : critics) {
                 c.end();
             }
         }
     }
-    
+
     /**
+     * Adds the given object and all of its descendants to the list of subjects
+     * in the order they are to be criticized. Objects that do not warrant
+     * criticism are skipped but their descendants are still visited.
      * 
      * @param root
-     *            The SQLObject to criticize
-     * @param criticizer
-     *            The criticizer that will examine the subtree at root and
-     *            accumulate criticisms about it
-     * @throws SQLObjectException
+     *            The object to start collecting subjects from.
+     * @param subjects
+     *            The list to add the subjects to.
+     * @throws RuntimeException
      *             if the (sub)tree under root is not already populated, and an
      *             attempt to populate it fails
      */
     @SuppressWarnings("unchecked")
-    private List<Criticism> recursivelyCriticize(Object root) {
-        List<Criticism> criticisms = new ArrayList<Criticism>();
-        
+    private void collectSubjects(Object root, List<Object> subjects) {
         // skip types that don't warrant criticism
         if ( (!(root instanceof SQLDatabase))) {
-            for (Critic critic : critics) {
-                List<Criticism> newCriticisms = critic.criticize(root);
-                criticisms.addAll(newCriticisms);
-                // TODO record the critic-subject combination so it can be wiped out later
-            }
+            subjects.add(root);
         }
         
         if (root instanceof SPObject) {
@@ -99,10 +119,101 @@ class Criticizer {
                 } catch (SQLObjectException e) {
                     throw new RuntimeException(e);
                 }
-                criticisms.addAll(recursivelyCriticize(child));
+                collectSubjects(child, subjects);
+            }
+        }
+    }
+
+    /**
+     * Criticizes each of the subjects with all of the critics. The returned
+     * criticisms are ordered by subject and then by the order of the critics
+     * in this criticizer.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Criticism> criticizeSubjects(List<Object> subjects) {
+        final int criticCount = critics.size();
+        final List<Criticism>[] results = new List[subjects.size() * criticCount];
+        
+        List<Integer> statelessCritics = new ArrayList<Integer>();
+        List<Integer> globalCritics = new ArrayList<Integer>();
+        for (int i = 0; i < criticCount; i++) {
+            if (critics.get(i).isStateless()) {
+                statelessCritics.add(i);
+            } else {
+                globalCritics.add(i);
+            }
+        }
+        
+        ForkJoinTask<Void> statelessTask = null;
+        if (!statelessCritics.isEmpty() && !subjects.isEmpty()) {
+            statelessTask = criticPool.submit(
+                    new StatelessCriticTask(subjects, statelessCritics, results, 0, subjects.size()));
+        }
+        
+        try {
+            // critics with a global view must see the subjects in order
+            for (int subjectIndex = 0; subjectIndex < subjects.size(); subjectIndex++) {
+                Object subject = subjects.get(subjectIndex);
+                for (Integer criticIndex : globalCritics) {
+                    results[subjectIndex * criticCount + criticIndex] = 
+                        critics.get(criticIndex).criticize(subject);
+                }
+            }
+        } finally {
+            if (statelessTask != null) {
+                statelessTask.join();
+            }
+        }
+        
+        List<Criticism> criticisms = new ArrayList<Criticism>();
+        for (List<Criticism> result : results) {
+            if (result != null) {
+                criticisms.addAll(result);
             }
         }
         return criticisms;
     }
+
+    /**
+     * Runs the stateless critics on a range of subjects, splitting the range
+     * into smaller tasks when it is large. The criticisms for each subject and
+     * critic pair are placed in their own slot of the result array so they can
+     * be merged back in order once all of the tasks are done.
+     */
+    private class StatelessCriticTask extends RecursiveAction {
+        
+        private final List<Object> subjects;
+        private final List<Integer> criticIndices;
+        private final List<Criticism>[] results;
+        private final int start;
+        private final int end;
+
+        public StatelessCriticTask(List<Object> subjects, List<Integer> criticIndices, 
+                List<Criticism>[] results, int start, int end) {
+            this.subjects = subjects;
+            this.criticIndices = criticIndices;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        protected void compute() {
+            if (end - start > SUBJECTS_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new StatelessCriticTask(subjects, criticIndices, results, start, middle),
+                        new StatelessCriticTask(subjects, criticIndices, results, middle, end));
+                return;
+            }
+            final int criticCount = critics.size();
+            for (int subjectIndex = start; subjectIndex < end; subjectIndex++) {
+                Object subject = subjects.get(subjectIndex);
+                for (Integer criticIndex : criticIndices) {
+                    results[subjectIndex * criticCount + criticIndex] = 
+                        critics.get(criticIndex).criticize(subject);
+                }
+            }
+        }
+    }
     
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.ddl.critic;
+
+import ca.sqlpower.object.annotation.Accessor;
+import ca.sqlpower.object.annotation.Mutator;
+import ca.sqlpower.object.annotation.Transient;
+
+/**
+ * A critic that compares a measurement of the objects it criticizes, such as
+ * a width in bytes, against a limit the user can change. The limit is kept
+ * with the rest of the critic's settings in the project and in the default
+ * settings of the {@link CriticManager}.
+ */
+public abstract class ThresholdCritic extends CriticAndSettings {
+
+    /**
+     * Objects measuring more than this value are criticized.
+     */
+    private int threshold;
+
+    /**
+     * @param platformType
+     *            A string that will group critics together. See
+     *            {@link CriticAndSettings#CriticAndSettings(String, String)}.
+     * @param name
+     *            A short name of the critic.
+     * @param threshold
+     *            The starting value of the limit objects are compared against.
+     */
+    public ThresholdCritic(String platformType, String name, int threshold) {
+        super(platformType, name);
+        this.threshold = threshold;
+    }
+
+    @Mutator
+    public void setThreshold(int threshold) {
+        int oldThreshold = this.threshold;
+        this.threshold = threshold;
+        firePropertyChange("threshold", oldThreshold, threshold);
+    }
+
+    @Accessor
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns a short description of what the threshold measures, suitable
+     * for labelling a field that edits it.
+     */
+    @Transient @Accessor
+    public abstract String getThresholdDescription();
+}
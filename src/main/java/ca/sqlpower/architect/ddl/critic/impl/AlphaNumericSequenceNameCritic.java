@@ -47,6 +47,11 @@ public class AlphaNumericSequenceNameCritic extends CriticAndSettings {
         super(StarterPlatformTypes.GENERIC.getName(), Messages.getString("AlphaNumericSequenceNameCritic.name"));
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof SQLColumn)) return Collections.emptyList();
         
@@ -50,6 +50,11 @@ public class CommentCritic extends CriticAndSettings {
         this.maxTableCommentLength = maxLengthTable;
     }
     
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(final Object so) {
         
         if (!(so instanceof SQLTable || so instanceof SQLColumn)) return Collections.emptyList();
@@ -35,6 +35,11 @@ public class DB2UnsupportedFeaturesCritic extends CriticAndSettings {
         super(StarterPlatformTypes.DB2.getName(), Messages.getString("UnsupportedFeaturesCritic.name", StarterPlatformTypes.DB2.getName()));
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof SQLRelationship)) return Collections.emptyList();
         
@@ -35,6 +35,11 @@ public class EmptyRelationshipCritic extends CriticAndSettings {
         super(StarterPlatformTypes.GENERIC.getName(), Messages.getString("EmptyRelationshipCritic.name"));
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (subject instanceof SQLRelationship) {
             SQLRelationship relation = (SQLRelationship) subject;
@@ -35,6 +35,11 @@ public class H2UnsupportedFeaturesCritic extends CriticAndSettings {
         super(StarterPlatformTypes.H2.getName(), Messages.getString("UnsupportedFeaturesCritic.name", StarterPlatformTypes.H2.getName()));
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof SQLRelationship)) return Collections.emptyList();
         
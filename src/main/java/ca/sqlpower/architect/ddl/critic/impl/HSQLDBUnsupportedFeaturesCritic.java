@@ -35,6 +35,11 @@ public class HSQLDBUnsupportedFeaturesCritic extends CriticAndSettings {
         super(StarterPlatformTypes.HSQLDB.getName(), Messages.getString("UnsupportedFeaturesCritic.name", StarterPlatformTypes.HSQLDB.getName()));
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof SQLRelationship)) return Collections.emptyList();
         
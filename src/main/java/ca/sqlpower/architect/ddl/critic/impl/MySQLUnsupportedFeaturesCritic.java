@@ -40,6 +40,11 @@ public class MySQLUnsupportedFeaturesCritic extends CriticAndSettings {
                 Messages.getString("UnsupportedFeaturesCritic.name", StarterPlatformTypes.MY_SQL.getName()));
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof SQLRelationship)) return Collections.emptyList();
         
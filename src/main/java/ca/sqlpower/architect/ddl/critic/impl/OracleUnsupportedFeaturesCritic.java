@@ -35,6 +35,11 @@ public class OracleUnsupportedFeaturesCritic extends CriticAndSettings {
                 Messages.getString("UnsupportedFeaturesCritic.name", StarterPlatformTypes.ORACLE.getName()));
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof SQLRelationship)) return Collections.emptyList();
         
@@ -78,6 +78,11 @@ public class PhysicalNameCritic extends CriticAndSettings {
         
     }
     
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(final Object subject) {
         if (!(subject instanceof SQLObject)) return Collections.emptyList();
         
@@ -35,6 +35,11 @@ public class PrimaryKeyCritic extends CriticAndSettings {
         super(StarterPlatformTypes.GENERIC.getName(), Messages.getString("PrimaryKeyCritic.name"));
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(final Object so) {
         if (!(so instanceof SQLTable)) return Collections.emptyList();
         SQLTable t = (SQLTable) so;
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.ddl.critic.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
+import ca.sqlpower.architect.ddl.critic.CriticFix;
+import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.architect.ddl.critic.CriticFix.FixType;
+import ca.sqlpower.object.ObjectDependentException;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLIndex.Column;
+
+/**
+ * Critic that warns about indexes that are made redundant by another index on
+ * the same table. An index is redundant if its columns are the same as, or a
+ * leading prefix of, the columns of another index in the same order. Every
+ * redundant index slows down inserts and updates without helping any query
+ * the other index can't already answer.
+ */
+public class RedundantIndexCritic extends CriticAndSettings {
+
+    public RedundantIndexCritic() {
+        super(StarterPlatformTypes.PERFORMANCE.getName(), Messages.getString("RedundantIndexCritic.name"));
+        setSeverity(Severity.WARNING);
+    }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
+    public List<Criticism> criticize(Object subject) {
+        if (!(subject instanceof SQLIndex)) return Collections.emptyList();
+        final SQLIndex index = (SQLIndex) subject;
+        if (index.isPrimaryKeyIndex() || !(index.getParent() instanceof SQLTable)) return Collections.emptyList();
+        SQLTable table = index.getParent();
+        List<Column> indexColumns = index.getChildrenWithoutPopulating(Column.class);
+        if (indexColumns.isEmpty()) return Collections.emptyList();
+        
+        List<SQLIndex> siblings = table.getChildrenWithoutPopulating(SQLIndex.class);
+        int position = siblings.indexOf(index);
+        for (int i = 0; i < siblings.size(); i++) {
+            SQLIndex other = siblings.get(i);
+            if (other == index) continue;
+            List<Column> otherColumns = other.getChildrenWithoutPopulating(Column.class);
+            if (!isPrefix(indexColumns, otherColumns)) continue;
+            
+            boolean sameColumns = indexColumns.size() == otherColumns.size();
+            if (sameColumns) {
+                // exact duplicates: only criticize the one that can be dropped
+                if (index.isUnique() && !other.isUnique()) continue;
+                if (index.isUnique() == other.isUnique() && !other.isPrimaryKeyIndex() && i > position) continue;
+            } else if (index.isUnique()) {
+                // a unique index enforces a constraint the wider index does not
+                continue;
+            }
+            
+            List<Criticism> criticisms = new ArrayList<Criticism>();
+            criticisms.add(new Criticism(index, 
+                    Messages.getString(sameColumns ? "RedundantIndexCritic.duplicateCriticism" : 
+                        "RedundantIndexCritic.prefixCriticism", index.getName(), other.getName()), 
+                    this, 
+                    new CriticFix(Messages.getString("RedundantIndexCritic.quickFix", index.getName()), 
+                            FixType.QUICK_FIX) {
+                        @Override
+                        public void apply() {
+                            if (index.getParent() == null) return;
+                            try {
+                                index.getParent().removeChild(index);
+                            } catch (ObjectDependentException e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    }));
+            return criticisms;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns true if the prefix columns are the leading columns of the full
+     * list of index columns, in the same order and direction. Index columns
+     * that are expressions instead of table columns never match.
+     */
+    private static boolean isPrefix(List<Column> prefix, List<Column> full) {
+        if (prefix.size() > full.size()) return false;
+        for (int i = 0; i < prefix.size(); i++) {
+            Column prefixCol = prefix.get(i);
+            Column fullCol = full.get(i);
+            if (prefixCol.getColumn() == null || prefixCol.getColumn() != fullCol.getColumn()) return false;
+            if (prefixCol.getAscendingOrDescending() != fullCol.getAscendingOrDescending()) return false;
+        }
+        return true;
+    }
+}
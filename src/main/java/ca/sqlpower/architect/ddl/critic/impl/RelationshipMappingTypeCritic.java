@@ -19,6 +19,7 @@
 
 package ca.sqlpower.architect.ddl.critic.impl;
 
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -35,8 +36,12 @@ import ca.sqlpower.sqlobject.SQLRelationship.ColumnMapping;
 import ca.sqlpower.sqlobject.SQLTypePhysicalPropertiesProvider.PropertyType;
 
 /**
- * Critic that checks for relationships that do not map any columns between
- * tables or an invalid column type is mapped (ie integer to varchar).
+ * Critic that checks for relationships that map columns of different types,
+ * precision, scale, or nullability (ie integer to varchar). When the types
+ * themselves differ the criticism also warns that joins across the columns
+ * need an implicit conversion, which stops the database from using an index
+ * on the converted column. Two character types normally differ in character
+ * set or collation, which is reported the same way.
  */
 public class RelationshipMappingTypeCritic extends CriticAndSettings {
     
@@ -44,6 +49,11 @@ public class RelationshipMappingTypeCritic extends CriticAndSettings {
         super(StarterPlatformTypes.GENERIC.getName(), Messages.getString("RelationshipMappingTypeCritic.name"));
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(Object so) {
         if (!(so instanceof ColumnMapping)) return Collections.emptyList();
         ColumnMapping cm = (ColumnMapping) so;
@@ -72,11 +82,22 @@ public class RelationshipMappingTypeCritic extends CriticAndSettings {
                             (childSQLType.getScaleType(UserDefinedSQLType.GENERIC_PLATFORM).equals(PropertyType.NOT_APPLICABLE)? "" : ", " + 
                                     childSQLType.getScale(UserDefinedSQLType.GENERIC_PLATFORM)) + ")");
             
+            final String description;
+            if (!ArchitectUtils.columnTypesDiffer(parentColumn.getType(), childColumn.getType())) {
+                description = "Columns " + cm.getPkColumn().getShortDisplayName() + " and " + 
+                    cm.getFkColumn().getShortDisplayName() + " related by FK constraint " +
+                    "have different types, scale, or precision";
+            } else if (isCharacterType(parentColumn.getType()) && isCharacterType(childColumn.getType())) {
+                description = Messages.getString("RelationshipMappingTypeCritic.characterSetCriticism", 
+                        parentColumn.getShortDisplayName(), childColumn.getShortDisplayName());
+            } else {
+                description = Messages.getString("RelationshipMappingTypeCritic.conversionCriticism", 
+                        parentColumn.getShortDisplayName(), childColumn.getShortDisplayName());
+            }
+            
             criticisms.add(new Criticism(
                     cm.getParent(),
-                    "Columns " + cm.getPkColumn().getShortDisplayName() + " and " + 
-                        cm.getFkColumn().getShortDisplayName() + " related by FK constraint " +
-                    		"have different types, scale, or precision",
+                    description,
                     this,
                     new CriticFix(updateToParentQuickFix, FixType.QUICK_FIX) {
                         @Override
@@ -104,4 +125,24 @@ public class RelationshipMappingTypeCritic extends CriticAndSettings {
         }
         return criticisms;
     }
+
+    /**
+     * Returns true if the given type stores character data. Comparing two
+     * different character types normally means the character sets or
+     * collations of the columns differ.
+     */
+    private static boolean isCharacterType(int type) {
+        final int NCHAR = -15; // Java6/JDBC 4.0
+        final int NVARCHAR = -9; // Java6/JDBC 4.0
+        final int LONGNVARCHAR = -16; // Java6/JDBC 4.0
+        final int NCLOB = 2011; // Java6/JDBC 4.0
+        return (type == Types.CHAR ||
+                type == Types.VARCHAR ||
+                type == Types.LONGVARCHAR ||
+                type == Types.CLOB ||
+                type == NCHAR ||
+                type == NVARCHAR ||
+                type == LONGNVARCHAR ||
+                type == NCLOB);
+    }
 }
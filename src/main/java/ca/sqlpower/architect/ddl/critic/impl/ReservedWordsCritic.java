@@ -54,6 +54,11 @@ public abstract class ReservedWordsCritic extends CriticAndSettings {
         this.reservedWords = reservedWords;
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (subject instanceof SQLTable || subject instanceof SQLIndex || 
                 subject instanceof SQLRelationship || subject instanceof SQLColumn) {
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.ddl.critic.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.sqlpower.architect.ArchitectUtils;
+import ca.sqlpower.architect.ddl.DB2DDLGenerator;
+import ca.sqlpower.architect.ddl.MySqlDDLGenerator;
+import ca.sqlpower.architect.ddl.Oracle8DDLGenerator;
+import ca.sqlpower.architect.ddl.Oracle9PlusDDLGenerator;
+import ca.sqlpower.architect.ddl.OracleDDLGenerator;
+import ca.sqlpower.architect.ddl.PostgresDDLGenerator;
+import ca.sqlpower.architect.ddl.SQLServer2000DDLGenerator;
+import ca.sqlpower.architect.ddl.SQLServer2005DDLGenerator;
+import ca.sqlpower.architect.ddl.SQLServerDDLGenerator;
+import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.architect.ddl.critic.ThresholdCritic;
+import ca.sqlpower.object.annotation.Constructor;
+import ca.sqlpower.object.annotation.ConstructorParameter;
+import ca.sqlpower.sql.JDBCDataSourceType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Critic that warns about tables whose rows can be wider than a single data
+ * page of the platform. Depending on the platform these rows either fail to
+ * insert or are split across pages which makes every read of the row cost
+ * more than one page read.
+ */
+public class RowWidthCritic extends ThresholdCritic {
+
+    /**
+     * The default page size used when the platform of the table being
+     * criticized is not known.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 8192;
+
+    /**
+     * The number of bytes available for a single row on the platforms we know
+     * about, keyed by the class name of the platform's DDL generator.
+     */
+    private static final Map<String, Integer> PLATFORM_ROW_BYTES = new HashMap<String, Integer>();
+    static {
+        PLATFORM_ROW_BYTES.put(SQLServerDDLGenerator.class.getName(), 8060);
+        PLATFORM_ROW_BYTES.put(SQLServer2000DDLGenerator.class.getName(), 8060);
+        PLATFORM_ROW_BYTES.put(SQLServer2005DDLGenerator.class.getName(), 8060);
+        PLATFORM_ROW_BYTES.put(OracleDDLGenerator.class.getName(), 8192);
+        PLATFORM_ROW_BYTES.put(Oracle8DDLGenerator.class.getName(), 8192);
+        PLATFORM_ROW_BYTES.put(Oracle9PlusDDLGenerator.class.getName(), 8192);
+        PLATFORM_ROW_BYTES.put(MySqlDDLGenerator.class.getName(), 8126);
+        PLATFORM_ROW_BYTES.put(PostgresDDLGenerator.class.getName(), 8160);
+        PLATFORM_ROW_BYTES.put(DB2DDLGenerator.class.getName(), 4005);
+    }
+    
+    public RowWidthCritic() {
+        this(DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param defaultPageSize
+     *            The number of bytes a row can take up if the platform of the
+     *            table being criticized is not one we know the page size of.
+     */
+    @Constructor
+    public RowWidthCritic(
+            @ConstructorParameter(propertyName="threshold") int defaultPageSize) {
+        super(StarterPlatformTypes.PERFORMANCE.getName(), Messages.getString("RowWidthCritic.name"), defaultPageSize);
+        setSeverity(Severity.WARNING);
+    }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
+    public List<Criticism> criticize(Object subject) {
+        if (!(subject instanceof SQLTable)) return Collections.emptyList();
+        SQLTable table = (SQLTable) subject;
+        
+        int rowWidth = 0;
+        for (SQLColumn col : table.getChildrenWithoutPopulating(SQLColumn.class)) {
+            rowWidth += ArchitectUtils.estimateColumnWidth(col);
+        }
+        
+        int pageSize = getPageSize(table);
+        List<Criticism> criticisms = new ArrayList<Criticism>();
+        if (rowWidth > pageSize) {
+            criticisms.add(new Criticism(table, 
+                    Messages.getString("RowWidthCritic.criticismDesc", table.getName(), 
+                            Integer.toString(rowWidth), Integer.toString(pageSize)), 
+                    this));
+        }
+        return criticisms;
+    }
+
+    /**
+     * Returns the number of bytes available to a row of the given table based
+     * on the platform of the database the table is in.
+     */
+    private int getPageSize(SQLTable table) {
+        SQLDatabase parentDb = SQLPowerUtils.getAncestor(table, SQLDatabase.class);
+        if (parentDb == null || parentDb.getDataSource() == null) return getThreshold();
+        JDBCDataSourceType dsType = parentDb.getDataSource().getParentType();
+        if (dsType == null) return getThreshold();
+        Integer rowBytes = PLATFORM_ROW_BYTES.get(dsType.getDDLGeneratorClass());
+        if (rowBytes == null) return getThreshold();
+        return rowBytes;
+    }
+
+    @Override
+    public String getThresholdDescription() {
+        return Messages.getString("RowWidthCritic.threshold");
+    }
+}
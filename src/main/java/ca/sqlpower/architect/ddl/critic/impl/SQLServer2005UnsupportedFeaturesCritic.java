@@ -35,6 +35,11 @@ public class SQLServer2005UnsupportedFeaturesCritic extends CriticAndSettings {
                 Messages.getString("UnsupportedFeaturesCritic.name", StarterPlatformTypes.SQL_SERVER_2005.getName()));
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof SQLRelationship)) return Collections.emptyList();
         
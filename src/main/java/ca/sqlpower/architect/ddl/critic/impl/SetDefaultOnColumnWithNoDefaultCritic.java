@@ -45,6 +45,11 @@ public class SetDefaultOnColumnWithNoDefaultCritic extends CriticAndSettings {
                 Messages.getString("SetDefaultOnColumnWithNoDefaultCritic.name"));
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof ColumnMapping)) return Collections.emptyList();
         
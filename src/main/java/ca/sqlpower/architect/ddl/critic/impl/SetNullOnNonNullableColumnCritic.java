@@ -44,6 +44,11 @@ public class SetNullOnNonNullableColumnCritic extends CriticAndSettings {
         super(StarterPlatformTypes.GENERIC.getName(), Messages.getString("SetNullOnNonNullableColumnCritic.name"));
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof ColumnMapping)) return Collections.emptyList();
         
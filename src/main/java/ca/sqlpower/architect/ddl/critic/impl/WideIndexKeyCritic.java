@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.ddl.critic.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ca.sqlpower.architect.ArchitectUtils;
+import ca.sqlpower.architect.ddl.critic.CriticFix;
+import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.architect.ddl.critic.ThresholdCritic;
+import ca.sqlpower.architect.ddl.critic.CriticFix.FixType;
+import ca.sqlpower.object.ObjectDependentException;
+import ca.sqlpower.object.annotation.Constructor;
+import ca.sqlpower.object.annotation.ConstructorParameter;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLIndex.Column;
+
+/**
+ * Critic that warns about large object columns and very wide character or
+ * binary columns that are used as keys of an index. Most platforms either
+ * refuse to index these columns or only index a prefix of them, and when they
+ * do index them every index page holds very few entries.
+ */
+public class WideIndexKeyCritic extends ThresholdCritic {
+
+    /**
+     * The default largest number of bytes a single index key column can be
+     * before it is criticized. This is the key size limit in SQL Server.
+     */
+    public static final int DEFAULT_MAX_KEY_COLUMN_BYTES = 900;
+    
+    public WideIndexKeyCritic() {
+        this(DEFAULT_MAX_KEY_COLUMN_BYTES);
+    }
+
+    /**
+     * @param maxKeyColumnBytes
+     *            Index columns that are estimated to be wider than this number
+     *            of bytes will be criticized.
+     */
+    @Constructor
+    public WideIndexKeyCritic(
+            @ConstructorParameter(propertyName="threshold") int maxKeyColumnBytes) {
+        super(StarterPlatformTypes.PERFORMANCE.getName(), Messages.getString("WideIndexKeyCritic.name"), maxKeyColumnBytes);
+        setSeverity(Severity.WARNING);
+    }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
+    public List<Criticism> criticize(Object subject) {
+        if (!(subject instanceof Column)) return Collections.emptyList();
+        final Column indexColumn = (Column) subject;
+        SQLColumn col = indexColumn.getColumn();
+        final SQLIndex index = indexColumn.getParent();
+        if (col == null || index == null) return Collections.emptyList();
+        
+        final String description;
+        if (ArchitectUtils.isLargeObjectType(col.getType())) {
+            description = Messages.getString("WideIndexKeyCritic.largeObjectCriticism", 
+                    col.getShortDisplayName(), index.getName());
+        } else {
+            int width = ArchitectUtils.estimateColumnWidth(col);
+            if (width <= getThreshold()) return Collections.emptyList();
+            description = Messages.getString("WideIndexKeyCritic.wideColumnCriticism", 
+                    col.getShortDisplayName(), index.getName(), Integer.toString(width), 
+                    Integer.toString(getThreshold()));
+        }
+        
+        List<Criticism> criticisms = new ArrayList<Criticism>();
+        if (!index.isPrimaryKeyIndex() && index.getChildrenWithoutPopulating(Column.class).size() > 1) {
+            criticisms.add(new Criticism(index, description, this, 
+                    new CriticFix(Messages.getString("WideIndexKeyCritic.quickFix", 
+                            col.getShortDisplayName(), index.getName()), FixType.QUICK_FIX) {
+                        @Override
+                        public void apply() {
+                            if (indexColumn.getParent() == null) return;
+                            try {
+                                index.removeChild(indexColumn);
+                            } catch (ObjectDependentException e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    }));
+        } else {
+            criticisms.add(new Criticism(index, description, this));
+        }
+        return criticisms;
+    }
+
+    @Override
+    public String getThresholdDescription() {
+        return Messages.getString("WideIndexKeyCritic.threshold");
+    }
+}
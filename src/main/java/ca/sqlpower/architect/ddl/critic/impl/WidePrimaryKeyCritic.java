@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.ddl.critic.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ca.sqlpower.architect.ArchitectUtils;
+import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.architect.ddl.critic.ThresholdCritic;
+import ca.sqlpower.object.annotation.Constructor;
+import ca.sqlpower.object.annotation.ConstructorParameter;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Critic that warns about tables whose primary key is wider than a given number
+ * of bytes. The primary key is copied into every foreign key that references
+ * it and, on platforms that cluster on the primary key, into every secondary
+ * index of the table as well.
+ */
+public class WidePrimaryKeyCritic extends ThresholdCritic {
+
+    /**
+     * The default number of bytes a primary key can be before it is
+     * criticized. This is enough for a few integer columns or a binary UUID.
+     */
+    public static final int DEFAULT_MAX_PRIMARY_KEY_BYTES = 32;
+    
+    public WidePrimaryKeyCritic() {
+        this(DEFAULT_MAX_PRIMARY_KEY_BYTES);
+    }
+
+    /**
+     * @param maxPrimaryKeyBytes
+     *            Tables with a primary key that is estimated to be wider than
+     *            this number of bytes will be criticized.
+     */
+    @Constructor
+    public WidePrimaryKeyCritic(
+            @ConstructorParameter(propertyName="threshold") int maxPrimaryKeyBytes) {
+        super(StarterPlatformTypes.PERFORMANCE.getName(), Messages.getString("WidePrimaryKeyCritic.name"), maxPrimaryKeyBytes);
+        setSeverity(Severity.WARNING);
+    }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
+    public List<Criticism> criticize(Object subject) {
+        if (!(subject instanceof SQLTable)) return Collections.emptyList();
+        SQLTable table = (SQLTable) subject;
+        
+        int keyWidth = 0;
+        for (SQLColumn col : table.getChildrenWithoutPopulating(SQLColumn.class)) {
+            if (col.isPrimaryKey()) {
+                keyWidth += ArchitectUtils.estimateColumnWidth(col);
+            }
+        }
+        
+        List<Criticism> criticisms = new ArrayList<Criticism>();
+        if (keyWidth > getThreshold()) {
+            criticisms.add(new Criticism(table, 
+                    Messages.getString("WidePrimaryKeyCritic.criticismDesc", table.getName(), 
+                            Integer.toString(keyWidth), Integer.toString(getThreshold())), 
+                    this));
+        }
+        return criticisms;
+    }
+
+    @Override
+    public String getThresholdDescription() {
+        return Messages.getString("WidePrimaryKeyCritic.threshold");
+    }
+}
@@ -19,12 +19,22 @@ package ca.sqlpower.architect.diff;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -120,6 +130,37 @@ public class CompareSQL implements Monitorable {
 
 	private boolean useUUID;
 
+	/**
+	 * Hashes the tables, columns, indices and relationships being compared
+	 * so objects that are the same on both sides can be skipped without
+	 * comparing each of their properties.
+	 */
+	private SQLObjectHasher hasher = new SQLObjectHasher();
+
+	/**
+	 * The number of threads matched tables are compared on.
+	 */
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The number of table pairs per thread that are compared ahead of the
+	 * pair whose diffs are being handed over.
+	 */
+	private static final int PENDING_PAIRS_PER_THREAD = 4;
+
+	/**
+	 * A switch to indicate whether tables and columns that are only on one
+	 * side will be checked for renames. This only applies when objects are
+	 * matched by name.
+	 */
+	private boolean detectRenames;
+
+	/**
+	 * Finds the tables and columns that were renamed if
+	 * {@link #detectRenames} is set.
+	 */
+	private RenameDetector renameDetector = new RenameDetector();
+
 	public CompareSQL(
 			Collection<SQLTable> sourceTables,
 			Collection<SQLTable> targetTables, boolean suppressSimilarities) throws ArchitectDiffException {
@@ -175,169 +216,283 @@ public class CompareSQL implements Monitorable {
 	}
 	
 	public List<DiffChunk<SQLObject>> generateTableDiffs(ArchitectSession session) throws SQLObjectException {
+	    generateTableDiffs(session, new DiffChunkHandler() {
+	        public void handleDiffChunk(DiffChunk<SQLObject> chunk) {
+	            results.add(chunk);
+	        }
+	    });
+	    return results;
+	}
+
+	/**
+	 * Compares the tables like {@link #generateTableDiffs(ArchitectSession)},
+	 * but hands each diff to the given handler instead of collecting them in
+	 * a list. The diffs of a pair of tables are handed over as soon as the
+	 * pair and all of the pairs before it have been compared, and only a few
+	 * pairs per thread are compared ahead of the handler, so the memory a
+	 * comparison uses does not grow with the number of diffs.
+	 */
+	public void generateTableDiffs(ArchitectSession session, DiffChunkHandler handler) throws SQLObjectException {
 		setStarted(true);
 		setFinished(false);
 	    try {
-			Iterator<SQLTable> sourceIter = sourceTableSet.iterator();
-			Iterator<SQLTable> targetIter = targetTableSet.iterator();
-			SQLTable targetTable;
-			SQLTable sourceTable;
-			boolean sourceContinue;
-			boolean targetContinue;
-
-			//Checks if both lists of tables contain any tables at all, if they do
-			//the iterator is initialized for the list
-			if (sourceIter.hasNext()) {
-
-				sourceContinue = true;
-				sourceTable = sourceIter.next();
-				sourceTable.populate();
-			} else {
-				sourceContinue = false;
-				sourceTable = null;
-			}
-
-			if (targetIter.hasNext()) {
-				targetContinue = true;
-				targetTable = targetIter.next();
-				targetTable.populate();
-			} else {
-				targetContinue = false;
-				targetTable = null;
-			}
-
-			// Will loop until one or both the list reaches its last table
-			while (sourceContinue && targetContinue && !isCancelled()) {
-			    logger.debug("Generating table diffs for " + sourceTable.getName());
-			    if (session != null) {
-			        ArchitectUtils.setUpstreamTypesInTable(sourceTable, session);
-			        ArchitectUtils.setUpstreamTypesInTable(targetTable, session);
-			    }
-			    DiffChunk<SQLObject> chunk = null;
-			    int compareResult = getObjectComparator().compare(sourceTable, targetTable);
-
-				// bring the source table up to the same level as the target
-				if (compareResult < 0) {
-					chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.LEFTONLY);
-					incProgress(1, sourceTable, targetTable);
-					//results.addAll(generateColumnDiffs(sourceTable, null));
-					if (sourceIter.hasNext()) {
-						sourceTable = (SQLTable) sourceIter.next();
-						sourceTable.populate();
-					} else {
-						sourceContinue = false;
-
-					}
-				}
-
-				// bring the target table up to the same level as the source
-				if (compareResult > 0) {
-					chunk = new DiffChunk<SQLObject>(targetTable, DiffType.RIGHTONLY);
-					incProgress(1, sourceTable, targetTable);
-					// now don't do the columns it's already handled
-					//results.addAll(generateColumnDiffs(null, targetTable));
-					if (targetIter.hasNext()) {
-						targetTable = (SQLTable) targetIter.next();
-						targetTable.populate();
-					} else {
-						targetContinue = false;
-					}
-				}
-
-				if (compareResult == 0) {
-                    List<PropertyChange> changes = generatePropertyChanges(sourceTable, targetTable);
-					if (changes.size() > 0) {
-						if (nameComparator.compare(sourceTable, targetTable) != 0) {
-							chunk = new DiffChunk<SQLObject>(targetTable, DiffType.NAME_CHANGED);
-							chunk.setOriginalData(sourceTable);
-						} else if (!StringUtils.equals(sourceTable.getRemarks(), targetTable.getRemarks())) {
-                            // If the remarks are the same, then don't generate SQL script
-                            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SQL_MODIFIED);
-                        } else {
-                            // If the remarks were changed, generate SQL script for that
-                            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.MODIFIED);
-                        }
-                        for (PropertyChange change : changes) {
-                            chunk.addPropertyChange(change);
-                        }
-                    } else {
-                        chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SAME);
-                    }
-                    incProgress(1, sourceTable, targetTable);
-                    List<DiffChunk<SQLObject>> columns = generateColumnDiffs(sourceTable, targetTable);
-                    if (!(chunk.getType() == DiffType.SAME && suppressSimilarities) || columns.size() > 0) {
-                        results.add(chunk);
-                        results.addAll(columns);
-                    }
-					if (!targetIter.hasNext() && !sourceIter.hasNext())
-					{
-						targetContinue = false;
-						sourceContinue = false;
-					}
-					if (targetIter.hasNext()) {
-						targetTable = (SQLTable) targetIter.next();
-						targetTable.populate();
-					} else {
-						targetContinue = false;
-					}
-
-					if (sourceIter.hasNext()) {
-						sourceTable = (SQLTable) sourceIter.next();
-						sourceTable.populate();
-					}
-
-					else {
-						sourceContinue = false;
-					}
-				} else {
-				    // If we are adding column diffs, the table diff must be in the list first.
-				    // If we are not generating column diffs, we have waited until now to add the chunk.
-				    results.add(chunk);
-				}
-
-			}
-			// If any tables in the sourceList still exist, the changes are added
-			while (sourceContinue && !isCancelled()) {
-			    if (session != null) {
-			        ArchitectUtils.setUpstreamTypesInTable(sourceTable, session);
-			    }
-				results.add(new DiffChunk<SQLObject>(sourceTable, DiffType.LEFTONLY));
-				incProgress(1, sourceTable, null);
-				//results.addAll(generateColumnDiffs(sourceTable, null));
-				if (sourceIter.hasNext()) {
-					sourceTable = (SQLTable) sourceIter.next();
-					sourceTable.populate();
-				} else {
-					sourceContinue = false;
-				}
+	        // matching the tables populates them, so their columns are all
+	        // there when the types are set and the tables are hashed
+	        List<TablePair> pairs = matchTables();
+	        if (session != null) {
+	            setUpstreamTypes(session, pairs);
+	        }
+			// When every table and column is the same there is nothing to
+			// report at the table level if similarities are suppressed.
+			if (suppressSimilarities && !useUUID && sourceTableSet.size() == targetTableSet.size()
+			        && hasher.getHash(sourceTableSet) == hasher.getHash(targetTableSet)) {
+			    logger.debug("Source and target tables are the same, skipping table diffs");
+			    incProgress(sourceTableSet.size() + targetTableSet.size(), null, null);
+			    pairs = Collections.emptyList();
+			} else if (detectRenames && !useUUID) {
+			    pairs = matchRenamedTables(pairs);
 			}
 
-			//If any remaining tables in the targetList still exist, they are now being added
-			while (targetContinue && !isCancelled()) {
-			    if (session != null) {
-			        ArchitectUtils.setUpstreamTypesInTable(targetTable, session);
-			    }
-				results.add(new DiffChunk<SQLObject>(targetTable, DiffType.RIGHTONLY));
-				incProgress(1, null, targetTable);
-
-				//results.addAll(generateColumnDiffs(null, targetTable));
-				if (targetIter.hasNext()) {
-					targetTable = (SQLTable) targetIter.next();
-					targetTable.populate();
-				} else {
-					targetContinue = false;
-				}
-			}
-			results.addAll(generateRelationshipDiffs(sourceTableSet, targetTableSet));
+			compareTablePairs(pairs, handler);
+			handleAll(generateRelationshipDiffs(sourceTableSet, targetTableSet), handler);
 
 			if (compareIndex) {
-			    results.addAll(generateIndexDiffs(sourceTableSet, targetTableSet));
+			    handleAll(generateIndexDiffs(sourceTableSet, targetTableSet), handler);
 			}
 		} finally {
 			setJobSize(null);
 			setFinished(true);
 		}
-		return results;
+	}
+
+	private void handleAll(List<DiffChunk<SQLObject>> diffs, DiffChunkHandler handler) throws SQLObjectException {
+	    for (DiffChunk<SQLObject> chunk : diffs) {
+	        handler.handleDiffChunk(chunk);
+	    }
+	}
+
+	/**
+	 * Walks the sorted source and target tables together and pairs up the
+	 * tables that match. Tables that are only on one side are paired with
+	 * null. The tables are populated here, on the calling thread, because
+	 * populating a table can also add relationships to other tables.
+	 */
+	private List<TablePair> matchTables() throws SQLObjectException {
+	    List<TablePair> pairs = new ArrayList<TablePair>();
+	    Iterator<SQLTable> sourceIter = sourceTableSet.iterator();
+	    Iterator<SQLTable> targetIter = targetTableSet.iterator();
+	    SQLTable sourceTable = nextTable(sourceIter);
+	    SQLTable targetTable = nextTable(targetIter);
+	    while ((sourceTable != null || targetTable != null) && !isCancelled()) {
+	        int compareResult;
+	        if (sourceTable == null) {
+	            compareResult = 1;
+	        } else if (targetTable == null) {
+	            compareResult = -1;
+	        } else {
+	            compareResult = getObjectComparator().compare(sourceTable, targetTable);
+	        }
+	        
+	        if (compareResult < 0) {
+	            pairs.add(new TablePair(sourceTable, null));
+	            sourceTable = nextTable(sourceIter);
+	        } else if (compareResult > 0) {
+	            pairs.add(new TablePair(null, targetTable));
+	            targetTable = nextTable(targetIter);
+	        } else {
+	            pairs.add(new TablePair(sourceTable, targetTable));
+	            sourceTable = nextTable(sourceIter);
+	            targetTable = nextTable(targetIter);
+	        }
+	    }
+	    return pairs;
+	}
+	
+	/**
+	 * Replaces the pairs of the tables that were renamed, which come out of
+	 * {@link #matchTables()} as a source only pair and a target only pair,
+	 * with a single pair in the place of the source only one.
+	 */
+	private List<TablePair> matchRenamedTables(List<TablePair> pairs) {
+	    List<SQLTable> sourceOnly = new ArrayList<SQLTable>();
+	    List<SQLTable> targetOnly = new ArrayList<SQLTable>();
+	    for (TablePair pair : pairs) {
+	        if (pair.getTarget() == null) {
+	            sourceOnly.add(pair.getSource());
+	        } else if (pair.getSource() == null) {
+	            targetOnly.add(pair.getTarget());
+	        }
+	    }
+	    Map<SQLTable, SQLTable> renames = renameDetector.matchTables(sourceOnly, targetOnly);
+	    if (renames.isEmpty()) return pairs;
+	    
+	    Set<SQLTable> renamedTargets = new HashSet<SQLTable>(renames.values());
+	    List<TablePair> matchedPairs = new ArrayList<TablePair>();
+	    for (TablePair pair : pairs) {
+	        if (pair.getTarget() == null && renames.containsKey(pair.getSource())) {
+	            matchedPairs.add(new TablePair(pair.getSource(), renames.get(pair.getSource())));
+	        } else if (pair.getSource() != null || !renamedTargets.contains(pair.getTarget())) {
+	            matchedPairs.add(pair);
+	        }
+	    }
+	    return matchedPairs;
+	}
+	
+	private SQLTable nextTable(Iterator<SQLTable> iter) throws SQLObjectException {
+	    if (!iter.hasNext()) return null;
+	    SQLTable table = iter.next();
+	    table.populate();
+	    return table;
+	}
+
+	/**
+	 * Gives every column of the given pairs of tables that does not have an
+	 * upstream type the session's type for its JDBC type, so columns are
+	 * compared by type. The tables must already be populated, as only the
+	 * columns they have are given types. Setting a type fires events on the
+	 * play pen model, so all of the types are set once on the session's
+	 * foreground thread before the tables are compared in parallel, and this
+	 * waits until they are set.
+	 */
+	private void setUpstreamTypes(final ArchitectSession session, final List<TablePair> pairs) throws SQLObjectException {
+	    Runnable setTypes = new Runnable() {
+	        public void run() {
+	            for (TablePair pair : pairs) {
+	                if (pair.getSource() != null) {
+	                    ArchitectUtils.setUpstreamTypesInTable(pair.getSource(), session);
+	                }
+	                if (pair.getTarget() != null) {
+	                    ArchitectUtils.setUpstreamTypesInTable(pair.getTarget(), session);
+	                }
+	            }
+	        }
+	    };
+	    if (session.isForegroundThread()) {
+	        setTypes.run();
+	        return;
+	    }
+	    FutureTask<Void> task = new FutureTask<Void>(setTypes, null);
+	    session.runInForeground(task);
+	    try {
+	        task.get();
+	    } catch (InterruptedException e) {
+	        setCancelled(true);
+	        throw new SQLObjectException("Interrupted while setting column types", e);
+	    } catch (ExecutionException e) {
+	        if (e.getCause() instanceof RuntimeException) {
+	            throw (RuntimeException) e.getCause();
+	        }
+	        throw new SQLObjectException("Error setting column types", e.getCause());
+	    }
+	}
+
+	/**
+	 * Compares each of the given table pairs on a pool of
+	 * {@link #getThreadCount()} threads and hands their diffs to the handler
+	 * in the same order as the pairs regardless of which pair finishes first.
+	 * At most {@link #PENDING_PAIRS_PER_THREAD} pairs per thread are
+	 * submitted ahead of the pair the handler is waiting for.
+	 */
+	private void compareTablePairs(List<TablePair> pairs, DiffChunkHandler handler) throws SQLObjectException {
+	    if (threadCount <= 1 || pairs.size() <= 1) {
+	        for (TablePair pair : pairs) {
+	            handleAll(generateTablePairDiffs(pair), handler);
+	        }
+	        return;
+	    }
+	    
+	    ExecutorService pool = Executors.newFixedThreadPool(Math.min(threadCount, pairs.size()));
+	    try {
+	        LinkedList<Future<List<DiffChunk<SQLObject>>>> pending = new LinkedList<Future<List<DiffChunk<SQLObject>>>>();
+	        Iterator<TablePair> pairIter = pairs.iterator();
+	        while (pairIter.hasNext() || !pending.isEmpty()) {
+	            while (pairIter.hasNext() && pending.size() < threadCount * PENDING_PAIRS_PER_THREAD) {
+	                final TablePair pair = pairIter.next();
+	                pending.add(pool.submit(new Callable<List<DiffChunk<SQLObject>>>() {
+	                    public List<DiffChunk<SQLObject>> call() throws Exception {
+	                        return generateTablePairDiffs(pair);
+	                    }
+	                }));
+	            }
+	            handleAll(pending.removeFirst().get(), handler);
+	        }
+	    } catch (InterruptedException e) {
+	        setCancelled(true);
+	        throw new SQLObjectException("Interrupted while comparing tables", e);
+	    } catch (ExecutionException e) {
+	        if (e.getCause() instanceof SQLObjectException) {
+	            throw (SQLObjectException) e.getCause();
+	        } else if (e.getCause() instanceof RuntimeException) {
+	            throw (RuntimeException) e.getCause();
+	        }
+	        throw new SQLObjectException("Error comparing tables", e.getCause());
+	    } finally {
+	        pool.shutdownNow();
+	    }
+	}
+
+	/**
+	 * Creates the diffs of a single pair of tables: the table itself followed
+	 * by its columns if both tables exist, or a single left only or right only
+	 * chunk if only one of them does. Returns an empty list if the comparison
+	 * has been cancelled.
+	 */
+	private List<DiffChunk<SQLObject>> generateTablePairDiffs(TablePair pair) 
+	throws SQLObjectException {
+	    List<DiffChunk<SQLObject>> diffs = new ArrayList<DiffChunk<SQLObject>>();
+	    if (isCancelled()) return diffs;
+	    
+	    SQLTable sourceTable = pair.getSource();
+	    SQLTable targetTable = pair.getTarget();
+	    
+	    if (targetTable == null) {
+	        diffs.add(new DiffChunk<SQLObject>(sourceTable, DiffType.LEFTONLY));
+	        incProgress(1, sourceTable, null);
+	        return diffs;
+	    } else if (sourceTable == null) {
+	        diffs.add(new DiffChunk<SQLObject>(targetTable, DiffType.RIGHTONLY));
+	        incProgress(1, null, targetTable);
+	        return diffs;
+	    }
+	    
+	    logger.debug("Generating table diffs for " + sourceTable.getName());
+	    boolean sameSubtree = !useUUID && hasher.getHash(sourceTable) == hasher.getHash(targetTable);
+	    List<PropertyChange> changes;
+	    if (sameSubtree) {
+	        changes = Collections.emptyList();
+	    } else {
+	        changes = generatePropertyChanges(sourceTable, targetTable);
+	    }
+	    DiffChunk<SQLObject> chunk;
+	    if (changes.size() > 0) {
+	        if (nameComparator.compare(sourceTable, targetTable) != 0) {
+	            chunk = new DiffChunk<SQLObject>(targetTable, DiffType.NAME_CHANGED);
+	            chunk.setOriginalData(sourceTable);
+	        } else if (!StringUtils.equals(sourceTable.getRemarks(), targetTable.getRemarks())) {
+	            // If the remarks are the same, then don't generate SQL script
+	            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SQL_MODIFIED);
+	        } else {
+	            // If the remarks were changed, generate SQL script for that
+	            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.MODIFIED);
+	        }
+	        for (PropertyChange change : changes) {
+	            chunk.addPropertyChange(change);
+	        }
+	    } else {
+	        chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SAME);
+	    }
+	    incProgress(1, sourceTable, targetTable);
+	    List<DiffChunk<SQLObject>> columns;
+	    if (sameSubtree) {
+	        columns = generateSameColumnDiffs(sourceTable);
+	    } else {
+	        columns = generateColumnDiffs(sourceTable, targetTable);
+	    }
+	    if (!(chunk.getType() == DiffType.SAME && suppressSimilarities) || columns.size() > 0) {
+	        diffs.add(chunk);
+	        diffs.addAll(columns);
+	    }
+	    return diffs;
 	}
 
     private List<DiffChunk<SQLObject>> generateRelationshipDiffs(
@@ -416,7 +571,7 @@ public class CompareSQL implements Monitorable {
 			}
 
 			if (compareResult == 0) {
-			    List<PropertyChange> changes = generatePropertyChanges(sourceRel, targetRel);
+			    List<PropertyChange> changes = generatePropertyChangesIfDifferent(sourceRel, targetRel);
 			    if (changes.size() > 0) {
 
 					DiffChunk<SQLObject> chunk = null;
@@ -568,7 +723,7 @@ public class CompareSQL implements Monitorable {
 	        }
 
 	        if (compareResult == 0) {
-	            List<PropertyChange> changes = generatePropertyChanges(sourceInd, targetInd);
+	            List<PropertyChange> changes = generatePropertyChangesIfDifferent(sourceInd, targetInd);
 
 	            if (changes.size() > 0) {
 					DiffChunk<SQLObject> chunk = null;
@@ -696,9 +851,6 @@ public class CompareSQL implements Monitorable {
 				diffs.add(new DiffChunk<SQLObject>(sourceColumn,
 						DiffType.LEFTONLY));
 				logger.debug("The source column is " + sourceColumn);
-				if (sourceColumn.isPrimaryKey()) {
-                    keyChangeFlag = true;
-                }
 				if (sourceColIter.hasNext()) {
 					sourceColumn = sourceColIter.next();
 				} else {
@@ -713,9 +865,6 @@ public class CompareSQL implements Monitorable {
 				diffs.add(new DiffChunk<SQLObject>(targetColumn,
 						DiffType.RIGHTONLY));
 				logger.debug("The target column is " + targetColumn);
-				if (targetColumn.isPrimaryKey()) {
-                    keyChangeFlag = true;
-				}
 				if (targetColIter.hasNext()) {
 					targetColumn = targetColIter.next();
 				} else {
@@ -733,7 +882,7 @@ public class CompareSQL implements Monitorable {
 					//diffs.add(new DiffChunk<SQLObject>(targetColumn, DiffType.KEY_CHANGED));
 				}
 
-				List<PropertyChange> changes = generatePropertyChanges(sourceColumn, targetColumn);
+				List<PropertyChange> changes = generatePropertyChangesIfDifferent(sourceColumn, targetColumn);
 				if (changes.size() > 0) {
 					DiffChunk<SQLObject> chunk = null;
 
@@ -797,6 +946,16 @@ public class CompareSQL implements Monitorable {
 			}
 		}
 
+		if (detectRenames && !useUUID) {
+		    diffs = matchRenamedColumns(diffs);
+		}
+		for (DiffChunk<SQLObject> chunk : diffs) {
+		    if ((chunk.getType() == DiffType.LEFTONLY || chunk.getType() == DiffType.RIGHTONLY)
+		            && ((SQLColumn) chunk.getData()).isPrimaryKey()) {
+		        keyChangeFlag = true;
+		    }
+		}
+
 		if (keyChangeFlag) {
 		    if (sourceTable.getPkSize() > 0) {
 		        diffs.add(new DiffChunk<SQLObject>(sourceTable, DiffType.DROP_KEY));
@@ -807,42 +966,119 @@ public class CompareSQL implements Monitorable {
 	}
 	
 
+	/**
+	 * Replaces the left only and right only chunks of the columns that were
+	 * renamed with a name changed chunk in the place of the left only one.
+	 */
+	private List<DiffChunk<SQLObject>> matchRenamedColumns(List<DiffChunk<SQLObject>> diffs)
+	throws SQLObjectException {
+	    List<SQLColumn> sourceOnly = new ArrayList<SQLColumn>();
+	    List<SQLColumn> targetOnly = new ArrayList<SQLColumn>();
+	    for (DiffChunk<SQLObject> chunk : diffs) {
+	        if (chunk.getType() == DiffType.LEFTONLY) {
+	            sourceOnly.add((SQLColumn) chunk.getData());
+	        } else if (chunk.getType() == DiffType.RIGHTONLY) {
+	            targetOnly.add((SQLColumn) chunk.getData());
+	        }
+	    }
+	    if (sourceOnly.isEmpty() || targetOnly.isEmpty()) return diffs;
+	    Map<SQLColumn, SQLColumn> renames = renameDetector.matchColumns(sourceOnly, targetOnly);
+	    if (renames.isEmpty()) return diffs;
+	    
+	    Set<SQLColumn> renamedTargets = new HashSet<SQLColumn>(renames.values());
+	    List<DiffChunk<SQLObject>> matchedDiffs = new ArrayList<DiffChunk<SQLObject>>();
+	    for (DiffChunk<SQLObject> chunk : diffs) {
+	        if (chunk.getType() == DiffType.LEFTONLY && renames.containsKey(chunk.getData())) {
+	            SQLColumn sourceColumn = (SQLColumn) chunk.getData();
+	            SQLColumn targetColumn = renames.get(sourceColumn);
+	            DiffChunk<SQLObject> renamed = new DiffChunk<SQLObject>(targetColumn, DiffType.NAME_CHANGED);
+	            renamed.setOriginalData(sourceColumn);
+	            for (PropertyChange change : generatePropertyChanges(sourceColumn, targetColumn)) {
+	                renamed.addPropertyChange(change);
+	            }
+	            matchedDiffs.add(renamed);
+	        } else if (chunk.getType() != DiffType.RIGHTONLY || !renamedTargets.contains(chunk.getData())) {
+	            matchedDiffs.add(chunk);
+	        }
+	    }
+	    return matchedDiffs;
+	}
+
+	/**
+	 * Creates the diffs for the columns of a table whose columns are all the
+	 * same as the columns of the table it is compared to. This is the same as
+	 * what {@link #generateColumnDiffs(SQLTable, SQLTable)} would return for
+	 * the two tables without comparing the columns.
+	 */
+	private List<DiffChunk<SQLObject>> generateSameColumnDiffs(SQLTable table) throws SQLObjectException {
+	    List<DiffChunk<SQLObject>> diffs = new ArrayList<DiffChunk<SQLObject>>();
+	    if (suppressSimilarities) return diffs;
+	    TreeSet<SQLColumn> columns = new TreeSet<SQLColumn>(getObjectComparator());
+	    columns.addAll(table.getColumns());
+	    for (SQLColumn column : columns) {
+	        diffs.add(new DiffChunk<SQLObject>(column, DiffType.SAME));
+	    }
+	    return diffs;
+	}
+
+	/**
+	 * Returns the property changes between the two objects, or an empty list
+	 * without looking up their properties if their hashes are the same.
+	 */
+	private List<PropertyChange> generatePropertyChangesIfDifferent(SQLObject sourceObject, SQLObject targetObject)
+	throws SQLObjectException {
+	    if (hasher.getHash(sourceObject) == hasher.getHash(targetObject)) {
+	        return Collections.emptyList();
+	    }
+	    return generatePropertyChanges(sourceObject, targetObject);
+	}
+
 	/**
      * This method gets two lists of interesting properties, and compares them against each other
      * to generate a list of PropertyChange.
      */
 	private List<PropertyChange> generatePropertyChanges(SQLObject sourceObject, SQLObject targetObject)
 	throws SQLObjectException {
-	    
-
 	    List<PropertyChange> changes = new ArrayList<PropertyChange>();
-	    
+	    Map<String, String> sourceProperties = getComparedProperties(sourceObject);
+	    Map<String, String> targetProperties = getComparedProperties(targetObject);
+
+	    Iterator<String> i = sourceProperties.keySet().iterator();
+	    while (i.hasNext()) {
+	        String propertyName = i.next();
+	        String oldValue = sourceProperties.get(propertyName);
+	        String newValue = targetProperties.get(propertyName);
+	        if (newValue == null) newValue = "null";
+	        if (!oldValue.equals(newValue)) {
+	            logger.debug(propertyName + "differs");
+	            changes.add(new PropertyChange(propertyName, oldValue, newValue));
+	        }
+	    }
 
-	    try {
-	        SessionPersisterSuperConverter converter = new SessionPersisterSuperConverter(null, sourceObject);
-	        Map<String, Object> sourceProperties = PersisterUtils.getInterestingProperties(sourceObject, converter);
-	        converter = new SessionPersisterSuperConverter(null, targetObject);
-	        Map<String, Object> targetProperties = PersisterUtils.getInterestingProperties(targetObject, converter);
-	        
+	    return changes;
+	}
 
-	        Iterator<String> i = sourceProperties.keySet().iterator();
-	        while (i.hasNext()) {
-	            String propertyName = i.next();
-	            String oldValue = String.valueOf(sourceProperties.get(propertyName));
-	            String newValue = String.valueOf(targetProperties.get(propertyName));
-	            if (oldValue.equals("")) oldValue = "null";
-	            if (newValue.equals("")) newValue = "null";
-	            if (!oldValue.equals(newValue)) {
-	                logger.debug(propertyName + "differs");
-	                changes.add(new PropertyChange(propertyName, oldValue, newValue));
-	            }
-	        }
+	/**
+	 * Returns the values of the properties of the given object that
+	 * {@link #generatePropertyChanges(SQLObject, SQLObject)} compares, as the
+	 * strings it compares them as. The {@link SQLObjectHasher} hashes the same
+	 * strings so objects with the same hash have no property changes.
+	 */
+	static Map<String, String> getComparedProperties(SQLObject o) throws SQLObjectException {
+	    Map<String, Object> properties;
+	    try {
+	        SessionPersisterSuperConverter converter = new SessionPersisterSuperConverter(null, o);
+	        properties = PersisterUtils.getInterestingProperties(o, converter);
 	    } catch (Exception e) {
 	        throw new SQLObjectException("Error generating property diffs", e);
 	    }
-	    
-
-	    return changes;
+	    Map<String, String> values = new LinkedHashMap<String, String>();
+	    for (Map.Entry<String, Object> property : properties.entrySet()) {
+	        String value = String.valueOf(property.getValue());
+	        if (value.equals("")) value = "null";
+	        values.put(property.getKey(), value);
+	    }
+	    return values;
 	}
 
 	private Comparator<SQLObject> getObjectComparator() {
@@ -934,4 +1170,70 @@ public class CompareSQL implements Monitorable {
     public void setCompareIndices(boolean compareIndices) {
         this.compareIndex = compareIndices;
     }
+
+    /**
+     * Sets the hasher used to find objects that are the same on both sides.
+     * Giving every comparison of the play pen the same hasher that watches it
+     * lets the hashes of the play pen objects be reused between comparisons.
+     */
+    public void setHasher(SQLObjectHasher hasher) {
+        this.hasher = hasher;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads the matched tables are compared on. The
+     * order of the diffs does not depend on the number of threads.
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public boolean isDetectRenames() {
+        return detectRenames;
+    }
+
+    /**
+     * Sets the switch that determines whether the tables and columns that
+     * are only on one side are checked for ones that were renamed, so they
+     * are reported as a name change instead of one object to drop and
+     * another to add. Objects matched by UUID are never checked since a
+     * renamed object keeps its UUID.
+     */
+    public void setDetectRenames(boolean detectRenames) {
+        this.detectRenames = detectRenames;
+    }
+
+    public RenameDetector getRenameDetector() {
+        return renameDetector;
+    }
+
+    public void setRenameDetector(RenameDetector renameDetector) {
+        this.renameDetector = renameDetector;
+    }
+
+    /**
+     * A source table and the target table it matches. One of the two is
+     * null if the table only exists on one side.
+     */
+    private static class TablePair {
+        private final SQLTable source;
+        private final SQLTable target;
+        
+        public TablePair(SQLTable source, SQLTable target) {
+            this.source = source;
+            this.target = target;
+        }
+        
+        public SQLTable getSource() {
+            return source;
+        }
+        
+        public SQLTable getTarget() {
+            return target;
+        }
+    }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.diff;
+
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+
+/**
+ * Receives the diffs of a comparison one at a time, in order, as
+ * {@link CompareSQL} creates them, so they can be written out without the
+ * whole comparison being kept in memory.
+ */
+public interface DiffChunkHandler {
+
+    /**
+     * Called for each diff of the comparison in the order they would appear
+     * in the list returned by
+     * {@link CompareSQL#generateTableDiffs(ca.sqlpower.architect.ArchitectSession)}.
+     * This is called on the thread the comparison runs on.
+     */
+    public void handleDiffChunk(DiffChunk<SQLObject> chunk) throws SQLObjectException;
+}
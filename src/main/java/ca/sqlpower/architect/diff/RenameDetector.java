@@ -0,0 +1,421 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.diff;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Finds the tables and columns that were renamed between the two sides of a
+ * comparison, among the ones {@link CompareSQL} could not match by name.
+ * Without this, a renamed table comes out as a table to drop and a table to
+ * create, which loses its data when the script is run.
+ * <p>
+ * Tables are compared by the names and types of their columns. Each table is
+ * reduced to a MinHash signature of its column tokens and the signatures are
+ * split into bands, so only tables that share a band with each other are
+ * compared at all. This keeps the number of comparisons close to the number
+ * of tables instead of the product of the number of tables on each side. The
+ * candidates are then scored by the exact Jaccard similarity of their tokens
+ * and matched one to one, best score first.
+ * <p>
+ * Columns are only compared within a pair of matched tables, where there are
+ * few enough of them to compare every pair. A column can only be a rename of
+ * a column with the same type, precision, scale, nullability and primary key
+ * membership, and then only if its name is similar enough. A column in the
+ * same position among the unmatched columns of its table needs a less similar
+ * name, but some similarity is always required so a column that was dropped
+ * and another of the same type that was added are not taken for a rename.
+ */
+public class RenameDetector {
+
+    private static final Logger logger = Logger.getLogger(RenameDetector.class);
+
+    /**
+     * The similarity two tables' columns must have by default for one table
+     * to be considered a rename of the other.
+     */
+    public static final double DEFAULT_TABLE_THRESHOLD = 0.8;
+
+    /**
+     * The score a pair of columns must have by default for one to be
+     * considered a rename of the other. See
+     * {@link #scoreColumns(SQLColumn, SQLColumn, boolean)}.
+     */
+    public static final double DEFAULT_COLUMN_THRESHOLD = 0.5;
+
+    /**
+     * The amount added to the score of a pair of columns that are in the same
+     * position among the unmatched columns of their tables. It is well below
+     * the default threshold so the position alone never makes a rename.
+     */
+    static final double POSITION_BONUS = 0.25;
+
+    /**
+     * The similarity the names of a pair of columns must have before their
+     * position adds to their score.
+     */
+    static final double POSITION_MIN_NAME_SIMILARITY = 0.25;
+
+    /**
+     * The number of bands each MinHash signature is split into. A pair of
+     * tables becomes a candidate if all of the rows of any one band are
+     * equal, which happens for a pair with similarity s with probability
+     * 1 - (1 - s^ROWS)^BANDS: almost always at 0.8, for about a third of
+     * the pairs at 0.4 and rarely below that.
+     */
+    private static final int BANDS = 16;
+
+    /**
+     * The number of MinHash values in each band.
+     */
+    private static final int ROWS = 4;
+
+    /**
+     * The seeds of the hash functions of the MinHash signatures. They are
+     * fixed so the same tables always get the same signatures.
+     */
+    private static final int[] SEEDS = new int[BANDS * ROWS];
+    static {
+        Random random = new Random(0x5eed);
+        for (int i = 0; i < SEEDS.length; i++) {
+            SEEDS[i] = random.nextInt();
+        }
+    }
+
+    private double tableThreshold = DEFAULT_TABLE_THRESHOLD;
+
+    private double columnThreshold = DEFAULT_COLUMN_THRESHOLD;
+
+    /**
+     * Returns the tables of the source side that were renamed to tables of
+     * the target side, in the order of the source tables. Each table appears
+     * in at most one match.
+     *
+     * @param sourceTables
+     *            The source tables that have no target table with the same
+     *            name. They must already be populated.
+     * @param targetTables
+     *            The target tables that have no source table with the same
+     *            name. They must already be populated.
+     */
+    public Map<SQLTable, SQLTable> matchTables(List<SQLTable> sourceTables, List<SQLTable> targetTables) {
+        Map<SQLTable, SQLTable> matches = new LinkedHashMap<SQLTable, SQLTable>();
+        if (sourceTables.isEmpty() || targetTables.isEmpty()) return matches;
+
+        List<Set<String>> targetTokens = new ArrayList<Set<String>>();
+        List<Map<Integer, List<Integer>>> buckets = new ArrayList<Map<Integer, List<Integer>>>();
+        for (int band = 0; band < BANDS; band++) {
+            buckets.add(new HashMap<Integer, List<Integer>>());
+        }
+        for (int i = 0; i < targetTables.size(); i++) {
+            Set<String> tokens = getTokens(targetTables.get(i));
+            targetTokens.add(tokens);
+            if (tokens.isEmpty()) continue;
+            int[] signature = getSignature(tokens);
+            for (int band = 0; band < BANDS; band++) {
+                Integer key = getBandKey(signature, band);
+                List<Integer> bucket = buckets.get(band).get(key);
+                if (bucket == null) {
+                    bucket = new ArrayList<Integer>();
+                    buckets.get(band).put(key, bucket);
+                }
+                bucket.add(i);
+            }
+        }
+
+        List<Candidate<SQLTable>> candidates = new ArrayList<Candidate<SQLTable>>();
+        for (SQLTable sourceTable : sourceTables) {
+            Set<String> tokens = getTokens(sourceTable);
+            if (tokens.isEmpty()) continue;
+            int[] signature = getSignature(tokens);
+            Set<Integer> compared = new HashSet<Integer>();
+            for (int band = 0; band < BANDS; band++) {
+                List<Integer> bucket = buckets.get(band).get(getBandKey(signature, band));
+                if (bucket == null) continue;
+                for (Integer i : bucket) {
+                    if (!compared.add(i)) continue;
+                    double score = jaccard(tokens, targetTokens.get(i));
+                    if (score >= tableThreshold) {
+                        candidates.add(new Candidate<SQLTable>(sourceTable, targetTables.get(i), score));
+                    }
+                }
+            }
+        }
+
+        Map<SQLTable, SQLTable> matched = pickBest(candidates);
+        for (SQLTable sourceTable : sourceTables) {
+            SQLTable targetTable = matched.get(sourceTable);
+            if (targetTable != null) {
+                logger.debug("Table " + sourceTable.getName() + " was renamed to " + targetTable.getName());
+                matches.put(sourceTable, targetTable);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the columns of the source table that were renamed to columns of
+     * the target table, in the order of the source columns.
+     *
+     * @param sourceColumns
+     *            The columns of the source table that have no column with the
+     *            same name in the target table.
+     * @param targetColumns
+     *            The columns of the target table that have no column with the
+     *            same name in the source table.
+     */
+    public Map<SQLColumn, SQLColumn> matchColumns(List<SQLColumn> sourceColumns, List<SQLColumn> targetColumns) {
+        Map<SQLColumn, Integer> sourcePositions = getPositions(sourceColumns);
+        Map<SQLColumn, Integer> targetPositions = getPositions(targetColumns);
+        List<Candidate<SQLColumn>> candidates = new ArrayList<Candidate<SQLColumn>>();
+        for (SQLColumn sourceColumn : sourceColumns) {
+            for (SQLColumn targetColumn : targetColumns) {
+                boolean samePosition = sourcePositions.get(sourceColumn).equals(targetPositions.get(targetColumn));
+                double score = scoreColumns(sourceColumn, targetColumn, samePosition);
+                if (score >= columnThreshold) {
+                    candidates.add(new Candidate<SQLColumn>(sourceColumn, targetColumn, score));
+                }
+            }
+        }
+        Map<SQLColumn, SQLColumn> matched = pickBest(candidates);
+        Map<SQLColumn, SQLColumn> matches = new LinkedHashMap<SQLColumn, SQLColumn>();
+        for (SQLColumn sourceColumn : sourceColumns) {
+            SQLColumn targetColumn = matched.get(sourceColumn);
+            if (targetColumn != null) {
+                logger.debug("Column " + sourceColumn.getName() + " was renamed to " + targetColumn.getName());
+                matches.put(sourceColumn, targetColumn);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns how likely it is that the target column is the source column
+     * under a new name. Columns whose definitions differ score 0. Otherwise
+     * the score is the similarity of their names, between 0 and 1, plus
+     * {@link #POSITION_BONUS} if they are in the same position and their
+     * names are at least {@link #POSITION_MIN_NAME_SIMILARITY} similar.
+     *
+     * @param samePosition
+     *            True if the columns are in the same position among the
+     *            unmatched columns of their tables.
+     */
+    double scoreColumns(SQLColumn sourceColumn, SQLColumn targetColumn, boolean samePosition) {
+        if (sourceColumn.getType() != targetColumn.getType()
+                || sourceColumn.getPrecision() != targetColumn.getPrecision()
+                || sourceColumn.getScale() != targetColumn.getScale()
+                || sourceColumn.getNullable() != targetColumn.getNullable()
+                || sourceColumn.isPrimaryKey() != targetColumn.isPrimaryKey()) {
+            return 0;
+        }
+        double score = jaccard(getTrigrams(sourceColumn.getName()), getTrigrams(targetColumn.getName()));
+        if (samePosition && score >= POSITION_MIN_NAME_SIMILARITY) {
+            score += POSITION_BONUS;
+        }
+        return score;
+    }
+
+    /**
+     * Returns the position of each of the given columns among the given
+     * columns of the same table, in the order of the table's columns. Columns
+     * that were matched by name are not in the list, so adding, removing or
+     * moving those does not change the positions of the rest.
+     */
+    private static Map<SQLColumn, Integer> getPositions(List<SQLColumn> columns) {
+        List<SQLColumn> ordered = new ArrayList<SQLColumn>(columns);
+        Collections.sort(ordered, new Comparator<SQLColumn>() {
+            public int compare(SQLColumn c1, SQLColumn c2) {
+                return indexInTable(c1) - indexInTable(c2);
+            }
+        });
+        Map<SQLColumn, Integer> positions = new HashMap<SQLColumn, Integer>();
+        for (int i = 0; i < ordered.size(); i++) {
+            positions.put(ordered.get(i), i);
+        }
+        return positions;
+    }
+
+    private static int indexInTable(SQLColumn col) {
+        if (col.getParent() == null) return -1;
+        return col.getParent().getColumnsWithoutPopulating().indexOf(col);
+    }
+
+    /**
+     * Matches the candidates one to one, taking the best scoring candidate
+     * whose objects have not been matched yet first. Candidates with the same
+     * score are taken in order of their names so the result does not depend
+     * on the order they were found in.
+     */
+    private <T extends SQLObject> Map<T, T> pickBest(List<Candidate<T>> candidates) {
+        Collections.sort(candidates, new Comparator<Candidate<T>>() {
+            public int compare(Candidate<T> c1, Candidate<T> c2) {
+                int result = Double.compare(c2.score, c1.score);
+                if (result == 0) {
+                    result = CompareSQL.nameComparator.compare(c1.source, c2.source);
+                }
+                if (result == 0) {
+                    result = CompareSQL.nameComparator.compare(c1.target, c2.target);
+                }
+                return result;
+            }
+        });
+        Map<T, T> matches = new HashMap<T, T>();
+        Set<T> matchedTargets = new HashSet<T>();
+        for (Candidate<T> candidate : candidates) {
+            if (matches.containsKey(candidate.source) || matchedTargets.contains(candidate.target)) continue;
+            matches.put(candidate.source, candidate.target);
+            matchedTargets.add(candidate.target);
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the tokens a table is compared by: one for the name and type of
+     * each column, and one for the type, precision and scale of each column
+     * numbered by how many columns of that type came before it. The second
+     * kind lets a table whose columns were also renamed still match.
+     */
+    static Set<String> getTokens(SQLTable table) {
+        Set<String> tokens = new HashSet<String>();
+        Map<String, Integer> typeCounts = new HashMap<String, Integer>();
+        for (SQLColumn col : table.getColumnsWithoutPopulating()) {
+            String name = col.getName() == null ? "" : col.getName().toLowerCase(Locale.ENGLISH);
+            tokens.add("c:" + name + ":" + col.getType());
+            String type = col.getType() + ":" + col.getPrecision() + ":" + col.getScale();
+            Integer count = typeCounts.get(type);
+            count = count == null ? 1 : count + 1;
+            typeCounts.put(type, count);
+            tokens.add("t:" + type + "#" + count);
+        }
+        return tokens;
+    }
+
+    private static Set<String> getTrigrams(String name) {
+        Set<String> trigrams = new HashSet<String>();
+        if (name == null) return trigrams;
+        String padded = "  " + name.toLowerCase(Locale.ENGLISH) + " ";
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    static double jaccard(Collection<String> a, Collection<String> b) {
+        if (a.isEmpty() && b.isEmpty()) return 1;
+        int common = 0;
+        for (String s : a) {
+            if (b.contains(s)) common++;
+        }
+        return (double) common / (a.size() + b.size() - common);
+    }
+
+    private static int[] getSignature(Set<String> tokens) {
+        int[] signature = new int[SEEDS.length];
+        for (int i = 0; i < SEEDS.length; i++) {
+            int min = Integer.MAX_VALUE;
+            for (String token : tokens) {
+                min = Math.min(min, hash(token, SEEDS[i]));
+            }
+            signature[i] = min;
+        }
+        return signature;
+    }
+
+    /**
+     * Returns the key of the bucket a signature falls into for one band.
+     * Different bands with equal rows are kept apart by having a bucket map
+     * each, and signatures that collide on the key are only compared, not
+     * matched, so a collision costs one extra comparison.
+     */
+    private static Integer getBandKey(int[] signature, int band) {
+        int key = 17;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            key = 31 * key + signature[i];
+        }
+        return key;
+    }
+
+    /**
+     * Mixes the token's hash code with the seed using the finalizer of
+     * MurmurHash3, so each seed gives an independent hash function.
+     */
+    private static int hash(String token, int seed) {
+        int h = token.hashCode() ^ seed;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    public double getTableThreshold() {
+        return tableThreshold;
+    }
+
+    /**
+     * Sets the Jaccard similarity between 0 and 1 two tables' columns must
+     * have for one table to be considered a rename of the other. Thresholds
+     * much below 0.5 will miss renames the bands never bring together.
+     */
+    public void setTableThreshold(double tableThreshold) {
+        this.tableThreshold = tableThreshold;
+    }
+
+    public double getColumnThreshold() {
+        return columnThreshold;
+    }
+
+    public void setColumnThreshold(double columnThreshold) {
+        this.columnThreshold = columnThreshold;
+    }
+
+    /**
+     * A possible rename and its score.
+     */
+    private static class Candidate<T> {
+        private final T source;
+        private final T target;
+        private final double score;
+
+        public Candidate(T source, T target, double score) {
+            this.source = source;
+            this.target = target;
+            this.score = score;
+        }
+    }
+}
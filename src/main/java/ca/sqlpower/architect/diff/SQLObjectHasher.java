@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.diff;
+
+import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.object.SPListener;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLIndex.Column;
+import ca.sqlpower.sqlobject.SQLRelationship.ColumnMapping;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Computes content hashes of the SQLObjects {@link CompareSQL} compares so
+ * the comparison can skip objects that are the same on both sides without
+ * looking up and converting all of their properties. A table's hash includes
+ * the hashes of its columns, and the hash of a collection of tables includes
+ * the hashes of the tables, so equal hashes mean the whole subtree is the
+ * same.
+ * <p>
+ * The hashes cover exactly the properties {@link CompareSQL} compares, as
+ * the strings it compares them as, plus the children it walks: the columns of
+ * a table, the columns of an index, and the column mappings of a
+ * relationship. Hashes of objects in a hierarchy given to
+ * {@link #watch(SQLObject)} are cached and dropped when the hierarchy
+ * changes; hashes of all other objects are calculated each time they are
+ * asked for, as there is nothing to tell the hasher that they are stale.
+ */
+public class SQLObjectHasher {
+
+    private static final Logger logger = Logger.getLogger(SQLObjectHasher.class);
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * The cached hashes of the objects in the watched hierarchies.
+     */
+    private final Map<SQLObject, Long> cache = new ConcurrentHashMap<SQLObject, Long>();
+
+    /**
+     * The roots of the hierarchies whose hashes are cached.
+     */
+    private final List<SQLObject> watchedRoots = new CopyOnWriteArrayList<SQLObject>();
+
+    private final SPListener invalidator = new AbstractSPListener() {
+        @Override
+        public void childAdded(SPChildEvent e) {
+            SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+            invalidate(e.getSource());
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+            if (e.getChild() instanceof SQLObject) {
+                removeSubtree((SQLObject) e.getChild());
+            }
+            invalidate(e.getSource());
+        }
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            if ("name".equals(evt.getPropertyName()) || "physicalName".equals(evt.getPropertyName())) {
+                // Relationships and indices hash the tables and columns they
+                // refer to by name, and those are not their descendants.
+                logger.debug("Name changed on " + evt.getSource() + ", clearing all cached hashes");
+                cache.clear();
+            } else {
+                invalidate((SPObject) evt.getSource());
+            }
+        }
+    };
+
+    /**
+     * Caches the hashes of the given object and its descendants until they
+     * change. This is meant for the play pen model, which is compared many
+     * times while only a small part of it changes between comparisons.
+     */
+    public void watch(SQLObject root) {
+        watchedRoots.add(root);
+        SQLPowerUtils.listenToHierarchy(root, invalidator);
+    }
+
+    /**
+     * Stops caching the hashes of the objects under all of the watched roots
+     * and removes the listeners this hasher added to them.
+     */
+    public void dispose() {
+        for (SQLObject root : watchedRoots) {
+            SQLPowerUtils.unlistenToHierarchy(root, invalidator);
+        }
+        watchedRoots.clear();
+        cache.clear();
+    }
+
+    /**
+     * Returns a hash of the given tables and all of their columns that does
+     * not depend on the order of the tables.
+     */
+    public long getHash(Collection<SQLTable> tables) throws SQLObjectException {
+        long[] tableHashes = new long[tables.size()];
+        int i = 0;
+        for (SQLTable table : tables) {
+            tableHashes[i++] = getHash(table);
+        }
+        Arrays.sort(tableHashes);
+        HashBuilder builder = new HashBuilder();
+        for (long tableHash : tableHashes) {
+            builder.append(tableHash);
+        }
+        return builder.getHash();
+    }
+
+    /**
+     * Returns the hash of the given table, column, index, or relationship.
+     * The hash of a table includes the hashes of its columns but not of its
+     * indices or relationships, which {@link CompareSQL} compares separately.
+     *
+     * @throws IllegalArgumentException
+     *             if the object is not one of the types listed above.
+     */
+    public long getHash(SQLObject o) throws SQLObjectException {
+        boolean cacheable = isWatched(o);
+        if (cacheable) {
+            Long hash = cache.get(o);
+            if (hash != null) return hash.longValue();
+        }
+
+        long hash;
+        if (o instanceof SQLTable) {
+            hash = hashTable((SQLTable) o);
+        } else if (o instanceof SQLColumn) {
+            hash = hashColumn((SQLColumn) o);
+        } else if (o instanceof SQLIndex) {
+            hash = hashIndex((SQLIndex) o);
+        } else if (o instanceof SQLRelationship) {
+            hash = hashRelationship((SQLRelationship) o);
+        } else {
+            throw new IllegalArgumentException("Cannot hash objects of type " + o.getClass());
+        }
+
+        if (cacheable) {
+            cache.put(o, hash);
+        }
+        return hash;
+    }
+
+    private long hashTable(SQLTable table) throws SQLObjectException {
+        HashBuilder builder = new HashBuilder();
+        appendProperties(builder, table);
+
+        // Columns are compared by name and not by position
+        List<SQLColumn> columns = table.getColumns();
+        long[] columnHashes = new long[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            columnHashes[i] = getHash(columns.get(i));
+        }
+        Arrays.sort(columnHashes);
+        for (long columnHash : columnHashes) {
+            builder.append(columnHash);
+        }
+        return builder.getHash();
+    }
+
+    private long hashColumn(SQLColumn col) throws SQLObjectException {
+        HashBuilder builder = new HashBuilder();
+        appendProperties(builder, col);
+        // the column walk also reports primary key changes
+        builder.append(col.isPrimaryKey());
+        return builder.getHash();
+    }
+
+    private long hashIndex(SQLIndex index) throws SQLObjectException {
+        HashBuilder builder = new HashBuilder();
+        appendProperties(builder, index);
+        for (Column col : index.getChildren(Column.class)) {
+            builder.append(col.getName());
+            builder.append(col.getAscendingOrDescending().name());
+        }
+        return builder.getHash();
+    }
+
+    private long hashRelationship(SQLRelationship r) throws SQLObjectException {
+        HashBuilder builder = new HashBuilder();
+        appendProperties(builder, r);
+        for (ColumnMapping mapping : r.getChildren(ColumnMapping.class)) {
+            builder.append(mapping.getPkColumn() == null ? null : mapping.getPkColumn().getName());
+            builder.append(mapping.getFkColumn() == null ? null : mapping.getFkColumn().getName());
+        }
+        return builder.getHash();
+    }
+
+    /**
+     * Appends every property {@link CompareSQL} compares for the given object,
+     * in order of property name, so two objects only hash the same when the
+     * comparison would find no property changes between them.
+     */
+    private void appendProperties(HashBuilder builder, SQLObject o) throws SQLObjectException {
+        builder.append(o.getClass().getName());
+        Map<String, String> properties = CompareSQL.getComparedProperties(o);
+        for (String propertyName : new TreeSet<String>(properties.keySet())) {
+            builder.append(propertyName);
+            builder.append(properties.get(propertyName));
+        }
+    }
+
+    private boolean isWatched(SQLObject o) {
+        if (watchedRoots.isEmpty()) return false;
+        for (SPObject ancestor = o; ancestor != null; ancestor = ancestor.getParent()) {
+            if (watchedRoots.contains(ancestor)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drops the cached hashes that depend on the given object. Whether a
+     * column is in the primary key is decided by the table's primary key
+     * index, so a change anywhere in a table drops the hashes of everything
+     * in it.
+     */
+    private void invalidate(SPObject source) {
+        SPObject table = source instanceof SQLTable ? source : SQLPowerUtils.getAncestor(source, SQLTable.class);
+        if (table != null) {
+            removeSubtree((SQLObject) table);
+            source = table;
+        }
+        for (SPObject ancestor = source; ancestor != null; ancestor = ancestor.getParent()) {
+            cache.remove(ancestor);
+        }
+    }
+
+    private void removeSubtree(SQLObject o) {
+        cache.remove(o);
+        for (SQLObject child : new ArrayList<SQLObject>(o.getChildrenWithoutPopulating())) {
+            removeSubtree(child);
+        }
+    }
+
+    /**
+     * Accumulates a 64-bit FNV-1a hash of a sequence of values. Each value is
+     * followed by a separator so that, for example, the names "ab" and "c"
+     * hash differently from "a" and "bc".
+     */
+    private static class HashBuilder {
+
+        private long hash = FNV_OFFSET_BASIS;
+
+        private void appendByte(int b) {
+            hash ^= (b & 0xff);
+            hash *= FNV_PRIME;
+        }
+
+        private void appendChar(char c) {
+            appendByte(c >>> 8);
+            appendByte(c);
+        }
+
+        public void append(String s) {
+            if (s == null) {
+                appendChar('\u0000');
+            } else {
+                for (int i = 0; i < s.length(); i++) {
+                    appendChar(s.charAt(i));
+                }
+            }
+            appendChar('\uffff');
+        }
+
+        public void append(long l) {
+            for (int i = 56; i >= 0; i -= 8) {
+                appendByte((int) (l >>> i));
+            }
+        }
+
+        public void append(boolean b) {
+            appendByte(b ? 1 : 0);
+        }
+
+        public long getHash() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.diff.output;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.diff.DiffInfo;
+import ca.sqlpower.diff.PropertyChange;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Converts the diffs of a comparison, in the order they were created, to
+ * diffs of {@link DiffInfo} that describe each object by its type and name
+ * and indent it under the object it belongs to. The converter remembers the
+ * objects above the last diff it converted, so the diffs must be converted
+ * one after the other with the same converter.
+ */
+public class DiffInfoConverter {
+
+    private final List<SQLObject> ancestors = new ArrayList<SQLObject>();
+
+    private int depth = 0;
+
+    public DiffInfoConverter() {
+        ancestors.add(new SQLTable());
+    }
+
+    public DiffChunk<DiffInfo> convert(DiffChunk<SQLObject> chunk) {
+        SQLObject data = chunk.getData();
+        String name;
+        if (data instanceof SQLTable && data.getPhysicalName() != null) {
+            name = data.getPhysicalName();
+        } else {
+            name = data.getName();
+        }
+        DiffInfo info = new DiffInfo(data.getClass().getSimpleName().replaceFirst("SQL", ""), name);
+
+        // Set the depth property based on the object hierarchy.
+        // If it is a relationship, we ignore depth, and there are only relationships left.
+        if (chunk.getData() instanceof SQLRelationship) {
+            depth = 0;
+        } else if (ancestors.get(depth).allowsChildType(data.getClass())) {
+            ancestors.add(data);
+            depth++;
+        }
+        while (depth > 0 && !ancestors.get(depth - 1).allowsChildType(data.getClass())) {
+            ancestors.remove(depth);
+            depth--;
+        }
+        ancestors.add(depth, data);
+
+        info.setDepth(depth);
+        DiffChunk<DiffInfo> newChunk = new DiffChunk<DiffInfo>(info, chunk.getType());
+        for (PropertyChange change : chunk.getPropertyChanges()) {
+            newChunk.addPropertyChange(change);
+        }
+        return newChunk;
+    }
+}
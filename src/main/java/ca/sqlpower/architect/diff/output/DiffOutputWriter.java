@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.diff.output;
+
+import java.io.IOException;
+
+import ca.sqlpower.architect.diff.DiffChunkHandler;
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+
+/**
+ * Writes the diffs of a comparison to an {@link IndexedTextFile} as they are
+ * handed over, in one of the formats the compare dialog can produce. Pass a
+ * writer to {@link ca.sqlpower.architect.diff.CompareSQL#generateTableDiffs(
+ * ca.sqlpower.architect.ArchitectSession, DiffChunkHandler)} and call
+ * {@link #finish()} once the comparison is done, and {@link #dispose()} once
+ * the output is no longer needed.
+ */
+public abstract class DiffOutputWriter implements DiffChunkHandler {
+
+    protected final IndexedTextFile output;
+
+    public DiffOutputWriter(IndexedTextFile output) {
+        this.output = output;
+    }
+
+    public final void handleDiffChunk(DiffChunk<SQLObject> chunk) throws SQLObjectException {
+        try {
+            write(chunk);
+        } catch (IOException e) {
+            throw new SQLObjectException("Could not write the compare output to " + output.getFile(), e);
+        }
+    }
+
+    /**
+     * Writes a single diff.
+     */
+    protected abstract void write(DiffChunk<SQLObject> chunk) throws IOException, SQLObjectException;
+
+    /**
+     * Writes anything that has to come after the last diff and closes the
+     * output for writing.
+     */
+    public void finish() throws SQLObjectException {
+        try {
+            output.finish();
+        } catch (IOException e) {
+            throw new SQLObjectException("Could not write the compare output to " + output.getFile(), e);
+        }
+    }
+
+    public IndexedTextFile getOutput() {
+        return output;
+    }
+
+    /**
+     * Closes the output and deletes it if it is a temporary file, along with
+     * any other temporary files the writer uses. This can be called whether
+     * or not the writer was finished, so a failed or cancelled comparison can
+     * clean up after itself.
+     */
+    public void dispose() {
+        output.dispose();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.diff.output;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.diff.DiffInfo;
+import ca.sqlpower.diff.DiffType;
+import ca.sqlpower.diff.PropertyChange;
+import ca.sqlpower.sqlobject.SQLObject;
+
+/**
+ * Writes an English description of each diff, such as "Column foo should be
+ * added", followed by a line for each of its property changes. Each line is
+ * given the type of its diff.
+ */
+public class EnglishDiffWriter extends DiffOutputWriter {
+
+    private static final Logger logger = Logger.getLogger(EnglishDiffWriter.class);
+
+    private final DiffInfoConverter converter = new DiffInfoConverter();
+
+    /**
+     * @param title
+     *            A line to write before the first diff, or null for none.
+     */
+    public EnglishDiffWriter(IndexedTextFile output, String title) throws IOException {
+        super(output);
+        if (title != null) {
+            output.writeLine(title, null);
+            output.writeLine("", null);
+        }
+    }
+
+    @Override
+    protected void write(DiffChunk<SQLObject> chunk) throws IOException {
+        if (chunk.getType() == DiffType.DROP_KEY) {
+            //Drop key does will be shown here by a key changed type
+            //Drop key is mainly used in sql script generation.
+            return;
+        }
+        DiffChunk<DiffInfo> infoChunk = converter.convert(chunk);
+        DiffInfo info = infoChunk.getData();
+        output.writeLine(info.toString() + " " + describe(chunk.getType()), chunk.getType());
+        for (PropertyChange change : infoChunk.getPropertyChanges()) {
+            String s = info.getIndent() + "\t" + change.getPropertyName();
+            s += " has been changed from " + change.getOldValue();
+            s += " to " + change.getNewValue();
+            output.writeText(s, chunk.getType());
+        }
+    }
+
+    /**
+     * Returns the English description of what has to be done to an object
+     * with the given type of diff.
+     */
+    public static String describe(DiffType type) {
+        switch (type) {
+        case LEFTONLY:
+            return "should be removed";
+        case MODIFIED:
+        case SQL_MODIFIED:
+            return "should be modified";
+        case SAME:
+            return "needs no changes";
+        case RIGHTONLY:
+            return "should be added";
+        case KEY_CHANGED:
+            return "needs a different primary key";
+        case DROP_KEY:
+            return "needs to drop the source primary key";
+        case NAME_CHANGED:
+            return "should be renamed";
+        default:
+            logger.error("Woops, unknown diff chunk type: " + type);
+            return "!UNKNOWN DIFF TYPE!";
+        }
+    }
+}
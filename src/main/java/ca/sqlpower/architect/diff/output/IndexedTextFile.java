@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.diff.output;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.diff.DiffType;
+
+/**
+ * A text file that is written one line at a time and remembers where each
+ * line starts, so any range of its lines can be read back without reading
+ * the lines before it. This lets the output of a large comparison be shown
+ * a page at a time instead of being loaded into a document. Each line can
+ * also be given the type of the diff it describes so it can be shown in
+ * that diff type's style.
+ * <p>
+ * The file is written in UTF-8 with a newline after each line. Lines can be
+ * read while the file is still being written, but only the lines written
+ * before the last {@link #flush()} or {@link #finish()} are on disk.
+ */
+public class IndexedTextFile {
+
+    private static final Logger logger = Logger.getLogger(IndexedTextFile.class);
+
+    private static final String ENCODING = "UTF-8";
+
+    private final File file;
+
+    private final boolean temporary;
+
+    private OutputStream out;
+
+    /**
+     * The offset of the start of each line in the file, followed by the
+     * offset just past the end of the file. Only the first lineCount + 1
+     * entries are used.
+     */
+    private long[] offsets = new long[1024];
+
+    /**
+     * The ordinal of the diff type of each line plus one, or 0 for lines
+     * that have no type.
+     */
+    private byte[] types = new byte[1024];
+
+    private int lineCount;
+
+    /**
+     * The number of characters in the longest line.
+     */
+    private int maxLineLength;
+
+    private RandomAccessFile in;
+
+    /**
+     * Creates the file, replacing any file that is already there.
+     */
+    public IndexedTextFile(File file) throws IOException {
+        this(file, false);
+    }
+
+    private IndexedTextFile(File file, boolean temporary) throws IOException {
+        this.file = file;
+        this.temporary = temporary;
+        out = new BufferedOutputStream(new FileOutputStream(file));
+    }
+
+    /**
+     * Creates an indexed file in the system's temporary directory that is
+     * deleted when it is {@link #dispose() disposed} or when the program
+     * exits.
+     */
+    public static IndexedTextFile createTempFile(String prefix) throws IOException {
+        File file = File.createTempFile(prefix, ".txt");
+        file.deleteOnExit();
+        return new IndexedTextFile(file, true);
+    }
+
+    /**
+     * Writes the given text, which may span several lines, giving each of
+     * its lines the given diff type.
+     *
+     * @param type
+     *            The type of the diff the text describes, or null if it does
+     *            not describe a diff.
+     */
+    public synchronized void writeText(String text, DiffType type) throws IOException {
+        int start = 0;
+        int end;
+        while ((end = text.indexOf('\n', start)) >= 0) {
+            writeLine(text.substring(start, end), type);
+            start = end + 1;
+        }
+        if (start < text.length()) {
+            writeLine(text.substring(start), type);
+        }
+    }
+
+    /**
+     * Writes a single line, which must not contain a newline.
+     *
+     * @param type
+     *            The type of the diff the line describes, or null if it does
+     *            not describe a diff.
+     */
+    public synchronized void writeLine(String line, DiffType type) throws IOException {
+        if (out == null) throw new IllegalStateException("The file " + file + " has been finished");
+        if (line.endsWith("\r")) {
+            line = line.substring(0, line.length() - 1);
+        }
+        if (lineCount + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            types = Arrays.copyOf(types, types.length * 2);
+        }
+        byte[] bytes = (line + "\n").getBytes(ENCODING);
+        out.write(bytes);
+        types[lineCount] = (byte) (type == null ? 0 : type.ordinal() + 1);
+        offsets[lineCount + 1] = offsets[lineCount] + bytes.length;
+        lineCount++;
+        maxLineLength = Math.max(maxLineLength, line.length());
+    }
+
+    /**
+     * Writes the lines written so far to disk so they can be read.
+     */
+    public synchronized void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Closes the file for writing. Its lines can still be read.
+     */
+    public synchronized void finish() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized int getLineCount() {
+        return lineCount;
+    }
+
+    public synchronized int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * Returns the diff type the given line was written with, or null if it
+     * was written without one.
+     */
+    public synchronized DiffType getLineType(int line) {
+        if (line < 0 || line >= lineCount) throw new IndexOutOfBoundsException("Line " + line + " of " + lineCount);
+        int type = types[line];
+        return type == 0 ? null : DiffType.values()[type - 1];
+    }
+
+    /**
+     * Reads up to count lines starting at the given line with a single read
+     * of the file.
+     */
+    public synchronized List<String> getLines(int first, int count) throws IOException {
+        if (first < 0 || first > lineCount) throw new IndexOutOfBoundsException("Line " + first + " of " + lineCount);
+        int last = Math.min(lineCount, first + count);
+        List<String> lines = new ArrayList<String>(last - first);
+        if (last == first) return lines;
+        flush();
+        if (in == null) {
+            in = new RandomAccessFile(file, "r");
+        }
+        byte[] bytes = new byte[(int) (offsets[last] - offsets[first])];
+        in.seek(offsets[first]);
+        in.readFully(bytes);
+        for (int i = first; i < last; i++) {
+            int start = (int) (offsets[i] - offsets[first]);
+            int length = (int) (offsets[i + 1] - offsets[i]) - 1;
+            lines.add(new String(bytes, start, length, ENCODING));
+        }
+        return lines;
+    }
+
+    /**
+     * Copies all of the lines of the given file to the end of this one,
+     * keeping their diff types.
+     */
+    public synchronized void append(IndexedTextFile other) throws IOException {
+        int pageSize = 1000;
+        for (int i = 0; i < other.getLineCount(); i += pageSize) {
+            List<String> lines = other.getLines(i, pageSize);
+            for (int j = 0; j < lines.size(); j++) {
+                writeLine(lines.get(j), other.getLineType(i + j));
+            }
+        }
+    }
+
+    /**
+     * Closes the file and, if it is a temporary file, deletes it.
+     */
+    public synchronized void dispose() {
+        try {
+            finish();
+            if (in != null) {
+                in.close();
+                in = null;
+            }
+        } catch (IOException ex) {
+            logger.error("Couldn't close " + file, ex);
+        }
+        if (temporary && file.exists() && !file.delete()) {
+            logger.warn("Could not delete " + file);
+        }
+    }
+}
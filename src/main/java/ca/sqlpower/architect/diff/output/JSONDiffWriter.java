@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.diff.output;
+
+import java.io.IOException;
+
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.diff.DiffType;
+import ca.sqlpower.diff.PropertyChange;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+
+/**
+ * Writes the diffs as a JSON array with one object per diff, for tools that
+ * want to process a comparison rather than read it. Each diff is written on
+ * a line of its own, for example:
+ *
+ * <pre>
+ * {"type":"NAME_CHANGED","objectType":"Column","name":"phone_no","parent":"customer",
+ *  "originalName":"phone","changes":[{"property":"name","oldValue":"phone","newValue":"phone_no"}]}
+ * </pre>
+ */
+public class JSONDiffWriter extends DiffOutputWriter {
+
+    /**
+     * The last diff written, which is not followed by a comma until the next
+     * diff is known to come after it.
+     */
+    private String pending;
+
+    private DiffType pendingType;
+
+    public JSONDiffWriter(IndexedTextFile output) throws IOException {
+        super(output);
+        output.writeLine("[", null);
+    }
+
+    @Override
+    protected void write(DiffChunk<SQLObject> chunk) throws IOException {
+        StringBuilder json = new StringBuilder(200);
+        SQLObject data = chunk.getData();
+        json.append("  {\"type\":").append(quote(chunk.getType().name()));
+        json.append(",\"objectType\":").append(quote(data.getClass().getSimpleName().replaceFirst("SQL", "")));
+        json.append(",\"name\":").append(quote(data.getName()));
+        if (data.getParent() != null && !(data.getParent() instanceof SQLDatabase)) {
+            json.append(",\"parent\":").append(quote(data.getParent().getName()));
+        }
+        if (chunk.getOriginalData() != null) {
+            json.append(",\"originalName\":").append(quote(chunk.getOriginalData().getName()));
+        }
+        if (!chunk.getPropertyChanges().isEmpty()) {
+            json.append(",\"changes\":[");
+            boolean first = true;
+            for (PropertyChange change : chunk.getPropertyChanges()) {
+                if (!first) json.append(",");
+                first = false;
+                json.append("{\"property\":").append(quote(change.getPropertyName()));
+                json.append(",\"oldValue\":").append(quote(change.getOldValue()));
+                json.append(",\"newValue\":").append(quote(change.getNewValue()));
+                json.append("}");
+            }
+            json.append("]");
+        }
+        json.append("}");
+
+        if (pending != null) {
+            output.writeLine(pending + ",", pendingType);
+        }
+        pending = json.toString();
+        pendingType = chunk.getType();
+    }
+
+    @Override
+    public void finish() throws SQLObjectException {
+        try {
+            if (pending != null) {
+                output.writeLine(pending, pendingType);
+                pending = null;
+            }
+            output.writeLine("]", null);
+        } catch (IOException e) {
+            throw new SQLObjectException("Could not write the compare output to " + output.getFile(), e);
+        }
+        super.finish();
+    }
+
+    /**
+     * Returns the given value as a JSON string, or null if it is null.
+     */
+    static String quote(Object value) {
+        if (value == null) return "null";
+        String s = value.toString();
+        StringBuilder quoted = new StringBuilder(s.length() + 2);
+        quoted.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                quoted.append("\\\"");
+                break;
+            case '\\':
+                quoted.append("\\\\");
+                break;
+            case '\n':
+                quoted.append("\\n");
+                break;
+            case '\r':
+                quoted.append("\\r");
+                break;
+            case '\t':
+                quoted.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    quoted.append(String.format("\\u%04x", (int) c));
+                } else {
+                    quoted.append(c);
+                }
+            }
+        }
+        quoted.append('"');
+        return quoted.toString();
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.diff.output;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ca.sqlpower.architect.ddl.DDLGenerator;
+import ca.sqlpower.architect.ddl.DDLStatement;
+import ca.sqlpower.architect.ddl.LiquibaseDDLGenerator;
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.diff.DiffType;
+import ca.sqlpower.diff.PropertyChange;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Writes the script that turns the source of a comparison into its target,
+ * in the language of a {@link DDLGenerator}, which may be a SQL dialect or
+ * Liquibase XML. The statements for each diff are written out as soon as
+ * the diff is handed over instead of being collected in the generator.
+ * <p>
+ * The script runs in four parts: relationships are dropped first, then the
+ * changes that refer to a renamed table by its old name, then all of the
+ * other changes in the order of their diffs, and new relationships are added
+ * last. Each part is written to a temporary file until the comparison is
+ * done and they are put together in {@link #finish()}.
+ * <p>
+ * The statements of a small script are also kept in memory so it can be
+ * shown in a {@link ca.sqlpower.architect.swingui.SQLScriptDialog} that can
+ * run it; see {@link #getStatements()}.
+ */
+public class ScriptDiffWriter extends DiffOutputWriter {
+
+    /**
+     * The number of statements kept in memory by default.
+     */
+    public static final int DEFAULT_RETAIN_LIMIT = 5000;
+
+    private static final int DROP_RELATIONSHIPS = 0;
+    private static final int BEFORE_RENAMES = 1;
+    private static final int BODY = 2;
+    private static final int ADD_RELATIONSHIPS = 3;
+
+    private final DDLGenerator gen;
+
+    private final IndexedTextFile[] parts = new IndexedTextFile[4];
+
+    /**
+     * The statements of each part, or null once there are more than
+     * {@link #retainLimit} statements in all.
+     */
+    private List<List<DDLStatement>> retained = new ArrayList<List<DDLStatement>>();
+
+    private int retainedCount;
+
+    private int retainLimit = DEFAULT_RETAIN_LIMIT;
+
+    /**
+     * The source tables of the table rename diffs handed over so far.
+     */
+    private final Set<SQLObject> renamedTables = new HashSet<SQLObject>();
+
+    /**
+     * The statements the generator wraps the whole script in.
+     */
+    private final List<DDLStatement> enclosing;
+
+    public ScriptDiffWriter(DDLGenerator gen, IndexedTextFile output) throws IOException {
+        super(output);
+        this.gen = gen;
+        if (gen instanceof LiquibaseDDLGenerator) {
+            enclosing = ((LiquibaseDDLGenerator) gen).getEnclosingStatements();
+        } else {
+            enclosing = Collections.emptyList();
+        }
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = IndexedTextFile.createTempFile("compare-script");
+                retained.add(new ArrayList<DDLStatement>());
+            }
+        } catch (IOException e) {
+            disposeParts();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void write(DiffChunk<SQLObject> chunk) throws IOException, SQLObjectException {
+        int part;
+        if (chunk.getData() instanceof SQLRelationship) {
+            if (chunk.getType() == DiffType.LEFTONLY) {
+                part = DROP_RELATIONSHIPS;
+            } else if (chunk.getType() == DiffType.RIGHTONLY) {
+                part = ADD_RELATIONSHIPS;
+            } else {
+                return;
+            }
+        } else {
+            if (chunk.getType() == DiffType.NAME_CHANGED && chunk.getData() instanceof SQLTable) {
+                renamedTables.add(chunk.getOriginalData());
+            }
+            SQLObject oldTable = getOldTable(chunk);
+            part = oldTable != null && renamedTables.contains(oldTable) ? BEFORE_RENAMES : BODY;
+        }
+
+        try {
+            generate(chunk, gen);
+        } catch (SQLException e) {
+            throw new SQLObjectException("Could not generate the script for " + chunk.getData().getName(), e);
+        }
+        for (DDLStatement statement : gen.removeDdlStatements()) {
+            parts[part].writeText(statement.getSQLText() + statement.getSqlTerminator(), null);
+            if (retained != null) {
+                retained.get(part).add(statement);
+                retainedCount++;
+                if (retainedCount > retainLimit) {
+                    retained = null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void finish() throws SQLObjectException {
+        try {
+            if (!enclosing.isEmpty()) {
+                output.writeText(enclosing.get(0).getSQLText(), null);
+            }
+            for (IndexedTextFile part : parts) {
+                part.finish();
+                output.append(part);
+                part.dispose();
+            }
+            if (!enclosing.isEmpty()) {
+                output.writeText(enclosing.get(enclosing.size() - 1).getSQLText(), null);
+            }
+        } catch (IOException e) {
+            throw new SQLObjectException("Could not write the compare output to " + output.getFile(), e);
+        }
+        super.finish();
+    }
+
+    @Override
+    public void dispose() {
+        disposeParts();
+        super.dispose();
+    }
+
+    private void disposeParts() {
+        for (IndexedTextFile part : parts) {
+            if (part != null) {
+                part.dispose();
+            }
+        }
+    }
+
+    /**
+     * Returns all of the statements of the script, in order, or null if there
+     * were too many to keep. Only call this after {@link #finish()}.
+     */
+    public List<DDLStatement> getStatements() {
+        if (retained == null) return null;
+        List<DDLStatement> statements = new ArrayList<DDLStatement>();
+        if (!enclosing.isEmpty()) {
+            statements.add(enclosing.get(0));
+        }
+        for (List<DDLStatement> partStatements : retained) {
+            statements.addAll(partStatements);
+        }
+        if (!enclosing.isEmpty()) {
+            statements.add(enclosing.get(enclosing.size() - 1));
+        }
+        return statements;
+    }
+
+    public int getRetainLimit() {
+        return retainLimit;
+    }
+
+    /**
+     * Sets the number of statements kept in memory for
+     * {@link #getStatements()}. Set this before the first diff is handed
+     * over.
+     */
+    public void setRetainLimit(int retainLimit) {
+        this.retainLimit = retainLimit;
+    }
+
+    /**
+     * Returns the table the script for the given diff refers to by the name
+     * it has in the source, if the diff is one whose script has to run
+     * before that table is renamed: dropped columns, dropped indices,
+     * renamed columns and indices, and dropped primary keys. Returns null for
+     * all other diffs, which refer to the target side.
+     */
+    public static SQLObject getOldTable(DiffChunk<SQLObject> chunk) {
+        if (chunk.getType() == DiffType.DROP_KEY) {
+            return chunk.getData();
+        } else if (chunk.getType() == DiffType.LEFTONLY && !(chunk.getData() instanceof SQLTable)) {
+            return chunk.getData().getParent();
+        } else if (chunk.getType() == DiffType.NAME_CHANGED && !(chunk.getData() instanceof SQLTable)) {
+            return chunk.getOriginalData().getParent();
+        }
+        return null;
+    }
+
+    /**
+     * Has the generator create the statements for a single diff.
+     */
+    public static void generate(DiffChunk<SQLObject> chunk, DDLGenerator gen)
+    throws SQLException, SQLObjectException {
+        if (chunk.getType() == DiffType.KEY_CHANGED) {
+            if(chunk.getData() instanceof SQLTable) {
+                SQLTable t = (SQLTable) chunk.getData();
+                if (hasKey(t)) {
+                    gen.addPrimaryKey(t);
+                }
+            }
+        } else if (chunk.getType() == DiffType.DROP_KEY) {
+            if(chunk.getData() instanceof SQLTable) {
+                SQLTable t = (SQLTable) chunk.getData();
+                if (hasKey(t)) {
+                    gen.dropPrimaryKey(t);
+                }
+            }
+        } else if (chunk.getType() == DiffType.LEFTONLY) {
+            if (chunk.getData() instanceof SQLTable) {
+                SQLTable t = (SQLTable) chunk.getData();
+                gen.dropTable(t);
+            } else if (chunk.getData() instanceof SQLColumn) {
+                SQLColumn c = (SQLColumn) chunk.getData();
+                gen.dropColumn(c);
+            } else if (chunk.getData() instanceof SQLRelationship) {
+                SQLRelationship r = (SQLRelationship)chunk.getData();
+                gen.dropRelationship(r);
+            } else if (chunk.getData() instanceof SQLIndex) {
+                SQLIndex i = (SQLIndex)chunk.getData();
+                gen.dropIndex(i);
+            } else {
+                throw new IllegalStateException("DiffChunk is an unexpected type.");
+            }
+
+        } else if (chunk.getType() == DiffType.RIGHTONLY) {
+            if (chunk.getData() instanceof SQLTable) {
+                SQLTable t = (SQLTable) chunk.getData();
+                if (t == null ) throw new NullPointerException();
+                if (t.getObjectType().equals("TABLE")) {
+                    gen.addTable(t);
+                }
+            } else if (chunk.getData() instanceof SQLColumn) {
+                SQLColumn c = (SQLColumn) chunk.getData();
+                gen.addColumn(c);
+            } else if (chunk.getData() instanceof SQLRelationship) {
+                SQLRelationship r = (SQLRelationship)chunk.getData();
+                gen.addRelationship(r);
+            } else if (chunk.getData() instanceof SQLIndex) {
+                SQLIndex i = (SQLIndex)chunk.getData();
+                gen.addIndex(i);
+            } else {
+                throw new IllegalStateException("DiffChunk is an unexpected type.");
+            }
+        } else if (chunk.getType() == DiffType.MODIFIED) {
+            // do nothing because it has not been modified enough (see next case)
+        } else if (chunk.getType() == DiffType.SQL_MODIFIED) {
+            if (chunk.getData() instanceof SQLColumn) {
+                SQLColumn c = (SQLColumn) chunk.getData();
+                gen.modifyColumn(c, chunk);
+            }
+            for (PropertyChange change : chunk.getPropertyChanges()) {
+                if (change.getPropertyName().equals("remarks")) {
+                    gen.modifyComment(chunk.getData());
+                    break;
+                }
+            }
+        } else if (chunk.getType() == DiffType.SAME) {
+            //do nothing when they're the same
+        } else if (chunk.getType() == DiffType.NAME_CHANGED) {
+            if (chunk.getData() instanceof SQLTable) {
+                SQLTable newTable = (SQLTable)chunk.getData();
+                SQLTable oldTable = (SQLTable)chunk.getOriginalData();
+                gen.renameTable(oldTable, newTable);
+            } else if (chunk.getData() instanceof SQLColumn) {
+                SQLColumn newCol = (SQLColumn)chunk.getData();
+                SQLColumn oldCol = (SQLColumn)chunk.getOriginalData();
+                gen.renameColumn(oldCol, newCol);
+            } else if (chunk.getData() instanceof SQLIndex) {
+                SQLIndex newIndex = (SQLIndex)chunk.getData();
+                SQLIndex oldIndex= (SQLIndex)chunk.getOriginalData();
+                gen.renameIndex(oldIndex, newIndex);
+            } else {
+                throw new IllegalStateException("DiffChunk is an unexpected type.");
+            }
+        } else {
+            throw new IllegalStateException("DiffChunk is an invalid type.");
+        }
+    }
+
+    private static boolean hasKey(SQLTable t) throws SQLObjectException {
+        for (SQLColumn c : t.getColumns()) {
+            if (c.isPrimaryKey()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
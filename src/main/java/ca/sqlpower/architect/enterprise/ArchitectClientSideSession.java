@@ -45,6 +45,7 @@ import org.springframework.security.AccessDeniedException;
 import ca.sqlpower.architect.ArchitectSession;
 import ca.sqlpower.architect.ArchitectSessionContext;
 import ca.sqlpower.architect.ArchitectSessionImpl;
+import ca.sqlpower.architect.ProjectContainer;
 import ca.sqlpower.architect.SnapshotCollection;
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.swingui.ArchitectSwingProject;
@@ -604,7 +605,8 @@ public class ArchitectClientSideSession extends ArchitectSessionImpl implements
 
 	public static ProjectLocation uploadProject(SPServerInfo serviceInfo, String name, File project, UserPrompterFactory session) 
     throws URISyntaxException, ClientProtocolException, IOException, JSONException {
-	    return ClientSideSessionUtils.uploadProject(serviceInfo, name, project, session, cookieStore);
+	    // the server only reads XML projects
+	    return ClientSideSessionUtils.uploadProject(serviceInfo, name, ProjectContainer.toXMLFile(project), session, cookieStore);
 	}
 	
 	public int revertServerWorkspace(int revisionNo) throws IOException, URISyntaxException, JSONException {
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Finds the most recent successful profile of a table or column out of a
+ * collection of profile results. Columns that have not been profiled
+ * themselves are looked up through their source column, so a table in the
+ * play pen can use the profile of the source database table it was copied
+ * from.
+ * <p>
+ * Package private as only the advisors that work from profile results need
+ * this.
+ */
+class ColumnProfileLookup {
+
+    /**
+     * The most recent completed profile of each profiled table.
+     */
+    private final Map<SQLTable, TableProfileResult> latestResults = new HashMap<SQLTable, TableProfileResult>();
+
+    /**
+     * @param results
+     *            The profile results to look up tables and columns in. This
+     *            is normally all of the results of a {@link ProfileManager}.
+     *            Results that failed or have not finished are ignored.
+     */
+    public ColumnProfileLookup(Collection<TableProfileResult> results) {
+        for (TableProfileResult result : results) {
+            if (result.getException() != null || result.getCreateEndTime() < 0) continue;
+            TableProfileResult existing = latestResults.get(result.getProfiledObject());
+            if (existing == null || existing.getCreateEndTime() < result.getCreateEndTime()) {
+                latestResults.put(result.getProfiledObject(), result);
+            }
+        }
+    }
+
+    /**
+     * Returns the most recent profile of the table that the given column's
+     * statistics come from. This is the profile of the column's own table if
+     * that profile includes the column, otherwise the profile of the table of
+     * its source column if that one includes the source column. Returns null
+     * if neither column has been profiled.
+     */
+    public TableProfileResult getTableProfile(SQLColumn col) {
+        TableProfileResult result = latestResults.get(col.getParent());
+        if (result != null && !result.getColumnProfileResult(col).isEmpty()) {
+            return result;
+        }
+        if (col.getSourceColumn() != null) {
+            result = latestResults.get(col.getSourceColumn().getParent());
+            if (result != null && !result.getColumnProfileResult(col.getSourceColumn()).isEmpty()) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the most recent profile of the given column, or of its source
+     * column if the column itself has not been profiled. Returns null if no
+     * profile can be found. The profile is always part of the table profile
+     * returned by {@link #getTableProfile(SQLColumn)} so the two can be
+     * compared.
+     */
+    public ColumnProfileResult getColumnProfile(SQLColumn col) {
+        TableProfileResult result = getTableProfile(col);
+        if (result == null) return null;
+        SQLColumn profiledColumn = result.getProfiledObject() == col.getParent() ? col : col.getSourceColumn();
+        return result.getColumnProfileResult(profiledColumn).iterator().next();
+    }
+
+    /**
+     * Returns the number of rows in the profile the given column's statistics
+     * come from, or -1 if the column has not been profiled.
+     */
+    public int getRowCount(SQLColumn col) {
+        TableProfileResult result = getTableProfile(col);
+        if (result == null) return -1;
+        return result.getRowCount();
+    }
+
+    /**
+     * Returns the fraction of distinct values over the number of rows for the
+     * given column, or -1 if the column has not been profiled or the profiled
+     * table was empty.
+     */
+    public double getSelectivity(SQLColumn col) {
+        ColumnProfileResult cpr = getColumnProfile(col);
+        int rowCount = getRowCount(col);
+        if (cpr == null || rowCount <= 0) return -1;
+        return ((double) cpr.getDistinctValueCount()) / rowCount;
+    }
+
+    /**
+     * Returns the fraction of null values over the number of rows for the
+     * given column, or -1 if the column has not been profiled or the profiled
+     * table was empty.
+     */
+    public double getNullFraction(SQLColumn col) {
+        ColumnProfileResult cpr = getColumnProfile(col);
+        int rowCount = getRowCount(col);
+        if (cpr == null || rowCount <= 0) return -1;
+        return ((double) cpr.getNullCount()) / rowCount;
+    }
+}
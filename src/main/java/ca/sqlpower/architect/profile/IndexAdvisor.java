@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ArchitectUtils;
+import ca.sqlpower.architect.profile.IndexSuggestion.SuggestionType;
+import ca.sqlpower.object.ObjectDependentException;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLIndex.Column;
+import ca.sqlpower.sqlobject.SQLRelationship.ColumnMapping;
+import ca.sqlpower.sqlobject.SQLRelationship.SQLImportedKey;
+
+/**
+ * Uses the statistics gathered by profiling tables together with the
+ * relationships between tables to suggest changes to the indexes of a model.
+ * The advisor suggests:
+ * <ul>
+ * <li>indexes on foreign key columns that are not the leading columns of any
+ * index,</li>
+ * <li>ordering the columns of composite indexes from the most to the least
+ * selective,</li>
+ * <li>filtered indexes on columns that are mostly null,</li>
+ * <li>dropping indexes whose leading column has very few distinct values.</li>
+ * </ul>
+ * Tables that are not profiled themselves use the profile of the tables their
+ * columns were copied from, so tables in the play pen can be advised from the
+ * profiles of the source database.
+ */
+public class IndexAdvisor {
+
+    private static final Logger logger = Logger.getLogger(IndexAdvisor.class);
+
+    /**
+     * Indexes whose leading column has fewer distinct values than this fraction
+     * of the row count will be suggested to be dropped.
+     */
+    public static final double DEFAULT_LOW_SELECTIVITY = 0.01;
+
+    /**
+     * Indexes on columns whose fraction of null values is at least this much
+     * will be suggested to be filtered to the non-null rows.
+     */
+    public static final double DEFAULT_MOSTLY_NULL = 0.8;
+
+    /**
+     * The number of bytes each index entry takes in addition to its key to
+     * locate the row in the table.
+     */
+    private static final int ROW_LOCATOR_BYTES = 10;
+
+    /**
+     * The percentage of each index page that is expected to be filled.
+     */
+    private static final int PAGE_FILL_PERCENT = 90;
+    
+    private final ColumnProfileLookup profiles;
+    
+    private double lowSelectivityThreshold = DEFAULT_LOW_SELECTIVITY;
+    
+    private double mostlyNullThreshold = DEFAULT_MOSTLY_NULL;
+
+    /**
+     * @param results
+     *            The profile results the advisor will base its suggestions on.
+     *            This is normally all of the results of the session's
+     *            {@link ProfileManager}.
+     */
+    public IndexAdvisor(Collection<TableProfileResult> results) {
+        profiles = new ColumnProfileLookup(results);
+    }
+
+    /**
+     * Returns the suggested changes to the indexes of the given tables. The
+     * suggestions are returned in the order of the tables given.
+     */
+    public List<IndexSuggestion> suggestIndexes(Collection<SQLTable> tables) throws SQLObjectException {
+        List<IndexSuggestion> suggestions = new ArrayList<IndexSuggestion>();
+        for (SQLTable table : tables) {
+            suggestions.addAll(suggestIndexes(table));
+        }
+        return suggestions;
+    }
+
+    /**
+     * Returns the suggested changes to the indexes of a single table.
+     */
+    public List<IndexSuggestion> suggestIndexes(SQLTable table) throws SQLObjectException {
+        List<IndexSuggestion> suggestions = new ArrayList<IndexSuggestion>();
+        List<SQLIndex> indexes = table.getIndices();
+        
+        List<List<SQLColumn>> foreignKeys = new ArrayList<List<SQLColumn>>();
+        for (SQLImportedKey key : table.getImportedKeys()) {
+            SQLRelationship r = key.getRelationship();
+            List<SQLColumn> fkColumns = new ArrayList<SQLColumn>();
+            for (ColumnMapping cm : r.getChildren(ColumnMapping.class)) {
+                if (cm.getFkColumn() != null) {
+                    fkColumns.add(cm.getFkColumn());
+                }
+            }
+            if (fkColumns.isEmpty()) continue;
+            foreignKeys.add(fkColumns);
+            
+            if (isCovered(fkColumns, indexes)) continue;
+            List<SQLColumn> orderedColumns = orderBySelectivity(fkColumns);
+            String filter = null;
+            if (orderedColumns.size() == 1 && isMostlyNull(orderedColumns.get(0))) {
+                filter = notNullCondition(orderedColumns.get(0));
+            }
+            suggestions.add(new IndexSuggestion(SuggestionType.CREATE_INDEX, table, orderedColumns, null, 
+                    filter, estimateIndexSize(orderedColumns, filter != null), 
+                    "The foreign key columns of relationship " + r.getName() + " are not indexed"));
+        }
+        
+        for (SQLIndex index : indexes) {
+            if (index.isPrimaryKeyIndex()) continue;
+            List<SQLColumn> columns = getIndexColumns(index);
+            if (columns == null || columns.isEmpty()) continue;
+            boolean supportsForeignKey = false;
+            for (List<SQLColumn> fkColumns : foreignKeys) {
+                if (isLeadingColumns(fkColumns, columns)) {
+                    supportsForeignKey = true;
+                    break;
+                }
+            }
+            
+            SQLColumn leadingColumn = columns.get(0);
+            double selectivity = profiles.getSelectivity(leadingColumn);
+            if (!index.isUnique() && !supportsForeignKey && selectivity >= 0 && selectivity < lowSelectivityThreshold) {
+                suggestions.add(new IndexSuggestion(SuggestionType.DROP_INDEX, table, columns, index, 
+                        index.getFilterCondition(), estimateIndexSize(columns, index.getFilterCondition() != null), 
+                        "The leading column " + leadingColumn.getName() + " of index " + index.getName() + 
+                        " only has " + formatPercent(selectivity) + " distinct values"));
+                continue;
+            }
+            
+            if (columns.size() > 1 && !supportsForeignKey) {
+                List<SQLColumn> orderedColumns = orderBySelectivity(columns);
+                if (!orderedColumns.equals(columns)) {
+                    suggestions.add(new IndexSuggestion(SuggestionType.REORDER_COLUMNS, table, orderedColumns, index, 
+                            index.getFilterCondition(), estimateIndexSize(orderedColumns, index.getFilterCondition() != null), 
+                            "The columns of index " + index.getName() + " are not ordered from most to least selective"));
+                }
+            } else if (columns.size() == 1 && !index.isUnique() && isMostlyNull(leadingColumn) &&
+                    (index.getFilterCondition() == null || index.getFilterCondition().trim().length() == 0)) {
+                suggestions.add(new IndexSuggestion(SuggestionType.ADD_FILTER, table, columns, index, 
+                        notNullCondition(leadingColumn), estimateIndexSize(columns, true), 
+                        "Column " + leadingColumn.getName() + " of index " + index.getName() + " is " + 
+                        formatPercent(profiles.getNullFraction(leadingColumn)) + " null"));
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Applies the given suggestions to the tables they were made for. All of
+     * the suggestions for a table are applied in one transaction on that
+     * table.
+     */
+    public void applySuggestions(Collection<IndexSuggestion> suggestions) throws SQLObjectException {
+        Set<SQLTable> tables = new HashSet<SQLTable>();
+        List<SQLTable> tableOrder = new ArrayList<SQLTable>();
+        for (IndexSuggestion suggestion : suggestions) {
+            if (tables.add(suggestion.getTable())) {
+                tableOrder.add(suggestion.getTable());
+            }
+        }
+        for (SQLTable table : tableOrder) {
+            try {
+                table.begin("Applying index suggestions");
+                for (IndexSuggestion suggestion : suggestions) {
+                    if (suggestion.getTable() == table) {
+                        applySuggestion(suggestion);
+                    }
+                }
+                table.commit();
+            } catch (SQLObjectException e) {
+                table.rollback(e.getMessage());
+                throw e;
+            } catch (RuntimeException e) {
+                table.rollback(e.getMessage());
+                throw e;
+            }
+        }
+    }
+    
+    private void applySuggestion(IndexSuggestion suggestion) throws SQLObjectException {
+        SQLTable table = suggestion.getTable();
+        SQLIndex index = suggestion.getExistingIndex();
+        switch (suggestion.getType()) {
+        case CREATE_INDEX:
+            index = new SQLIndex();
+            String name = createIndexName(table, suggestion.getColumns());
+            index.setName(name);
+            index.setPhysicalName(name);
+            for (SQLColumn col : suggestion.getColumns()) {
+                index.addIndexColumn(col);
+            }
+            index.setFilterCondition(suggestion.getFilterCondition());
+            table.addIndex(index);
+            break;
+        case REORDER_COLUMNS:
+            SQLIndex reordered = new SQLIndex();
+            for (SQLColumn col : suggestion.getColumns()) {
+                reordered.addIndexColumn(col);
+            }
+            index.makeColumnsLike(reordered);
+            break;
+        case ADD_FILTER:
+            index.setFilterCondition(suggestion.getFilterCondition());
+            break;
+        case DROP_INDEX:
+            try {
+                table.removeChild(index);
+            } catch (ObjectDependentException e) {
+                throw new RuntimeException(e);
+            }
+            break;
+        default:
+            throw new IllegalStateException("Unknown suggestion type " + suggestion.getType());
+        }
+    }
+
+    /**
+     * Estimates the size in bytes of an index on the given columns based on
+     * the row count and average lengths in their profiles. Returns -1 if the
+     * columns have not been profiled.
+     * 
+     * @param columns
+     *            The columns of the index.
+     * @param nonNullOnly
+     *            True if the index only holds the rows where the leading
+     *            column is not null.
+     */
+    public long estimateIndexSize(List<SQLColumn> columns, boolean nonNullOnly) {
+        if (columns.isEmpty()) return -1;
+        int rowCount = profiles.getRowCount(columns.get(0));
+        if (rowCount < 0) return -1;
+        
+        long entries = rowCount;
+        if (nonNullOnly) {
+            ColumnProfileResult cpr = profiles.getColumnProfile(columns.get(0));
+            if (cpr != null) {
+                entries = Math.max(0, rowCount - cpr.getNullCount());
+            }
+        }
+        
+        long keyWidth = 0;
+        for (SQLColumn col : columns) {
+            ColumnProfileResult cpr = profiles.getColumnProfile(col);
+            if (cpr != null && cpr.getAvgLength() > 0 && isVariableLength(col.getType())) {
+                keyWidth += (long) Math.ceil(cpr.getAvgLength()) + 2;
+            } else {
+                keyWidth += ArchitectUtils.estimateColumnWidth(col);
+            }
+        }
+        return entries * (keyWidth + ROW_LOCATOR_BYTES) * 100 / PAGE_FILL_PERCENT;
+    }
+
+    /**
+     * Returns a copy of the given columns ordered from the column with the
+     * most distinct values to the one with the least. Columns that have not
+     * been profiled keep their relative order after the profiled columns.
+     */
+    private List<SQLColumn> orderBySelectivity(List<SQLColumn> columns) {
+        List<SQLColumn> ordered = new ArrayList<SQLColumn>(columns);
+        Collections.sort(ordered, new Comparator<SQLColumn>() {
+            public int compare(SQLColumn o1, SQLColumn o2) {
+                return Double.compare(profiles.getSelectivity(o2), profiles.getSelectivity(o1));
+            }
+        });
+        return ordered;
+    }
+    
+    private boolean isMostlyNull(SQLColumn col) {
+        double nullFraction = profiles.getNullFraction(col);
+        return nullFraction >= 0 && nullFraction >= mostlyNullThreshold;
+    }
+
+    /**
+     * Returns true if the given columns, in any order, are the leading columns
+     * of one of the indexes.
+     */
+    private boolean isCovered(List<SQLColumn> columns, List<SQLIndex> indexes) {
+        for (SQLIndex index : indexes) {
+            List<SQLColumn> indexColumns = getIndexColumns(index);
+            if (indexColumns != null && isLeadingColumns(columns, indexColumns)) return true;
+        }
+        return false;
+    }
+    
+    private boolean isLeadingColumns(List<SQLColumn> columns, List<SQLColumn> indexColumns) {
+        if (indexColumns.size() < columns.size()) return false;
+        return new HashSet<SQLColumn>(indexColumns.subList(0, columns.size())).equals(
+                new HashSet<SQLColumn>(columns));
+    }
+
+    /**
+     * Returns the table columns of the given index in order, or null if the
+     * index contains an expression instead of a column.
+     */
+    private List<SQLColumn> getIndexColumns(SQLIndex index) {
+        List<SQLColumn> columns = new ArrayList<SQLColumn>();
+        for (Column indexColumn : index.getChildren(Column.class)) {
+            if (indexColumn.getColumn() == null) return null;
+            columns.add(indexColumn.getColumn());
+        }
+        return columns;
+    }
+
+    /**
+     * Creates a name for a new index on the given columns that is not already
+     * used by an index of the table.
+     */
+    private String createIndexName(SQLTable table, List<SQLColumn> columns) throws SQLObjectException {
+        String baseName = table.getName() + "_" + columns.get(0).getName() + "_idx";
+        Set<String> existingNames = new HashSet<String>();
+        for (SQLIndex index : table.getIndices()) {
+            existingNames.add(index.getName());
+        }
+        String name = baseName;
+        for (int i = 1; existingNames.contains(name); i++) {
+            name = baseName + i;
+        }
+        logger.debug("Created index name " + name + " for table " + table.getName());
+        return name;
+    }
+    
+    private static String notNullCondition(SQLColumn col) {
+        String name = col.getPhysicalName();
+        if (name == null || name.trim().length() == 0) {
+            name = col.getName();
+        }
+        return name + " IS NOT NULL";
+    }
+    
+    private static boolean isVariableLength(int type) {
+        final int NVARCHAR = -9; // Java6/JDBC 4.0
+        return type == Types.VARCHAR || type == Types.VARBINARY || type == NVARCHAR;
+    }
+    
+    private static String formatPercent(double fraction) {
+        return String.format("%.2f%%", fraction * 100);
+    }
+
+    public double getLowSelectivityThreshold() {
+        return lowSelectivityThreshold;
+    }
+
+    public void setLowSelectivityThreshold(double lowSelectivityThreshold) {
+        this.lowSelectivityThreshold = lowSelectivityThreshold;
+    }
+
+    public double getMostlyNullThreshold() {
+        return mostlyNullThreshold;
+    }
+
+    public void setMostlyNullThreshold(double mostlyNullThreshold) {
+        this.mostlyNullThreshold = mostlyNullThreshold;
+    }
+}
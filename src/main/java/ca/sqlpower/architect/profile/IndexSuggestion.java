@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * A single change to the indexes of a table recommended by the
+ * {@link IndexAdvisor}. Suggestions are immutable and are not applied to the
+ * model until they are given back to {@link IndexAdvisor#applySuggestions(java.util.Collection)}.
+ */
+public class IndexSuggestion {
+
+    /**
+     * The kinds of changes the index advisor can suggest.
+     */
+    public enum SuggestionType {
+        /**
+         * Create a new index on the suggested columns, possibly with a filter
+         * condition.
+         */
+        CREATE_INDEX,
+        /**
+         * Change the order of the columns of an existing index to the
+         * suggested order.
+         */
+        REORDER_COLUMNS,
+        /**
+         * Add the suggested filter condition to an existing index so it only
+         * holds the rows that are not null.
+         */
+        ADD_FILTER,
+        /**
+         * Remove an existing index.
+         */
+        DROP_INDEX
+    }
+    
+    private final SuggestionType type;
+    
+    private final SQLTable table;
+
+    /**
+     * The columns of the suggested index in the suggested order. For
+     * suggestions to drop an index these are the columns of the existing
+     * index.
+     */
+    private final List<SQLColumn> columns;
+
+    /**
+     * The index this suggestion changes. This is null for suggestions that
+     * create a new index.
+     */
+    private final SQLIndex existingIndex;
+
+    /**
+     * A condition that limits the rows in the index. This is null if the index
+     * is not filtered.
+     */
+    private final String filterCondition;
+
+    /**
+     * The estimated size of the suggested index in bytes, or -1 if the size is
+     * not known because the table has not been profiled.
+     */
+    private final long estimatedSize;
+
+    /**
+     * A human readable explanation of why the change was suggested.
+     */
+    private final String reason;
+
+    public IndexSuggestion(SuggestionType type, SQLTable table, List<SQLColumn> columns, 
+            SQLIndex existingIndex, String filterCondition, long estimatedSize, String reason) {
+        this.type = type;
+        this.table = table;
+        this.columns = Collections.unmodifiableList(new ArrayList<SQLColumn>(columns));
+        this.existingIndex = existingIndex;
+        this.filterCondition = filterCondition;
+        this.estimatedSize = estimatedSize;
+        this.reason = reason;
+    }
+
+    public SuggestionType getType() {
+        return type;
+    }
+
+    public SQLTable getTable() {
+        return table;
+    }
+
+    public List<SQLColumn> getColumns() {
+        return columns;
+    }
+
+    public SQLIndex getExistingIndex() {
+        return existingIndex;
+    }
+
+    public String getFilterCondition() {
+        return filterCondition;
+    }
+
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+    
+    @Override
+    public String toString() {
+        return type + " on " + table.getName() + " " + columns + ": " + reason;
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.sqlpower.architect.ArchitectUtils;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.UserDefinedSQLType;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Uses the lengths and value ranges found by profiling to suggest narrower
+ * data types for columns that were defined much larger than the data they
+ * hold, which is common in reverse engineered schemas. Each suggestion leaves
+ * room for the data to grow by a configurable headroom factor.
+ * <p>
+ * Character columns are given a shorter length, integer columns are given the
+ * smallest integer type that holds their range, and numeric columns are given
+ * a smaller precision. Tables that are not profiled themselves use the profile
+ * of the tables their columns were copied from.
+ */
+public class TypeRightSizingAdvisor {
+
+    /**
+     * The default factor the longest value or largest magnitude found in a
+     * column is multiplied by before choosing a size for it.
+     */
+    public static final double DEFAULT_HEADROOM = 1.5;
+    
+    private static final BigDecimal MAX_SMALLINT = BigDecimal.valueOf(Short.MAX_VALUE);
+    
+    private static final BigDecimal MAX_INTEGER = BigDecimal.valueOf(Integer.MAX_VALUE);
+    
+    private final ColumnProfileLookup profiles;
+
+    /**
+     * The types a column can be changed to. This is normally the list of
+     * types of the session.
+     */
+    private final List<UserDefinedSQLType> sqlTypes;
+    
+    private double headroom = DEFAULT_HEADROOM;
+
+    /**
+     * @param results
+     *            The profile results the advisor will base its suggestions on.
+     *            This is normally all of the results of the session's
+     *            {@link ProfileManager}.
+     * @param sqlTypes
+     *            The types columns can be changed to. Integer columns will
+     *            only be suggested a narrower type if one is in this list.
+     */
+    public TypeRightSizingAdvisor(Collection<TableProfileResult> results, List<UserDefinedSQLType> sqlTypes) {
+        this.profiles = new ColumnProfileLookup(results);
+        this.sqlTypes = new ArrayList<UserDefinedSQLType>(sqlTypes);
+    }
+
+    /**
+     * Returns the suggested type changes for the columns of the given tables
+     * in the order of the tables and their columns.
+     */
+    public List<TypeSizeSuggestion> suggestTypes(Collection<SQLTable> tables) throws SQLObjectException {
+        List<TypeSizeSuggestion> suggestions = new ArrayList<TypeSizeSuggestion>();
+        for (SQLTable table : tables) {
+            for (SQLColumn col : table.getColumns()) {
+                TypeSizeSuggestion suggestion = suggestType(col);
+                if (suggestion != null) {
+                    suggestions.add(suggestion);
+                }
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Returns the narrowest safe type for the given column, or null if the
+     * column has not been profiled, holds no values, or is already as narrow
+     * as its data allows.
+     */
+    public TypeSizeSuggestion suggestType(SQLColumn col) {
+        ColumnProfileResult cpr = profiles.getColumnProfile(col);
+        int rowCount = profiles.getRowCount(col);
+        if (cpr == null || rowCount <= 0 || cpr.getNullCount() >= rowCount) return null;
+        
+        int type = col.getType();
+        int currentWidth = ArchitectUtils.estimateColumnWidth(col);
+        if (isCharacterType(type)) {
+            int length = Math.max(1, (int) Math.ceil(cpr.getMaxLength() * headroom));
+            if (length >= col.getPrecision()) return null;
+            return new TypeSizeSuggestion(col, null, type, length, col.getScale(), 
+                    currentWidth - ArchitectUtils.estimateColumnWidth(type, length, col.getScale()), rowCount, 
+                    "The longest value is " + cpr.getMaxLength() + " characters; length " + 
+                    col.getPrecision() + " can be reduced to " + length);
+        }
+        
+        BigDecimal largest = getLargestMagnitude(cpr);
+        if (largest == null) return null;
+        largest = largest.multiply(BigDecimal.valueOf(headroom));
+        
+        if (isIntegerType(type)) {
+            int newType;
+            if (largest.compareTo(MAX_SMALLINT) <= 0) {
+                newType = Types.SMALLINT;
+            } else if (largest.compareTo(MAX_INTEGER) <= 0) {
+                newType = Types.INTEGER;
+            } else {
+                newType = Types.BIGINT;
+            }
+            int newWidth = ArchitectUtils.estimateColumnWidth(newType, 0, 0);
+            if (newWidth >= currentWidth) return null;
+            UserDefinedSQLType newSQLType = findSQLType(newType);
+            if (newSQLType == null) return null;
+            return new TypeSizeSuggestion(col, newSQLType, newType, col.getPrecision(), 0, 
+                    currentWidth - newWidth, rowCount, 
+                    "The values range from " + cpr.getMinValue() + " to " + cpr.getMaxValue() + 
+                    " which fits in " + newSQLType.getName());
+        } else if (type == Types.NUMERIC || type == Types.DECIMAL) {
+            int scale = Math.max(col.getScale(), 0);
+            int integerDigits = largest.setScale(0, RoundingMode.CEILING).precision();
+            int precision = integerDigits + scale;
+            if (precision >= col.getPrecision()) return null;
+            return new TypeSizeSuggestion(col, null, type, precision, scale, 
+                    currentWidth - ArchitectUtils.estimateColumnWidth(type, precision, scale), rowCount, 
+                    "The values range from " + cpr.getMinValue() + " to " + cpr.getMaxValue() + 
+                    "; precision " + col.getPrecision() + " can be reduced to " + precision);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the estimated number of bytes the given suggestions save in each
+     * table over all of its profiled rows.
+     */
+    public Map<SQLTable, Long> estimateTableSavings(Collection<TypeSizeSuggestion> suggestions) {
+        Map<SQLTable, Long> savings = new LinkedHashMap<SQLTable, Long>();
+        for (TypeSizeSuggestion suggestion : suggestions) {
+            SQLTable table = suggestion.getColumn().getParent();
+            Long saved = savings.get(table);
+            if (saved == null) {
+                saved = 0L;
+            }
+            savings.put(table, saved + suggestion.getSavedBytes());
+        }
+        return savings;
+    }
+
+    /**
+     * Applies the given suggestions to their columns. All of the changes are
+     * made in a single transaction on the database the columns are in so they
+     * can be undone as one edit.
+     */
+    public void applySuggestions(Collection<TypeSizeSuggestion> suggestions) {
+        List<SQLDatabase> databases = new ArrayList<SQLDatabase>();
+        for (TypeSizeSuggestion suggestion : suggestions) {
+            SQLDatabase db = SQLPowerUtils.getAncestor(suggestion.getColumn(), SQLDatabase.class);
+            if (db != null && !databases.contains(db)) {
+                databases.add(db);
+            }
+        }
+        
+        for (SQLDatabase db : databases) {
+            db.begin("Right-sizing column types");
+        }
+        try {
+            for (TypeSizeSuggestion suggestion : suggestions) {
+                SQLColumn col = suggestion.getColumn();
+                if (suggestion.getSuggestedType() != null) {
+                    col.getUserDefinedSQLType().setUpstreamType(suggestion.getSuggestedType());
+                    col.setType(suggestion.getSuggestedJdbcType());
+                } else {
+                    col.setPrecision(suggestion.getSuggestedPrecision());
+                    col.setScale(suggestion.getSuggestedScale());
+                }
+            }
+            for (int i = databases.size() - 1; i >= 0; i--) {
+                databases.get(i).commit();
+            }
+        } catch (RuntimeException e) {
+            for (int i = databases.size() - 1; i >= 0; i--) {
+                databases.get(i).rollback(e.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the largest absolute value of the minimum and maximum values of
+     * the column profile, or null if they are not numbers.
+     */
+    private static BigDecimal getLargestMagnitude(ColumnProfileResult cpr) {
+        BigDecimal min = toDecimal(cpr.getMinValue());
+        BigDecimal max = toDecimal(cpr.getMaxValue());
+        if (min == null || max == null) return null;
+        return min.abs().max(max.abs());
+    }
+    
+    private static BigDecimal toDecimal(Object value) {
+        if (!(value instanceof Number) && !(value instanceof String)) return null;
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    private UserDefinedSQLType findSQLType(int jdbcType) {
+        for (UserDefinedSQLType sqlType : sqlTypes) {
+            if (sqlType.getType() == jdbcType) {
+                return sqlType;
+            }
+        }
+        return null;
+    }
+    
+    private static boolean isCharacterType(int type) {
+        final int NCHAR = -15; // Java6/JDBC 4.0
+        final int NVARCHAR = -9; // Java6/JDBC 4.0
+        return (type == Types.CHAR ||
+                type == Types.VARCHAR ||
+                type == NCHAR ||
+                type == NVARCHAR);
+    }
+    
+    private static boolean isIntegerType(int type) {
+        return (type == Types.SMALLINT ||
+                type == Types.INTEGER ||
+                type == Types.BIGINT);
+    }
+
+    public double getHeadroom() {
+        return headroom;
+    }
+
+    /**
+     * Sets the factor the longest value or largest magnitude of each column
+     * is multiplied by before a size is chosen for it. This must be at least
+     * 1 for the suggestions to be safe for the data already profiled.
+     */
+    public void setHeadroom(double headroom) {
+        if (headroom < 1) {
+            throw new IllegalArgumentException("The headroom factor must be at least 1 but was " + headroom);
+        }
+        this.headroom = headroom;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.profile;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.UserDefinedSQLType;
+
+/**
+ * A narrower data type, precision, or scale for a single column suggested by
+ * the {@link TypeRightSizingAdvisor}. Suggestions are immutable and are not
+ * applied to the model until they are given back to
+ * {@link TypeRightSizingAdvisor#applySuggestions(java.util.Collection)}.
+ */
+public class TypeSizeSuggestion {
+
+    private final SQLColumn column;
+
+    /**
+     * The type the column should be changed to. This is null if the column
+     * should keep its type and only change its precision or scale.
+     */
+    private final UserDefinedSQLType suggestedType;
+    
+    private final int suggestedJdbcType;
+    
+    private final int suggestedPrecision;
+    
+    private final int suggestedScale;
+
+    /**
+     * The estimated number of bytes saved in each row of the column's table
+     * by making this change.
+     */
+    private final int savedBytesPerRow;
+
+    /**
+     * The number of rows in the profile of the column's table.
+     */
+    private final int rowCount;
+    
+    private final String reason;
+
+    public TypeSizeSuggestion(SQLColumn column, UserDefinedSQLType suggestedType, int suggestedJdbcType,
+            int suggestedPrecision, int suggestedScale, int savedBytesPerRow, int rowCount, String reason) {
+        this.column = column;
+        this.suggestedType = suggestedType;
+        this.suggestedJdbcType = suggestedJdbcType;
+        this.suggestedPrecision = suggestedPrecision;
+        this.suggestedScale = suggestedScale;
+        this.savedBytesPerRow = savedBytesPerRow;
+        this.rowCount = rowCount;
+        this.reason = reason;
+    }
+
+    public SQLColumn getColumn() {
+        return column;
+    }
+
+    public UserDefinedSQLType getSuggestedType() {
+        return suggestedType;
+    }
+
+    public int getSuggestedJdbcType() {
+        return suggestedJdbcType;
+    }
+
+    public int getSuggestedPrecision() {
+        return suggestedPrecision;
+    }
+
+    public int getSuggestedScale() {
+        return suggestedScale;
+    }
+
+    public int getSavedBytesPerRow() {
+        return savedBytesPerRow;
+    }
+
+    /**
+     * Returns the estimated number of bytes this change saves over all of the
+     * profiled rows of the table.
+     */
+    public long getSavedBytes() {
+        return ((long) savedBytesPerRow) * rowCount;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+    
+    @Override
+    public String toString() {
+        return column.getShortDisplayName() + ": " + reason;
+    }
+}
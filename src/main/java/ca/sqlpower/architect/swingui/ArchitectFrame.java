@@ -125,6 +125,7 @@ import ca.sqlpower.architect.swingui.action.PasteSelectedAction;
 import ca.sqlpower.architect.swingui.action.PreferencesAction;
 import ca.sqlpower.architect.swingui.action.PrintAction;
 import ca.sqlpower.architect.swingui.action.ProfileAction;
+import ca.sqlpower.architect.swingui.action.ProfileAdvisorAction;
 import ca.sqlpower.architect.swingui.action.ProjectSettingsAction;
 import ca.sqlpower.architect.swingui.action.RedoAction;
 import ca.sqlpower.architect.swingui.action.RemoveSourceDBAction;
@@ -224,6 +225,7 @@ public class ArchitectFrame extends JFrame {
     private PrintAction printAction;
     private ExportPlaypenToPDFAction exportPlaypenToPDFAction;
     private ProfileAction profileAction;
+    private ProfileAdvisorAction profileAdvisorAction;
     private ZoomAction zoomInAction;
     private ZoomAction zoomOutAction;
     private ZoomResetAction zoomNormalAction;
@@ -792,6 +794,7 @@ public class ArchitectFrame extends JFrame {
                 KeyStroke.getKeyStroke(KeyEvent.VK_A, accelMask));
 
         profileAction = new ProfileAction(this);
+        profileAdvisorAction = new ProfileAdvisorAction(this);
         reverseRelationshipAction = new ReverseRelationshipAction(this);
         alignTableHorizontalAction = new AlignTableAction(this, Messages.getString("ArchitectFrame.alignTablesHorizontallyActionName"), Messages.getString("ArchitectFrame.alignTablesHorizontallyActionDescription"), true); //$NON-NLS-1$ //$NON-NLS-2$
         alignTableVerticalAction = new AlignTableAction(this, Messages.getString("ArchitectFrame.alignTablesVerticallyActionName"), Messages.getString("ArchitectFrame.alignTablesVerticallyActionDescription"), false); //$NON-NLS-1$ //$NON-NLS-2$
@@ -1070,6 +1073,7 @@ public class ArchitectFrame extends JFrame {
         JMenu profileMenu = new JMenu(Messages.getString("ArchitectFrame.profileMenu")); //$NON-NLS-1$
         profileMenu.setMnemonic('p');
         profileMenu.add(profileAction);
+        profileMenu.add(profileAdvisorAction);
 
         menuBar.add(profileMenu);
 
@@ -1399,8 +1403,18 @@ public class ArchitectFrame extends JFrame {
                                 File openFile = new File(args[i]);
                                 InputStream in = new BufferedInputStream(new FileInputStream(openFile));
                                 ArchitectSwingSession session = context.createSession(in);
+                                if (session.getProjectLoader().promptToRecoverAutosave(openFile)) {
+                                    session.close();
+                                    in = new BufferedInputStream(new FileInputStream(
+                                            SwingUIProjectLoader.getAutosaveFile(openFile)));
+                                    session = context.createSession(in);
+                                    session.getProjectLoader().setFile(openFile);
+                                    session.getProjectLoader().setModified(true);
+                                } else {
+                                    session.getProjectLoader().setFile(openFile);
+                                    session.getProjectLoader().replayJournal();
+                                }
                                 session.getRecentMenu().putRecentFileName(openFile.getAbsolutePath());
-                                session.getProjectLoader().setFile(openFile);
                                 sessions.add(session);
                             }
                         }
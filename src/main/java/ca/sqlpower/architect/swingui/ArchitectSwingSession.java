@@ -33,6 +33,7 @@ import ca.sqlpower.architect.ArchitectSession;
 import ca.sqlpower.architect.CoreUserSettings;
 import ca.sqlpower.architect.ProjectSettings;
 import ca.sqlpower.architect.ProjectSettings.ColumnVisibility;
+import ca.sqlpower.architect.diff.SQLObjectHasher;
 import ca.sqlpower.architect.enterprise.ArchitectClientSideSession;
 import ca.sqlpower.architect.etl.kettle.KettleJob;
 import ca.sqlpower.architect.olap.OLAPRootObject;
@@ -109,6 +110,13 @@ public interface ArchitectSwingSession extends ArchitectSession, SwingWorkerRegi
     public ArchitectUndoManager getUndoManager();
     
     public CompareDMSettings getCompareDMSettings();
+
+    /**
+     * Returns the hasher that caches the hashes of the objects in the play
+     * pen so repeated comparisons against the play pen only rehash the parts
+     * that changed since the last comparison.
+     */
+    public SQLObjectHasher getModelHasher();
 	
     /**
      * Returns the JDialog containing the ProfileManagerView
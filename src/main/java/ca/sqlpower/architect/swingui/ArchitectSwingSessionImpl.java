@@ -35,7 +35,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.Action;
 import javax.swing.JColorChooser;
@@ -64,6 +67,7 @@ import ca.sqlpower.architect.ProjectSettings.ColumnVisibility;
 import ca.sqlpower.architect.UserSettings;
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.LiquibaseSettings;
+import ca.sqlpower.architect.diff.SQLObjectHasher;
 import ca.sqlpower.architect.enterprise.ArchitectClientSideSession;
 import ca.sqlpower.architect.etl.kettle.KettleJob;
 import ca.sqlpower.architect.olap.OLAPRootObject;
@@ -117,7 +121,21 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
 
     private static final Logger logger = Logger.getLogger(ArchitectSwingSessionImpl.class);
     
-    private static final Executor saveExecutor = new ScheduledThreadPoolExecutor(1);
+    private static final ScheduledExecutorService saveExecutor = new ScheduledThreadPoolExecutor(1);
+
+    /**
+     * The number of minutes between autosaves of sessions that have a GUI.
+     * Autosave is off unless the system property
+     * <code>ca.sqlpower.architect.autosaveMinutes</code> is set to a positive
+     * number.
+     */
+    private static final int AUTOSAVE_MINUTES = Integer.getInteger("ca.sqlpower.architect.autosaveMinutes", 0); //$NON-NLS-1$
+    
+    /**
+     * Autosaves the project on the save executor. Null if autosave is off or
+     * the GUI has not been initialized.
+     */
+    private ScheduledFuture<?> autosaveTask;
     
     private final ArchitectSwingSessionContext context;
 
@@ -216,6 +234,12 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
 
     private CompareDMSettings compareDMSettings;
 
+    /**
+     * Created the first time the play pen is compared. See
+     * {@link #getModelHasher()}.
+     */
+    private SQLObjectHasher modelHasher;
+
     private ArchitectUndoManager undoManager;
 
     private boolean isNew;    
@@ -496,6 +520,20 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
         macOSXRegistration(frame);
 
         profileDialog.setLocationRelativeTo(frame);
+        
+        if (AUTOSAVE_MINUTES > 0 && !isEnterpriseSession()) {
+            autosaveTask = saveExecutor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    SwingUIProjectLoader project = getProjectLoader();
+                    if (project.isSaveInProgress()) return;
+                    try {
+                        project.autosave();
+                    } catch (Exception e) {
+                        logger.error("Could not autosave " + project.getFile(), e); //$NON-NLS-1$
+                    }
+                }
+            }, AUTOSAVE_MINUTES, AUTOSAVE_MINUTES, TimeUnit.MINUTES);
+        }
     }
     
     public SwingUIProjectLoader getProjectLoader() {
@@ -678,6 +716,16 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
             if (!promptForUnsavedModifications()) {
                 return false;
             }
+            
+            // Fold the save journal into the project file, unless the user
+            // chose not to save changes that a new snapshot would include.
+            if (!getProjectLoader().isModified()) {
+                try {
+                    getProjectLoader().compactJournal();
+                } catch (Exception e) {
+                    logger.error("Could not compact the save journal; it will be replayed when the project is opened", e); //$NON-NLS-1$
+                }
+            }
         } else {
             getEnterpriseSession().putPref("zoom", playPen.getZoom());
         }
@@ -712,6 +760,15 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
             }
         }
 
+        if (autosaveTask != null) {
+            autosaveTask.cancel(false);
+        }
+        if (!isEnterpriseSession()) {
+            // The user either saved, which deleted the autosave file, or chose
+            // not to keep their changes.
+            getProjectLoader().discardAutosave();
+        }
+
         if (profileDialog != null) {
             // XXX this could/should be done by the profile dialog with a session closing listener
             profileDialog.dispose();
@@ -864,6 +921,14 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
         this.compareDMSettings = compareDMSettings;
     }
 
+    public synchronized SQLObjectHasher getModelHasher() {
+        if (modelHasher == null) {
+            modelHasher = new SQLObjectHasher();
+            modelHasher.watch(getTargetDatabase());
+        }
+        return modelHasher;
+    }
+
     public ArchitectUndoManager getUndoManager() {
         return undoManager;
     }
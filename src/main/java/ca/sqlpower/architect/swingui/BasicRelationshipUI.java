@@ -205,6 +205,11 @@ public class BasicRelationshipUI extends RelationshipUI implements java.io.Seria
                 lineEnd.y += getTerminationLength();
             }
 
+            if (r.getPlayPen() != null && r.getPlayPen().getDetailLevel() != PlayPen.DetailLevel.FULL) {
+                paintStraightLine(g2, r, start, end);
+                return;
+            }
+
 			// XXX: could optimise by checking if PK or FK tables have moved
 			containmentPath = new GeneralPath(GeneralPath.WIND_NON_ZERO, 10);
             
@@ -561,6 +566,30 @@ public class BasicRelationshipUI extends RelationshipUI implements java.io.Seria
 		}
 	}
     
+    /**
+     * Draws the relationship as a straight line between its connection points,
+     * without labels or terminations, for play pens zoomed out too far for
+     * them to be seen. The line is also what is hit-tested until the
+     * relationship is painted in full again.
+     */
+    private void paintStraightLine(Graphics2D g2, Relationship r, Point start, Point end) {
+        containmentPath = new GeneralPath(GeneralPath.WIND_NON_ZERO, 2);
+        containmentPath.moveTo((float) start.x, (float) start.y);
+        containmentPath.lineTo((float) end.x, (float) end.y);
+
+        if (!r.isSelected()) {
+            g2.setColor(r.getForegroundColor());
+        } else if (r.getForegroundColor().darker().equals(r.getForegroundColor())) {
+            g2.setColor(ColourScheme.SQLPOWER_ORANGE);
+        } else {
+            g2.setColor(r.getForegroundColor().darker());
+        }
+        Stroke oldStroke = g2.getStroke();
+        g2.setStroke(new BasicStroke(getStrokeWidth()));
+        g2.drawLine(start.x, start.y, end.x, end.y);
+        g2.setStroke(oldStroke);
+    }
+
     /**
      * Draws the labels near the relationship.
      */
@@ -111,6 +111,11 @@ public class BasicTablePaneUI extends TablePaneUI implements java.io.Serializabl
     }
     
     public void paint(Graphics g, TablePane tp) {
+		PlayPen.DetailLevel detail = tp.getPlayPen().getDetailLevel();
+		if (detail != PlayPen.DetailLevel.FULL) {
+		    paintOutline((Graphics2D) g, tp, detail);
+		    return;
+		}
 		try {
 			Graphics2D g2 = (Graphics2D) g;
 			Stroke oldStroke = g2.getStroke();
@@ -286,6 +291,37 @@ public class BasicTablePaneUI extends TablePaneUI implements java.io.Serializabl
 		}
 	}
 
+    /**
+     * Paints the table when the play pen is zoomed out too far for its columns
+     * to be read: an empty box under the title bar for
+     * {@link PlayPen.DetailLevel#TITLED_BOX}, and a box in the colour of the
+     * title bar for {@link PlayPen.DetailLevel#PLAIN_BOX}. The box is as big
+     * as the table is at full detail.
+     */
+    private void paintOutline(Graphics2D g2, TablePane tp, PlayPen.DetailLevel detail) {
+        int width = tp.getWidth();
+        int height = tp.getHeight();
+        Color titleColor = tp.selected ? tp.getBackgroundColor().darker() : tp.getBackgroundColor();
+        Font font = tp.getFont();
+        if (detail == PlayPen.DetailLevel.PLAIN_BOX || font == null) {
+            g2.setColor(titleColor);
+            g2.fillRect(0, 0, width, height);
+            return;
+        }
+        FontMetrics metrics = tp.getFontMetrics(font);
+        int fontHeight = metrics.getHeight();
+
+        g2.setColor(tp.getPlayPen().getBackground());
+        g2.fillRect(0, fontHeight + GAP, width, height - fontHeight - GAP);
+        g2.setColor(titleColor);
+        g2.fillRect(0, 0, width, fontHeight);
+        g2.setColor(tp.selected ? tp.getForegroundColor().darker() : tp.getForegroundColor());
+        g2.drawString(getTitleString(tp), 0, metrics.getAscent());
+        g2.setColor(Color.BLACK);
+        g2.drawRect(0, fontHeight + GAP, width - BOX_LINE_THICKNESS,
+                height - (fontHeight + GAP + BOX_LINE_THICKNESS));
+    }
+
     /**
      * Generates the string to be displayed for the given column. Includes the column's name,
      * data type, and any "tags" (such as PK and FK) are enabled in the user prefs.
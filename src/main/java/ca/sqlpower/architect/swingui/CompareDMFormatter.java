@@ -22,11 +22,14 @@ package ca.sqlpower.architect.swingui;
 import java.awt.Color;
 import java.awt.Dialog;
 import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
@@ -40,23 +43,27 @@ import org.apache.log4j.Logger;
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.LiquibaseDDLGenerator;
 import ca.sqlpower.architect.ddl.PostgresDDLGenerator;
-import ca.sqlpower.architect.diff.ArchitectDiffException;
-import ca.sqlpower.architect.swingui.CompareDMPanel.SourceOrTargetStuff;
+import ca.sqlpower.architect.diff.output.DiffInfoConverter;
+import ca.sqlpower.architect.diff.output.DiffOutputWriter;
+import ca.sqlpower.architect.diff.output.EnglishDiffWriter;
+import ca.sqlpower.architect.diff.output.IndexedTextFile;
+import ca.sqlpower.architect.diff.output.JSONDiffWriter;
+import ca.sqlpower.architect.diff.output.ScriptDiffWriter;
 import ca.sqlpower.architect.swingui.CompareDMSettings.SourceOrTargetSettings;
 import ca.sqlpower.diff.DiffChunk;
 import ca.sqlpower.diff.DiffInfo;
 import ca.sqlpower.diff.DiffType;
 import ca.sqlpower.diff.PropertyChange;
+import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sqlobject.SQLCatalog;
-import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLDatabase;
-import ca.sqlpower.sqlobject.SQLIndex;
 import ca.sqlpower.sqlobject.SQLObject;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLObjectUtils;
 import ca.sqlpower.sqlobject.SQLRelationship;
 import ca.sqlpower.sqlobject.SQLSchema;
 import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.swingui.SPSUtils;
 
 public class CompareDMFormatter {
 
@@ -146,34 +153,28 @@ public class CompareDMFormatter {
                     "Could not create document for results", ex);
             logger.error("Could not create document for results", ex);
         } catch (Exception ex) {
+            disposeWriters(writers);
             ASUtils.showExceptionDialog(session, "Unxepected Exception!", ex);
             logger.error("Unxepected Exception!", ex);
         }
     }
 
+    /**
+     * Disposes the given writers, deleting their temporary files. The list
+     * may be null if the writers were never created.
+     */
+    public static void disposeWriters(List<DiffOutputWriter> writers) {
+        if (writers == null) return;
+        for (DiffOutputWriter writer : writers) {
+            writer.dispose();
+        }
+    }
+
     public DDLGenerator formatForSQLOutput(List<DiffChunk<SQLObject>> diff,
             List<DiffChunk<SQLObject>> diff1, SQLObject left, SQLObject right) {
         DDLGenerator gen = null;
         try {
-            SourceOrTargetStuff source = dmSetting.getSourceStuff();
-
-            if (dmSetting.getOutputFormat().equals(CompareDMSettings.OutputFormat.SQL)) {
-                gen = dmSetting.getDdlGenerator().newInstance();
-                if (gen instanceof PostgresDDLGenerator) {
-                    //setComparingDMForPostgres 'true' to quote the physical name 
-                    gen.setComparingDMForPostgres(true);
-                }
-                SQLCatalog cat = (SQLCatalog) dmSetting.getSourceSettings().getCatalogObject();
-                SQLSchema sch = (SQLSchema) dmSetting.getSourceSettings().getSchemaObject();
-                gen.setTargetCatalog(cat == null ? null : gen.getPhysicalName(cat));
-                gen.setTargetSchema(sch == null ? null : gen.getPhysicalName(sch));
-            } else if (dmSetting.getOutputFormat().equals(CompareDMSettings.OutputFormat.LIQUIBASE)) {
-				gen = new LiquibaseDDLGenerator();
-				LiquibaseDDLGenerator lbgen = (LiquibaseDDLGenerator)gen;
-				lbgen.applySettings(dmSetting.getLiquibaseSettings());
-			} else {
-			    throw new IllegalStateException("Don't know what kind of SQL script to generate");
-			}
+            gen = createGenerator();
 
             List<DiffChunk<SQLObject>> addRelationships = new ArrayList<DiffChunk<SQLObject>>();
             List<DiffChunk<SQLObject>> dropRelationships = new ArrayList<DiffChunk<SQLObject>>();
@@ -190,39 +191,18 @@ public class CompareDMFormatter {
                     nonRelationship.add(d);
                 }
             }
-            sqlScriptGenerator(DIFF_STYLES, dropRelationships, gen);
-            sqlScriptGenerator(DIFF_STYLES, nonRelationship, gen);
-            sqlScriptGenerator(DIFF_STYLES, addRelationships, gen);
-
-            // get the title string for the compareDMFrame
-            String titleString = "Generated SQL Script to turn "+ toTitleText(true, left)
-            + " into " + toTitleText(false, right);
-
-            SQLDatabase db = null;
-
-            if ( dmSetting.getSourceSettings().getDatastoreType().equals(CompareDMSettings.DatastoreType.FILE) )
-                db = null;
-            else if (dmSetting.getSourceSettings().getDatastoreType().equals(CompareDMSettings.DatastoreType.PROJECT) )
-                db = session.getTargetDatabase();
-            else
-                db = source.getDatabase();
-            logger.debug("We got to place #2");
+            sqlScriptGenerator(dropRelationships, gen);
+            sqlScriptGenerator(orderAroundTableRenames(nonRelationship), gen);
+            sqlScriptGenerator(addRelationships, gen);
 
             SQLScriptDialog ssd = new SQLScriptDialog(dialogOwner,
-                    "Compare DM", titleString, false, gen, db == null?null:db.getDataSource(),
+                    "Compare DM", toScriptTitleText(left, right), false, gen, getSourceDataSource(),
                             false, session);
             ssd.setVisible(true);
 
-        } catch (ArchitectDiffException ex) {
-            ASUtils.showExceptionDialog(session, "Could not perform the diff", ex);
-            logger.error("Couldn't do diff", ex);
         } catch (SQLObjectException exp) {
             ASUtils.showExceptionDialog(session, "StartCompareAction failed", exp);
             logger.error("StartCompareAction failed", exp);
-        } catch (BadLocationException ex) {
-            ASUtils.showExceptionDialog(session,
-                    "Could not create document for results", ex);
-            logger.error("Could not create document for results", ex);
         } catch (Exception ex) {
             ASUtils.showExceptionDialog(session, "Unxepected Exception!", ex);
             logger.error("Unxepected Exception!", ex);
@@ -231,97 +211,178 @@ public class CompareDMFormatter {
 
     }
 
-    private void sqlScriptGenerator(Map<DiffType, AttributeSet> styles, List<DiffChunk<SQLObject>> diff,
-            DDLGenerator gen) throws ArchitectDiffException, SQLException, SQLObjectException, BadLocationException,
-            InstantiationException, IllegalAccessException {
+    /**
+     * Moves the chunks that refer to a renamed table by its old name ahead of
+     * the chunks that rename tables. Dropped columns, dropped indices,
+     * renamed columns and dropped primary keys are generated against the
+     * source table, so they must come before the table gets its new name,
+     * while everything else is generated against the target table.
+     */
+    private List<DiffChunk<SQLObject>> orderAroundTableRenames(List<DiffChunk<SQLObject>> diff) {
+        Set<SQLObject> renamedTables = new HashSet<SQLObject>();
         for (DiffChunk<SQLObject> chunk : diff) {
-            if (chunk.getType() == DiffType.KEY_CHANGED) {
-                if(chunk.getData() instanceof SQLTable) {
-                    SQLTable t = (SQLTable) chunk.getData();
-                    if (hasKey(t)) {
-                        gen.addPrimaryKey(t);
-                    }
-                }
-            } else if (chunk.getType() == DiffType.DROP_KEY) {
-                if(chunk.getData() instanceof SQLTable) {
-                    SQLTable t = (SQLTable) chunk.getData();
-                    if (hasKey(t)) {
-                        gen.dropPrimaryKey(t);
-                    }
-                }
-            } else if (chunk.getType() == DiffType.LEFTONLY) {
-                if (chunk.getData() instanceof SQLTable) {
-                    SQLTable t = (SQLTable) chunk.getData();
-                    gen.dropTable(t);
-                } else if (chunk.getData() instanceof SQLColumn) {
-                    SQLColumn c = (SQLColumn) chunk.getData();
-                    gen.dropColumn(c);
-                } else if (chunk.getData() instanceof SQLRelationship) {
-                    SQLRelationship r = (SQLRelationship)chunk.getData();
-                    gen.dropRelationship(r);
-                } else if (chunk.getData() instanceof SQLIndex) {
-                    SQLIndex i = (SQLIndex)chunk.getData();
-                    gen.dropIndex(i);
-                } else {
-                    throw new IllegalStateException("DiffChunk is an unexpected type.");
-                }
+            if (chunk.getType() == DiffType.NAME_CHANGED && chunk.getData() instanceof SQLTable) {
+                renamedTables.add(chunk.getOriginalData());
+            }
+        }
+        if (renamedTables.isEmpty()) return diff;
 
-            } else if (chunk.getType() == DiffType.RIGHTONLY) {
-                if (chunk.getData() instanceof SQLTable) {
-                    SQLTable t = (SQLTable) chunk.getData();
-                    if (t == null ) throw new NullPointerException();
-                    if (t.getObjectType().equals("TABLE")) {
-                        gen.addTable(t);
-                    }
-                } else if (chunk.getData() instanceof SQLColumn) {
-                    SQLColumn c = (SQLColumn) chunk.getData();
-                    gen.addColumn(c);
-                } else if (chunk.getData() instanceof SQLRelationship) {
-                    SQLRelationship r = (SQLRelationship)chunk.getData();
-                    gen.addRelationship(r);
-                } else if (chunk.getData() instanceof SQLIndex) {
-                    SQLIndex i = (SQLIndex)chunk.getData();
-                    gen.addIndex(i);
-                } else {
-                    throw new IllegalStateException("DiffChunk is an unexpected type.");
-                }
-            } else if (chunk.getType() == DiffType.MODIFIED) {
-                // do nothing because it has not been modified enough (see next case)
-            } else if (chunk.getType() == DiffType.SQL_MODIFIED) {
-                if (chunk.getData() instanceof SQLColumn) {
-                    SQLColumn c = (SQLColumn) chunk.getData();
-                    gen.modifyColumn(c, chunk);
-                }
-                for (PropertyChange change : chunk.getPropertyChanges()) {
-                    if (change.getPropertyName().equals("remarks")) {
-                        gen.modifyComment(chunk.getData());
-                        break;
+        List<DiffChunk<SQLObject>> beforeRenames = new ArrayList<DiffChunk<SQLObject>>();
+        List<DiffChunk<SQLObject>> rest = new ArrayList<DiffChunk<SQLObject>>();
+        for (DiffChunk<SQLObject> chunk : diff) {
+            SQLObject oldTable = ScriptDiffWriter.getOldTable(chunk);
+            if (oldTable != null && renamedTables.contains(oldTable)) {
+                beforeRenames.add(chunk);
+            } else {
+                rest.add(chunk);
+            }
+        }
+        beforeRenames.addAll(rest);
+        return beforeRenames;
+    }
+
+    private void sqlScriptGenerator(List<DiffChunk<SQLObject>> diff, DDLGenerator gen)
+    throws SQLException, SQLObjectException {
+        for (DiffChunk<SQLObject> chunk : diff) {
+            ScriptDiffWriter.generate(chunk, gen);
+        }
+    }
+
+    /**
+     * Creates the generator for the script output format of the settings.
+     */
+    private DDLGenerator createGenerator() throws InstantiationException, IllegalAccessException, SQLException {
+        DDLGenerator gen;
+        if (dmSetting.getOutputFormat().equals(CompareDMSettings.OutputFormat.SQL)) {
+            gen = dmSetting.getDdlGenerator().newInstance();
+            if (gen instanceof PostgresDDLGenerator) {
+                //setComparingDMForPostgres 'true' to quote the physical name 
+                gen.setComparingDMForPostgres(true);
+            }
+            SQLCatalog cat = (SQLCatalog) dmSetting.getSourceSettings().getCatalogObject();
+            SQLSchema sch = (SQLSchema) dmSetting.getSourceSettings().getSchemaObject();
+            gen.setTargetCatalog(cat == null ? null : gen.getPhysicalName(cat));
+            gen.setTargetSchema(sch == null ? null : gen.getPhysicalName(sch));
+        } else if (dmSetting.getOutputFormat().equals(CompareDMSettings.OutputFormat.LIQUIBASE)) {
+            gen = new LiquibaseDDLGenerator();
+            LiquibaseDDLGenerator lbgen = (LiquibaseDDLGenerator)gen;
+            lbgen.applySettings(dmSetting.getLiquibaseSettings());
+        } else {
+            throw new IllegalStateException("Don't know what kind of SQL script to generate");
+        }
+        return gen;
+    }
+
+    /**
+     * Creates the writers that the diffs of a comparison are handed to as
+     * they are found, in the output format of the settings. The English
+     * output has two writers, the first for the diffs that turn the source
+     * into the target and the second for the diffs that turn the target into
+     * the source. The other formats have a single writer for the former.
+     * Each writer writes to a temporary file that {@link #showOutput} shows,
+     * or that {@link #disposeWriters(List)} deletes if the comparison fails or
+     * is cancelled.
+     */
+    public List<DiffOutputWriter> createWriters(SQLObject left, SQLObject right)
+    throws IOException, InstantiationException, IllegalAccessException, SQLException {
+        List<DiffOutputWriter> writers = new ArrayList<DiffOutputWriter>();
+        CompareDMSettings.OutputFormat format = dmSetting.getOutputFormat();
+        boolean created = false;
+        try {
+            if (format.equals(CompareDMSettings.OutputFormat.ENGLISH)) {
+                writers.add(new EnglishDiffWriter(IndexedTextFile.createTempFile("compare-source"),
+                        toTitleText(true, left)));
+                writers.add(new EnglishDiffWriter(IndexedTextFile.createTempFile("compare-target"),
+                        toTitleText(false, right)));
+            } else if (format.equals(CompareDMSettings.OutputFormat.JSON)) {
+                writers.add(new JSONDiffWriter(IndexedTextFile.createTempFile("compare-json")));
+            } else {
+                DDLGenerator gen = createGenerator();
+                IndexedTextFile output = IndexedTextFile.createTempFile("compare-script");
+                try {
+                    writers.add(new ScriptDiffWriter(gen, output));
+                } finally {
+                    if (writers.isEmpty()) {
+                        output.dispose();
                     }
                 }
-            } else if (chunk.getType() == DiffType.SAME) {
-                //do nothing when they're the same
-            } else if (chunk.getType() == DiffType.NAME_CHANGED) {
-                if (chunk.getData() instanceof SQLTable) {
-                    SQLTable newTable = (SQLTable)chunk.getData();
-                    SQLTable oldTable = (SQLTable)chunk.getOriginalData();
-                    gen.renameTable(oldTable, newTable);
-                } else if (chunk.getData() instanceof SQLColumn) {
-                    SQLColumn newCol = (SQLColumn)chunk.getData();
-                    SQLColumn oldCol = (SQLColumn)chunk.getOriginalData();
-                    gen.renameColumn(oldCol, newCol);
-                } else if (chunk.getData() instanceof SQLIndex) {
-                    SQLIndex newIndex = (SQLIndex)chunk.getData();
-                    SQLIndex oldIndex= (SQLIndex)chunk.getOriginalData();
-                    gen.renameIndex(oldIndex, newIndex);
+            }
+            created = true;
+        } finally {
+            if (!created) {
+                disposeWriters(writers);
+            }
+        }
+        return writers;
+    }
+
+    /**
+     * Shows the output of the finished writers made by
+     * {@link #createWriters(SQLObject, SQLObject)}. A script that was small
+     * enough to keep in memory is shown in a {@link SQLScriptDialog} so it
+     * can be run; larger scripts and the JSON output are shown a page at a
+     * time in a {@link DiffOutputDialog}. The windows dispose of the writers'
+     * files when they are closed, and the files of a script kept in memory
+     * are disposed right away.
+     */
+    public void showOutput(List<DiffOutputWriter> writers, SQLObject left, SQLObject right) {
+        try {
+            CompareDMSettings.OutputFormat format = dmSetting.getOutputFormat();
+            if (format.equals(CompareDMSettings.OutputFormat.ENGLISH)) {
+                CompareDMFrame cf = new CompareDMFrame(dialogOwner,
+                        writers.get(0).getOutput(), writers.get(1).getOutput(),
+                        toTitleText(true, left), toTitleText(false, right));
+                cf.pack();
+                cf.setVisible(true);
+            } else if (format.equals(CompareDMSettings.OutputFormat.JSON)) {
+                DiffOutputDialog dialog = new DiffOutputDialog(dialogOwner, "Compare DM",
+                        "Differences between " + toTitleText(true, left) + " and " + toTitleText(false, right),
+                        writers.get(0).getOutput(), null, ".json");
+                dialog.setVisible(true);
+            } else {
+                ScriptDiffWriter writer = (ScriptDiffWriter) writers.get(0);
+                if (writer.getStatements() != null) {
+                    writer.dispose();
+                    SQLScriptDialog ssd = new SQLScriptDialog(dialogOwner,
+                            "Compare DM", toScriptTitleText(left, right), false, writer.getStatements(),
+                            getSourceDataSource(), false, session);
+                    ssd.setVisible(true);
                 } else {
-                    throw new IllegalStateException("DiffChunk is an unexpected type.");
+                    boolean liquibase = format.equals(CompareDMSettings.OutputFormat.LIQUIBASE);
+                    DiffOutputDialog dialog = new DiffOutputDialog(dialogOwner, "Compare DM",
+                            toScriptTitleText(left, right), writer.getOutput(),
+                            liquibase ? SPSUtils.XML_FILE_FILTER : SPSUtils.SQL_FILE_FILTER,
+                            liquibase ? ".xml" : ".sql");
+                    dialog.setVisible(true);
                 }
-            } else {
-                throw new IllegalStateException("DiffChunk is an invalid type.");
             }
+        } catch (Exception ex) {
+            ASUtils.showExceptionDialog(session, "Unxepected Exception!", ex);
+            logger.error("Unxepected Exception!", ex);
         }
     }
 
+    /**
+     * Returns the data source the generated script can be run in, or null if
+     * the source of the comparison is a project file.
+     */
+    private JDBCDataSource getSourceDataSource() {
+        SQLDatabase db = null;
+
+        if ( dmSetting.getSourceSettings().getDatastoreType().equals(CompareDMSettings.DatastoreType.FILE) )
+            db = null;
+        else if (dmSetting.getSourceSettings().getDatastoreType().equals(CompareDMSettings.DatastoreType.PROJECT) )
+            db = session.getTargetDatabase();
+        else
+            db = dmSetting.getSourceStuff().getDatabase();
+        return db == null ? null : db.getDataSource();
+    }
+
+    private String toScriptTitleText(SQLObject left, SQLObject right) {
+        return "Generated SQL Script to turn "+ toTitleText(true, left)
+            + " into " + toTitleText(false, right);
+    }
+
 
     /**
      * This method generates english descriptions by taking in the diff list
@@ -353,43 +414,7 @@ public class CompareDMFormatter {
             MutableAttributeSet boldAttributes = new SimpleAttributeSet(attributes);
             StyleConstants.setBold(boldAttributes, true);
 
-            String diffTypeEnglish;
-            switch (chunk.getType()) {
-            case LEFTONLY:
-                diffTypeEnglish = "should be removed";
-                break;
-
-            case MODIFIED:
-            case SQL_MODIFIED:
-                diffTypeEnglish = "should be modified";
-                break;
-
-            case SAME:
-                diffTypeEnglish = "needs no changes";
-                break;
-
-            case RIGHTONLY:
-                diffTypeEnglish = "should be added";
-                break;
-
-            case KEY_CHANGED:
-                diffTypeEnglish = "needs a different primary key";
-                break;
-
-
-            case DROP_KEY:
-                diffTypeEnglish = "needs to drop the source primary key";
-                break;
-
-            case NAME_CHANGED:
-                diffTypeEnglish = "should be renamed";
-                break;
-
-            default:
-                diffTypeEnglish = "!UNKNOWN DIFF TYPE!";
-                logger.error("Woops, unknown diff chunk type: "+chunk.getType());
-                break;
-            }
+            String diffTypeEnglish = EnglishDiffWriter.describe(chunk.getType());
 
             resultDoc.insertString(
                     resultDoc.getLength(),
@@ -468,60 +493,12 @@ public class CompareDMFormatter {
     }
 
 
-    private boolean hasKey(SQLTable t) throws SQLObjectException {
-        for (SQLColumn c : t.getColumns()) {
-            if (c.isPrimaryKey()) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-
     private List<DiffChunk<DiffInfo>> convertToDiffInfo(List<DiffChunk<SQLObject>> diff) {
-
-
         List<DiffChunk<DiffInfo>> newDiff = new ArrayList<DiffChunk<DiffInfo>>();
-        List<SQLObject> ancestors = new ArrayList<SQLObject>();
-        ancestors.add(new SQLTable());
-        int depth = 0;
+        DiffInfoConverter converter = new DiffInfoConverter();
         for (DiffChunk<SQLObject> chunk : diff) {
-            SQLObject data = chunk.getData();
-            String name;
-            if (data instanceof SQLTable && data.getPhysicalName() != null) {
-                name = data.getPhysicalName();
-            } else {
-                name = data.getName();
-            }
-            DiffInfo info = new DiffInfo(data.getClass().getSimpleName().replaceFirst("SQL", ""), name);
-
-
-            // Set the depth property based on the object hierarchy.
-            // If it is a relationship, we ignore depth, and there are only relationships left.
-            if (chunk.getData() instanceof SQLRelationship) {
-                depth = 0;
-            } else if (ancestors.get(depth).allowsChildType(data.getClass())) {
-                ancestors.add(data);
-                depth++;
-            }
-            while (depth > 0 && !ancestors.get(depth - 1).allowsChildType(data.getClass())) {
-                ancestors.remove(depth);
-                depth--;
-            }
-            ancestors.add(depth, data);
-
-
-            info.setDepth(depth);
-            DiffChunk<DiffInfo> newChunk = new DiffChunk<DiffInfo>(info, chunk.getType());
-            for (PropertyChange change : chunk.getPropertyChanges()) {
-                newChunk.addPropertyChange(change);
-            }
-            newDiff.add(newChunk);
+            newDiff.add(converter.convert(chunk));
         }
-
-
         return newDiff;
-
-
     }
 }
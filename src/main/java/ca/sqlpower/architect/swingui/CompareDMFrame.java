@@ -27,6 +27,8 @@ import java.awt.Insets;
 import java.awt.Toolkit;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -44,6 +46,7 @@ import javax.swing.text.StyleConstants;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.architect.diff.output.IndexedTextFile;
 import ca.sqlpower.swingui.SPSUtils;
 import ca.sqlpower.swingui.SPSUtils.FileExtensionFilter;
 
@@ -63,6 +66,13 @@ public class CompareDMFrame extends JDialog {
 	private AbstractDocument sourceOutputText;
 	private AbstractDocument targetOutputText;
 
+	/**
+	 * The views of the source and target output when they are shown from
+	 * files instead of documents.
+	 */
+	private PagedTextList leftOutputList;
+	private PagedTextList rightOutputList;
+
 	private String title;
     private String whatTheHeckIsGoingOn;
 	private JComponent panel;
@@ -94,6 +104,36 @@ public class CompareDMFrame extends JDialog {
         pack();
         setLocationRelativeTo(owner);
 	}
+
+	/**
+	 * Creates a frame that shows the source and target output from files a
+	 * page at a time, for comparisons too large to show in a document. The
+	 * titles are expected to be the first lines of the files, which are
+	 * disposed when the frame is closed.
+	 */
+	public CompareDMFrame(Dialog owner, IndexedTextFile sourceOutput, IndexedTextFile targetOutput, 
+	        String leftTitle, String rightTitle)
+	{
+	    super(owner, Messages.getString("CompareDMFrame.title"));	 //$NON-NLS-1$
+	    
+	    leftOutputList = new PagedTextList(sourceOutput, CompareDMFormatter.DIFF_STYLES);
+	    rightOutputList = new PagedTextList(targetOutput, CompareDMFormatter.DIFF_STYLES);
+	    setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+	    addWindowListener(new WindowAdapter() {
+	        @Override
+	        public void windowClosed(WindowEvent e) {
+	            leftOutputList.dispose();
+	            rightOutputList.dispose();
+	        }
+	    });
+	    this.title = Messages.getString("CompareDMFrame.comparing", leftTitle, rightTitle); //$NON-NLS-1$
+	    whatTheHeckIsGoingOn =Messages.getString("CompareDMFrame.necessaryChanges");	 //$NON-NLS-1$
+	    panel = mainFrame();
+	    getContentPane().add(panel);
+	    
+	    pack();
+	    setLocationRelativeTo(owner);
+	}
 	
 	public JComponent mainFrame() {		
 		
@@ -109,16 +149,22 @@ public class CompareDMFrame extends JDialog {
 		
 		titleLabel.setFont(titleFont);
 		JLabel subTitleLabel = new JLabel(whatTheHeckIsGoingOn);
-		leftOutputArea = new JTextPane();
-		leftOutputArea.setMargin(new Insets(6, 10, 4, 6));
-		leftOutputArea.setDocument(sourceOutputText);
-		leftOutputArea.setEditable(false);
+		JComponent leftView;
+		if (leftOutputList != null) {
+		    leftView = leftOutputList;
+		} else {
+		    leftOutputArea = new JTextPane();
+		    leftOutputArea.setMargin(new Insets(6, 10, 4, 6));
+		    leftOutputArea.setDocument(sourceOutputText);
+		    leftOutputArea.setEditable(false);
+		    leftView = leftOutputArea;
+		}
 		JPanel comparePanel =  new JPanel(new GridLayout(1,2));
 		JScrollPane sp = new JScrollPane(comparePanel);
 		
 		int lineHeight = 16;
 		try {
-			FontMetrics fm = leftOutputArea.getFontMetrics(leftOutputArea.getFont());
+			FontMetrics fm = leftView.getFontMetrics(leftView.getFont());
 			lineHeight = fm.getHeight() + 2;
 		} catch (Exception e) {
 			lineHeight = 16;
@@ -131,16 +177,22 @@ public class CompareDMFrame extends JDialog {
 		// Clicking in the "empty" area of the scrollbar will scroll by 10 lines
 		sp.getVerticalScrollBar().setBlockIncrement(lineHeight * 10);
 
-		comparePanel.add(leftOutputArea);
-		Action sourceCopy = new sourceCopyAction(sourceOutputText);
-	
-		Action sourceSave = new AbstractAction(){
-			public void actionPerformed(ActionEvent e) {
-				SPSUtils.saveDocument(CompareDMFrame.this,
-				        sourceOutputText,
-						(FileExtensionFilter) SPSUtils.TEXT_FILE_FILTER );
-			}
-		};
+		comparePanel.add(leftView);
+		Action sourceCopy;
+		Action sourceSave;
+		if (leftOutputList != null) {
+		    sourceCopy = new ListCopyAction(leftOutputList);
+		    sourceSave = new ListSaveAction(leftOutputList);
+		} else {
+		    sourceCopy = new sourceCopyAction(sourceOutputText);
+		    sourceSave = new AbstractAction(){
+		        public void actionPerformed(ActionEvent e) {
+		            SPSUtils.saveDocument(CompareDMFrame.this,
+		                    sourceOutputText,
+		                    (FileExtensionFilter) SPSUtils.TEXT_FILE_FILTER );
+		        }
+		    };
+		}
 		CloseAction close = new CloseAction();
 		close.setDialog(this);
 		SPSUtils.makeJDialogCancellable(this, close);
@@ -177,12 +229,27 @@ public class CompareDMFrame extends JDialog {
 		pb = new PanelBuilder(layout,p);
 		pb.setDefaultDialogBorder();		
 		
-		rightOutputArea = new JTextPane();
-		rightOutputArea.setMargin(new Insets(6, 10, 4, 6));
-		rightOutputArea.setDocument(targetOutputText);
-		rightOutputArea.setEditable(false);
-		comparePanel.add(rightOutputArea);
-		Action targetCopy = new targetCopyAction(targetOutputText);
+		Action targetCopy;
+		Action targetSaveAction;
+		if (rightOutputList != null) {
+		    comparePanel.add(rightOutputList);
+		    targetCopy = new ListCopyAction(rightOutputList);
+		    targetSaveAction = new ListSaveAction(rightOutputList);
+		} else {
+		    rightOutputArea = new JTextPane();
+		    rightOutputArea.setMargin(new Insets(6, 10, 4, 6));
+		    rightOutputArea.setDocument(targetOutputText);
+		    rightOutputArea.setEditable(false);
+		    comparePanel.add(rightOutputArea);
+		    targetCopy = new targetCopyAction(targetOutputText);
+		    targetSaveAction = new AbstractAction(){
+		        public void actionPerformed(ActionEvent e) {
+		            SPSUtils.saveDocument(CompareDMFrame.this,
+		                    targetOutputText,
+		                    (FileExtensionFilter) SPSUtils.TEXT_FILE_FILTER );
+		        }
+		    };
+		}
 		//Sets the target Buttons
 		ButtonBarBuilder targetbbBuilder = new ButtonBarBuilder();
 		JButton copyTarget = new JButton(targetCopy);
@@ -192,14 +259,6 @@ public class CompareDMFrame extends JDialog {
 		targetbbBuilder.addGlue();					
 		
 		
-		Action targetSaveAction = new AbstractAction(){
-			public void actionPerformed(ActionEvent e) {
-				SPSUtils.saveDocument(CompareDMFrame.this,
-						targetOutputText,
-						(FileExtensionFilter) SPSUtils.TEXT_FILE_FILTER );
-			}
-		};
-		
 
 		JButton targetSave = new JButton(targetSaveAction);
 		targetSave.setText(Messages.getString("CompareDMFrame.save")); //$NON-NLS-1$
@@ -262,6 +321,36 @@ public class CompareDMFrame extends JDialog {
 		}			
 	}
 
+	/**
+	 * Copies the selected lines of a paged output list, or all of them.
+	 */
+	private class ListCopyAction extends AbstractAction {
+	    private final PagedTextList list;
+	    
+	    public ListCopyAction(PagedTextList list) {
+	        this.list = list;
+	    }
+	    
+	    public void actionPerformed(ActionEvent e) {
+	        list.copyToClipboard();
+	    }
+	}
+	
+	/**
+	 * Saves the file a paged output list shows.
+	 */
+	private class ListSaveAction extends AbstractAction {
+	    private final PagedTextList list;
+	    
+	    public ListSaveAction(PagedTextList list) {
+	        this.list = list;
+	    }
+	    
+	    public void actionPerformed(ActionEvent e) {
+	        list.saveAs(CompareDMFrame.this, SPSUtils.TEXT_FILE_FILTER, ".txt"); //$NON-NLS-1$
+	    }
+	}
+
 	public class CloseAction extends AbstractAction {	
 		JDialog localDialog;
 		
@@ -269,7 +358,7 @@ public class CompareDMFrame extends JDialog {
 			localDialog = dialog;				
 		}
 		public void actionPerformed(ActionEvent e) {
-			localDialog.setVisible(false);
+			localDialog.dispose();
 		}						
 	}
 	
@@ -32,9 +32,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CancellationException;
 
 import javax.swing.AbstractAction;
@@ -52,6 +54,7 @@ import javax.swing.JProgressBar;
 import javax.swing.JRadioButton;
 import javax.swing.JTextField;
 import javax.swing.ListCellRenderer;
+import javax.swing.SwingUtilities;
 import javax.swing.event.AncestorEvent;
 import javax.swing.event.AncestorListener;
 import javax.swing.event.DocumentEvent;
@@ -61,14 +64,18 @@ import javax.swing.event.ListDataListener;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.architect.catalog.BulkCatalogReader;
+import ca.sqlpower.architect.catalog.CatalogSnapshotCache;
+import ca.sqlpower.architect.catalog.IncrementalCatalogRefresher;
+import ca.sqlpower.architect.catalog.SchemaMetadata;
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.DDLUtils;
 import ca.sqlpower.architect.diff.CompareSQL;
+import ca.sqlpower.architect.diff.output.DiffOutputWriter;
 import ca.sqlpower.architect.swingui.CompareDMPanel.SourceOrTargetStuff.CatalogPopulator;
 import ca.sqlpower.architect.swingui.CompareDMPanel.SourceOrTargetStuff.SchemaPopulator;
 import ca.sqlpower.architect.swingui.CompareDMSettings.DatastoreType;
 import ca.sqlpower.architect.swingui.CompareDMSettings.SourceOrTargetSettings;
-import ca.sqlpower.diff.DiffChunk;
 import ca.sqlpower.sql.DataSourceCollection;
 import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sql.SPDataSource;
@@ -82,6 +89,7 @@ import ca.sqlpower.swingui.ConnectionComboBoxModel;
 import ca.sqlpower.swingui.ProgressWatcher;
 import ca.sqlpower.swingui.SPSUtils;
 import ca.sqlpower.swingui.SPSwingWorker;
+import ca.sqlpower.util.SQLPowerUtils;
 import ca.sqlpower.validation.Status;
 import ca.sqlpower.validation.ValidateResult;
 import ca.sqlpower.validation.swingui.StatusComponent;
@@ -160,6 +168,8 @@ public class CompareDMPanel extends JPanel {
 
 	private static final String OUTPUT_LIQUIBASE = "OUTPUT_LIQUIBASE"; //$NON-NLS-1$
 
+	private static final String OUTPUT_JSON = "OUTPUT_JSON"; //$NON-NLS-1$
+
 	public static final String DBCS_DIALOG_TITLE = Messages.getString("CompareDMPanel.dbcsDialogTitle"); //$NON-NLS-1$
 
 	private JProgressBar progressBar;
@@ -180,11 +190,15 @@ public class CompareDMPanel extends JPanel {
 	private JRadioButton englishButton;
 
 	private JRadioButton liquibaseButton;
+
+	private JRadioButton jsonButton;
     
     private JCheckBox showNoChanges;
 
 	private JCheckBox includeIndexes;
 
+	private JCheckBox detectRenames;
+
 	private JLabel statusLabel;
 
 	/**
@@ -1042,6 +1056,12 @@ public class CompareDMPanel extends JPanel {
 		liquibaseButton.setActionCommand(OUTPUT_LIQUIBASE);
 		liquibaseButton.setSelected(false);
 		liquibaseButton.addActionListener(listener);
+
+		jsonButton = new JRadioButton();
+		jsonButton.setName(OUTPUT_JSON);
+		jsonButton.setActionCommand(OUTPUT_JSON);
+		jsonButton.setSelected(false);
+		jsonButton.addActionListener(listener);
 		
         showNoChanges = new JCheckBox();
         showNoChanges.setName("showNoChanges"); //$NON-NLS-1$
@@ -1049,12 +1069,17 @@ public class CompareDMPanel extends JPanel {
 		includeIndexes = new JCheckBox(Messages.getString("CompareDMPanel.includeIndexes")); //$NON-NLS-1$
 		includeIndexes.setName("includeIndexes"); //$NON-NLS-1$
 		includeIndexes.setSelected(false);
+
+		detectRenames = new JCheckBox(Messages.getString("CompareDMPanel.detectRenames")); //$NON-NLS-1$
+		detectRenames.setName("detectRenames"); //$NON-NLS-1$
+		detectRenames.setSelected(true);
 		
 		// Group the radio buttons.
 		ButtonGroup outputGroup = new ButtonGroup();
 		outputGroup.add(sqlButton);
 		outputGroup.add(englishButton);
 		outputGroup.add(liquibaseButton);
+		outputGroup.add(jsonButton);
 
 		startCompareAction = new StartCompareAction();
 		startCompareAction.setEnabled(false);
@@ -1147,6 +1172,14 @@ public class CompareDMPanel extends JPanel {
 		builder.append(englishButton);
 		temp = builder.append(Messages.getString("CompareDMPanel.englishDescriptions")); //$NON-NLS-1$
 		associate(temp, englishButton);
+
+		builder.appendRow(builder.getLineGapSpec());
+		builder.appendRow("pref"); //$NON-NLS-1$
+		builder.nextLine(2);
+		builder.nextColumn(2);
+		builder.append(jsonButton);
+		temp = builder.append(Messages.getString("CompareDMPanel.jsonDiffs")); //$NON-NLS-1$
+		associate(temp, jsonButton);
 		
         builder.appendRow(builder.getLineGapSpec());
         builder.appendRow("pref"); //$NON-NLS-1$
@@ -1156,6 +1189,7 @@ public class CompareDMPanel extends JPanel {
         temp = builder.append(Messages.getString("CompareDMPanel.suppressSimilarities")); //$NON-NLS-1$
         associate(temp, showNoChanges);
 		builder.append(includeIndexes);
+		builder.append(detectRenames);
         builder.nextLine();
 
 		builder.appendSeparator(Messages.getString("CompareDMPanel.status")); //$NON-NLS-1$
@@ -1249,6 +1283,7 @@ public class CompareDMPanel extends JPanel {
 			sqlButton.setEnabled(false);
 			englishButton.setEnabled(false);
 			liquibaseButton.setEnabled(false);
+			jsonButton.setEnabled(false);
 			if (sqlButton.isSelected()) {
 			    sqlTypeDropdown.setEnabled(false);
 			} else {
@@ -1257,37 +1292,17 @@ public class CompareDMPanel extends JPanel {
 
 			copySettingsToProject();
 
-			// XXX: should do most or all of this work in a worker thread
-
-			final CompareSQL sourceComp;
-			final CompareSQL targetComp;
 			final SQLObject left;
 			final SQLObject right;
+			final boolean useUUID = source.isModelWithUUID() && target.isModelWithUUID();
+			final boolean suppressSimilarities = session.getCompareDMSettings().getSuppressSimilarities();
+			final boolean compareIndices = includeIndexes.isSelected();
+			final boolean findRenames = detectRenames.isSelected();
+			final boolean refreshSource = source.physicalRadio.isSelected();
+			final boolean refreshTarget = target.physicalRadio.isSelected();
 			try {
 				left = source.getObjectToCompare();
-				if (left.getAllowedChildTypes().contains(SQLTable.class)) {
-					sourceTables = left.getChildren(SQLTable.class);
-				} else {
-					sourceTables = new ArrayList<SQLTable>();
-				}
-
 				right = target.getObjectToCompare();
-				if (right.getAllowedChildTypes().contains(SQLTable.class)) {
-					targetTables = right.getChildren(SQLTable.class);
-				} else {
-					targetTables = new ArrayList<SQLTable>();
-				}
-
-				boolean useUUID = source.isModelWithUUID() && target.isModelWithUUID();
-				sourceComp = new CompareSQL(sourceTables, targetTables, 
-				        session.getCompareDMSettings().getSuppressSimilarities(),
-						useUUID);
-                sourceComp.setCompareIndices(includeIndexes.isSelected());
-				targetComp = new CompareSQL(targetTables, sourceTables, 
-				        session.getCompareDMSettings().getSuppressSimilarities(),
-						useUUID);
-                targetComp.setCompareIndices(includeIndexes.isSelected());
-
 			} catch (SQLObjectException ex) {
 			    reenableGUIComponents();
 			    ASUtils.showExceptionDialog(session,
@@ -1305,10 +1320,23 @@ public class CompareDMPanel extends JPanel {
 			
 			compareWorker = new SPSwingWorker(session) {
 
-				private List<DiffChunk<SQLObject>> diff;
-				private List<DiffChunk<SQLObject>> diff1;
+				/**
+				 * The writers the diffs are written to as they are found. The
+				 * English output has a second writer for the diffs of the
+				 * target compared to the source.
+				 */
+				private List<DiffOutputWriter> writers;
 
 				private String message;
+
+				/**
+				 * The comparisons of the source to the target and of the
+				 * target to the source. They are created once the tables
+				 * have been read, on the worker's thread.
+				 */
+				private volatile CompareSQL sourceComp;
+
+				private volatile CompareSQL targetComp;
 				
 				/**
 			     * Checks if this engine has been cancelled by another thread.  If so,
@@ -1322,27 +1350,65 @@ public class CompareDMPanel extends JPanel {
 			        }
 			    }
 				
-				public void doStuff() throws SQLObjectException {
+				public void doStuff() throws Exception {
 	                try {
-	                    if (source.physicalRadio.isSelected()) {
+	                    message = "Reading database catalogs";
+	                    BulkCatalogReader leftReader = populateInBulk(left);
+	                    if (left.getAllowedChildTypes().contains(SQLTable.class)) {
+	                        sourceTables = left.getChildren(SQLTable.class);
+	                    } else {
+	                        sourceTables = new ArrayList<SQLTable>();
+	                    }
+	                    BulkCatalogReader rightReader = populateInBulk(right);
+	                    if (right.getAllowedChildTypes().contains(SQLTable.class)) {
+	                        targetTables = right.getChildren(SQLTable.class);
+	                    } else {
+	                        targetTables = new ArrayList<SQLTable>();
+	                    }
+	                    checkCancelled();
+	                    
+	                    CompareSQL sourceComp = new CompareSQL(sourceTables, targetTables,
+	                            suppressSimilarities, useUUID);
+	                    sourceComp.setCompareIndices(compareIndices);
+	                    sourceComp.setDetectRenames(findRenames);
+	                    sourceComp.setHasher(session.getModelHasher());
+	                    CompareSQL targetComp = new CompareSQL(targetTables, sourceTables,
+	                            suppressSimilarities, useUUID);
+	                    targetComp.setCompareIndices(compareIndices);
+	                    targetComp.setDetectRenames(findRenames);
+	                    targetComp.setHasher(session.getModelHasher());
+	                    this.sourceComp = sourceComp;
+	                    this.targetComp = targetComp;
+	                    
+	                    if (refreshSource) {
 	                    message = "Refreshing older database";
 	                    logger.debug(message);
-	                    source.getDatabase().refresh();
+	                    refreshIfStale(source.getDatabase(), leftReader);
 	                    checkCancelled();
 	                }
-	                if (target.physicalRadio.isSelected()) {
+	                if (refreshTarget) {
 	                    message = "Refreshing newer database";
                         logger.debug(message);
-	                    target.getDatabase().refresh();
+	                    refreshIfStale(target.getDatabase(), rightReader);
 	                    checkCancelled();
 	                }
-	                setJobSize(sourceComp.getJobSize() + targetComp.getJobSize());
+	                CompareDMFormatter dmFormat = new CompareDMFormatter(session, parentDialog, session.getCompareDMSettings());
+	                writers = dmFormat.createWriters(left, right);
+	                if (writers.size() > 1) {
+	                    setJobSize(sourceComp.getJobSize() + targetComp.getJobSize());
+	                } else {
+	                    setJobSize(sourceComp.getJobSize());
+	                }
 	                logger.debug("Generating TableDiffs for source");
-	                diff = sourceComp.generateTableDiffs(session);
-	                checkCancelled();
-	                logger.debug("Generating TableDiffs for target");
-	                diff1 = targetComp.generateTableDiffs(session);
+	                sourceComp.generateTableDiffs(session, writers.get(0));
+	                writers.get(0).finish();
 	                checkCancelled();
+	                if (writers.size() > 1) {
+	                    logger.debug("Generating TableDiffs for target");
+	                    targetComp.generateTableDiffs(session, writers.get(1));
+	                    writers.get(1).finish();
+	                    checkCancelled();
+	                }
 					message = "Finished";
 					logger.debug("Finished Compare");
 	                } catch (CancellationException e) {
@@ -1361,25 +1427,17 @@ public class CompareDMPanel extends JPanel {
                             logger.error("Error in doStuff()", exc); //$NON-NLS-1$
                             ASUtils.showExceptionDialog(session,
                                     Messages.getString("CompareDMPanel.databaseComparisonFailed"), exc); //$NON-NLS-1$
+                            CompareDMFormatter.disposeWriters(writers);
                             reenableGUIComponents();
                             return;
                         }
                         logger.debug("cleanup starts"); //$NON-NLS-1$
                         CompareDMFormatter dmFormat = new CompareDMFormatter(session, parentDialog, session.getCompareDMSettings());                   
                         checkCancelled();
-                        switch (session.getCompareDMSettings().getOutputFormat()) {
-                        case SQL:
-                        case LIQUIBASE:
-                            dmFormat.formatForSQLOutput(diff, diff1, left, right);
-                            break;
-                        case ENGLISH:
-                            dmFormat.formatForEnglishOutput(diff, diff1, left, right);
-                            break;
-                        default:
-                            throw new IllegalStateException("Don't know what type of output to make");                        
-                        }
+                        dmFormat.showOutput(writers, left, right);
                         logger.debug("cleanup finished"); //$NON-NLS-1$
                     } catch (CancellationException e) {
+                        CompareDMFormatter.disposeWriters(writers);
                         setFinished(true);
                     } finally {
                         reenableGUIComponents();
@@ -1388,7 +1446,11 @@ public class CompareDMPanel extends JPanel {
 
 				@Override
                 protected String getMessageImpl() {
-                    if (sourceComp.hasStarted() && !sourceComp.isFinished()) {
+                    CompareSQL sourceComp = this.sourceComp;
+                    CompareSQL targetComp = this.targetComp;
+                    if (sourceComp == null || targetComp == null) {
+                        return message;
+                    } else if (sourceComp.hasStarted() && !sourceComp.isFinished()) {
                         return sourceComp.getMessage();
                     } else if (targetComp.hasStarted() && !targetComp.isFinished()) {
                         return targetComp.getMessage();
@@ -1399,6 +1461,9 @@ public class CompareDMPanel extends JPanel {
 
                 @Override
                 protected int getProgressImpl() {
+                    CompareSQL sourceComp = this.sourceComp;
+                    CompareSQL targetComp = this.targetComp;
+                    if (sourceComp == null || targetComp == null) return 0;
                     return sourceComp.getProgress() + targetComp.getProgress();
                 }
 
@@ -1410,10 +1475,96 @@ public class CompareDMPanel extends JPanel {
 			new Thread(compareWorker).start();
 		}
 		
+		/**
+		 * Reads the tables of the given object with the set-based catalog
+		 * queries of its database, if its data source type has any, so the
+		 * comparison does not have to read each table separately. Schemas
+		 * that were read before are taken from the catalog snapshot cache.
+		 * This is called on the compare worker's thread; the reader builds
+		 * the tables on the foreground thread.
+		 * 
+		 * @return The reader used, or null if the object is not in a source
+		 *         database.
+		 */
+		private BulkCatalogReader populateInBulk(SQLObject o) throws SQLObjectException {
+		    SQLDatabase db = SQLPowerUtils.getAncestor(o, SQLDatabase.class);
+		    if (db != null && db != session.getTargetDatabase() && db.getDataSource() != null) {
+		        BulkCatalogReader reader = new BulkCatalogReader(db, CatalogSnapshotCache.getDefault());
+		        reader.populate(o);
+		        return reader;
+		    }
+		    return null;
+		}
+
+		/**
+		 * Brings the database up to date before it is compared. If
+		 * everything being compared in it was just read in bulk, only the
+		 * schemas whose snapshots turn out to be out of date are updated;
+		 * otherwise the changed schemas are found and updated incrementally
+		 * if possible, and the whole database is refreshed if not. This is
+		 * called on the compare worker's thread, which finds the changes; they
+		 * are applied on the Event Dispatch Thread.
+		 */
+		private void refreshIfStale(SQLDatabase db, BulkCatalogReader reader) throws SQLObjectException {
+		    CatalogSnapshotCache cache = CatalogSnapshotCache.getDefault();
+		    if (reader != null && reader.isComplete()) {
+		        Map<SQLObject, SchemaMetadata> stale = reader.validate();
+		        if (!stale.containsValue(null)) {
+		            logger.debug("Skipping refresh of " + db.getName() + ", its catalog was just read");
+		            applyInForeground(new IncrementalCatalogRefresher(db, cache), stale);
+		            return;
+		        }
+		    }
+		    IncrementalCatalogRefresher refresher = new IncrementalCatalogRefresher(db, cache);
+		    Map<SQLObject, SchemaMetadata> changes = refresher.findChanges();
+		    if (refresher.isComplete()) {
+		        applyInForeground(refresher, changes);
+		    } else {
+		        db.refresh();
+		    }
+		}
+
+		/**
+		 * Applies the changes a refresher found to the database's SQLObjects
+		 * on the Event Dispatch Thread and waits for them to be applied.
+		 */
+		private void applyInForeground(final IncrementalCatalogRefresher refresher,
+		        final Map<SQLObject, SchemaMetadata> changes) throws SQLObjectException {
+		    if (changes.isEmpty()) return;
+		    final SQLObjectException[] error = new SQLObjectException[1];
+		    Runnable apply = new Runnable() {
+		        public void run() {
+		            try {
+		                refresher.apply(changes);
+		            } catch (SQLObjectException e) {
+		                error[0] = e;
+		            }
+		        }
+		    };
+		    if (session.isForegroundThread()) {
+		        apply.run();
+		    } else {
+		        try {
+		            SwingUtilities.invokeAndWait(apply);
+		        } catch (InterruptedException e) {
+		            throw new CancellationException("Interrupted while refreshing the database");
+		        } catch (InvocationTargetException e) {
+		            if (e.getCause() instanceof RuntimeException) {
+		                throw (RuntimeException) e.getCause();
+		            }
+		            throw new RuntimeException(e.getCause());
+		        }
+		    }
+		    if (error[0] != null) {
+		        throw error[0];
+		    }
+		}
+		
 		private void reenableGUIComponents() {
 		    sqlButton.setEnabled(true);
             englishButton.setEnabled(true);
 			liquibaseButton.setEnabled(true);
+			jsonButton.setEnabled(true);
             if (sqlButton.isSelected()) {
                 sqlTypeDropdown.setEnabled(true);
             } else {
@@ -1438,6 +1589,8 @@ public class CompareDMPanel extends JPanel {
 		} else if (liquibaseButton.isSelected()) {
 			s.setOutputFormat(CompareDMSettings.OutputFormat.LIQUIBASE);
 			s.setLiquibaseSettings(lbOptions.getLiquibaseSettings());
+		} else if (jsonButton.isSelected()) {
+			s.setOutputFormat(CompareDMSettings.OutputFormat.JSON);
 		}
 		s.setSuppressSimilarities(showNoChanges.isSelected());
         
@@ -1506,6 +1659,9 @@ public class CompareDMPanel extends JPanel {
 		if ( s.getOutputFormat() == CompareDMSettings.OutputFormat.LIQUIBASE)
 			liquibaseButton.doClick();
 
+		if ( s.getOutputFormat() == CompareDMSettings.OutputFormat.JSON)
+			jsonButton.doClick();
+
         showNoChanges.setSelected(s.getSuppressSimilarities());
 
         sqlTypeDropdown.setSelectedItem(s.getDdlGenerator());
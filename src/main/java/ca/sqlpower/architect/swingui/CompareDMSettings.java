@@ -25,7 +25,7 @@ import ca.sqlpower.architect.swingui.CompareDMPanel.SourceOrTargetStuff;
 public class CompareDMSettings {
 	
 	public enum DatastoreType { PROJECT, DATABASE, FILE; }
-	public enum OutputFormat { SQL, ENGLISH, LIQUIBASE; }
+	public enum OutputFormat { SQL, ENGLISH, LIQUIBASE, JSON; }
 
     /**
      * The DDL Generator class the user has chosen.  This option
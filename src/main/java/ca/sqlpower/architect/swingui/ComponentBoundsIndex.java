@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the play pen components whose bounds intersect a region of the play
+ * pen without looking at every component. The play pen is divided into square
+ * cells, and each component is listed in every cell its bounds touch, so a
+ * query only looks at the components in the cells the region touches.
+ * <p>
+ * The bounds of a component are only read when it is updated, so the owner of
+ * the index has to update a component whenever it moves or is resized. The
+ * bounds are kept one unit wider and taller than the component, because a
+ * horizontal or vertical relationship has no width or height but is still
+ * painted.
+ */
+public class ComponentBoundsIndex {
+
+    /**
+     * The width and height of a cell, in play pen coordinates. A cell holds a
+     * few tables of an average diagram.
+     */
+    private static final int CELL_SIZE = 256;
+
+    /**
+     * The components in each cell that holds any, by the key of the cell.
+     */
+    private final Map<Long, List<PlayPenComponent>> cells = new HashMap<Long, List<PlayPenComponent>>();
+
+    /**
+     * The bounds each component had when it was last updated.
+     */
+    private final Map<PlayPenComponent, Rectangle> bounds = new IdentityHashMap<PlayPenComponent, Rectangle>();
+
+    /**
+     * Adds the given component to the index, or moves it to its current
+     * bounds if it is already in the index.
+     *
+     * @return The bounds the component had in the index before, or null if it
+     *         was not in the index.
+     */
+    public Rectangle update(PlayPenComponent c) {
+        Rectangle r = c.getBounds();
+        r.width = Math.max(r.width, 0) + 1;
+        r.height = Math.max(r.height, 0) + 1;
+        Rectangle old = bounds.put(c, r);
+        if (old != null) {
+            if (cell(old.x) == cell(r.x) && cell(old.y) == cell(r.y)
+                    && cell(old.x + old.width) == cell(r.x + r.width)
+                    && cell(old.y + old.height) == cell(r.y + r.height)) {
+                return old;
+            }
+            removeFromCells(c, old);
+        }
+        for (int x = cell(r.x); x <= cell(r.x + r.width); x++) {
+            for (int y = cell(r.y); y <= cell(r.y + r.height); y++) {
+                Long key = key(x, y);
+                List<PlayPenComponent> cell = cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<PlayPenComponent>(4);
+                    cells.put(key, cell);
+                }
+                cell.add(c);
+            }
+        }
+        return old;
+    }
+
+    /**
+     * Removes the given component from the index. Does nothing if it is not
+     * in the index.
+     */
+    public void remove(PlayPenComponent c) {
+        Rectangle old = bounds.remove(c);
+        if (old != null) {
+            removeFromCells(c, old);
+        }
+    }
+
+    private void removeFromCells(PlayPenComponent c, Rectangle r) {
+        for (int x = cell(r.x); x <= cell(r.x + r.width); x++) {
+            for (int y = cell(r.y); y <= cell(r.y + r.height); y++) {
+                Long key = key(x, y);
+                List<PlayPenComponent> cell = cells.get(key);
+                if (cell == null) continue;
+                for (int i = cell.size() - 1; i >= 0; i--) {
+                    if (cell.get(i) == c) {
+                        cell.remove(i);
+                        break;
+                    }
+                }
+                if (cell.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the components whose bounds intersect the given region, in no
+     * particular order.
+     */
+    public Set<PlayPenComponent> getComponentsIntersecting(Rectangle region) {
+        Set<PlayPenComponent> found = Collections.newSetFromMap(new IdentityHashMap<PlayPenComponent, Boolean>());
+        long cellCount = ((long) cell(region.x + region.width) - cell(region.x) + 1)
+            * ((long) cell(region.y + region.height) - cell(region.y) + 1);
+        if (cellCount > cells.size()) {
+            // a region bigger than the diagram, such as the whole play pen
+            // zoomed out
+            for (Map.Entry<PlayPenComponent, Rectangle> entry : bounds.entrySet()) {
+                if (entry.getValue().intersects(region)) {
+                    found.add(entry.getKey());
+                }
+            }
+            return found;
+        }
+        for (int x = cell(region.x); x <= cell(region.x + region.width); x++) {
+            for (int y = cell(region.y); y <= cell(region.y + region.height); y++) {
+                List<PlayPenComponent> cell = cells.get(key(x, y));
+                if (cell == null) continue;
+                for (PlayPenComponent c : cell) {
+                    if (!found.contains(c) && bounds.get(c).intersects(region)) {
+                        found.add(c);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the number of components in the index.
+     */
+    public int size() {
+        return bounds.size();
+    }
+
+    /**
+     * Returns the number of the row or column of cells the given coordinate
+     * is in.
+     */
+    private static int cell(int coordinate) {
+        return coordinate >= 0 ? coordinate / CELL_SIZE : -((-coordinate - 1) / CELL_SIZE) - 1;
+    }
+
+    private static Long key(int cellX, int cellY) {
+        return Long.valueOf(((long) cellX << 32) | (cellY & 0xffffffffL));
+    }
+}
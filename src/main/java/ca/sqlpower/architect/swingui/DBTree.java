@@ -55,11 +55,18 @@ import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.JTree;
 import javax.swing.KeyStroke;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.TreeModel;
 import javax.swing.tree.TreePath;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.architect.DeferredLoadable;
+import ca.sqlpower.architect.catalog.BulkCatalogReader;
+import ca.sqlpower.architect.catalog.CatalogSnapshotCache;
+import ca.sqlpower.architect.catalog.IncrementalCatalogRefresher;
+import ca.sqlpower.architect.catalog.SchemaMetadata;
 import ca.sqlpower.architect.swingui.action.DataSourcePropertiesAction;
 import ca.sqlpower.architect.swingui.action.DatabaseConnectionManagerAction;
 import ca.sqlpower.architect.swingui.action.NewDataSourceAction;
@@ -92,6 +99,7 @@ import ca.sqlpower.swingui.MultiDragTreeUI;
 import ca.sqlpower.swingui.SPSUtils;
 import ca.sqlpower.swingui.SPSwingWorker;
 import ca.sqlpower.swingui.dbtree.SQLObjectSelection;
+import ca.sqlpower.util.SQLPowerUtils;
 
 public class DBTree extends JTree implements DragSourceListener {
 	private static Logger logger = Logger.getLogger(DBTree.class);
@@ -169,6 +177,24 @@ public class DBTree extends JTree implements DragSourceListener {
 		collapseAllAction = new JTreeCollapseAllAction(this, Messages.getString("DBTree.collapseAllActionName"));
 		expandAllAction = new JTreeExpandAllAction(this, Messages.getString("DBTree.expandAllActionName"));
 		addMouseListener(new PopupListener());
+		addTreeWillExpandListener(new TreeWillExpandListener() {
+		    public void treeWillCollapse(TreeExpansionEvent event) {
+		    }
+		    public void treeWillExpand(TreeExpansionEvent event) {
+		        Object node = event.getPath().getLastPathComponent();
+		        if (node instanceof DeferredLoadable) {
+		            // read the part of the project file the node's children were left in
+		            try {
+		                ((DeferredLoadable) node).loadNow();
+		            } catch (SQLObjectException e) {
+		                logger.error("Could not read " + ((SQLObject) node).getName() + " from the project file", e); //$NON-NLS-1$
+		            }
+		        }
+		        if (node instanceof SQLSchema || node instanceof SQLCatalog) {
+		            populateInBulkInBackground((SQLObject) node);
+		        }
+		    }
+		});
         treeCellRenderer = new DBTreeCellRenderer();
         getTreeCellRenderer().addIconFilter(new ProfiledTableIconFilter());
         setCellRenderer(getTreeCellRenderer());
@@ -759,12 +785,135 @@ public class DBTree extends JTree implements DragSourceListener {
         }
     }
 
+	/**
+	 * Populates the tables under the given object with the set-based catalog
+	 * queries of its database, taking the schemas that were read before from
+	 * the catalog snapshot cache. Nothing is done for objects in the play pen
+	 * database or in databases whose type has no catalog queries, which are
+	 * populated the usual way when they are asked for their children.
+	 * <p>
+	 * The snapshots used have to be validated afterwards with
+	 * {@link #validateCatalogSnapshots(BulkCatalogReader)}.
+	 * <p>
+	 * This reads the database on the calling thread, so it must not be
+	 * called on the Event Dispatch Thread. See
+	 * {@link #populateInBulkInBackground(SQLObject)}.
+	 * 
+	 * @return The reader used, or null if it could not be used.
+	 */
+	public BulkCatalogReader populateInBulk(SQLObject o) {
+	    SQLDatabase db = SQLPowerUtils.getAncestor(o, SQLDatabase.class);
+	    if (db == null || db.isPlayPenDatabase() || db.getDataSource() == null) return null;
+	    BulkCatalogReader reader = new BulkCatalogReader(db, CatalogSnapshotCache.getDefault());
+	    if (!reader.isSupported()) return null;
+	    try {
+	        reader.populate(o);
+	    } catch (SQLObjectException e) {
+	        // The tables will be populated the usual way instead
+	        logger.warn("Could not populate " + o.getName() + " in bulk", e); //$NON-NLS-1$
+	    }
+	    return reader;
+	}
+
+	/**
+	 * Populates the tables under the given object in bulk and validates the
+	 * snapshots used on a worker thread. Tables that are asked for before
+	 * the worker finishes are populated the usual way, and the worker leaves
+	 * them alone.
+	 */
+	public void populateInBulkInBackground(final SQLObject o) {
+	    SQLDatabase db = SQLPowerUtils.getAncestor(o, SQLDatabase.class);
+	    if (db == null || db.isPlayPenDatabase() || BulkCatalogReader.getCatalogQueries(db.getDataSource()) == null) {
+	        return;
+	    }
+	    session.runInBackground(new SPSwingWorker(session) {
+	        @Override
+	        public void doStuff() throws Exception {
+	            validateCatalogSnapshots(populateInBulk(o));
+	        }
+	        
+	        @Override
+	        public void cleanup() throws Exception {
+	            // populateInBulk logs its own failures
+	        }
+	    }, "Read catalog: " + o.getName()); //$NON-NLS-1$
+	}
+
+	/**
+	 * Checks the catalog snapshots the given reader populated part of its
+	 * database from on a background thread, and refreshes the database if
+	 * any of them are out of date. Does nothing if the reader is null or
+	 * did not use any snapshots.
+	 */
+	public void validateCatalogSnapshots(BulkCatalogReader reader) {
+	    if (reader == null || !reader.hasUnvalidated()) return;
+	    session.runInBackground(new ValidateCatalogWorker(reader),
+	            "Validate catalog: " + reader.getDatabase().getName()); //$NON-NLS-1$
+	}
+
+	/**
+	 * Checks the catalog snapshots a reader populated part of a database
+	 * from and brings the schemas that are out of date up to date. The
+	 * snapshots are checked on the worker thread. If the changed schemas
+	 * could be read in bulk they are updated incrementally on the Event
+	 * Dispatch Thread, otherwise the whole database is refreshed on the
+	 * worker thread and the tree is told afterwards, as the refresh action
+	 * does.
+	 */
+	private class ValidateCatalogWorker extends SPSwingWorker {
+	    
+	    private final BulkCatalogReader reader;
+	    
+	    private final SQLDatabase db;
+	    
+	    private Map<SQLObject, SchemaMetadata> stale;
+	    
+	    /**
+	     * True if the database was refreshed completely, off the Event
+	     * Dispatch Thread.
+	     */
+	    private boolean fullRefresh;
+	    
+	    ValidateCatalogWorker(BulkCatalogReader reader) {
+	        super(session);
+	        this.reader = reader;
+	        this.db = reader.getDatabase();
+	    }
+	    
+	    @Override
+	    public void doStuff() throws Exception {
+	        stale = reader.validate();
+	        if (stale != null && stale.containsValue(null)) {
+	            logger.debug("Catalog snapshots of " + db.getName() + " are out of date, refreshing"); //$NON-NLS-1$
+	            db.refresh();
+	            fullRefresh = true;
+	        }
+	    }
+	    
+	    @Override
+	    public void cleanup() throws Exception {
+	        if (getDoStuffException() != null) {
+	            logger.warn("Could not validate the catalog snapshots of " + db.getName(), //$NON-NLS-1$
+	                    getDoStuffException());
+	        }
+	        if (fullRefresh) {
+	            // the refresh's events were not on the Event Dispatch Thread,
+	            // so the tree model ignored them
+	            ((DBTreeModel) getModel()).refreshTreeStructure();
+	        } else if (stale != null && !stale.isEmpty()) {
+	            new IncrementalCatalogRefresher(db, reader.getCache()).apply(stale);
+	        }
+	    }
+	}
+
 	/**
 	 * A Swing Worker that descends a tree of SQLObjects, stopping when a
 	 * SQLColumn is encountered. This is useful in making the application
 	 * more responsive: As soon as a source database is added to the tree,
 	 * this worker will start to connect to it and exercise its JDBC driver.
 	 * Then once the user goes to expand the tree, the response is instant!
+	 * If the database's type has catalog queries, its schemas are read in
+	 * bulk (or from the catalog snapshot cache) first.
 	 */
 	private class PokeDBWorker extends SPSwingWorker {
 	    
@@ -796,7 +945,9 @@ public class DBTree extends JTree implements DragSourceListener {
          */
 		@Override
 		public void doStuff() throws Exception {
+		    BulkCatalogReader reader = populateInBulk(root);
 		    pokeDatabase(root);
+		    validateCatalogSnapshots(reader);
 		    logger.debug("successfully poked database " + root.getName()); //$NON-NLS-1$
 		}
 		
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.swingui;
+
+import java.awt.BorderLayout;
+import java.awt.Dialog;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+import javax.swing.AbstractAction;
+import javax.swing.Action;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.filechooser.FileFilter;
+
+import ca.sqlpower.architect.diff.output.IndexedTextFile;
+import ca.sqlpower.swingui.SPSUtils;
+
+import com.jgoodies.forms.builder.ButtonBarBuilder;
+
+/**
+ * Shows a compare output file, such as a script too long to show in a
+ * {@link SQLScriptDialog} or the JSON form of a comparison, a page at a time
+ * and lets the user copy or save it. The output file is disposed when the
+ * dialog is closed.
+ */
+public class DiffOutputDialog extends JDialog {
+
+    private final PagedTextList outputList;
+
+    /**
+     * @param filter
+     *            The file filter to offer when the output is saved, or null
+     *            for none.
+     * @param extension
+     *            The extension to give the saved file.
+     */
+    public DiffOutputDialog(Dialog owner, String title, String header, IndexedTextFile output,
+            final FileFilter filter, final String extension) {
+        super(owner, title, false);
+        outputList = new PagedTextList(output, CompareDMFormatter.DIFF_STYLES);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                outputList.dispose();
+            }
+        });
+
+        Action copy = new AbstractAction(Messages.getString("CompareDMFrame.copy")) { //$NON-NLS-1$
+            public void actionPerformed(ActionEvent e) {
+                outputList.copyToClipboard();
+            }
+        };
+        Action save = new AbstractAction(Messages.getString("CompareDMFrame.save")) { //$NON-NLS-1$
+            public void actionPerformed(ActionEvent e) {
+                outputList.saveAs(DiffOutputDialog.this, filter, extension);
+            }
+        };
+        Action close = new AbstractAction(Messages.getString("CompareDMFrame.close")) { //$NON-NLS-1$
+            public void actionPerformed(ActionEvent e) {
+                dispose();
+            }
+        };
+        SPSUtils.makeJDialogCancellable(this, close);
+
+        ButtonBarBuilder buttons = new ButtonBarBuilder();
+        buttons.addGridded(new JButton(copy));
+        buttons.addRelatedGap();
+        buttons.addGridded(new JButton(save));
+        buttons.addGlue();
+        buttons.addGridded(new JButton(close));
+
+        JScrollPane sp = new JScrollPane(outputList);
+        sp.setPreferredSize(new Dimension(700, 500));
+
+        JPanel panel = new JPanel(new BorderLayout(6, 6));
+        panel.setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12));
+        panel.add(new JLabel(header), BorderLayout.NORTH);
+        panel.add(sp, BorderLayout.CENTER);
+        panel.add(buttons.getPanel(), BorderLayout.SOUTH);
+        getContentPane().add(panel);
+
+        pack();
+        setLocationRelativeTo(owner);
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.swingui;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.FontMetrics;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.AbstractListModel;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JFileChooser;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.filechooser.FileFilter;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.StyleConstants;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.diff.output.IndexedTextFile;
+import ca.sqlpower.diff.DiffType;
+
+/**
+ * Shows the lines of an {@link IndexedTextFile} in a list, reading them from
+ * the file a page at a time as they are scrolled into view. Only the visible
+ * rows are painted and only one page of lines is kept in memory, so the
+ * output of a comparison with hundreds of thousands of diffs can be shown
+ * as quickly as a small one. Lines are drawn in the colour of the style of
+ * their diff type.
+ */
+public class PagedTextList extends JList {
+
+    private static final Logger logger = Logger.getLogger(PagedTextList.class);
+
+    /**
+     * The number of lines read from the file at a time.
+     */
+    private static final int PAGE_SIZE = 500;
+
+    private final IndexedTextFile file;
+
+    private final Map<DiffType, AttributeSet> styles;
+
+    public PagedTextList(IndexedTextFile file, Map<DiffType, AttributeSet> styles) {
+        this.file = file;
+        this.styles = styles;
+        setModel(new PagedModel());
+        setCellRenderer(new DiffTypeRenderer());
+
+        // Fixing the cell size keeps the list from rendering every line to
+        // find its preferred size.
+        FontMetrics fm = getFontMetrics(getFont());
+        setFixedCellHeight(fm.getHeight());
+        setFixedCellWidth(Math.max(100, fm.charWidth('m') * (file.getMaxLineLength() + 4)));
+    }
+
+    public IndexedTextFile getFile() {
+        return file;
+    }
+
+    /**
+     * Closes the file this list shows and deletes it if it is a temporary
+     * file. Call this once the list is no longer shown.
+     */
+    public void dispose() {
+        file.dispose();
+    }
+
+    /**
+     * Returns the text of the given lines, each followed by a newline.
+     */
+    public String getText(int first, int count) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = first; i < first + count; i += PAGE_SIZE) {
+            for (String line : file.getLines(i, Math.min(PAGE_SIZE, first + count - i))) {
+                text.append(line).append("\n");
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Copies the selected lines to the clipboard, or all of the lines if none
+     * are selected.
+     */
+    public void copyToClipboard() {
+        try {
+            String text;
+            if (isSelectionEmpty()) {
+                text = getText(0, file.getLineCount());
+            } else {
+                int first = getMinSelectionIndex();
+                text = getText(first, getMaxSelectionIndex() - first + 1);
+            }
+            StringSelection selection = new StringSelection(text);
+            Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection, selection);
+        } catch (IOException e) {
+            logger.error("Unable to get the text for copying", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Asks the user where to save the file and copies it there.
+     *
+     * @param filter
+     *            The file filter to offer in the file chooser, or null for
+     *            none.
+     * @param extension
+     *            The extension, including the dot, to add to the name the
+     *            user chooses if it does not already end with it.
+     */
+    public void saveAs(Component owner, FileFilter filter, String extension) {
+        JFileChooser chooser = new JFileChooser();
+        if (filter != null) {
+            chooser.addChoosableFileFilter(filter);
+        }
+        File saveFile;
+        while (true) {
+            if (chooser.showSaveDialog(owner) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            saveFile = chooser.getSelectedFile();
+            if (!saveFile.getName().endsWith(extension)) {
+                saveFile = new File(saveFile.getPath() + extension);
+            }
+            if (!saveFile.exists() || JOptionPane.showConfirmDialog(owner,
+                    Messages.getString("PagedTextList.fileExists", saveFile.getPath()), //$NON-NLS-1$
+                    Messages.getString("PagedTextList.fileExistsTitle"), //$NON-NLS-1$
+                    JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+                break;
+            }
+        }
+        try {
+            file.flush();
+            FileUtils.copyFile(file.getFile(), saveFile);
+        } catch (IOException e) {
+            ASUtils.showExceptionDialogNoReport(owner,
+                    Messages.getString("PagedTextList.couldNotSave", saveFile.getPath()), e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * A list model that reads the lines of the file a page at a time.
+     */
+    private class PagedModel extends AbstractListModel {
+
+        private int pageStart = -1;
+
+        private List<String> page = Collections.emptyList();
+
+        public int getSize() {
+            return file.getLineCount();
+        }
+
+        public Object getElementAt(int index) {
+            if (index < pageStart || index >= pageStart + page.size()) {
+                pageStart = index - index % PAGE_SIZE;
+                try {
+                    page = file.getLines(pageStart, PAGE_SIZE);
+                } catch (IOException e) {
+                    logger.error("Could not read lines of " + file.getFile(), e); //$NON-NLS-1$
+                    page = Collections.emptyList();
+                    return ""; //$NON-NLS-1$
+                }
+            }
+            return page.get(index - pageStart);
+        }
+    }
+
+    private class DiffTypeRenderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList list, Object value, int index,
+                boolean isSelected, boolean cellHasFocus) {
+            String text = ((String) value).replace("\t", "    "); //$NON-NLS-1$ //$NON-NLS-2$
+            if (text.length() == 0) {
+                // an empty label would have no height
+                text = " "; //$NON-NLS-1$
+            }
+            super.getListCellRendererComponent(list, text, index, isSelected, false);
+            DiffType type = file.getLineType(index);
+            if (!isSelected) {
+                AttributeSet style = type == null ? null : styles.get(type);
+                setForeground(style == null ? Color.black : StyleConstants.getForeground(style));
+            }
+            return this;
+        }
+    }
+}
@@ -59,6 +59,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -92,6 +93,7 @@ import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
 import javax.swing.event.MouseInputAdapter;
 import javax.swing.tree.TreePath;
+import javax.swing.undo.UndoableEdit;
 
 import org.apache.log4j.Logger;
 
@@ -124,6 +126,7 @@ import ca.sqlpower.architect.swingui.olap.PaneSection;
 import ca.sqlpower.architect.swingui.olap.UsageComponent;
 import ca.sqlpower.architect.swingui.olap.VirtualCubePane;
 import ca.sqlpower.architect.swingui.olap.DimensionPane.HierarchySection;
+import ca.sqlpower.architect.undo.ArchitectUndoManager;
 import ca.sqlpower.object.ObjectDependentException;
 import ca.sqlpower.object.SPChildEvent;
 import ca.sqlpower.object.SPListener;
@@ -383,9 +386,13 @@ public class PlayPen extends JPanel
 	    logger.debug("start of paintComponent, width=" + this.getWidth() +
 	            ",height=" + this.getHeight()); //$NON-NLS-1$ //$NON-NLS-2$
 	    Graphics2D g2 = (Graphics2D) g;
-	    g2.setColor(this.getBackground());
-	    g2.fillRect(0, 0, this.getWidth(), this.getHeight());
-	    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasSetting);
+	    Rectangle screenClip = g2.getClipBounds();
+	    if (tileCache != null && screenClip != null && !isPaintingForPrint()
+	            && (g2.getTransform().getType() & ~AffineTransform.TYPE_TRANSLATION) == 0) {
+	        tileCache.paint(g2, screenClip);
+	    } else {
+	        paintContents(g2);
+	    }
 
 	    if (isDebugEnabled()) {
 	        Rectangle clip = g2.getClipBounds();
@@ -401,18 +408,69 @@ public class PlayPen extends JPanel
 	        }
 	    }
 
+	    if (rubberBand != null && !rubberBand.isEmpty()) {
+	        if (logger.isDebugEnabled()) logger.debug("painting rubber band "+rubberBand); //$NON-NLS-1$
+	        AffineTransform backup = g2.getTransform();
+	        g2.scale(zoom, zoom);
+	        g2.setColor(rubberBandColor);
+	        Composite backupComp = g2.getComposite();
+	        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.3f));
+	        g2.fillRect(rubberBand.x, rubberBand.y, rubberBand.width-1, rubberBand.height-1);
+	        g2.setComposite(backupComp);
+	        g2.drawRect(rubberBand.x, rubberBand.y, rubberBand.width-1, rubberBand.height-1);
+	        g2.setTransform(backup);
+	    }
+
+	    logger.debug("end of paintComponent, width=" + this.getWidth() +
+	            ",height=" + this.getHeight()); //$NON-NLS-1$ //$NON-NLS-2$
+
+	}
+
+	/**
+	 * Paints the background and the components in the clipping region of the
+	 * given graphics, which is in screen coordinates. This is everything
+	 * {@link #paintComponent(Graphics)} paints except the rubber band, which
+	 * changes too often to be kept in the tile cache.
+	 */
+	void paintContents(Graphics2D g2) {
+	    Rectangle screenClip = g2.getClipBounds();
+	    g2.setColor(this.getBackground());
+	    if (screenClip == null) {
+	        g2.fillRect(0, 0, this.getWidth(), this.getHeight());
+	    } else {
+	        g2.fillRect(screenClip.x, screenClip.y, screenClip.width, screenClip.height);
+	    }
+	    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasSetting);
+
 	    Rectangle bounds = new Rectangle();
 	    AffineTransform backup = g2.getTransform();
 	    g2.scale(zoom, zoom);
 	    AffineTransform zoomedOrigin = g2.getTransform();
 
+	    // Only the components in the clipping region are looked at. The
+	    // badges are not in the content pane's index, and there are few.
+	    Rectangle clip = g2.getClipBounds();
+	    List<PlayPenComponent> visible;
+	    if (clip == null) {
+	        visible = new ArrayList<PlayPenComponent>(contentPane.getChildren());
+	    } else {
+	        clip.grow(1, 1);
+	        visible = contentPane.getComponentsIntersecting(clip);
+	    }
 	    List<PlayPenComponent> relationshipsLast = new ArrayList<PlayPenComponent>();
-	    List<Relationship> relations = contentPane.getChildren(Relationship.class);
-	    List<UsageComponent> usages = contentPane.getChildren(UsageComponent.class);
-	    relationshipsLast.addAll(contentPane.getAllChildren());
-	    relationshipsLast.removeAll(relations);
+	    List<PlayPenComponent> relations = new ArrayList<PlayPenComponent>();
+	    List<PlayPenComponent> usages = new ArrayList<PlayPenComponent>();
+	    for (PlayPenComponent c : visible) {
+	        if (c instanceof Relationship) {
+	            relations.add(c);
+	        } else if (c instanceof UsageComponent) {
+	            usages.add(c);
+	        } else {
+	            relationshipsLast.add(c);
+	        }
+	    }
+	    relationshipsLast.addAll(contentPane.getModelBadges());
 	    relationshipsLast.addAll(relations);
-	    relationshipsLast.removeAll(usages);	  
 	    relationshipsLast.addAll(usages);
 	    
 	    // counting down so visual z-order matches click detection z-order
@@ -434,21 +492,55 @@ public class PlayPen extends JPanel
 	        }
 	    }
 
-	    if (rubberBand != null && !rubberBand.isEmpty()) {
-	        if (logger.isDebugEnabled()) logger.debug("painting rubber band "+rubberBand); //$NON-NLS-1$
-	        g2.setColor(rubberBandColor);
-	        Composite backupComp = g2.getComposite();
-	        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.3f));
-	        g2.fillRect(rubberBand.x, rubberBand.y, rubberBand.width-1, rubberBand.height-1);
-	        g2.setComposite(backupComp);
-	        g2.drawRect(rubberBand.x, rubberBand.y, rubberBand.width-1, rubberBand.height-1);
-	    }
-
 	    g2.setTransform(backup);
+	}
 
-	    logger.debug("end of paintComponent, width=" + this.getWidth() +
-	            ",height=" + this.getHeight()); //$NON-NLS-1$ //$NON-NLS-2$
+	/**
+	 * Throws away the cached images of the given region, in screen
+	 * coordinates, before asking Swing to repaint it. Every change to how
+	 * the play pen looks comes through here, so the tile cache never shows
+	 * anything out of date. Repainting the whole play pen throws away every
+	 * cached image, including those outside its current size.
+	 * <p>
+	 * Repaints may be asked for on any thread, but the tile cache is only
+	 * used on the Event Dispatch Thread, so a repaint asked for on another
+	 * thread is passed on to it.
+	 */
+	@Override
+	public void repaint(final long tm, final int x, final int y, final int width, final int height) {
+	    if (tileCache != null && !SwingUtilities.isEventDispatchThread()) {
+	        SwingUtilities.invokeLater(new Runnable() {
+	            public void run() {
+	                repaint(tm, x, y, width, height);
+	            }
+	        });
+	        return;
+	    }
+	    if (tileCache != null) {
+	        if (x <= 0 && y <= 0 && x + width >= getWidth() && y + height >= getHeight()) {
+	            tileCache.invalidateAll();
+	        } else {
+	            tileCache.invalidate(new Rectangle(x, y, width, height));
+	        }
+	    }
+	    super.repaint(tm, x, y, width, height);
+	}
 
+	/**
+	 * Asks Swing to repaint the given region, in screen coordinates, without
+	 * throwing away its cached images. This is for things painted over the
+	 * components, like the rubber band.
+	 */
+	private void repaintOverlay(Rectangle region) {
+	    super.repaint(0, region.x, region.y, region.width, region.height);
+	}
+
+	/**
+	 * Returns the cache of painted tiles, or null if this play pen paints
+	 * its components every time.
+	 */
+	PlayPenTileCache getTileCache() {
+	    return tileCache;
 	}
 
 	/**
@@ -555,6 +647,41 @@ public class PlayPen extends JPanel
 	 */
     private Object antialiasSetting = RenderingHints.VALUE_ANTIALIAS_DEFAULT;
 
+    /**
+     * How much of a component the UI delegates paint, which depends on how
+     * far the play pen is zoomed out. See {@link PlayPen#getDetailLevel()}.
+     */
+    public static enum DetailLevel {
+        /** Everything: columns, labels and relationship terminations. */
+        FULL,
+        /** Tables as boxes with only their titles, relationships as straight lines. */
+        TITLED_BOX,
+        /** Tables as filled boxes, relationships as straight lines. */
+        PLAIN_BOX
+    }
+
+    /**
+     * The zoom below which components are painted as
+     * {@link DetailLevel#TITLED_BOX}, unless set for a play pen.
+     */
+    private static final double DEFAULT_TITLED_BOX_ZOOM = getZoomProperty("ca.sqlpower.architect.titledBoxZoom", 0.4); //$NON-NLS-1$
+
+    /**
+     * The zoom below which components are painted as
+     * {@link DetailLevel#PLAIN_BOX}, unless set for a play pen.
+     */
+    private static final double DEFAULT_PLAIN_BOX_ZOOM = getZoomProperty("ca.sqlpower.architect.plainBoxZoom", 0.15); //$NON-NLS-1$
+
+    /**
+     * See {@link #getDetailLevel()}.
+     */
+    private double titledBoxZoom = DEFAULT_TITLED_BOX_ZOOM;
+
+    /**
+     * See {@link #getDetailLevel()}.
+     */
+    private double plainBoxZoom = DEFAULT_PLAIN_BOX_ZOOM;
+
 	/**
 	 * A graveyard for components that used to be associated with model
 	 * components that are no longer in the model.  If the model components
@@ -576,6 +703,15 @@ public class PlayPen extends JPanel
      */
     private boolean paintingEnabled = true;
 
+    /**
+     * The images of the parts of this play pen that were already painted, or
+     * null if the components are painted every time. Setting the
+     * ca.sqlpower.architect.directPaint system property paints without the
+     * cache.
+     */
+    private PlayPenTileCache tileCache =
+        Boolean.getBoolean("ca.sqlpower.architect.directPaint") ? null : new PlayPenTileCache(this); //$NON-NLS-1$
+
 	private boolean normalizing;
 
     /**
@@ -670,6 +806,10 @@ public class PlayPen extends JPanel
 		this(session);
 		logger.debug("Copying PlayPen@" + System.identityHashCode(pp) + " into " + System.identityHashCode(this));
 		this.antialiasSetting = pp.antialiasSetting;
+		// copies are made for printing, which always shows everything
+		this.titledBoxZoom = 0;
+		this.plainBoxZoom = 0;
+		this.tileCache = null;
 				
 		this.setFont(pp.getFont());
 		this.setForeground(pp.getForeground());
@@ -1065,6 +1205,9 @@ public class PlayPen extends JPanel
 		if (newZoom != zoom) {
 			double oldZoom = zoom;
 			zoom = newZoom;
+			if (tileCache != null) {
+			    tileCache.invalidateAll();
+			}
 			if(session.isEnterpriseSession()) {
 	            session.getEnterpriseSession().putPref("zoom", zoom);
 			} else {
@@ -1083,6 +1226,62 @@ public class PlayPen extends JPanel
 		return zoom;
 	}
 
+	/**
+	 * Returns how much detail the components are painted with at the current
+	 * zoom. The boxes of the tables keep the size they have at full detail,
+	 * so selecting and hit-testing work the same at every level.
+	 */
+	public DetailLevel getDetailLevel() {
+	    if (zoom < plainBoxZoom) {
+	        return DetailLevel.PLAIN_BOX;
+	    } else if (zoom < titledBoxZoom) {
+	        return DetailLevel.TITLED_BOX;
+	    } else {
+	        return DetailLevel.FULL;
+	    }
+	}
+
+	/**
+	 * Sets the zoom below which tables are painted as boxes with only their
+	 * titles and relationships as straight lines. 0 turns this off.
+	 */
+	public void setTitledBoxZoom(double titledBoxZoom) {
+	    this.titledBoxZoom = titledBoxZoom;
+	    repaint();
+	}
+
+	public double getTitledBoxZoom() {
+	    return titledBoxZoom;
+	}
+
+	/**
+	 * Sets the zoom below which tables are painted as filled boxes without
+	 * titles. 0 turns this off.
+	 */
+	public void setPlainBoxZoom(double plainBoxZoom) {
+	    this.plainBoxZoom = plainBoxZoom;
+	    repaint();
+	}
+
+	public double getPlainBoxZoom() {
+	    return plainBoxZoom;
+	}
+
+	/**
+	 * Returns the zoom in the given system property, or the given default if
+	 * it is not set or not a number.
+	 */
+	private static double getZoomProperty(String name, double defaultZoom) {
+	    String value = System.getProperty(name);
+	    if (value == null) return defaultZoom;
+	    try {
+	        return Double.parseDouble(value);
+	    } catch (NumberFormatException e) {
+	        logger.warn("Ignoring " + name + "=" + value + ", which is not a number"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	        return defaultZoom;
+	    }
+	}
+
 	public void setRenderingAntialiased(boolean v) {
 	    if (v) {
 	        antialiasSetting = RenderingHints.VALUE_ANTIALIAS_ON;
@@ -1158,12 +1357,7 @@ public class PlayPen extends JPanel
 	 * model, or null if no such PlayPenComponent is in the play pen 
 	 */
 	public PlayPenComponent findPPComponent(Object model) {
-	    for (PlayPenComponent ppc : contentPane.getChildren()) {            
-            if (ppc.getModel() == model) {
-                return ppc;
-            }
-        }
-	    return null;
+	    return contentPane.findComponent(model);
 	}
 
 	/**
@@ -1173,23 +1367,12 @@ public class PlayPen extends JPanel
 	 * PlayPen's database; results will be unpredictable if there is
 	 * more than one table with the name you are searching for.
 	 *
-	 * <p>Implementation note: This method may benefit from a
-	 * Map-based lookup rather than the current linear search
-	 * algorithm.
-	 *
 	 * @return A reference to the TablePane whose model name is
 	 * <code>name</code>, or <code>null</code> if no such TablePane is
 	 * in the play pen.
 	 */
 	public TablePane findTablePaneByName(String name) {
-		name = name.toLowerCase();
-		for (PlayPenComponent c : contentPane.getChildren()) {			
-			if (c instanceof TablePane
-				&& ((TablePane) c).getModel().getName().toLowerCase().equals(name)) {
-				return (TablePane) c;
-			}
-		}
-		return null;
+		return contentPane.findTablePaneByName(name);
 	}
 
 	/**
@@ -1252,29 +1435,11 @@ public class PlayPen extends JPanel
 	 * @see PlayPenLayout#addLayoutComponent(Component,Object)
 	 */
 	public synchronized TablePane importTableCopy(SQLTable source, Point preferredLocation, DuplicateProperties duplicateProperties, boolean assignTypes) throws SQLObjectException {
-	    SQLTable newTable;
-	    switch (duplicateProperties.getDefaultTransferStyle()) {
-	    case REVERSE_ENGINEER:
-	        newTable = source.createInheritingInstance(session.getTargetDatabase()); // adds newTable to db
-	        break;
-	    case COPY:
-	        newTable = source.createCopy(session.getTargetDatabase(), duplicateProperties.isPreserveColumnSource());
-	        break;
-	    default:
-	        throw new IllegalStateException("Unknown transfer style " + duplicateProperties.getDefaultTransferStyle());
-	    }
-	    
-	    //need to add data sources as necessary if a SQLObject was copied and pasted from one session
-	    //to another in the same context. Also need to correct the source columns to point to the 
-	    //correct session's source database objects.
-	    for (SQLColumn column : newTable.getColumns()) {
-	        SQLColumn sourceColumn = newTable.getColumnByName(column.getName());
-	        ASUtils.correctSourceColumn(sourceColumn, duplicateProperties, column, getSession().getDBTree());
-	    }
+	    SQLTable newTable = createTableCopy(source, session.getTargetDatabase(), duplicateProperties);
 
-	    // Although this method is called in AddObjectsTask.cleanup(), it
-	    // remains here so that tests will use it as well. Columns that have
-	    // upstream types are ignored, so this is safe.
+	    // Although AddObjectsTask assigns types itself, this remains here so
+	    // that tests will use it as well. Columns that have upstream types are
+	    // ignored, so this is safe.
 	    if (assignTypes) {
 	        String platform;
 	        if (source.getParentDatabase() != null && source.getParentDatabase().getDataSource() != null) {
@@ -1284,6 +1449,39 @@ public class PlayPen extends JPanel
 	        }
 	        SQLColumn.assignTypes(newTable.getColumns(), newTable.getParentDatabase().getDataSource().getParentCollection(), platform, getSession());
 	    }
+	    return addTableCopy(source, newTable, preferredLocation, duplicateProperties, !assignTypes);
+	}
+
+	/**
+	 * Reverse engineers or copies the given source table into the given
+	 * database, as the duplicate properties say. The database does not have
+	 * to be the target database: {@link AddObjectsTask} makes its copies in a
+	 * database of its own on its worker thread.
+	 */
+	static SQLTable createTableCopy(SQLTable source, SQLDatabase parent, DuplicateProperties duplicateProperties) throws SQLObjectException {
+	    switch (duplicateProperties.getDefaultTransferStyle()) {
+	    case REVERSE_ENGINEER:
+	        return source.createInheritingInstance(parent); // adds the copy to parent
+	    case COPY:
+	        return source.createCopy(parent, duplicateProperties.isPreserveColumnSource());
+	    default:
+	        throw new IllegalStateException("Unknown transfer style " + duplicateProperties.getDefaultTransferStyle());
+	    }
+	}
+
+	/**
+	 * Gives a copy made by
+	 * {@link #createTableCopy(SQLTable, SQLDatabase, DuplicateProperties)} a
+	 * unique name, adds it to the target database if it is not in a database,
+	 * and adds it to this play pen with the relationships its source has to
+	 * tables already in the play pen.
+	 * 
+	 * @param pasting
+	 *            True if the copy is made by {@link AddObjectsTask}, in which
+	 *            case the relationships of a copied table are only added if
+	 *            the clipboard has the whole database.
+	 */
+	private TablePane addTableCopy(SQLTable source, SQLTable newTable, Point preferredLocation, DuplicateProperties duplicateProperties, boolean pasting) throws SQLObjectException {
 	    boolean isAlreadyOnPlaypen = false;
 		
 	    // ensure tablename is unique
@@ -1296,6 +1494,18 @@ public class PlayPen extends JPanel
 	    }
 	    if (logger.isDebugEnabled()) logger.debug("after add: " + tableNames); //$NON-NLS-1$
 
+	    if (newTable.getParent() == null) {
+	        session.getTargetDatabase().addChild(newTable);
+	    }
+
+	    //need to add data sources as necessary if a SQLObject was copied and pasted from one session
+	    //to another in the same context. Also need to correct the source columns to point to the 
+	    //correct session's source database objects.
+	    for (SQLColumn column : newTable.getColumns()) {
+	        SQLColumn sourceColumn = newTable.getColumnByName(column.getName());
+	        ASUtils.correctSourceColumn(sourceColumn, duplicateProperties, column, getSession().getDBTree());
+	    }
+
 	    TablePane tp = new TablePane(newTable, getContentPane());
 	    logger.info("adding table "+newTable); //$NON-NLS-1$
 	    addImpl(tp, preferredLocation);
@@ -1303,7 +1513,7 @@ public class PlayPen extends JPanel
 	    if (duplicateProperties.getDefaultTransferStyle() == TransferStyles.REVERSE_ENGINEER) {
 	        createRelationshipsFromPP(source, newTable, true, isAlreadyOnPlaypen, suffix);
 	        createRelationshipsFromPP(source, newTable, false, isAlreadyOnPlaypen, suffix);
-	    } else if (duplicateProperties.getDefaultTransferStyle() == TransferStyles.COPY && !assignTypes) {
+	    } else if (duplicateProperties.getDefaultTransferStyle() == TransferStyles.COPY && pasting) {
 	        // draw/paste relationship line only if it is selected during copy process
 	        Transferable clipboardContents = getSession().getContext().getClipboardContents();
 	        boolean isRelationshipLineSelected = false;
@@ -1497,6 +1707,43 @@ public class PlayPen extends JPanel
 		new Thread(t, "Objects-Adder").start(); //$NON-NLS-1$
 	}
 
+	/**
+	 * The number of tables {@link AddObjectsTask} adds to the play pen in each
+	 * transaction. The Swing thread handles input and repaints between
+	 * transactions.
+	 */
+	private static final int IMPORT_BATCH_SIZE = Integer.getInteger("ca.sqlpower.architect.importBatchSize", 200); //$NON-NLS-1$
+
+	/**
+	 * A table {@link AddObjectsTask} imports, with the copy of it that is
+	 * built on the task's thread.
+	 */
+	private static class TableCopy {
+	    final SQLTable source;
+	    final DuplicateProperties duplicateProperties;
+	    final String platform;
+	    SQLTable copy;
+
+	    TableCopy(SQLTable source, DuplicateProperties duplicateProperties, String platform) {
+	        this.source = source;
+	        this.duplicateProperties = duplicateProperties;
+	        this.platform = platform;
+	    }
+	}
+
+	/**
+	 * Imports tables into the play pen. The source objects are populated and
+	 * the copies of their tables are built, with their column types assigned,
+	 * on the task's own thread in a database of their own, so nothing in the
+	 * session sees them until they are ready. The copies are then added to the
+	 * target database and the play pen, with their relationships, on the
+	 * Swing thread in transactions of {@link PlayPen#IMPORT_BATCH_SIZE}
+	 * tables, and the task waits for each transaction before starting the
+	 * next, so the progress dialog and the play pen stay responsive. Each
+	 * transaction is its own undo edit, so nothing the user does between them
+	 * is recorded in the import, and the edits are combined into one undo
+	 * step when the import is done.
+	 */
 	protected class AddObjectsTask extends SPSwingWorker {
 		
         private List<SQLObject> sqlObjects;
@@ -1506,6 +1753,25 @@ public class PlayPen extends JPanel
 
         private final TransferStyles transferStyle;
 
+        /**
+         * The tables to import, found on the Swing thread once the objects
+         * are populated.
+         */
+        private final List<TableCopy> tableCopies = new ArrayList<TableCopy>();
+
+        /**
+         * The undo edits of the batches added so far. Each batch is its own
+         * compound edit, so the edits the user makes while the Swing thread
+         * handles input between batches are not recorded as part of the
+         * import, and cleanup combines the batches into one undo step.
+         */
+        private final List<UndoableEdit> batchEdits = new ArrayList<UndoableEdit>();
+
+        /**
+         * The number of tables added to the play pen in each transaction.
+         */
+        private int batchSize = IMPORT_BATCH_SIZE;
+
 		public AddObjectsTask(List<SQLObject> sqlObjects,
 				Point preferredLocation,
 				ProgressMonitor pm,
@@ -1529,7 +1795,8 @@ public class PlayPen extends JPanel
 		}
 
 		/**
-		 * Makes sure all the stuff we want to add is populated.
+		 * Makes sure all the stuff we want to add is populated, builds the
+		 * copies of the tables and adds them to the play pen.
 		 */
 		public void doStuff() {
 			logger.info("AddObjectsTask starting on thread "+Thread.currentThread().getName()); //$NON-NLS-1$
@@ -1560,7 +1827,8 @@ public class PlayPen extends JPanel
 			                SQLObject so = soIt.next();
 			                tableCount += SQLObjectUtils.countTablesSnapshot(so);
 			            }
-			            setJobSize(new Integer(tableCount));
+			            // each table is populated, copied and added
+			            setJobSize(new Integer(tableCount * 3));
 			        } catch (SQLObjectException e) {
 			            logger.error("Unexpected exception, objects should be populated by " +
 			            		"this pass.", e); //$NON-NLS-1$
@@ -1573,6 +1841,32 @@ public class PlayPen extends JPanel
 
 			ensurePopulated(sqlObjects);
 
+			try {
+			    if (!isCancelled()) {
+			        runInForegroundAndWait(new Runnable() {
+			            public void run() {
+			                findTables();
+			            }
+			        });
+			    }
+			    buildCopies();
+			    for (int start = 0; start < tableCopies.size() && !isCancelled(); start += batchSize) {
+			        final List<TableCopy> batch = tableCopies.subList(start, Math.min(start + batchSize, tableCopies.size()));
+			        runInForegroundAndWait(new Runnable() {
+			            public void run() {
+			                addBatch(batch);
+			            }
+			        });
+			    }
+			} catch (SQLObjectException e) {
+			    logger.error("Unexpected exception during import", e); //$NON-NLS-1$
+			    setDoStuffException(e);
+			    errorMessage = "Unexpected exception during import: " + e.getMessage(); //$NON-NLS-1$
+			} catch (InterruptedException e) {
+			    logger.info("AddObjectsTask interrupted"); //$NON-NLS-1$
+			    setCancelled(true);
+			}
+
 			logger.info("AddObjectsTask done"); //$NON-NLS-1$
 		}
 
@@ -1601,129 +1895,182 @@ public class PlayPen extends JPanel
 		}
 
 		/**
-		 * Displays error messages or invokes the next process in the chain on a new
-		 * thread. The run method asks swing to invoke this method on the event dispatch
-		 * thread after it's done.
+		 * Runs the given runnable on the foreground thread and waits for it to
+		 * finish.
 		 */
-		public void cleanup() {
-			if (getDoStuffException() != null) {
-                ASUtils.showExceptionDialogNoReport(session.getArchitectFrame(),
-                        errorMessage, getDoStuffException());
-				if (getNextProcess() != null) {
-					setCancelled(true);
-				}
-			}
+		private void runInForegroundAndWait(Runnable runner) throws InterruptedException {
+		    if (session.isForegroundThread()) {
+		        runner.run();
+		    } else {
+		        try {
+		            SwingUtilities.invokeAndWait(runner);
+		        } catch (InvocationTargetException e) {
+		            if (e.getCause() instanceof RuntimeException) {
+		                throw (RuntimeException) e.getCause();
+		            }
+		            throw new RuntimeException(e.getCause());
+		        }
+		    }
+		}
 
-			session.getPlayPen().startCompoundEdit("Drag to Playpen"); //$NON-NLS-1$
-			
+		/**
+		 * Filters the objects to import, which may ask the user questions,
+		 * and lists their tables with how each is to be copied. Runs on the
+		 * Swing thread.
+		 */
+		private void findTables() {
 			// Filter out objects that would lose ETL lineage against the user's will.
 			ImportSafetyChecker checker = new ImportSafetyChecker(session);
 			sqlObjects = checker.filterImportedItems(sqlObjects);		
 			
-			session.getPlayPen().getContentPane().begin("Drag to Playpen");
-			try {
+			for (SQLObject someData : sqlObjects) {
+				DuplicateProperties duplicateProperties = ASUtils.createDuplicateProperties(getSession(), someData);
+				if (transferStyle == TransferStyles.COPY && duplicateProperties.isCanCopy()) {
+				    duplicateProperties.setDefaultTransferStyle(transferStyle);
+				} else if (transferStyle == TransferStyles.REVERSE_ENGINEER && duplicateProperties.isCanReverseEngineer()) {
+				    duplicateProperties.setDefaultTransferStyle(transferStyle);
+				}
 
-				// reset iterator
-				Iterator<SQLObject> soIt = sqlObjects.iterator();
+				SQLDatabase dbAncestor = SQLPowerUtils.getAncestor(someData, SQLDatabase.class);
+				String platform;
+				if (dbAncestor == null) {
+				    platform = null;
+				} else {
+				    platform = dbAncestor.getDataSource().getParentType().getName();
+				}
 
-				// Track all columns added so we can assign types
-				ArrayListMultimap<String, SQLColumn> addedColumns = ArrayListMultimap.create();
-				
-				resetTableNames();
-				while (soIt.hasNext() && !isCancelled()) {
-					SQLObject someData = soIt.next();
-					DuplicateProperties duplicateProperties = ASUtils.createDuplicateProperties(getSession(), someData);
-					if (transferStyle == TransferStyles.COPY && duplicateProperties.isCanCopy()) {
-					    duplicateProperties.setDefaultTransferStyle(transferStyle);
-					} else if (transferStyle == TransferStyles.REVERSE_ENGINEER && duplicateProperties.isCanReverseEngineer()) {
-					    duplicateProperties.setDefaultTransferStyle(transferStyle);
-					}
-					
-					if (someData instanceof SQLTable) {
-						TablePane tp = importTableCopy((SQLTable) someData, preferredLocation, duplicateProperties, false);
-						setMessage(ArchitectUtils.truncateString(((SQLTable)someData).getName()));
-                        preferredLocation.x += tp.getPreferredSize().width + 5;
-                        
-                        SQLDatabase dbAncestor = SQLPowerUtils.getAncestor(someData, SQLDatabase.class);
-                        String platform;
-                        if (dbAncestor == null) {
-                            platform = null;
-                        } else {
-                            platform = dbAncestor.getDataSource().getParentType().getName();
-                        }
-                        addedColumns.putAll(platform, tp.getModel().getChildren(SQLColumn.class));
-                        
-                        increaseProgress();
-					} else if (someData instanceof SQLSchema) {
-						SQLSchema sourceSchema = (SQLSchema) someData;
-						Iterator<? extends SQLObject> it = sourceSchema.getChildren().iterator();
-						while (it.hasNext() && !isCancelled()) {
-                            Object nextTable = it.next();
-							SQLTable sourceTable = (SQLTable) nextTable;
-							setMessage(ArchitectUtils.truncateString(sourceTable.getName()));
-							TablePane tp = importTableCopy(sourceTable, preferredLocation, duplicateProperties, false);
-							preferredLocation.x += tp.getPreferredSize().width + 5;
-							
-							String platform = SQLPowerUtils.getAncestor(someData, SQLDatabase.class).getDataSource().getParentType().getName();
-	                        addedColumns.putAll(platform, tp.getModel().getChildren(SQLColumn.class));
-							
-							increaseProgress();
-						}
-					} else if (someData instanceof SQLCatalog) {
-						SQLCatalog sourceCatalog = (SQLCatalog) someData;
-						Iterator<? extends SQLObject> cit = sourceCatalog.getChildren().iterator();
-						if (sourceCatalog.isSchemaContainer()) {
-							while (cit.hasNext() && !isCancelled()) {
-								SQLSchema sourceSchema = (SQLSchema) cit.next();
-								Iterator<? extends SQLObject> it = sourceSchema.getChildren().iterator();
-								while (it.hasNext() && !isCancelled()) {
-									Object nextTable = it.next();
-                                    SQLTable sourceTable = (SQLTable) nextTable;
-									setMessage(ArchitectUtils.truncateString(sourceTable.getName()));
-									TablePane tp = importTableCopy(sourceTable, preferredLocation, duplicateProperties, false);
-									preferredLocation.x += tp.getPreferredSize().width + 5;
-									
-									String platform = SQLPowerUtils.getAncestor(someData, SQLDatabase.class).getDataSource().getParentType().getName();
-		                            addedColumns.putAll(platform, tp.getModel().getChildren(SQLColumn.class));
-									
-									increaseProgress();
-								}
-							}
-						} else {
-							while (cit.hasNext() && !isCancelled()) {
-                                Object nextTable = cit.next();
-								SQLTable sourceTable = (SQLTable) nextTable;
-								setMessage(ArchitectUtils.truncateString(sourceTable.getName()));
-								TablePane tp = importTableCopy(sourceTable, preferredLocation, duplicateProperties, false);
-								preferredLocation.x += tp.getPreferredSize().width + 5;
-								
-								String platform = SQLPowerUtils.getAncestor(someData, SQLDatabase.class).getDataSource().getParentType().getName();
-	                            addedColumns.putAll(platform, tp.getModel().getChildren(SQLColumn.class));
-								
-								increaseProgress();
-							}
-						}
-					} else {
-						logger.error("Unknown object dropped in PlayPen: "+someData); //$NON-NLS-1$
-					}
+				if (someData instanceof SQLTable) {
+				    tableCopies.add(new TableCopy((SQLTable) someData, duplicateProperties, platform));
+				} else if (someData instanceof SQLSchema) {
+				    addTableCopies(someData.getChildren(), duplicateProperties, platform);
+				} else if (someData instanceof SQLCatalog) {
+				    SQLCatalog sourceCatalog = (SQLCatalog) someData;
+				    if (sourceCatalog.isSchemaContainer()) {
+				        for (SQLObject sourceSchema : sourceCatalog.getChildren()) {
+				            addTableCopies(sourceSchema.getChildren(), duplicateProperties, platform);
+				        }
+				    } else {
+				        addTableCopies(sourceCatalog.getChildren(), duplicateProperties, platform);
+				    }
+				} else {
+				    logger.error("Unknown object dropped in PlayPen: "+someData); //$NON-NLS-1$
 				}
-				
-				for (String platform : addedColumns.keySet()) {
-				    SQLColumn.assignTypes(addedColumns.get(platform), session.getDataSources(), platform, session);
+			}
+		}
+
+		private void addTableCopies(List<? extends SQLObject> tables, DuplicateProperties duplicateProperties, String platform) {
+		    for (SQLObject table : tables) {
+		        tableCopies.add(new TableCopy((SQLTable) table, duplicateProperties, platform));
+		    }
+		}
+
+		/**
+		 * Builds the copies of the tables to import and assigns the types of
+		 * their columns. The copies are made in a database no session knows
+		 * about and taken out of it again, so this runs on the task's thread.
+		 */
+		private void buildCopies() throws SQLObjectException {
+		    SQLDatabase scratch = new SQLDatabase();
+		    scratch.setPlayPenDatabase(true);
+		    
+		    // Track all columns added so we can assign types
+		    ArrayListMultimap<String, SQLColumn> addedColumns = ArrayListMultimap.create();
+		    for (final TableCopy tableCopy : tableCopies) {
+		        if (isCancelled()) return;
+		        tableCopy.copy = createTableCopy(tableCopy.source, scratch, tableCopy.duplicateProperties);
+		        try {
+		            scratch.removeChild(tableCopy.copy);
+		        } catch (ObjectDependentException e) {
+		            throw new RuntimeException(e);
+		        }
+		        addedColumns.putAll(tableCopy.platform, tableCopy.copy.getChildren(SQLColumn.class));
+		        session.runInForeground(new Runnable() {
+		            public void run() {
+		                setMessage(ArchitectUtils.truncateString(tableCopy.source.getName()));
+		                increaseProgress();
+		            }
+		        });
+		    }
+
+		    for (String platform : addedColumns.keySet()) {
+		        SQLColumn.assignTypes(addedColumns.get(platform), session.getDataSources(), platform, session);
+		    }
+		}
+
+		/**
+		 * Adds the given copies in a compound edit of their own, which is
+		 * ended before the Swing thread handles any more input, and records
+		 * the edit so cleanup can combine it with the other batches. Runs on
+		 * the Swing thread.
+		 */
+		private void addBatch(List<TableCopy> batch) {
+		    ArchitectUndoManager undoManager = session.getUndoManager();
+		    UndoableEdit lastEdit = undoManager.getEditToBeUndone();
+		    session.getPlayPen().startCompoundEdit("Drag to Playpen"); //$NON-NLS-1$
+		    try {
+		        addCopies(batch);
+		    } finally {
+		        session.getPlayPen().endCompoundEdit("Ending multi-select"); //$NON-NLS-1$
+		        UndoableEdit batchEdit = undoManager.getEditToBeUndone();
+		        if (batchEdit != null && batchEdit != lastEdit) {
+		            batchEdits.add(batchEdit);
+		        }
+		    }
+		}
+
+		/**
+		 * Adds the given copies to the target database and the play pen in
+		 * one transaction. Runs on the Swing thread.
+		 */
+		private void addCopies(List<TableCopy> batch) {
+		    PlayPenContentPane contentPane = session.getPlayPen().getContentPane();
+		    contentPane.begin("Drag to Playpen"); //$NON-NLS-1$
+		    try {
+		        // the user may have changed the play pen since the last batch
+		        resetTableNames();
+		        for (TableCopy tableCopy : batch) {
+		            if (isCancelled() || tableCopy.copy == null) break;
+		            setMessage(ArchitectUtils.truncateString(tableCopy.source.getName()));
+		            TablePane tp = addTableCopy(tableCopy.source, tableCopy.copy, preferredLocation, tableCopy.duplicateProperties, true);
+		            preferredLocation.x += tp.getPreferredSize().width + 5;
+		            increaseProgress();
+		        }
+		        contentPane.commit();
+		    } catch (SQLObjectException e) {
+		        contentPane.rollback(e.getMessage());
+		        setCancelled(true);
+		        ASUtils.showExceptionDialog(session,
+		                "Unexpected Exception During Import", e); //$NON-NLS-1$
+		    } catch (Throwable e) {
+		        contentPane.rollback(e.getMessage());
+		        throw new RuntimeException(e);
+		    }
+		}
+
+		/**
+		 * Sets the number of tables added to the play pen in each
+		 * transaction. This is for testing the batches with only a few tables.
+		 */
+		void setBatchSize(int batchSize) {
+		    this.batchSize = batchSize;
+		}
+
+		/**
+		 * Displays error messages and combines the undo edits of the batches
+		 * into one. The run method asks swing to invoke this method on the event
+		 * dispatch thread after it's done.
+		 */
+		public void cleanup() {
+			if (getDoStuffException() != null) {
+                ASUtils.showExceptionDialogNoReport(session.getArchitectFrame(),
+                        errorMessage, getDoStuffException());
+				if (getNextProcess() != null) {
+					setCancelled(true);
 				}
-				
-				session.getPlayPen().getContentPane().commit();
-			} catch (SQLObjectException e) {
-			    session.getPlayPen().getContentPane().rollback(e.getMessage());
-				ASUtils.showExceptionDialog(session,
-                    "Unexpected Exception During Import", e); //$NON-NLS-1$
-			} catch (Throwable e) {
-			    session.getPlayPen().getContentPane().rollback(e.getMessage());
-			    throw new RuntimeException(e);
-			} finally {
-				session.getArchitectFrame().getContentPane().setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
-				session.getPlayPen().endCompoundEdit("Ending multi-select"); //$NON-NLS-1$
 			}
+
+			session.getArchitectFrame().getContentPane().setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+			session.getUndoManager().combineEdits(batchEdits, "Drag to Playpen"); //$NON-NLS-1$
 			
 			// deals with bug 1333, when the user tries to add inaccessible objects to the PlayPen
 			if (getJobSize() == 0) { 
@@ -1827,28 +2174,23 @@ public class PlayPen extends JPanel
 
 		try {
 		    if (child instanceof SQLTable) {
-		        for (int i = 0; i < contentPane.getChildren().size(); i++) {
-		            PlayPenComponent c = contentPane.getChildren().get(i);
+		        for (PlayPenComponent c : contentPane.findComponents(child)) {
 		            if (c instanceof TablePane) {
 		                TablePane tp = (TablePane) c;
-		                if (tp.getModel() == child) {
-		                    removedComponents.put(tp.getModel().getUUID(), c);
-		                    contentPane.removeChild(c);
-		                    foundRemovedComponent = true;
-		                }
+		                removedComponents.put(tp.getModel().getUUID(), c);
+		                contentPane.removeChild(c);
+		                foundRemovedComponent = true;
 		            }
 		        }
-		    } else if (child instanceof SQLRelationship || child instanceof SQLImportedKey) {		        
-		        for (int i = 0; i < contentPane.getChildren().size(); i++) {
-		            PlayPenComponent c = contentPane.getChildren().get(i);
+		    } else if (child instanceof SQLRelationship || child instanceof SQLImportedKey) {
+		        Object model = child instanceof SQLImportedKey ? ((SQLImportedKey) child).getRelationship() : child;
+		        for (PlayPenComponent c : contentPane.findComponents(model)) {
 		            if (c instanceof Relationship) {
 		                Relationship r = (Relationship) c;
-		                if (r.getModel() == child || (child instanceof SQLImportedKey && r.getModel() == ((SQLImportedKey) child).getRelationship())) {
-		                    r.setSelected(false,SelectionEvent.SINGLE_SELECT);
-		                    removedComponents.put(r.getModel().getUUID(), c);
-		                    contentPane.removeChild(c);
-		                    foundRemovedComponent = true;
-		                }
+		                r.setSelected(false,SelectionEvent.SINGLE_SELECT);
+		                removedComponents.put(r.getModel().getUUID(), c);
+		                contentPane.removeChild(c);
+		                foundRemovedComponent = true;
 		            }
 		        }
 		    }
@@ -2548,7 +2890,8 @@ public class PlayPen extends JPanel
 			    }
 			}
 			maybeShowPopup(evt);
-			repaint();
+			// the components repaint themselves when their selection changes
+			repaintOverlay(getVisibleRect());
 //            updateDBTree();
 		}
 
@@ -2561,14 +2904,19 @@ public class PlayPen extends JPanel
 			if (rubberBand != null) {
 				// repaint old region in case of shrinkage
 				Rectangle dirtyRegion = zoomRect(new Rectangle(rubberBand));
+				Rectangle changed = new Rectangle(rubberBand);
 
 				Point p = unzoomPoint(evt.getPoint());
 				rubberBand.setBounds(rubberBandOrigin.x, rubberBandOrigin.y, 0, 0);
 				rubberBand.add(p);
 
 				mouseMode = MouseModeType.RUBBERBAND_MOVE;
-				// update selected items
-				for (PlayPenComponent c : contentPane.getChildren()) {					 
+				// update selected items. Everything was deselected when the
+				// rubber band started, so only the components under the old
+				// or the new band can change.
+				changed.add(rubberBand);
+				changed.grow(1, 1);
+				for (PlayPenComponent c : contentPane.getComponentsIntersecting(changed)) {
 					c.handleMouseEvent(evt);
 				}
 
@@ -2592,7 +2940,7 @@ public class PlayPen extends JPanel
 			dirtyRegion.y -= 3;
 			dirtyRegion.width += 6;
 			dirtyRegion.height += 6;
-			repaint(dirtyRegion);
+			repaintOverlay(dirtyRegion);
 		}
 
 		/**
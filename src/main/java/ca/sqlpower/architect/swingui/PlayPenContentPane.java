@@ -19,13 +19,17 @@
 package ca.sqlpower.architect.swingui;
 
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -52,6 +56,13 @@ import ca.sqlpower.sqlobject.SQLDatabase;
 public class PlayPenContentPane extends AbstractSPObject {
     private static final Logger logger = Logger.getLogger(PlayPenContentPane.class);
 
+    /**
+     * How far from a point, in play pen coordinates, a component can be and
+     * still be found by {@link #getComponentAt(Point)}. Relationships and
+     * usages count points a few units from their lines as on them.
+     */
+    private static final int HIT_MARGIN = 8;
+
     /**
      * Defines an absolute ordering of the child types of this class.
      * 
@@ -83,6 +94,64 @@ public class PlayPenContentPane extends AbstractSPObject {
      */
     private List<PlayPenComponent> dependentComponents = new ArrayList<PlayPenComponent>();
 
+    /**
+     * The bounds of all the children, kept up to date as they move and
+     * change size, so finding the components in a region or at a point does
+     * not look at every component.
+     */
+    private final ComponentBoundsIndex boundsIndex = new ComponentBoundsIndex();
+
+    /**
+     * The index of each child in {@link #getChildren()}, or null if a child
+     * was added or removed since it was last needed.
+     */
+    private Map<PlayPenComponent, Integer> childPositions;
+
+    /**
+     * The children showing each model object, by identity. Almost every model
+     * object has one component.
+     */
+    private final Map<Object, List<PlayPenComponent>> componentsByModel =
+        new IdentityHashMap<Object, List<PlayPenComponent>>();
+
+    /**
+     * The table panes whose tables have each name, by the name in lower case.
+     */
+    private final Map<String, List<TablePane>> tablePanesByName = new HashMap<String, List<TablePane>>();
+
+    /**
+     * The key each table pane is listed under in {@link #tablePanesByName}.
+     */
+    private final Map<TablePane, String> tablePaneNames = new IdentityHashMap<TablePane, String>();
+
+    /**
+     * Moves the table panes of a table that was renamed to its new name in
+     * {@link #tablePanesByName}.
+     */
+    private final SPListener tableNameListener = new AbstractSPListener() {
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            if (!"name".equals(evt.getPropertyName())) return; //$NON-NLS-1$
+            List<PlayPenComponent> tableComponents = componentsByModel.get(evt.getSource());
+            if (tableComponents == null) return;
+            for (PlayPenComponent ppc : tableComponents) {
+                if (ppc instanceof TablePane) {
+                    unindexName((TablePane) ppc);
+                    indexName((TablePane) ppc);
+                }
+            }
+        }
+    };
+
+    /**
+     * Puts components in the order {@link #getChildren()} returns them.
+     */
+    private final Comparator<PlayPenComponent> childOrder = new Comparator<PlayPenComponent>() {
+        public int compare(PlayPenComponent c1, PlayPenComponent c2) {
+            return getChildPositions().get(c1) - getChildPositions().get(c2);
+        }
+    };
+
     /**
      * The object this content pane is displaying information about. Must be one
      * of either SQLDatabase or OLAPSession and it must have a valid parent to
@@ -114,9 +183,20 @@ public class PlayPenContentPane extends AbstractSPObject {
 
         @Override
         public void propertyChanged(PropertyChangeEvent evt) {
-            if ((evt.getPropertyName().equals("topLeftCorner") || 
-                    evt.getPropertyName().equals("lengths")) && playPen != null) {
-                playPen.revalidate();
+            if (evt.getPropertyName().equals("topLeftCorner") || 
+                    evt.getPropertyName().equals("lengths")) {
+                PlayPenComponent c = (PlayPenComponent) evt.getSource();
+                Rectangle old = boundsIndex.update(c);
+                if (playPen != null) {
+                    playPen.revalidate();
+                    // components do not repaint themselves when only their
+                    // size changes, and the play pen may have cached images
+                    // of the old bounds
+                    if (old != null) {
+                        c.repaint(old);
+                    }
+                    c.repaint(new Rectangle(c.getX(), c.getY(), c.getWidth() + 1, c.getHeight() + 1));
+                }
             }
         }
 
@@ -227,18 +307,175 @@ public class PlayPenContentPane extends AbstractSPObject {
     /**
      * Allows you to return the component that is at point p. Since relations
      * are always last If a non-relationship is at the same point it gets picked
-     * first.
+     * first. Badges are checked after the other independent components.
      */
     @NonBound
     public PlayPenComponent getComponentAt(Point p) {
-        for (PlayPenComponent ppc : getAllChildren()) {
+        Rectangle near = new Rectangle(p.x - HIT_MARGIN, p.y - HIT_MARGIN, HIT_MARGIN * 2 + 1, HIT_MARGIN * 2 + 1);
+        boolean badgesChecked = false;
+        for (PlayPenComponent ppc : getComponentsIntersecting(near)) {
+            if (!badgesChecked && isDependentComponentType(ppc.getClass())) {
+                PlayPenComponent badge = getBadgeAt(p);
+                if (badge != null) {
+                    return badge;
+                }
+                badgesChecked = true;
+            }
             if (ppc.contains(p)) {
                 return ppc;
             }
         }
+        return badgesChecked ? null : getBadgeAt(p);
+    }
+
+    private PlayPenComponent getBadgeAt(Point p) {
+        for (ModelBadge badge : badges.values()) {
+            if (badge.contains(p)) {
+                return badge;
+            }
+        }
         return null;
     }
 
+    /**
+     * Returns the children whose bounds intersect the given region, in the
+     * order of {@link #getChildren()}. The transient {@link ModelBadge}s are
+     * not included.
+     */
+    @NonBound
+    public List<PlayPenComponent> getComponentsIntersecting(Rectangle region) {
+        List<PlayPenComponent> found = new ArrayList<PlayPenComponent>(boundsIndex.getComponentsIntersecting(region));
+        Collections.sort(found, childOrder);
+        return found;
+    }
+
+    private Map<PlayPenComponent, Integer> getChildPositions() {
+        if (childPositions == null) {
+            childPositions = new IdentityHashMap<PlayPenComponent, Integer>();
+            int i = 0;
+            for (PlayPenComponent ppc : components) {
+                childPositions.put(ppc, i++);
+            }
+            for (PlayPenComponent ppc : dependentComponents) {
+                childPositions.put(ppc, i++);
+            }
+        }
+        return childPositions;
+    }
+
+    /**
+     * Returns the first child whose model is the given object, or null if no
+     * child shows the given object.
+     */
+    @NonBound
+    public PlayPenComponent findComponent(Object model) {
+        List<PlayPenComponent> found = componentsByModel.get(model);
+        if (found == null) {
+            return null;
+        } else if (found.size() == 1) {
+            return found.get(0);
+        }
+        return Collections.min(found, childOrder);
+    }
+
+    /**
+     * Returns all the children whose model is the given object, in the order
+     * of {@link #getChildren()}.
+     */
+    @NonBound
+    public List<PlayPenComponent> findComponents(Object model) {
+        List<PlayPenComponent> found = componentsByModel.get(model);
+        if (found == null) {
+            return Collections.emptyList();
+        }
+        found = new ArrayList<PlayPenComponent>(found);
+        Collections.sort(found, childOrder);
+        return found;
+    }
+
+    /**
+     * Returns the first table pane whose table has the given name, ignoring
+     * case, or null if there is none.
+     */
+    @NonBound
+    public TablePane findTablePaneByName(String name) {
+        List<TablePane> found = tablePanesByName.get(name.toLowerCase());
+        if (found == null) {
+            return null;
+        } else if (found.size() == 1) {
+            return found.get(0);
+        }
+        return Collections.min(found, childOrder);
+    }
+
+    private void indexModel(PlayPenComponent ppc) {
+        Object model = ppc.getModel();
+        if (model == null) return;
+        List<PlayPenComponent> modelComponents = componentsByModel.get(model);
+        if (modelComponents == null) {
+            modelComponents = new ArrayList<PlayPenComponent>(1);
+            componentsByModel.put(model, modelComponents);
+            if (ppc instanceof TablePane) {
+                ((TablePane) ppc).getModel().addSPListener(tableNameListener);
+            }
+        }
+        modelComponents.add(ppc);
+        if (ppc instanceof TablePane) {
+            indexName((TablePane) ppc);
+        }
+    }
+
+    private void unindexModel(PlayPenComponent ppc) {
+        Object model = ppc.getModel();
+        List<PlayPenComponent> modelComponents = componentsByModel.get(model);
+        if (modelComponents == null || !removeIdentical(modelComponents, ppc)) return;
+        if (modelComponents.isEmpty()) {
+            componentsByModel.remove(model);
+            if (ppc instanceof TablePane) {
+                ((TablePane) ppc).getModel().removeSPListener(tableNameListener);
+            }
+        }
+        if (ppc instanceof TablePane) {
+            unindexName((TablePane) ppc);
+        }
+    }
+
+    private void indexName(TablePane tp) {
+        String name = tp.getModel().getName();
+        if (name == null) return;
+        name = name.toLowerCase();
+        List<TablePane> named = tablePanesByName.get(name);
+        if (named == null) {
+            named = new ArrayList<TablePane>(1);
+            tablePanesByName.put(name, named);
+        }
+        named.add(tp);
+        tablePaneNames.put(tp, name);
+    }
+
+    private void unindexName(TablePane tp) {
+        String name = tablePaneNames.remove(tp);
+        if (name == null) return;
+        List<TablePane> named = tablePanesByName.get(name);
+        if (named != null && removeIdentical(named, tp) && named.isEmpty()) {
+            tablePanesByName.remove(name);
+        }
+    }
+
+    /**
+     * Removes the given object from the list, comparing by identity rather
+     * than equals. Returns true if it was in the list.
+     */
+    private static boolean removeIdentical(List<?> list, Object o) {
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (list.get(i) == o) {
+                list.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
     @NonBound
     public int getFirstDependentComponentIndex() {
         return components.size();
@@ -286,7 +523,10 @@ public class PlayPenContentPane extends AbstractSPObject {
         if (getPlayPen() != null) {
             ppc.addSelectionListener(getPlayPen());
         }
+        childPositions = null;
+        indexModel(ppc);
         ppc.addSPListener(componentBoundChanges);
+        boundsIndex.update(ppc);
         ppc.connect();
         fireChildAdded(ppc.getClass(), ppc, pos);
         ppc.revalidate();
@@ -306,6 +546,9 @@ public class PlayPenContentPane extends AbstractSPObject {
         }
         if (!removed)
             return false;
+        childPositions = null;
+        unindexModel((PlayPenComponent) child);
+        boundsIndex.remove((PlayPenComponent) child);
         fireChildRemoved(child.getClass(), child, index);
         child.setParent(null);
         if (getPlayPen() != null) {
@@ -470,6 +713,14 @@ public class PlayPenContentPane extends AbstractSPObject {
         badges.put(badge.getSubject(), badge);
     }
 
+    /**
+     * Returns all the badges in the content pane.
+     */
+    @NonProperty
+    public Collection<ModelBadge> getModelBadges() {
+        return Collections.unmodifiableCollection(badges.values());
+    }
+
     /**
      * Returns the badge on the subject in the UI. This may return null if there
      * is no badge on the subject we are looking for.
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps images of the play pen as it was last painted, so scrolling back over
+ * a part of the diagram or repainting around a small change copies images
+ * instead of painting every component again. The play pen is divided into
+ * square tiles in screen coordinates, at the current zoom, and each tile is
+ * painted once and then copied until something in it changes.
+ * <p>
+ * The play pen invalidates the tiles under every region it is asked to
+ * repaint, which covers moved and resized components, selection changes and
+ * changes to the model, since all of those repaint the components they
+ * affect. Anything that changes how the whole play pen looks, such as the
+ * zoom, repaints all of it and so invalidates every tile.
+ * <p>
+ * Only the most recently used tiles are kept, so the memory used does not
+ * grow with the size of the diagram.
+ * <p>
+ * The cache is not thread safe and must only be used on the Event Dispatch
+ * Thread. The play pen passes repaints asked for on other threads to it.
+ */
+public class PlayPenTileCache {
+
+    private static final Logger logger = Logger.getLogger(PlayPenTileCache.class);
+
+    /**
+     * The width and height of a tile, in screen coordinates.
+     */
+    static final int TILE_SIZE = 256;
+
+    /**
+     * The number of tiles kept by default. A tile takes 256 kB, and a full
+     * screen of play pen needs about 60 tiles.
+     */
+    private static final int DEFAULT_MAX_TILES = Integer.getInteger("ca.sqlpower.architect.cachedTiles", 96); //$NON-NLS-1$
+
+    private final PlayPen playPen;
+
+    /**
+     * The painted tiles by their keys, least recently used first.
+     */
+    private final Map<Long, BufferedImage> tiles;
+
+    /**
+     * The key of the tile being painted, or null if no tile is being painted.
+     */
+    private Long paintingTile;
+
+    /**
+     * Set if the tile being painted is invalidated while it is painted, in
+     * which case the image is out of date as soon as it is finished and is
+     * not kept.
+     */
+    private boolean paintingTileInvalidated;
+
+    public PlayPenTileCache(PlayPen playPen) {
+        this(playPen, DEFAULT_MAX_TILES);
+    }
+
+    public PlayPenTileCache(PlayPen playPen, final int maxTiles) {
+        this.playPen = playPen;
+        tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+                if (size() > maxTiles) {
+                    eldest.getValue().flush();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Paints the part of the play pen in the clipping region of the given
+     * graphics by copying the tiles that are already painted, and painting
+     * the rest first. The graphics must not be scaled or rotated.
+     */
+    public void paint(Graphics2D g2, Rectangle clip) {
+        for (int x = tile(clip.x); x <= tile(clip.x + clip.width - 1); x++) {
+            for (int y = tile(clip.y); y <= tile(clip.y + clip.height - 1); y++) {
+                Long key = key(x, y);
+                BufferedImage image = tiles.get(key);
+                if (image == null) {
+                    image = paintTile(g2, key, x * TILE_SIZE, y * TILE_SIZE);
+                }
+                g2.drawImage(image, x * TILE_SIZE, y * TILE_SIZE, null);
+            }
+        }
+    }
+
+    private BufferedImage paintTile(Graphics2D screen, Long key, int tileX, int tileY) {
+        if (logger.isDebugEnabled()) logger.debug("Painting tile at " + tileX + ", " + tileY); //$NON-NLS-1$ //$NON-NLS-2$
+        BufferedImage image = screen.getDeviceConfiguration().createCompatibleImage(TILE_SIZE, TILE_SIZE);
+        Graphics2D g2 = image.createGraphics();
+        paintingTile = key;
+        paintingTileInvalidated = false;
+        try {
+            g2.setRenderingHints(screen.getRenderingHints());
+            g2.setFont(screen.getFont());
+            g2.translate(-tileX, -tileY);
+            g2.clipRect(tileX, tileY, TILE_SIZE, TILE_SIZE);
+            playPen.paintContents(g2);
+        } finally {
+            g2.dispose();
+            paintingTile = null;
+        }
+        if (!paintingTileInvalidated) {
+            tiles.put(key, image);
+        }
+        return image;
+    }
+
+    /**
+     * Throws away the tiles that intersect the given region, in screen
+     * coordinates, so they are painted again the next time they are shown.
+     */
+    public void invalidate(Rectangle region) {
+        if (region.isEmpty()) return;
+        long tileCount = ((long) tile(region.x + region.width - 1) - tile(region.x) + 1)
+            * ((long) tile(region.y + region.height - 1) - tile(region.y) + 1);
+        if (tileCount > tiles.size()) {
+            // cheaper to look at every tile that is kept, as when the
+            // whole play pen is repainted
+            for (Long key : tiles.keySet().toArray(new Long[tiles.size()])) {
+                if (bounds(key).intersects(region)) {
+                    tiles.remove(key).flush();
+                }
+            }
+        } else {
+            for (int x = tile(region.x); x <= tile(region.x + region.width - 1); x++) {
+                for (int y = tile(region.y); y <= tile(region.y + region.height - 1); y++) {
+                    BufferedImage image = tiles.remove(key(x, y));
+                    if (image != null) {
+                        image.flush();
+                    }
+                }
+            }
+        }
+        if (paintingTile != null && bounds(paintingTile).intersects(region)) {
+            paintingTileInvalidated = true;
+        }
+    }
+
+    /**
+     * Throws away every tile.
+     */
+    public void invalidateAll() {
+        for (BufferedImage image : tiles.values()) {
+            image.flush();
+        }
+        tiles.clear();
+        if (paintingTile != null) {
+            paintingTileInvalidated = true;
+        }
+    }
+
+    /**
+     * Returns the number of tiles that are kept.
+     */
+    public int size() {
+        return tiles.size();
+    }
+
+    /**
+     * Returns the number of the row or column of tiles the given coordinate
+     * is in.
+     */
+    private static int tile(int coordinate) {
+        return coordinate >= 0 ? coordinate / TILE_SIZE : -((-coordinate - 1) / TILE_SIZE) - 1;
+    }
+
+    private static Long key(int tileX, int tileY) {
+        return Long.valueOf(((long) tileX << 32) | (tileY & 0xffffffffL));
+    }
+
+    /**
+     * Returns the region of the play pen, in screen coordinates, that the
+     * tile with the given key shows.
+     */
+    private static Rectangle bounds(Long key) {
+        long k = key.longValue();
+        return new Rectangle((int) (k >> 32) * TILE_SIZE, (int) k * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.json.JSONObject;
+
+import ca.sqlpower.architect.enterprise.ArchitectPersisterSuperConverter;
+import ca.sqlpower.architect.enterprise.ArchitectSessionPersister;
+import ca.sqlpower.architect.profile.event.ProfileChangeEvent;
+import ca.sqlpower.architect.profile.event.ProfileChangeListener;
+import ca.sqlpower.dao.MessageSender;
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.SPPersisterListener;
+import ca.sqlpower.dao.json.SPJSONMessageDecoder;
+import ca.sqlpower.dao.json.SPJSONPersister;
+import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Records the changes made to the target database and the relational play
+ * pen of a session as persist calls, so a save can append only what changed
+ * since the last save to a journal next to the project file instead of
+ * rewriting the whole file.
+ * <p>
+ * The journal is a text file. Its first line is the generation of the project
+ * file it continues, which the project file stores in the
+ * <code>journal-generation</code> attribute of its project element. Each
+ * following line is one save: a JSON array of the messages an
+ * {@link SPJSONPersister} produced for the changes in that save. Opening the
+ * project loads the file and then replays the journal with an
+ * {@link ArchitectSessionPersister}, which is also how changes saved before a
+ * crash are recovered.
+ * <p>
+ * Changes to other parts of the project, such as adding or removing source
+ * databases or profiles, cannot be journaled and mark the journal as needing
+ * a new snapshot of the whole project.
+ */
+public class ProjectJournal {
+
+    private static final Logger logger = Logger.getLogger(ProjectJournal.class);
+
+    /**
+     * Added to the name of a project file to get the name of its journal.
+     */
+    public static final String JOURNAL_SUFFIX = ".journal"; //$NON-NLS-1$
+
+    private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+
+    /**
+     * A journal with this many saves in it is due to be compacted into a new
+     * snapshot of the project file.
+     */
+    private static final int COMPACTION_RECORD_LIMIT = 100;
+
+    private final ArchitectSwingSession session;
+
+    /**
+     * The messages of the transaction the persister is currently sending.
+     * They move to {@link #pending} when the transaction commits.
+     */
+    private final List<JSONObject> transaction = new ArrayList<JSONObject>();
+
+    /**
+     * The messages of committed transactions that have not been written to
+     * the journal yet.
+     */
+    private final List<JSONObject> pending = new ArrayList<JSONObject>();
+
+    /**
+     * Turns events from the target database and play pen into persist calls.
+     * Null when this journal is not attached to the session.
+     */
+    private SPPersisterListener persisterListener;
+
+    /**
+     * Set when a change was made that the journal cannot record, so the next
+     * save has to write the whole project.
+     */
+    private boolean snapshotRequired;
+
+    /**
+     * The number of saves in the journal file since its last snapshot.
+     */
+    private int recordCount;
+
+    /**
+     * The number of records at the end of the journal file that were not
+     * replayed because the first of them could not be applied.
+     */
+    private int droppedRecords;
+
+    /**
+     * Marks a new snapshot as required when source databases are added to or
+     * removed from the session.
+     */
+    private final AbstractSPListener rootListener = new AbstractSPListener() {
+        public void childAdded(SPChildEvent e) {
+            requireSnapshot();
+        }
+
+        public void childRemoved(SPChildEvent e) {
+            requireSnapshot();
+        }
+    };
+
+    /**
+     * Marks a new snapshot as required when profiles are added or removed, as
+     * they are only stored in the project file.
+     */
+    private final ProfileChangeListener profileListener = new ProfileChangeListener() {
+        public void profilesAdded(ProfileChangeEvent e) {
+            requireSnapshot();
+        }
+
+        public void profilesRemoved(ProfileChangeEvent e) {
+            requireSnapshot();
+        }
+
+        public void profileListChanged(ProfileChangeEvent event) {
+            requireSnapshot();
+        }
+    };
+
+    /**
+     * Collects the messages of the journal's persister in memory until the
+     * next save.
+     */
+    private class PendingChangesSender implements MessageSender<JSONObject> {
+
+        public void send(JSONObject content) {
+            synchronized (ProjectJournal.this) {
+                transaction.add(content);
+            }
+        }
+
+        public void flush() {
+            synchronized (ProjectJournal.this) {
+                pending.addAll(transaction);
+                transaction.clear();
+            }
+        }
+
+        public void clear() {
+            synchronized (ProjectJournal.this) {
+                transaction.clear();
+            }
+        }
+    }
+
+    public ProjectJournal(ArchitectSwingSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Returns the journal file that continues the given project file.
+     */
+    public static File getJournalFile(File projectFile) {
+        return new File(projectFile.getParentFile(), projectFile.getName() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Starts recording the changes made to the session's target database and
+     * relational play pen.
+     */
+    public void attach() {
+        if (persisterListener != null) return;
+        persisterListener = new SPPersisterListener(
+                new SPJSONPersister(new PendingChangesSender()), createConverter());
+        SQLPowerUtils.listenToHierarchy(session.getTargetDatabase(), persisterListener);
+        SQLPowerUtils.listenToHierarchy(session.getPlayPen().getContentPane(), persisterListener);
+        session.getRootObject().addSPListener(rootListener);
+        session.getProfileManager().addProfileChangeListener(profileListener);
+    }
+
+    /**
+     * Stops recording changes. Changes that were recorded but not appended
+     * are kept.
+     */
+    public void detach() {
+        if (persisterListener == null) return;
+        SQLPowerUtils.unlistenToHierarchy(session.getTargetDatabase(), persisterListener);
+        SQLPowerUtils.unlistenToHierarchy(session.getPlayPen().getContentPane(), persisterListener);
+        session.getRootObject().removeSPListener(rootListener);
+        session.getProfileManager().removeProfileChangeListener(profileListener);
+        persisterListener = null;
+    }
+
+    private SessionPersisterSuperConverter createConverter() {
+        return new ArchitectPersisterSuperConverter(session.getDataSources(), session.getWorkspace());
+    }
+
+    /**
+     * Returns true if changes were recorded that have not been appended to
+     * the journal file yet.
+     */
+    public synchronized boolean hasPendingChanges() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Returns true if the journal file holds saves that are not in the
+     * project file yet.
+     */
+    public synchronized boolean hasRecords() {
+        return recordCount > 0;
+    }
+
+    /**
+     * Returns true if a change was made that only a save of the whole project
+     * can store.
+     */
+    public synchronized boolean isSnapshotRequired() {
+        return snapshotRequired;
+    }
+
+    /**
+     * Makes the next save write the whole project.
+     */
+    public synchronized void requireSnapshot() {
+        snapshotRequired = true;
+    }
+
+    /**
+     * Returns true if the journal of the given project file has grown enough
+     * that it should be folded into a new snapshot: it holds many saves, or
+     * it is more than half the size of the project file.
+     */
+    public synchronized boolean isCompactionDue(File projectFile) {
+        return recordCount >= COMPACTION_RECORD_LIMIT
+            || getJournalFile(projectFile).length() > projectFile.length() / 2;
+    }
+
+    /**
+     * Appends the recorded changes to the journal of the given project file
+     * as one record and forces it to disk. The changes are only discarded
+     * from memory once the write succeeded.
+     */
+    public void append(File projectFile) throws IOException {
+        int count;
+        StringBuilder record = new StringBuilder();
+        synchronized (this) {
+            count = pending.size();
+            if (count == 0) return;
+            record.append('[');
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    record.append(',');
+                }
+                record.append(pending.get(i).toString());
+            }
+            record.append(']');
+        }
+        record.append('\n');
+
+        write(getJournalFile(projectFile), record.toString(), true);
+
+        synchronized (this) {
+            pending.subList(0, count).clear();
+            recordCount++;
+        }
+    }
+
+    /**
+     * Called before a snapshot of the whole project is written. Returns the
+     * number of recorded changes the snapshot will contain, to be passed to
+     * {@link #startGeneration(File, String, int)} once it has been written.
+     */
+    public synchronized int markSnapshot() {
+        snapshotRequired = false;
+        return pending.size();
+    }
+
+    /**
+     * Replaces the journal of the given project file with an empty one for
+     * the given generation, after a snapshot of the whole project was written
+     * with that generation.
+     *
+     * @param snapshotMark
+     *            the value {@link #markSnapshot()} returned before the
+     *            snapshot was written. Changes recorded after that are kept
+     *            for the next save.
+     */
+    public void startGeneration(File projectFile, String generation, int snapshotMark) throws IOException {
+        write(getJournalFile(projectFile), generation + "\n", false); //$NON-NLS-1$
+        synchronized (this) {
+            pending.subList(0, snapshotMark).clear();
+            recordCount = 0;
+        }
+    }
+
+    private void write(File journalFile, String text, boolean append) throws IOException {
+        FileOutputStream out = new FileOutputStream(journalFile, append);
+        try {
+            Writer writer = new OutputStreamWriter(out, ENCODING);
+            writer.write(text);
+            writer.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Applies the saves in the journal of the given project file to the
+     * session, which must have just been loaded from that file. The journal
+     * is only replayed if it was started for the given generation. Replaying
+     * stops at the first record that cannot be applied, as that is where a
+     * save was cut off by a crash: the rest of the journal is ignored and
+     * counted by {@link #getDroppedRecords()}, and the next save writes the
+     * whole project so nothing is appended after the damaged record.
+     *
+     * @return the number of records that were applied
+     */
+    public int replay(File projectFile, String generation) throws IOException {
+        File journalFile = getJournalFile(projectFile);
+        if (generation == null || !journalFile.exists()) return 0;
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), ENCODING));
+        try {
+            if (!generation.equals(in.readLine())) {
+                logger.info("Ignoring journal " + journalFile + " of a different version of the project file");
+                return 0;
+            }
+            ArchitectSessionPersister persister = new ArchitectSessionPersister(
+                    "journal-" + projectFile.getName(), session.getWorkspace(), createConverter()); //$NON-NLS-1$
+            persister.setWorkspaceContainer(session);
+            SPJSONMessageDecoder decoder = new SPJSONMessageDecoder(persister);
+
+            int applied = 0;
+            int dropped = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.length() == 0) continue;
+                if (dropped > 0) {
+                    dropped++;
+                    continue;
+                }
+                try {
+                    decoder.decode(line);
+                    applied++;
+                } catch (SPPersistenceException e) {
+                    logger.warn("Journal " + journalFile + " is cut off at record " + (applied + 1), e);
+                    dropped++;
+                } catch (RuntimeException e) {
+                    logger.warn("Journal " + journalFile + " is cut off at record " + (applied + 1), e);
+                    dropped++;
+                }
+            }
+            synchronized (this) {
+                recordCount = applied;
+                droppedRecords = dropped;
+                if (dropped > 0) {
+                    snapshotRequired = true;
+                }
+            }
+            return applied;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the number of records at the end of the journal that the last
+     * {@link #replay(File, String)} could not apply.
+     */
+    public synchronized int getDroppedRecords() {
+        return droppedRecords;
+    }
+}
@@ -123,7 +123,6 @@ public class SQLScriptDialog extends JDialog {
      *            The DDL generator that supplies the SQL script. The script
      *            will be obtained by a call to
      *            {@link DDLGenerator#getDdlStatements()}.
-     *            XXX: this should be a List of DDLStatement instead
      * @param targetDataSource
      *            The database to execute the statements in. This can be null,
      *            in which case the execute button will not function. Save and
@@ -139,6 +138,18 @@ public class SQLScriptDialog extends JDialog {
 			DDLGenerator gen, JDBCDataSource targetDataSource,
 			boolean closeParent, ArchitectSwingSession session )
 			throws HeadlessException {
+	    this(owner, title, header, modal, gen.getDdlStatements(), targetDataSource, closeParent, session);
+	}
+
+    /**
+     * Creates a SQLScriptDialog that shows the given statements. The other
+     * parameters are the same as for the constructor that takes a
+     * {@link DDLGenerator}.
+     */
+	public SQLScriptDialog(Dialog owner, String title, String header, boolean modal,
+	        List<DDLStatement> statements, JDBCDataSource targetDataSource,
+	        boolean closeParent, ArchitectSwingSession session)
+	        throws HeadlessException {
 		super(owner, title, modal);
         if (modal && owner == null) {
             JOptionPane.showMessageDialog(null,
@@ -147,7 +158,7 @@ public class SQLScriptDialog extends JDialog {
 		statusLabel = new JLabel();
 		parent = owner;
 		this.header = header;
-		this.statements = gen.getDdlStatements();
+		this.statements = statements;
 		this.targetDataSource = targetDataSource;
 		this.closeParent = closeParent;
         this.session = session;
@@ -20,24 +20,40 @@ package ca.sqlpower.architect.swingui;
 
 import java.awt.Color;
 import java.awt.Point;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
 import java.sql.SQLException;
+import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipOutputStream;
 
 import javax.swing.JOptionPane;
 import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.commons.digester.AbstractObjectCreationFactory;
@@ -49,14 +65,19 @@ import org.xml.sax.SAXException;
 
 import ca.sqlpower.architect.ArchitectSession;
 import ca.sqlpower.architect.ArchitectVersion;
+import ca.sqlpower.architect.ProjectContainer;
 import ca.sqlpower.architect.ProjectLoader;
+import ca.sqlpower.architect.ProjectSectionIndex;
+import ca.sqlpower.architect.StaxProjectReader;
 import ca.sqlpower.architect.UnclosableInputStream;
+import ca.sqlpower.architect.ProjectSectionIndex.Section;
 import ca.sqlpower.architect.ProjectSettings.ColumnVisibility;
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.LiquibaseSettings;
 import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
 import ca.sqlpower.architect.ddl.critic.CriticGrouping;
 import ca.sqlpower.architect.ddl.critic.CriticManager;
+import ca.sqlpower.architect.ddl.critic.ThresholdCritic;
 import ca.sqlpower.architect.ddl.critic.CriticAndSettings.Severity;
 import ca.sqlpower.architect.olap.MondrianXMLReader;
 import ca.sqlpower.architect.olap.MondrianXMLWriter;
@@ -143,6 +164,54 @@ public class SwingUIProjectLoader extends ProjectLoader {
      */
     private Map<OLAPPane<?, ?>, String> olapPaneSaveIdMap;
 
+    /**
+     * The position of each SQLObject in the order the source and target
+     * database sections visit them. Every object in these sections gets its
+     * ID before any section is written, so a section can tell which of the
+     * objects it refers to an earlier section or an earlier part of itself
+     * has already written.
+     */
+    private Map<SQLObject, Integer> sqlObjectSaveOrder;
+
+    /**
+     * The source databases and schemas of the save that were left out when
+     * the project was loaded and have still not been read, by the section of
+     * the project file each is written back from.
+     */
+    private Map<SQLObject, Section> copiedSections;
+
+    /**
+     * The source databases of the save that were read but have schemas that
+     * were not, by the section of the project file their relationships that
+     * were not read either are written back from.
+     */
+    private Map<SQLObject, Section> partlyReadDatabases;
+
+    /**
+     * The ids the elements of the sections written back from the project
+     * file have in the save.
+     */
+    private ProjectSectionIndex.IdRemapping sectionIds;
+
+    /**
+     * The numbers given to the ids of the elements of the sections written
+     * back from the project file, which are skipped when the other
+     * SQLObjects get their ids.
+     */
+    private long reservedSQLObjectIds;
+
+    /**
+     * The position of the next SQLObject to be written by the section this
+     * loader is writing.
+     */
+    private int nextSaveOrder;
+
+    /**
+     * The loader whose save this loader is writing a section of, or null if
+     * this loader is not writing a section for another.
+     */
+    private SwingUIProjectLoader sectionOwner;
+
     /**
      * This map maps String ID codes to OLAPPane instances used in loading.
      */
@@ -153,6 +222,78 @@ public class SwingUIProjectLoader extends ProjectLoader {
      */
     private ProgressMonitor pm;
 
+    /**
+     * True if saves append the changes made since the last save to a
+     * {@link ProjectJournal} next to the project file instead of rewriting the
+     * whole file. The journal is folded into the project file in the
+     * background once it grows large. Journaled saves can be made the default
+     * by setting the system property
+     * <code>ca.sqlpower.architect.journaledSave</code> to true.
+     */
+    private boolean journaledSave = Boolean.getBoolean("ca.sqlpower.architect.journaledSave");
+
+    /**
+     * Records the changes to append on the next journaled save. Null until the
+     * project has been loaded from or saved to a file with journaled saves on.
+     */
+    private ProjectJournal journal;
+
+    /**
+     * The project name and settings that the journal cannot record, as they
+     * were written to the project file the journal continues. A save appends
+     * to the journal only while they are unchanged. Null until the project has
+     * been loaded or saved with journaled saves on.
+     */
+    private String journaledSettings;
+
+    /**
+     * True if saves to the project file write a compressed
+     * {@link ProjectContainer} instead of plain XML. Either format is read
+     * when a project is loaded. Compressed saves can be made the default by
+     * setting the system property <code>ca.sqlpower.architect.compressedSave</code>
+     * to true.
+     */
+    private boolean compressedSave = Boolean.getBoolean("ca.sqlpower.architect.compressedSave");
+
+    /**
+     * Added to the name of a project file to get the name of its autosave
+     * file.
+     */
+    public static final String AUTOSAVE_SUFFIX = ".autosave"; //$NON-NLS-1$
+
+    private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+
+    /**
+     * The snapshot the project is being captured into, or null if no capture
+     * is running.
+     */
+    private ProjectSnapshot capturing;
+
+    /**
+     * Held while a snapshot or a journal record is written to disk, so a save
+     * on the foreground thread never writes at the same time as one on the
+     * save executor.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * The number of sections of a project that are written at the same time.
+     */
+    private static final int SECTION_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Writes the sections of projects. Saves only use it when there is more
+     * than one processor.
+     */
+    private static final ExecutorService sectionExecutor =
+        Executors.newFixedThreadPool(SECTION_THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Project section writer"); //$NON-NLS-1$
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
     /**
      * Sets up a new project file load/save object for the given session.
      * 
@@ -191,6 +332,7 @@ public class SwingUIProjectLoader extends ProjectLoader {
             ArchitectSession messageDelegate) throws IOException, SQLObjectException {
         olapPaneLoadIdMap = new HashMap<String, OLAPPane<?, ?>>();
         
+        in = ProjectContainer.openProject(in);
         UnclosableInputStream uin = new UnclosableInputStream(in);
         olapObjectLoadIdMap = new HashMap<String, OLAPObject>();
         
@@ -247,78 +389,135 @@ public class SwingUIProjectLoader extends ProjectLoader {
     protected Digester setupDigester() throws ParserConfigurationException, SAXException {
         Digester d = super.setupDigester();
         
-        PrintSettingsFactory printSettingsFactory = new PrintSettingsFactory();
         d.addFactoryCreate("*/print-settings", printSettingsFactory);
         d.addSetProperties("*/print-settings");
 
         // the play pen
-        RelationalPlayPenFactory ppFactory = new RelationalPlayPenFactory();
         d.addFactoryCreate("architect-project/play-pen", ppFactory); //$NON-NLS-1$
         
-        TablePaneFactory tablePaneFactory = new TablePaneFactory();
         d.addFactoryCreate("*/play-pen/table-pane", tablePaneFactory); //$NON-NLS-1$
         // factory will add the tablepanes to the playpen
         
-        PPRelationshipFactory ppRelationshipFactory = new PPRelationshipFactory();
         d.addFactoryCreate("*/play-pen/table-link", ppRelationshipFactory); //$NON-NLS-1$
         
-        CompareDMSettingFactory settingFactory = new CompareDMSettingFactory();
         d.addFactoryCreate("architect-project/compare-dm-settings", settingFactory); //$NON-NLS-1$
         d.addSetProperties("architect-project/compare-dm-settings"); //$NON-NLS-1$
 
-        CompareDMStuffSettingFactory sourceStuffFactory = new CompareDMStuffSettingFactory(true);
         d.addFactoryCreate("architect-project/compare-dm-settings/source-stuff", sourceStuffFactory); //$NON-NLS-1$
         d.addSetProperties("architect-project/compare-dm-settings/source-stuff"); //$NON-NLS-1$
 
-        CompareDMStuffSettingFactory targetStuffFactory = new CompareDMStuffSettingFactory(false);
         d.addFactoryCreate("architect-project/compare-dm-settings/target-stuff", targetStuffFactory); //$NON-NLS-1$
         d.addSetProperties("architect-project/compare-dm-settings/target-stuff"); //$NON-NLS-1$
 
-        LiquibaseSettingsFactory lbSettingsFactory = new LiquibaseSettingsFactory();
         d.addFactoryCreate("architect-project/compare-dm-settings/liquibase-settings", lbSettingsFactory); //$NON-NLS-1$
         d.addSetProperties("architect-project/compare-dm-settings/liquibase-settings"); //$NON-NLS-1$
 
-        CreateKettleJobSettingsFactory ckjsFactory = new CreateKettleJobSettingsFactory();
         d.addFactoryCreate("architect-project/create-kettle-job-settings", ckjsFactory); //$NON-NLS-1$
         d.addSetProperties("architect-project/create-kettle-job-settings"); //$NON-NLS-1$
         
-        CriticManagerFactory criticManagerFactory = new CriticManagerFactory();
         d.addFactoryCreate("architect-project/critic-manager", criticManagerFactory);
         d.addSetProperties("architect-project/critic-manager");
         
-        CriticGroupingFactory criticGroupingFactory = new CriticGroupingFactory();
         d.addFactoryCreate("architect-project/critic-manager/critic-grouping", criticGroupingFactory);
         d.addSetProperties("architect-project/critic-manager/critic-grouping");
         
-        CriticSettingsFactory criticSettingsFactory = new CriticSettingsFactory();
         d.addFactoryCreate("architect-project/critic-manager/critic-grouping/critic-settings", criticSettingsFactory);
         
         // olap factories
         
-        OLAPEditSessionFactory editSessionFactory = new OLAPEditSessionFactory();
         d.addFactoryCreate("architect-project/olap-gui/olap-edit-session", editSessionFactory); //$NON-NLS-1$
         
-        OLAPPlayPenFactory olapPPFactory = new OLAPPlayPenFactory();
         d.addFactoryCreate("architect-project/olap-gui/olap-edit-session/play-pen", olapPPFactory); //$NON-NLS-1$
 
-        CubePaneFactory cubePaneFactory = new CubePaneFactory();
         d.addFactoryCreate("*/play-pen/cube-pane", cubePaneFactory); //$NON-NLS-1$
         
-        VirtualCubePaneFactory virtualCubePaneFactory = new VirtualCubePaneFactory();
         d.addFactoryCreate("*/play-pen/virtual-cube-pane", virtualCubePaneFactory); //$NON-NLS-1$
         
-        DimensionPaneFactory dimensionPaneFactory = new DimensionPaneFactory();
         d.addFactoryCreate("*/play-pen/dimension-pane", dimensionPaneFactory); //$NON-NLS-1$
         
-        UsageComponentFactory usageCompFactory = new UsageComponentFactory();
         d.addFactoryCreate("*/play-pen/usage-comp", usageCompFactory); //$NON-NLS-1$
 
         return d;
     }
+
+    /*
+     * The factories that create the objects of the elements this loader adds,
+     * for both the Digester and the streaming reader.
+     */
+    private final PrintSettingsFactory printSettingsFactory = new PrintSettingsFactory();
+    private final RelationalPlayPenFactory ppFactory = new RelationalPlayPenFactory();
+    private final TablePaneFactory tablePaneFactory = new TablePaneFactory();
+    private final PPRelationshipFactory ppRelationshipFactory = new PPRelationshipFactory();
+    private final CompareDMSettingFactory settingFactory = new CompareDMSettingFactory();
+    private final CompareDMStuffSettingFactory sourceStuffFactory = new CompareDMStuffSettingFactory(true);
+    private final CompareDMStuffSettingFactory targetStuffFactory = new CompareDMStuffSettingFactory(false);
+    private final LiquibaseSettingsFactory lbSettingsFactory = new LiquibaseSettingsFactory();
+    private final CreateKettleJobSettingsFactory ckjsFactory = new CreateKettleJobSettingsFactory();
+    private final CriticManagerFactory criticManagerFactory = new CriticManagerFactory();
+    private final CriticGroupingFactory criticGroupingFactory = new CriticGroupingFactory();
+    private final CriticSettingsFactory criticSettingsFactory = new CriticSettingsFactory();
+    private final OLAPEditSessionFactory editSessionFactory = new OLAPEditSessionFactory();
+    private final OLAPPlayPenFactory olapPPFactory = new OLAPPlayPenFactory();
+    private final CubePaneFactory cubePaneFactory = new CubePaneFactory();
+    private final VirtualCubePaneFactory virtualCubePaneFactory = new VirtualCubePaneFactory();
+    private final DimensionPaneFactory dimensionPaneFactory = new DimensionPaneFactory();
+    private final UsageComponentFactory usageCompFactory = new UsageComponentFactory();
+
+    @Override
+    protected Object startElement(StaxProjectReader reader, String name, Object parent, Attributes attributes) throws Exception {
+        Object obj;
+        if (reader.matches("*/play-pen/table-pane")) { //$NON-NLS-1$
+            obj = tablePaneFactory.createObject(parent, attributes);
+        } else if (reader.matches("*/play-pen/table-link")) { //$NON-NLS-1$
+            obj = ppRelationshipFactory.createObject(parent, attributes);
+        } else if (reader.matches("architect-project/play-pen")) { //$NON-NLS-1$
+            obj = ppFactory.createObject(attributes);
+        } else if (reader.matches("*/print-settings")) { //$NON-NLS-1$
+            obj = printSettingsFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("architect-project/compare-dm-settings")) { //$NON-NLS-1$
+            obj = settingFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("architect-project/compare-dm-settings/source-stuff")) { //$NON-NLS-1$
+            obj = sourceStuffFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("architect-project/compare-dm-settings/target-stuff")) { //$NON-NLS-1$
+            obj = targetStuffFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("architect-project/compare-dm-settings/liquibase-settings")) { //$NON-NLS-1$
+            obj = lbSettingsFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("architect-project/create-kettle-job-settings")) { //$NON-NLS-1$
+            obj = ckjsFactory.createObject(attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("architect-project/critic-manager")) {
+            obj = criticManagerFactory.createObject(parent, attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("architect-project/critic-manager/critic-grouping")) {
+            obj = criticGroupingFactory.createObject(parent, attributes);
+            reader.setProperties(obj);
+        } else if (reader.matches("architect-project/critic-manager/critic-grouping/critic-settings")) {
+            obj = criticSettingsFactory.createObject(parent, attributes);
+        } else if (reader.matches("architect-project/olap-gui/olap-edit-session")) { //$NON-NLS-1$
+            obj = editSessionFactory.createObject(attributes);
+        } else if (reader.matches("architect-project/olap-gui/olap-edit-session/play-pen")) { //$NON-NLS-1$
+            obj = olapPPFactory.createObject(parent, attributes);
+        } else if (reader.matches("*/play-pen/cube-pane")) { //$NON-NLS-1$
+            obj = cubePaneFactory.createObject(parent, attributes);
+        } else if (reader.matches("*/play-pen/virtual-cube-pane")) { //$NON-NLS-1$
+            obj = virtualCubePaneFactory.createObject(parent, attributes);
+        } else if (reader.matches("*/play-pen/dimension-pane")) { //$NON-NLS-1$
+            obj = dimensionPaneFactory.createObject(parent, attributes);
+        } else if (reader.matches("*/play-pen/usage-comp")) { //$NON-NLS-1$
+            obj = usageCompFactory.createObject(parent, attributes);
+        } else {
+            obj = super.startElement(reader, name, parent, attributes);
+        }
+        return obj;
+    }
     
-    private class OLAPPlayPenFactory extends AbstractObjectCreationFactory {
-        public Object createObject(Attributes attributes) {
-            Object topItem = getDigester().peek();
+    private class OLAPPlayPenFactory extends NestedObjectFactory {
+        public Object createObject(Object topItem, Attributes attributes) {
             if (!(topItem instanceof OLAPEditSession)) {
                 logger.error("Expected parent OLAPEditSession object on top of stack but found: " + topItem); //$NON-NLS-1$
                 throw new IllegalStateException("Parent OLAPEditSession not found!"); //$NON-NLS-1$
@@ -336,6 +535,11 @@ public class SwingUIProjectLoader extends ProjectLoader {
             PlayPen pp = getSession().getPlayPen();
         	setupGenericPlayPen(pp, attributes);
         	
+        	String uuid = attributes.getValue("UUID"); //$NON-NLS-1$
+        	if (uuid != null) {
+        	    pp.getContentPane().setUUID(uuid);
+        	}
+        	
         	// default values in playpen are true
         	
         	String columnVisibility = attributes.getValue("columnVisibility"); //$NON-NLS-1$
@@ -430,9 +634,8 @@ public class SwingUIProjectLoader extends ProjectLoader {
         logger.debug("Viewport position is " + pp.getViewPosition()); //$NON-NLS-1$
     }
 
-    private class TablePaneFactory extends AbstractObjectCreationFactory {
-        public Object createObject(Attributes attributes) {
-            Object topItem = getDigester().peek();
+    private class TablePaneFactory extends NestedObjectFactory {
+        public Object createObject(Object topItem, Attributes attributes) {
             if (!(topItem instanceof PlayPen)) {
                 logger.error("Expected parent PlayPen object on top of stack but found: " + topItem); //$NON-NLS-1$
                 throw new IllegalStateException("Parent PlayPen object not found!"); //$NON-NLS-1$
@@ -444,6 +647,11 @@ public class SwingUIProjectLoader extends ProjectLoader {
             SQLTable tab = (SQLTable) sqlObjectLoadIdMap.get(attributes.getValue("table-ref")); //$NON-NLS-1$
             TablePane tp = new TablePane(tab, pp.getContentPane());
             
+            String uuid = attributes.getValue("UUID"); //$NON-NLS-1$
+            if (uuid != null) {
+                tp.setUUID(uuid);
+            }
+            
             String bgColorString = attributes.getValue("bgColor"); //$NON-NLS-1$
             if (bgColorString != null) {
                 Color bgColor = Color.decode(bgColorString);
@@ -466,9 +674,8 @@ public class SwingUIProjectLoader extends ProjectLoader {
         }
     }
     
-    private class CubePaneFactory extends AbstractObjectCreationFactory {
-        public Object createObject(Attributes attributes) {
-            Object topItem = getDigester().peek();
+    private class CubePaneFactory extends NestedObjectFactory {
+        public Object createObject(Object topItem, Attributes attributes) {
             if (!(topItem instanceof PlayPen)) {
                 logger.error("Expected parent PlayPen object on top of stack but found: " + topItem); //$NON-NLS-1$
                 throw new IllegalStateException("Parent PlayPen object not found!"); //$NON-NLS-1$
@@ -493,9 +700,8 @@ public class SwingUIProjectLoader extends ProjectLoader {
         }
     }
     
-    private class VirtualCubePaneFactory extends AbstractObjectCreationFactory {
-        public Object createObject(Attributes attributes) {
-            Object topItem = getDigester().peek();
+    private class VirtualCubePaneFactory extends NestedObjectFactory {
+        public Object createObject(Object topItem, Attributes attributes) {
             if (!(topItem instanceof PlayPen)) {
                 logger.error("Expected parent PlayPen object on top of stack but found: " + topItem); //$NON-NLS-1$
                 throw new IllegalStateException("Parent PlayPen object not found!"); //$NON-NLS-1$
@@ -520,9 +726,8 @@ public class SwingUIProjectLoader extends ProjectLoader {
         }
     }
     
-    private class DimensionPaneFactory extends AbstractObjectCreationFactory {
-        public Object createObject(Attributes attributes) {
-            Object topItem = getDigester().peek();
+    private class DimensionPaneFactory extends NestedObjectFactory {
+        public Object createObject(Object topItem, Attributes attributes) {
             if (!(topItem instanceof PlayPen)) {
                 logger.error("Expected parent PlayPen object on top of stack but found: " + topItem); //$NON-NLS-1$
                 throw new IllegalStateException("Parent PlayPen object not found!"); //$NON-NLS-1$
@@ -547,9 +752,8 @@ public class SwingUIProjectLoader extends ProjectLoader {
         }
     }
 
-    private class PPRelationshipFactory extends AbstractObjectCreationFactory {
-        public Object createObject(Attributes attributes) {
-            Object topItem = getDigester().peek();
+    private class PPRelationshipFactory extends NestedObjectFactory {
+        public Object createObject(Object topItem, Attributes attributes) {
             if (!(topItem instanceof PlayPen)) {
                 logger.error("Expected parent PlayPen object on top of stack but found: " + topItem); //$NON-NLS-1$
                 throw new IllegalStateException("Parent PlayPen object not found!"); //$NON-NLS-1$
@@ -562,6 +766,10 @@ public class SwingUIProjectLoader extends ProjectLoader {
                     SQLRelationship rel =
                         (SQLRelationship) sqlObjectLoadIdMap.get(attributes.getValue("relationship-ref")); //$NON-NLS-1$
                     r = new Relationship(rel, pp.getContentPane());
+                    String uuid = attributes.getValue("UUID"); //$NON-NLS-1$
+                    if (uuid != null) {
+                        r.setUUID(uuid);
+                    }
                     pp.addRelationship(r);
                     r.updateUI();
                     
@@ -628,9 +836,8 @@ public class SwingUIProjectLoader extends ProjectLoader {
         }
     }
     
-    private class UsageComponentFactory extends AbstractObjectCreationFactory {
-        public Object createObject(Attributes attributes) {
-            Object topItem = getDigester().peek();
+    private class UsageComponentFactory extends NestedObjectFactory {
+        public Object createObject(Object topItem, Attributes attributes) {
             if (!(topItem instanceof PlayPen)) {
                 logger.error("Expected parent PlayPen object on top of stack but found: " + topItem); //$NON-NLS-1$
                 throw new IllegalStateException("Parent PlayPen object not found!"); //$NON-NLS-1$
@@ -705,10 +912,9 @@ public class SwingUIProjectLoader extends ProjectLoader {
         
     }
     
-    private class CriticGroupingFactory extends AbstractObjectCreationFactory {
+    private class CriticGroupingFactory extends NestedObjectFactory {
         @Override
-        public Object createObject(Attributes attr) throws Exception {
-            Object topItem = getDigester().peek();
+        public Object createObject(Object topItem, Attributes attr) throws Exception {
             if (!(topItem instanceof CriticManager)) {
                 logger.error("Expected parent CriticManager object on top of stack but found: " + topItem); //$NON-NLS-1$
                 throw new IllegalStateException("Ancestor CriticManager object not found!"); //$NON-NLS-1$
@@ -724,10 +930,9 @@ public class SwingUIProjectLoader extends ProjectLoader {
         
     }
     
-    private class CriticManagerFactory extends AbstractObjectCreationFactory {
+    private class CriticManagerFactory extends NestedObjectFactory {
         @Override
-        public Object createObject(Attributes attr) throws Exception {
-            Object topItem = getDigester().peek();
+        public Object createObject(Object topItem, Attributes attr) throws Exception {
             if (!(topItem instanceof ArchitectSwingSession)) {
                 logger.error("Expected parent ArchitectSwingSession object on top of stack but found: " + topItem); //$NON-NLS-1$
                 throw new IllegalStateException("Ancestor ArchitectSwingSession object not found!"); //$NON-NLS-1$
@@ -739,10 +944,9 @@ public class SwingUIProjectLoader extends ProjectLoader {
         }
     }
     
-    private class CriticSettingsFactory extends AbstractObjectCreationFactory {
+    private class CriticSettingsFactory extends NestedObjectFactory {
         @Override
-        public Object createObject(Attributes attr) throws Exception {
-            Object topItem = getDigester().peek();
+        public Object createObject(Object topItem, Attributes attr) throws Exception {
             if (!(topItem instanceof CriticGrouping)) {
                 logger.error("Expected parent CriticGrouping object on top of stack but found: " + topItem); //$NON-NLS-1$
                 throw new IllegalStateException("Ancestor CriticGrouping object not found!"); //$NON-NLS-1$
@@ -756,6 +960,11 @@ public class SwingUIProjectLoader extends ProjectLoader {
             String severity = attr.getValue("severity");
             criticSettings.setSeverity(Severity.valueOf(severity));
             
+            String threshold = attr.getValue("threshold");
+            if (threshold != null && criticSettings instanceof ThresholdCritic) {
+                ((ThresholdCritic) criticSettings).setThreshold(Integer.parseInt(threshold));
+            }
+            
             group.getParent().registerCritic(criticSettings);
             return criticSettings;
         }
@@ -767,12 +976,188 @@ public class SwingUIProjectLoader extends ProjectLoader {
     /**
      * Saves this project by writing an XML description of it to a temp file, then renaming.
      * The location of the file is determined by this project's <code>file</code> property.
+     * <p>
+     * The XML is captured into memory on the session's foreground thread,
+     * where nothing can change the model under it, and then written to disk on
+     * the calling thread. When this is called on the save executor the
+     * foreground thread is only held up for the capture, and changes the user
+     * makes while the file is being written go into the next save.
+     * <p>
+     * With journaled saves on, the changes made since the last save are appended
+     * to the project's {@link ProjectJournal} instead whenever the journal can
+     * hold all of them.
      *
      * @param pm An optional progress monitor which will be initialised then updated
      * periodically during the save operation.  If you use a progress monitor, don't
      * invoke this method on the AWT event dispatch thread!
      */
     public void save(ProgressMonitor pm) throws IOException, SQLObjectException {
+        if (canAppendToJournal()) {
+            synchronized (writeLock) {
+                journal.append(file);
+            }
+            setModified(false);
+            if (journal.isCompactionDue(file)) {
+                compactInBackground();
+            }
+            return;
+        }
+        saveSnapshot(pm);
+    }
+
+    /**
+     * Returns true if the next save can append to the project's journal: the
+     * project file on disk was written by this version with the journal's
+     * generation, there are changes to append, and all of them were made where
+     * the journal records them. A save with nothing to append writes the
+     * whole project so settings that are only kept in the project file are
+     * saved.
+     */
+    private boolean canAppendToJournal() {
+        if (!journaledSave || journal == null || journalGeneration == null || file == null || !file.exists()) {
+            return false;
+        }
+        if (!ArchitectVersion.APP_FULL_VERSION.toString().equals(fileVersion) || journal.isSnapshotRequired()) {
+            return false;
+        }
+        for (OLAPEditSession oSession : getSession().getOLAPEditSessions()) {
+            if (oSession.isModified()) {
+                return false;
+            }
+        }
+        if (!journal.hasPendingChanges()) {
+            return false;
+        }
+        if (journaledSettings == null || !journaledSettings.equals(captureUnjournaledSettings())) {
+            journal.requireSnapshot();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the project name and the settings the journal does not record
+     * into a string, on the session's foreground thread, so a save can tell
+     * whether any of them changed since the project file was written.
+     */
+    private String captureUnjournaledSettings() throws IOException {
+        final String[] settings = new String[1];
+        final IOException[] error = new IOException[1];
+        runOnForeground(new Runnable() {
+            public void run() {
+                try {
+                    settings[0] = writeUnjournaledSettings();
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return settings[0];
+    }
+
+    /**
+     * Writes the project name and the settings the journal does not record
+     * the way a save writes them. Changes to profiles and source databases
+     * are caught by the journal itself.
+     */
+    private String writeUnjournaledSettings() throws IOException {
+        SwingUIProjectLoader writer = new SwingUIProjectLoader(getSession());
+        StringWriter buffer = new StringWriter();
+        PrintWriter out = new PrintWriter(buffer);
+        writer.ioo.println(out, SQLPowerUtils.escapeXML(getSession().getName()));
+        writer.savePrintSettings(out, getSession().getPrintSettings());
+        writer.saveDDLGenerator(out);
+        writer.saveCompareDMSettings(out);
+        writer.saveCreateKettleJobSettings(out);
+        writer.saveCriticSettings(out);
+        out.flush();
+        return buffer.toString();
+    }
+
+    /**
+     * Folds the project's journal into a new project file on the session's
+     * save executor.
+     */
+    private void compactInBackground() {
+        getSession().getSaveExecutor().execute(new Runnable() {
+            public void run() {
+                setSaveInProgress(true);
+                try {
+                    compactJournal();
+                } catch (Exception e) {
+                    logger.error("Could not compact the journal of " + file + //$NON-NLS-1$
+                            "; it will be replayed when the project is opened", e); //$NON-NLS-1$
+                } finally {
+                    setSaveInProgress(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the whole project to its file and starts a new, empty journal,
+     * if the current journal holds any saves. This does nothing if journaled
+     * saves are off.
+     */
+    public void compactJournal() throws IOException, SQLObjectException {
+        if (!journaledSave || journal == null || !journal.hasRecords() || file == null) return;
+        saveSnapshot(null);
+    }
+
+    /**
+     * Applies the saves in the journal next to the project file to the project
+     * that was just loaded from it. This must be called after
+     * {@link #load(InputStream, DataSourceCollection, ArchitectSession)} and
+     * {@link #setFile(File)}. The journal is replayed whether or not journaled
+     * saves are on, so changes saved with a journal are never lost; with
+     * journaled saves on, the changes made from here on are recorded for the
+     * next save.
+     */
+    public void replayJournal() throws IOException {
+        if (file == null) return;
+        ProjectJournal loadedJournal = new ProjectJournal(getSession());
+        int records;
+        try {
+            getSession().getUndoManager().setLoading(true);
+            records = loadedJournal.replay(file, journalGeneration);
+        } finally {
+            getSession().getUndoManager().setLoading(false);
+        }
+        if (records > 0) {
+            logger.info("Replayed " + records + " saves from the journal of " + file); //$NON-NLS-1$ //$NON-NLS-2$
+            getSession().getUndoManager().discardAllEdits();
+        }
+        int dropped = loadedJournal.getDroppedRecords();
+        if (dropped > 0) {
+            UserPrompter prompter = getSession().createUserPrompter(
+                    Messages.getString("SwingUIProject.journalCutOff", file.getName(), //$NON-NLS-1$
+                            String.valueOf(records), String.valueOf(dropped)),
+                    UserPromptType.MESSAGE, UserPromptOptions.OK, UserPromptResponse.OK, null, "OK"); //$NON-NLS-1$
+            prompter.promptUser();
+        }
+        if (journaledSave) {
+            journal = loadedJournal;
+            journal.attach();
+            journaledSettings = writeUnjournaledSettings();
+        }
+        // the changes after the cut are lost unless the project is saved
+        // again, which also writes a journal without the damaged records
+        setModified(dropped > 0);
+    }
+
+    /**
+     * Captures the whole project and writes it to a temp file, then renames
+     * the temp file over the project file. With journaled saves on, the
+     * project file gets a new journal generation and the journal is started
+     * over for it; the changes it recorded before the capture are dropped, as
+     * the snapshot holds them.
+     * 
+     * @return false if the user cancelled the save
+     */
+    private boolean saveSnapshot(ProgressMonitor pm) throws IOException, SQLObjectException {
         // write to temp file and then rename (this preserves old project file
         // when there's problems)
         if (file.exists() && !file.canWrite()) {
@@ -799,26 +1184,10 @@ public class SwingUIProjectLoader extends ProjectLoader {
                     UserPromptResponse.OK, "OK", "Cancel");
             UserPromptResponse response = prompter.promptUser();
             if (response.equals(UserPromptResponse.CANCEL)) {
-                return;
+                return false;
             }
         }
 
-        File backupFile = new File (file.getParent(), file.getName()+"~"); //$NON-NLS-1$
-
-        // Several places we would check dir perms, but MS-Windows stupidly doesn't let use the
-        // "directory write" attribute for directory writing (but instead overloads
-        // it to mean 'this is a special directory'.
-
-        File tempFile = null;
-        tempFile = new File (file.getParent(),"tmp___" + file.getName()); //$NON-NLS-1$
-        String encoding = "UTF-8"; //$NON-NLS-1$
-        try {
-            // If creating this temp file fails, feed the user back a more explanatory message
-            out = new PrintWriter(tempFile,encoding);
-        } catch (IOException e) {
-            throw new SQLObjectException(Messages.getString("SwingUIProject.cannotCreateOutputFile") + e, e); //$NON-NLS-1$
-        }
-
         progress = 0;
         this.pm = pm;
         if (pm != null) {
@@ -835,11 +1204,177 @@ public class SwingUIProjectLoader extends ProjectLoader {
             pm.setMillisToDecideToPopup(0);
         }
 
-        save(out,encoding);	// Does ALL the actual I/O
-        out = null;
-        if (pm != null)
-            pm.close();
-        pm = null;
+        boolean written = false;
+        try {
+            ProjectSnapshot snapshot = captureSnapshot(false);
+            if (pm != null)
+                pm.close();
+            pm = null;
+
+            synchronized (writeLock) {
+                writeSnapshot(snapshot, file, true);
+                written = true;
+                String previousGeneration = journalGeneration;
+                journalGeneration = snapshot.generation;
+                journaledSettings = snapshot.settings;
+                if (snapshot.generation != null) {
+                    journal.startGeneration(file, snapshot.generation, snapshot.journalMark);
+                } else if (previousGeneration != null) {
+                    ProjectJournal.getJournalFile(file).delete();
+                }
+                getAutosaveFile(file).delete();
+            }
+        } finally {
+            if (!written) {
+                // the capture may have marked the project as saved
+                setModified(true);
+                if (journal != null) {
+                    journal.requireSnapshot();
+                }
+            }
+        }
+        fileVersion = ArchitectVersion.APP_FULL_VERSION.toString();
+        return true;
+    }
+
+    /**
+     * Writes the XML of the whole project into memory on the session's
+     * foreground thread, waiting for it if this is called on another thread.
+     * Source databases, profiles, OLAP models and settings all change without
+     * marking the project as modified, so a capture running alongside the
+     * foreground thread could not tell it had seen one of them halfway
+     * through a change. The snapshot is consistent however long it then takes
+     * to write it to disk.
+     * 
+     * @param autosave
+     *            true if the snapshot is for the autosave file. Such a
+     *            snapshot does not mark the project as saved and does not
+     *            start a new journal generation.
+     */
+    private ProjectSnapshot captureSnapshot(final boolean autosave) throws IOException {
+        if (getSession().isForegroundThread()) {
+            return captureOnForeground(autosave);
+        }
+        final ProjectSnapshot[] snapshot = new ProjectSnapshot[1];
+        final IOException[] error = new IOException[1];
+        runOnForeground(new Runnable() {
+            public void run() {
+                try {
+                    snapshot[0] = captureOnForeground(autosave);
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return snapshot[0];
+    }
+
+    /**
+     * Captures the whole project on the foreground thread.
+     */
+    private ProjectSnapshot captureOnForeground(boolean autosave) throws IOException {
+        ProjectSnapshot snapshot = new ProjectSnapshot(autosave);
+        startCapture(snapshot);
+        capturing = snapshot;
+        try {
+            save(new PrintWriter(new OutputStreamWriter(snapshot, ENCODING)), ENCODING);
+        } finally {
+            capturing = null;
+        }
+        finishCapture(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Records what a capture needs before the project is written: the journal
+     * generation and the changes the journal recorded so far, and the
+     * settings the journal does not record.
+     */
+    private void startCapture(ProjectSnapshot snapshot) throws IOException {
+        if (!snapshot.autosave && journaledSave) {
+            if (journal == null) {
+                journal = new ProjectJournal(getSession());
+                journal.attach();
+            }
+            snapshot.journalMark = journal.markSnapshot();
+            snapshot.generation = UUID.randomUUID().toString();
+            snapshot.settings = writeUnjournaledSettings();
+        }
+    }
+
+    /**
+     * Finishes a capture. A snapshot that is not for the autosave file marks
+     * the project as saved.
+     */
+    private void finishCapture(ProjectSnapshot snapshot) {
+        if (!snapshot.autosave) {
+            setModified(false);
+            for (OLAPEditSession oSession : getSession().getOLAPEditSessions()) {
+                oSession.saveNotify();
+            }
+        }
+    }
+
+    /**
+     * Runs the given runnable on the session's foreground thread and waits
+     * for it to finish.
+     */
+    private void runOnForeground(Runnable runnable) throws InterruptedIOException {
+        if (getSession().isForegroundThread()) {
+            runnable.run();
+            return;
+        }
+        try {
+            SwingUtilities.invokeAndWait(runnable);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while capturing the project to save"); //$NON-NLS-1$
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes a captured snapshot to a temp file next to the given file, then
+     * renames the temp file over it. A container is written if compressed
+     * saves are on.
+     * 
+     * @param backup
+     *            true to keep the file being replaced as a backup file
+     *            ending in ~
+     */
+    private void writeSnapshot(ProjectSnapshot snapshot, File target, boolean backup) throws IOException, SQLObjectException {
+        File backupFile = new File (target.getParent(), target.getName()+"~"); //$NON-NLS-1$
+
+        // Several places we would check dir perms, but MS-Windows stupidly doesn't let use the
+        // "directory write" attribute for directory writing (but instead overloads
+        // it to mean 'this is a special directory'.
+
+        File tempFile = null;
+        tempFile = new File (target.getParent(),"tmp___" + target.getName()); //$NON-NLS-1$
+        OutputStream out;
+        try {
+            // If creating this temp file fails, feed the user back a more explanatory message
+            out = new FileOutputStream(tempFile);
+        } catch (IOException e) {
+            throw new SQLObjectException(Messages.getString("SwingUIProject.cannotCreateOutputFile") + e, e); //$NON-NLS-1$
+        }
+        try {
+            if (compressedSave) {
+                ZipOutputStream zip = ProjectContainer.createContainer(out);
+                out = zip;
+                snapshot.writeSections(zip);
+            } else {
+                snapshot.writeTo(out);
+            }
+        } finally {
+            out.close();
+        }
 
         // Do the rename dance.
         // This is a REALLY bad place for failure (especially if we've made the user wait several hours to save
@@ -850,21 +1385,141 @@ public class SwingUIProjectLoader extends ProjectLoader {
 
         // If this is a brand new project, the old file does not yet exist, no point trying to rename it.
         // But if it already existed, renaming current to backup must succeed, or we give up.
-        if (file.exists()) {
-            fstatus = file.renameTo(backupFile);
+        if (target.exists()) {
+            fstatus = backup ? target.renameTo(backupFile) : target.delete();
             logger.debug("rename current file to backupFile: " + fstatus); //$NON-NLS-1$
             if (!fstatus) {
                 throw new SQLObjectException((
-                        Messages.getString("SwingUIProject.couldNotRenameFile", tempFile.toString(), file.toString()))); //$NON-NLS-1$
+                        Messages.getString("SwingUIProject.couldNotRenameFile", tempFile.toString(), target.toString()))); //$NON-NLS-1$
             }
         }
-        fstatus = tempFile.renameTo(file);
+        fstatus = tempFile.renameTo(target);
         if (!fstatus) {
             throw new SQLObjectException((
-                    Messages.getString("SwingUIProject.couldNotRenameTempFile", tempFile.toString(), file.toString()))); //$NON-NLS-1$
+                    Messages.getString("SwingUIProject.couldNotRenameTempFile", tempFile.toString(), target.toString()))); //$NON-NLS-1$
         }
         logger.debug("rename tempFile to current file: " + fstatus); //$NON-NLS-1$
-        fileVersion = ArchitectVersion.APP_FULL_VERSION.toString();
+    }
+
+    /**
+     * Returns the file the given project file is autosaved to.
+     */
+    public static File getAutosaveFile(File projectFile) {
+        return new File(projectFile.getParentFile(), projectFile.getName() + AUTOSAVE_SUFFIX);
+    }
+
+    /**
+     * Writes the project to the autosave file next to its project file if it
+     * has unsaved changes. The project file, its journal and the modified flag
+     * are left alone. The autosave file is a complete project file that can be
+     * opened to recover the changes after a crash, and the next save of the
+     * project deletes it. As with {@link #save(ProgressMonitor)}, only the
+     * capture runs on the foreground thread.
+     */
+    public void autosave() throws IOException, SQLObjectException {
+        if (file == null || !isModified()) return;
+        ProjectSnapshot snapshot = captureSnapshot(true);
+        synchronized (writeLock) {
+            // a save that finished since the capture has deleted the autosave file
+            if (isModified()) {
+                writeSnapshot(snapshot, getAutosaveFile(file), false);
+            }
+        }
+    }
+
+    /**
+     * Asks the user whether to open the autosave file of the given project
+     * file instead of the project file. The user is only asked if the
+     * autosave file is newer than the project file and its journal, as it is
+     * when the application stopped without the project being saved or its
+     * changes being discarded.
+     * 
+     * @return true if the user chose to open the autosave file. The caller
+     *         should then load it, set the file to the given project file and
+     *         leave the project modified, without replaying the journal.
+     */
+    public boolean promptToRecoverAutosave(File projectFile) {
+        File autosaveFile = getAutosaveFile(projectFile);
+        long savedTime = Math.max(projectFile.lastModified(),
+                ProjectJournal.getJournalFile(projectFile).lastModified());
+        if (!autosaveFile.exists() || autosaveFile.lastModified() <= savedTime) return false;
+        String autosaveTime = DateFormat.getDateTimeInstance().format(new Date(autosaveFile.lastModified()));
+        UserPrompter prompter = getSession().createUserPrompter(
+                Messages.getString("SwingUIProject.recoverAutosave", projectFile.getName(), autosaveTime), //$NON-NLS-1$
+                UserPromptType.BOOLEAN, UserPromptOptions.OK_CANCEL, UserPromptResponse.OK, UserPromptResponse.OK,
+                Messages.getString("SwingUIProject.recoverAutosaveOption"), //$NON-NLS-1$
+                Messages.getString("SwingUIProject.openSavedProjectOption")); //$NON-NLS-1$
+        return prompter.promptUser() == UserPromptResponse.OK;
+    }
+
+    /**
+     * Deletes the autosave file of the project, for when the user chose not
+     * to save their changes.
+     */
+    public void discardAutosave() {
+        if (file != null) {
+            getAutosaveFile(file).delete();
+        }
+    }
+
+    /**
+     * The XML of the whole project as it was when it was captured, along with
+     * where each of its sections starts.
+     */
+    private static class ProjectSnapshot extends ByteArrayOutputStream {
+
+        /**
+         * True if this snapshot is for the autosave file.
+         */
+        final boolean autosave;
+
+        /**
+         * The journal generation written into this snapshot, or null if it was
+         * captured without journaled saves.
+         */
+        String generation;
+
+        /**
+         * What {@link ProjectJournal#markSnapshot()} returned when this
+         * snapshot was captured.
+         */
+        int journalMark;
+
+        /**
+         * The settings the journal does not record, as written into this
+         * snapshot. Null if the snapshot has no journal generation.
+         */
+        String settings;
+
+        private final List<String> sectionNames = new ArrayList<String>();
+
+        private final List<Integer> sectionStarts = new ArrayList<Integer>();
+
+        ProjectSnapshot(boolean autosave) {
+            super(64 * 1024);
+            this.autosave = autosave;
+        }
+
+        /**
+         * Starts a new section at the current end of the snapshot.
+         */
+        void startSection(String name) {
+            sectionNames.add(name);
+            sectionStarts.add(count);
+        }
+
+        /**
+         * Writes each section of the snapshot as an entry of the given
+         * container.
+         */
+        void writeSections(ZipOutputStream zip) throws IOException {
+            for (int i = 0; i < sectionNames.size(); i++) {
+                int start = sectionStarts.get(i);
+                int end = i + 1 < sectionStarts.size() ? sectionStarts.get(i + 1) : count;
+                ProjectContainer.startSection(zip, sectionNames.get(i));
+                zip.write(buf, start, end - start);
+            }
+        }
     }
 
     XMLHelper ioo = new XMLHelper();
@@ -878,6 +1533,11 @@ public class SwingUIProjectLoader extends ProjectLoader {
      */
     public void save(PrintWriter out, String encoding) throws IOException {
         sqlObjectSaveIdMap = new IdentityHashMap<SQLObject, String>();
+        sqlObjectSaveOrder = new IdentityHashMap<SQLObject, Integer>();
+        copiedSections = new IdentityHashMap<SQLObject, Section>();
+        partlyReadDatabases = new IdentityHashMap<SQLObject, Section>();
+        sectionIds = new ProjectSectionIndex.IdRemapping(sqlObjectSaveIdMap);
+        reservedSQLObjectIds = 0;
         olapObjectSaveIdMap = new IdentityHashMap<OLAPObject, String>();
         dbcsSaveIdMap = new HashMap<SPDataSource, String>();
         olapPaneSaveIdMap = new HashMap<OLAPPane<?,?>, String>();
@@ -885,30 +1545,74 @@ public class SwingUIProjectLoader extends ProjectLoader {
         ioo.indent = 0;
 
         try {
+            startSection(out, "project.xml"); //$NON-NLS-1$
             ioo.println(out, "<?xml version=\"1.0\" encoding=\""+encoding+"\"?>"); //$NON-NLS-1$ //$NON-NLS-2$
-            ioo.println(out, "<architect-project version=\"1.0\" appversion=\""+ArchitectVersion.APP_FULL_VERSION+"\">"); //$NON-NLS-1$ //$NON-NLS-2$
+            StringBuilder projectTag = new StringBuilder();
+            projectTag.append("<architect-project version=\"1.0\" appversion=\"").append(ArchitectVersion.APP_FULL_VERSION).append("\""); //$NON-NLS-1$ //$NON-NLS-2$
+            String generation = capturing != null ? capturing.generation : journalGeneration;
+            if (generation != null) {
+                projectTag.append(" journal-generation=").append(quote(generation)); //$NON-NLS-1$
+            }
+            projectTag.append(">"); //$NON-NLS-1$
+            ioo.println(out, projectTag.toString());
             ioo.indent++;
             ioo.println(out, "<project-name>"+SQLPowerUtils.escapeXML(getSession().getName())+"</project-name>"); //$NON-NLS-1$ //$NON-NLS-2$
             savePrintSettings(out, getSession().getPrintSettings());
             saveDataSources(out);
-            saveSourceDatabases(out);
-            saveTargetDatabase(out);
-            saveDDLGenerator(out);
-            saveCompareDMSettings(out);
-            saveCreateKettleJobSettings(out);
-            savePlayPen(out, getSession().getPlayPen(), true);
-            saveCriticSettings(out);
-            saveProfiles(out);
+            assignSQLObjectIds();
             
-            saveOLAP(out);
-            saveOLAPGUI(out);
+            List<ProjectSection> sections = new ArrayList<ProjectSection>();
+            sections.add(new ProjectSection("source-databases.xml") { //$NON-NLS-1$
+                void write(SwingUIProjectLoader writer, PrintWriter out) throws IOException {
+                    writer.saveSourceDatabases(out);
+                }
+            });
+            sections.add(new ProjectSection("target-database.xml") { //$NON-NLS-1$
+                void write(SwingUIProjectLoader writer, PrintWriter out) throws IOException {
+                    writer.saveTargetDatabase(out);
+                }
+            });
+            sections.add(new ProjectSection("settings.xml") { //$NON-NLS-1$
+                void write(SwingUIProjectLoader writer, PrintWriter out) throws IOException {
+                    writer.saveDDLGenerator(out);
+                    writer.saveCompareDMSettings(out);
+                    writer.saveCreateKettleJobSettings(out);
+                }
+            });
+            sections.add(new ProjectSection("play-pen.xml") { //$NON-NLS-1$
+                void write(SwingUIProjectLoader writer, PrintWriter out) throws IOException {
+                    writer.savePlayPen(out, getSession().getPlayPen(), true);
+                }
+            });
+            sections.add(new ProjectSection("critics.xml") { //$NON-NLS-1$
+                void write(SwingUIProjectLoader writer, PrintWriter out) throws IOException {
+                    writer.saveCriticSettings(out);
+                }
+            });
+            sections.add(new ProjectSection("profiles.xml") { //$NON-NLS-1$
+                void write(SwingUIProjectLoader writer, PrintWriter out) throws IOException {
+                    writer.saveProfiles(out);
+                }
+            });
+            // OLAP IDs are only referred to from the OLAP sections, so they
+            // are written together and assign the IDs as they go.
+            sections.add(new ProjectSection("olap.xml") { //$NON-NLS-1$
+                void write(SwingUIProjectLoader writer, PrintWriter out) throws IOException {
+                    writer.saveOLAP(out);
+                    writer.saveOLAPGUI(out);
+                }
+            });
+            writeSections(out, sections);
             
+            startSection(out, "end.xml"); //$NON-NLS-1$
             ioo.indent--;
             ioo.println(out, "</architect-project>"); //$NON-NLS-1$
             
-            setModified(false);
-            for (OLAPEditSession oSession : getSession().getOLAPEditSessions()) {
-                oSession.saveNotify();
+            if (capturing == null) {
+                setModified(false);
+                for (OLAPEditSession oSession : getSession().getOLAPEditSessions()) {
+                    oSession.saveNotify();
+                }
             }
         } catch (IOException e) {
             ioo.println(out, new ExceptionReport(e, "", ArchitectVersion.APP_FULL_VERSION.toString(), "Architect").toXML());
@@ -924,6 +1628,246 @@ public class SwingUIProjectLoader extends ProjectLoader {
     public void save(OutputStream out, String encoding) throws IOException {
         save(new PrintWriter(new OutputStreamWriter(out, encoding)), encoding);
     }
+
+    /**
+     * Records where the next section of the project starts if the project is
+     * being captured into a snapshot, so a container can write each section as
+     * an entry. Other saves are written as one piece.
+     */
+    private void startSection(PrintWriter out, String name) throws IOException {
+        if (capturing == null) return;
+        out.flush();
+        capturing.startSection(name);
+    }
+
+    /**
+     * A section of the project file that can be written at the same time as
+     * the others once the SQLObjects have their IDs. Each section is written
+     * by a loader of its own, which keeps its own indent and position in the
+     * save order and shares the ID maps of this loader.
+     */
+    private abstract class ProjectSection implements Callable<String> {
+
+        private final String name;
+
+        private final SwingUIProjectLoader writer;
+
+        ProjectSection(String name) {
+            this.name = name;
+            writer = new SwingUIProjectLoader(getSession());
+            writer.sectionOwner = SwingUIProjectLoader.this;
+            writer.sqlObjectSaveIdMap = sqlObjectSaveIdMap;
+            writer.sqlObjectSaveOrder = sqlObjectSaveOrder;
+            writer.copiedSections = copiedSections;
+            writer.partlyReadDatabases = partlyReadDatabases;
+            writer.sectionIds = sectionIds;
+            writer.dbcsSaveIdMap = dbcsSaveIdMap;
+            writer.olapObjectSaveIdMap = new IdentityHashMap<OLAPObject, String>();
+            writer.olapPaneSaveIdMap = new HashMap<OLAPPane<?,?>, String>();
+            writer.ioo.indent = ioo.indent;
+        }
+
+        public String call() throws IOException {
+            StringWriter buffer = new StringWriter();
+            PrintWriter out = new PrintWriter(buffer);
+            write(writer, out);
+            out.flush();
+            return buffer.toString();
+        }
+
+        abstract void write(SwingUIProjectLoader writer, PrintWriter out) throws IOException;
+    }
+
+    /**
+     * Writes the given sections to the given writer in order. With more than
+     * one processor the sections are written into buffers at the same time
+     * and each buffer is copied out once the sections before it are done.
+     */
+    private void writeSections(PrintWriter out, List<ProjectSection> sections) throws IOException {
+        if (SECTION_THREADS <= 1) {
+            for (ProjectSection section : sections) {
+                startSection(out, section.name);
+                out.print(section.call());
+            }
+            return;
+        }
+
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (ProjectSection section : sections) {
+            results.add(sectionExecutor.submit(section));
+        }
+        try {
+            for (int i = 0; i < sections.size(); i++) {
+                startSection(out, sections.get(i).name);
+                out.print(results.get(i).get());
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while saving the project"); //$NON-NLS-1$
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (Future<String> result : results) {
+                result.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Gives every SQLObject the source and target database sections write its
+     * ID and its position in {@link #sqlObjectSaveOrder}, visiting the objects
+     * in the same order as those sections do. The source databases and
+     * schemas that were left out when the project was loaded and have not
+     * been read since are not read for the save; the numbers of the ids in
+     * their sections of the project file are reserved instead, and the
+     * sections are written back with their ids moved to those numbers.
+     */
+    private void assignSQLObjectIds() throws IOException {
+        SQLObject dbTreeRoot = (SQLObject) getSession().getDBTree().getModel().getRoot();
+        for (SQLObject o : dbTreeRoot.getChildren()) {
+            if (o != getSession().getTargetDatabase()) {
+                assignSQLObjectIds(o);
+            }
+        }
+        SQLDatabase db = (SQLDatabase) getSession().getTargetDatabase();
+        assignSQLObjectId(db, "ppdb"); //$NON-NLS-1$
+        for (SQLObject o : db.getChildren()) {
+            assignSQLObjectIds(o);
+        }
+        assignRelationshipIds(db);
+    }
+
+    /**
+     * Assigns the IDs of the given object and its descendants the way
+     * {@link #saveSQLObject(PrintWriter, SQLObject)} walks them.
+     */
+    private void assignSQLObjectIds(SQLObject o) throws IOException {
+        if (o instanceof SQLRelationship.SQLImportedKey || sqlObjectSaveIdMap.containsKey(o)) {
+            return;
+        }
+        String prefix;
+        if (o instanceof SQLDatabase) {
+            prefix = "DB"; //$NON-NLS-1$
+        } else if (o instanceof SQLCatalog) {
+            prefix = "CAT"; //$NON-NLS-1$
+        } else if (o instanceof SQLSchema) {
+            prefix = "SCH"; //$NON-NLS-1$
+        } else if (o instanceof SQLTable) {
+            prefix = "TAB"; //$NON-NLS-1$
+        } else if (o instanceof SQLColumn) {
+            prefix = "COL"; //$NON-NLS-1$
+        } else if (o instanceof SQLRelationship) {
+            prefix = "REL"; //$NON-NLS-1$
+        } else if (o instanceof SQLRelationship.ColumnMapping) {
+            prefix = "CMP"; //$NON-NLS-1$
+        } else if (o instanceof SQLIndex) {
+            prefix = "IDX"; //$NON-NLS-1$
+        } else if (o instanceof SQLIndex.Column) {
+            prefix = "IDC"; //$NON-NLS-1$
+        } else {
+            throw new UnsupportedOperationException("Whoops, the SQLObject type " //$NON-NLS-1$
+                    +o.getClass().getName()+" is not supported!"); //$NON-NLS-1$
+        }
+        long number = nextSQLObjectIdNumber();
+        assignSQLObjectId(o, prefix + number);
+
+        Section unread = getSession().isSavingEntireSource() ? null : getUnreadSection(o);
+        if (unread != null) {
+            reservedSQLObjectIds += sectionIds.moveSection(unread, number);
+            copiedSections.put(o, unread);
+            return;
+        }
+        
+        if (o.allowsChildren()) {
+            List<? extends SQLObject> children;
+            if (getSession().isSavingEntireSource()) {
+                children = o.getChildren();
+            } else {
+                children = o.getChildrenWithoutPopulating();
+            }
+            for (SQLObject child : children) {
+                if (!((child instanceof SQLRelationship)
+                        || (child instanceof UserDefinedSQLType)
+                        || (child instanceof SQLTypePhysicalProperties))) {
+                    assignSQLObjectIds(child);
+                }
+            }
+            if (o instanceof SQLDatabase) {
+                assignRelationshipIds(o);
+                Section database = getSession().isSavingEntireSource() ? null : getPartlyReadSection((SQLDatabase) o);
+                if (database != null) {
+                    for (String id : database.getUnreadRelationshipIds()) {
+                        sectionIds.renumber(id, nextSQLObjectIdNumber());
+                        reservedSQLObjectIds++;
+                    }
+                    partlyReadDatabases.put(o, database);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number the next SQLObject to be given an id gets, after
+     * the numbers of the objects that already have ids and the numbers
+     * reserved for the sections written back from the project file.
+     */
+    private long nextSQLObjectIdNumber() {
+        return sqlObjectSaveIdMap.size() + reservedSQLObjectIds;
+    }
+
+    /**
+     * Assigns the IDs of the relationships under the given object the way
+     * {@link #saveRelationships(PrintWriter, SQLDatabase)} walks them.
+     */
+    private void assignRelationshipIds(SQLObject o) throws IOException {
+        if ( (!getSession().isSavingEntireSource()) && (!o.isPopulated()) ) {
+            return;
+        } else if (o instanceof SQLRelationship) {
+            assignSQLObjectIds(o);
+        } else if (o.allowsChildren()) {
+            for (SQLObject child : o.getChildren()) {
+                assignRelationshipIds(child);
+            }
+        }
+    }
+
+    private void assignSQLObjectId(SQLObject o, String id) {
+        sqlObjectSaveOrder.put(o, sqlObjectSaveIdMap.size());
+        sqlObjectSaveIdMap.put(o, id);
+    }
+
+    /**
+     * Returns the ID of the given object if it comes before the object at the
+     * given position of the save order, which is when a save that assigned
+     * IDs as it wrote would have known it. Returns null otherwise.
+     */
+    private String getSavedId(SQLObject o, int order) {
+        Integer savedOrder = sqlObjectSaveOrder.get(o);
+        if (savedOrder == null || savedOrder.intValue() >= order) {
+            return null;
+        }
+        return sqlObjectSaveIdMap.get(o);
+    }
+
+    /**
+     * Moves the progress monitor of the save one step on. Sections report to
+     * the loader they are writing for.
+     */
+    private void advanceProgress() {
+        if (sectionOwner != null) {
+            sectionOwner.advanceProgress();
+            return;
+        }
+        synchronized (this) {
+            if (pm != null) {
+                pm.setProgress(++progress);
+            }
+        }
+    }
     
     private void saveOLAP(PrintWriter out) {
         ioo.indent++;
@@ -1091,6 +2035,9 @@ public class SwingUIProjectLoader extends ProjectLoader {
                 ioo.print(out, "<critic-settings");
                 ioo.niprint(out, " class=\"" + settings.getClass().getName() + "\"");
                 ioo.niprint(out, " severity=\"" + settings.getSeverity().name() + "\"");
+                if (settings instanceof ThresholdCritic) {
+                    ioo.niprint(out, " threshold=\"" + ((ThresholdCritic) settings).getThreshold() + "\"");
+                }
                 ioo.niprintln(out, "/>");
             }
             ioo.indent--;
@@ -1133,6 +2080,7 @@ public class SwingUIProjectLoader extends ProjectLoader {
      * @param out2
      */
     private void saveSourceDatabases(PrintWriter out) throws IOException {
+        nextSaveOrder = 0;
         ioo.println(out, "<source-databases>"); //$NON-NLS-1$
         ioo.indent++;
         SQLObject dbTreeRoot = (SQLObject) getSession().getDBTree().getModel().getRoot();
@@ -1158,6 +2106,10 @@ public class SwingUIProjectLoader extends ProjectLoader {
         while (it.hasNext()) {
             saveRelationshipsRecurse(out, it.next());
         }
+        Section partlyRead = partlyReadDatabases.get(db);
+        if (partlyRead != null) {
+            partlyRead.writeUnreadRelationships(out, sectionIds);
+        }
         ioo.indent--;
         ioo.println(out, "</relationships>"); //$NON-NLS-1$
     }
@@ -1182,7 +2134,7 @@ public class SwingUIProjectLoader extends ProjectLoader {
         SQLDatabase db = (SQLDatabase) getSession().getTargetDatabase();
         ioo.println(out, "<target-database id=\"ppdb\" dbcs-ref="+ //$NON-NLS-1$
                 quote(dbcsSaveIdMap.get(db.getDataSource()))+ ">"); //$NON-NLS-1$
-        sqlObjectSaveIdMap.put(db, "ppdb"); //$NON-NLS-1$
+        nextSaveOrder = sqlObjectSaveOrder.get(db) + 1;
         ioo.indent++;
         Iterator<? extends SQLObject> it = db.getChildren().iterator();
         while (it.hasNext()) {
@@ -1209,6 +2161,7 @@ public class SwingUIProjectLoader extends ProjectLoader {
             tagText.append(" showAlternateTag=\"").append(getSession().isShowAkTag()).append("\""); //$NON-NLS-1$ //$NON-NLS-2$
             tagText.append(" columnVisibility=\"").append(getSession().getColumnVisibility()).append("\""); //$NON-NLS-1$ //$NON-NLS-2$
             tagText.append(" relationshipLabelVisibility=\"").append(getSession().isDisplayRelationshipLabel()).append("\""); //$NON-NLS-1$ //$NON-NLS-2$
+            tagText.append(" UUID=").append(quote(pp.getContentPane().getUUID())); //$NON-NLS-1$
         }
         tagText.append(">"); //$NON-NLS-1$
         ioo.println(out, tagText.toString());
@@ -1244,10 +2197,9 @@ public class SwingUIProjectLoader extends ProjectLoader {
                 
                 ioo.println(out, "<table-pane table-ref="+quote(sqlObjectSaveIdMap.get(tp.getModel()))  //$NON-NLS-1$
                         +" x=\""+p.x+"\" y=\""+p.y+"\" bgColor="+ quote(bgColorString) + " fgColor=" + quote(fgColorString) + //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
-                        " rounded=\"" + tp.isRounded() + "\" dashed=\"" + tp.isDashed() + "\"/>"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-                if (pm != null) {
-                    pm.setProgress(++progress);
-                }
+                        " rounded=\"" + tp.isRounded() + "\" dashed=\"" + tp.isDashed() + "\"" + //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                        " UUID=" + quote(tp.getUUID()) + "/>"); //$NON-NLS-1$ //$NON-NLS-2$
+                advanceProgress();
             } else if (ppc instanceof CubePane) {
                 CubePane cp = (CubePane) ppc;
                 Point p = cp.getLocation();
@@ -1297,7 +2249,8 @@ public class SwingUIProjectLoader extends ProjectLoader {
                         +" rLineColor="+quote(rColorString) //$NON-NLS-1$
                         +" pkLabelText="+quote(r.getTextForParentLabel()) //$NON-NLS-1$
                         +" fkLabelText="+quote(r.getTextForChildLabel()) //$NON-NLS-1$
-                        +" orientation=\"" + r.getOrientation() + "\"/>"); //$NON-NLS-1$ //$NON-NLS-2$
+                        +" orientation=\"" + r.getOrientation() + "\"" //$NON-NLS-1$ //$NON-NLS-2$
+                        +" UUID=" + quote(r.getUUID()) + "/>"); //$NON-NLS-1$ //$NON-NLS-2$
             } else if (ppc instanceof UsageComponent) {
                 UsageComponent usageComp = (UsageComponent) ppc;
                 String modelId = olapObjectSaveIdMap.get(usageComp.getModel());
@@ -1445,10 +2398,12 @@ public class SwingUIProjectLoader extends ProjectLoader {
             return;
         }
         String id = sqlObjectSaveIdMap.get(o);
-        if (id != null) {
+        int order = sqlObjectSaveOrder.get(o);
+        if (order < nextSaveOrder) {
             ioo.println(out, "<reference ref-id=\""+SQLPowerUtils.escapeXML(id)+"\" />"); //$NON-NLS-1$ //$NON-NLS-2$
             return;
         }
+        nextSaveOrder++;
 
         String type;
         Map<String,Object> propNames = new TreeMap<String,Object>();
@@ -1466,31 +2421,24 @@ public class SwingUIProjectLoader extends ProjectLoader {
         }
 
         if (o instanceof SQLDatabase) {
-            id = "DB"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
             type = "database"; //$NON-NLS-1$
             propNames.put("dbcs-ref", dbcsSaveIdMap.get(((SQLDatabase) o).getDataSource())); //$NON-NLS-1$
         } else if (o instanceof SQLCatalog) {
-            id = "CAT"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
             type = "catalog"; //$NON-NLS-1$
             propNames.put("nativeTerm", ((SQLCatalog) o).getNativeTerm()); //$NON-NLS-1$
         } else if (o instanceof SQLSchema) {
-            id = "SCH"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
             type = "schema"; //$NON-NLS-1$
             propNames.put("nativeTerm", ((SQLSchema) o).getNativeTerm()); //$NON-NLS-1$
         } else if (o instanceof SQLTable) {
-            id = "TAB"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
             type = "table"; //$NON-NLS-1$
             propNames.put("objectType", ((SQLTable) o).getObjectType()); //$NON-NLS-1$
             // don't save primary key name. It is a propery of the PK index, not the table.
-            if (pm != null) {
-                pm.setProgress(++progress);
-            }
+            advanceProgress();
         } else if (o instanceof SQLColumn) {
-            id = "COL"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
             type = "column"; //$NON-NLS-1$
             SQLColumn sourceCol = ((SQLColumn) o).getSourceColumn();
             if (sourceCol != null) {
-                propNames.put("source-column-ref", sqlObjectSaveIdMap.get(sourceCol)); //$NON-NLS-1$
+                propNames.put("source-column-ref", getSavedId(sourceCol, order)); //$NON-NLS-1$
             }
             UserDefinedSQLType userDefinedSQLType = ((SQLColumn) o).getUserDefinedSQLType();
             if (userDefinedSQLType.getUpstreamType() != null) {
@@ -1509,10 +2457,9 @@ public class SwingUIProjectLoader extends ProjectLoader {
                 propNames.put("autoIncrementSequenceName", ((SQLColumn) o).getAutoIncrementSequenceName()); //$NON-NLS-1$
             }
         } else if (o instanceof SQLRelationship) {
-            id = "REL"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
             type = "relationship"; //$NON-NLS-1$
-            propNames.put("pk-table-ref", sqlObjectSaveIdMap.get(((SQLRelationship) o).getPkTable())); //$NON-NLS-1$
-            propNames.put("fk-table-ref", sqlObjectSaveIdMap.get(((SQLRelationship) o).getFkTable())); //$NON-NLS-1$
+            propNames.put("pk-table-ref", getSavedId(((SQLRelationship) o).getPkTable(), order)); //$NON-NLS-1$
+            propNames.put("fk-table-ref", getSavedId(((SQLRelationship) o).getFkTable(), order)); //$NON-NLS-1$
             propNames.put("updateRule", new Integer(((SQLRelationship) o).getUpdateRule().getCode())); //$NON-NLS-1$
             propNames.put("deleteRule", new Integer(((SQLRelationship) o).getDeleteRule().getCode())); //$NON-NLS-1$
             propNames.put("deferrability", new Integer(((SQLRelationship) o).getDeferrability().getCode())); //$NON-NLS-1$
@@ -1520,14 +2467,12 @@ public class SwingUIProjectLoader extends ProjectLoader {
             propNames.put("fkCardinality", new Integer(((SQLRelationship) o).getFkCardinality())); //$NON-NLS-1$
             propNames.put("identifying", Boolean.valueOf(((SQLRelationship) o).isIdentifying())); //$NON-NLS-1$
         } else if (o instanceof SQLRelationship.ColumnMapping) {
-            id = "CMP"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
             type = "column-mapping"; //$NON-NLS-1$
-            propNames.put("pk-column-ref", sqlObjectSaveIdMap.get(((SQLRelationship.ColumnMapping) o).getPkColumn())); //$NON-NLS-1$
-            propNames.put("fk-column-ref", sqlObjectSaveIdMap.get(((SQLRelationship.ColumnMapping) o).getFkColumn())); //$NON-NLS-1$
+            propNames.put("pk-column-ref", getSavedId(((SQLRelationship.ColumnMapping) o).getPkColumn(), order)); //$NON-NLS-1$
+            propNames.put("fk-column-ref", getSavedId(((SQLRelationship.ColumnMapping) o).getFkColumn(), order)); //$NON-NLS-1$
             propNames.put("fk-col-name", ((SQLRelationship.ColumnMapping) o).getFkColName()); //$NON-NLS-1$
-            propNames.put("fk-table", sqlObjectSaveIdMap.get(((SQLRelationship.ColumnMapping) o).getFkTable())); //$NON-NLS-1$
+            propNames.put("fk-table", getSavedId(((SQLRelationship.ColumnMapping) o).getFkTable(), order)); //$NON-NLS-1$
         } else if (o instanceof SQLIndex) {
-            id = "IDX"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
             type = "index"; //$NON-NLS-1$
             SQLIndex index = (SQLIndex) o;
             propNames.put("unique", index.isUnique()); //$NON-NLS-1$
@@ -1543,11 +2488,10 @@ public class SwingUIProjectLoader extends ProjectLoader {
             propNames.put("primaryKeyIndex", index.isPrimaryKeyIndex()); //$NON-NLS-1$
             propNames.put("filterCondition", index.getFilterCondition()); //$NON-NLS-1$
         } else if (o instanceof SQLIndex.Column) {
-            id = "IDC"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
             type = "index-column"; //$NON-NLS-1$
             SQLIndex.Column col = (SQLIndex.Column) o;
             if (col.getColumn() != null) {
-                propNames.put("column-ref", sqlObjectSaveIdMap.get(col.getColumn())); //$NON-NLS-1$
+                propNames.put("column-ref", getSavedId(col.getColumn(), order)); //$NON-NLS-1$
             }
             propNames.put("ascendingOrDescending", col.getAscendingOrDescending().name()); //$NON-NLS-1$
         } else {
@@ -1555,7 +2499,6 @@ public class SwingUIProjectLoader extends ProjectLoader {
                     +o.getClass().getName()+" is not supported!"); //$NON-NLS-1$
         }
         
-        sqlObjectSaveIdMap.put(o, id);
         if(logger.isDebugEnabled()) {
             // use this for debugging duplicate object problems
             ioo.print(out, "<"+type+" hashCode=\""+o.hashCode()+"\" id=\""+quote(id)+"\" ");
@@ -1563,7 +2506,8 @@ public class SwingUIProjectLoader extends ProjectLoader {
             ioo.print(out, "<"+type+" id="+quote(id)+" "); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
         }
 
-        if ( (!getSession().isSavingEntireSource()) && (!o.isPopulated()) ) {
+        Section copied = copiedSections.get(o);
+        if ( (!getSession().isSavingEntireSource()) && (!o.isPopulated()) && copied == null) {
             ioo.niprint(out, "populated=\"false\" "); //$NON-NLS-1$
         } else {
             ioo.niprint(out, "populated=\"true\" "); //$NON-NLS-1$
@@ -1577,7 +2521,13 @@ public class SwingUIProjectLoader extends ProjectLoader {
                 ioo.niprint(out, key+"="+quote(value.toString())+" "); //$NON-NLS-1$ //$NON-NLS-2$
             }
         }
-        if (o.allowsChildren()) {
+        if (copied != null) {
+            // the content of the section starts with the end of this line
+            // and ends with the indent of the end tag
+            ioo.niprint(out, ">"); //$NON-NLS-1$
+            copied.writeContent(out, sectionIds);
+            ioo.niprintln(out, "</"+type+">"); //$NON-NLS-1$ //$NON-NLS-2$
+        } else if (o.allowsChildren()) {
             ioo.niprintln(out, ">"); //$NON-NLS-1$
             Iterator<? extends SQLObject> children;
             if (getSession().isSavingEntireSource()) {
@@ -1716,4 +2666,32 @@ public class SwingUIProjectLoader extends ProjectLoader {
     protected ArchitectSwingSession getSession() {
         return (ArchitectSwingSession) session;
     }
+
+    /**
+     * See {@link #compressedSave}.
+     */
+    public boolean isCompressedSave() {
+        return compressedSave;
+    }
+
+    /**
+     * See {@link #compressedSave}.
+     */
+    public void setCompressedSave(boolean compressedSave) {
+        this.compressedSave = compressedSave;
+    }
+
+    /**
+     * See {@link #journaledSave}.
+     */
+    public boolean isJournaledSave() {
+        return journaledSave;
+    }
+
+    /**
+     * See {@link #journaledSave}.
+     */
+    public void setJournaledSave(boolean journaledSave) {
+        this.journaledSave = journaledSave;
+    }
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.util.List;
 import java.util.prefs.Preferences;
 
 import javax.swing.AbstractAction;
@@ -49,9 +50,11 @@ import org.apache.log4j.Logger;
 import ca.sqlpower.architect.ArchitectSession;
 import ca.sqlpower.architect.swingui.ArchitectFrame;
 import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.architect.transformation.DataDictionaryGenerator;
 import ca.sqlpower.architect.transformation.ReportTransformer;
 import ca.sqlpower.architect.transformation.TransformerFactory;
 import ca.sqlpower.architect.transformation.UnknowTemplateTypeException;
+import ca.sqlpower.architect.transformation.VelocityTransformation;
 import ca.sqlpower.architect.transformation.XsltTransformation;
 import ca.sqlpower.swingui.JDefaultButton;
 import ca.sqlpower.swingui.SPSUtils;
@@ -80,7 +83,9 @@ public class ExportHTMLPanel {
 
 	private JRadioButton builtin;
 	private JRadioButton external;
+	private JRadioButton dictionary;
 	private JComboBox templateFile;
+	private JComboBox batchMode;
 	private JButton selectTemplate;
 	private JButton selectOutput;
 	private JButton startButton;
@@ -98,11 +103,22 @@ public class ExportHTMLPanel {
     private final BuiltinOptionPanel builtinOptionPanel;
 
 	private static final String PREF_KEY_BUILTIN = "htmlgen.builtin";
+	private static final String PREF_KEY_DICTIONARY = "htmlgen.dictionary";
 	private static final String PREF_KEY_LAST_XSLT = "htmlgen.lastxslt";
 	private static final String PREF_KEY_XSLT_HISTORY = "htmlgen.xslt.recent";
 	private static final String PREF_KEY_OUTPUT = "htmlgen.lastoutput";
+	private static final String PREF_KEY_BATCH = "htmlgen.batch";
 	private static final int MAX_HISTORY_ENTRIES = 15;
 
+	/**
+	 * The indexes of the choices in {@link #batchMode}: a custom template
+	 * writes one output file, or a Velocity template writes a file for each
+	 * table or schema to the output folder.
+	 */
+	private static final int BATCH_SINGLE_FILE = 0;
+	private static final int BATCH_EACH_TABLE = 1;
+	private static final int BATCH_EACH_SCHEMA = 2;
+
 
 	public static void setBuiltinTransform(String builtinTransform) {
 	    ExportHTMLPanel.builtinTransform = builtinTransform;
@@ -126,8 +142,10 @@ public class ExportHTMLPanel {
 		ButtonGroup group = new ButtonGroup();
 		builtin = new JRadioButton(Messages.getString("XSLTSelectionPanel.labelBuiltIn"));
 		external = new JRadioButton(Messages.getString("XSLTSelectionPanel.labelExternal"));
+		dictionary = new JRadioButton(Messages.getString("XSLTSelectionPanel.labelDataDictionary"));
 		group.add(builtin);
 		group.add(external);
+		group.add(dictionary);
 
 		// place Radio buttons
 		builder.append(builtin, 5);
@@ -156,6 +174,20 @@ public class ExportHTMLPanel {
 
 		selectTemplate = new JButton("...");
 		builder.append(selectTemplate);
+		builder.nextLine();
+
+		batchMode = new JComboBox(new String[] {
+		        Messages.getString("XSLTSelectionPanel.batchSingleFile"),
+		        Messages.getString("XSLTSelectionPanel.batchEachTable"),
+		        Messages.getString("XSLTSelectionPanel.batchEachSchema")});
+		builder.append("");
+		builder.append(batchMode);
+
+		builder.appendUnrelatedComponentsGapRow();
+        builder.nextLine();
+        builder.nextLine();
+
+		builder.append(dictionary, 5);
 
 		builder.appendUnrelatedComponentsGapRow();
         builder.nextLine();
@@ -186,6 +218,8 @@ public class ExportHTMLPanel {
 		selectOutput.addActionListener(componentStateHandler);
 		builtin.addActionListener(componentStateHandler);
 		external.addActionListener(componentStateHandler);
+		dictionary.addActionListener(componentStateHandler);
+		batchMode.addActionListener(componentStateHandler);
 		builtin.setSelected(true);
 
 		startButton = new JDefaultButton(Messages.getString("XSLTSelectionPanel.startOption"));
@@ -238,7 +272,7 @@ public class ExportHTMLPanel {
 	 *  XSLT should be used.
 	 */
 	public File getTemplateFile() {
-		if (builtin.isSelected()) {
+		if (!external.isSelected()) {
 			return null;
 		}
 		Object o = templateFile.getSelectedItem();
@@ -275,14 +309,30 @@ public class ExportHTMLPanel {
 	            closeDialog();
 	        } else if (e.getSource() == templateFile) {
 	            updateDropDownToolTip();
-	        } else if (e.getSource() == builtin) {
-	            templateFile.setEnabled(external.isSelected());
-	        } else if (e.getSource() == external) {
-	            templateFile.setEnabled(external.isSelected());
+	        } else if (e.getSource() == builtin || e.getSource() == external
+	                || e.getSource() == dictionary || e.getSource() == batchMode) {
+	            updateTemplateOptions();
 	        }
 	    }
 	};
 
+	/**
+	 * Enables the template choices when a custom template is selected.
+	 */
+	private void updateTemplateOptions() {
+		templateFile.setEnabled(external.isSelected());
+		batchMode.setEnabled(external.isSelected());
+	}
+
+	/**
+	 * Returns true if the output is a folder: the data dictionary, or a file
+	 * for each table or schema written by a custom template.
+	 */
+	private boolean isOutputFolder() {
+		return dictionary.isSelected()
+		    || (external.isSelected() && batchMode.getSelectedIndex() != BATCH_SINGLE_FILE);
+	}
+
 	private void updateDropDownToolTip() {
 		File f = this.getTemplateFile();
 		if (f != null) {
@@ -293,7 +343,7 @@ public class ExportHTMLPanel {
 	private void setTemplateFile(File template)	{
 		ComboBoxFile cf = new ComboBoxFile(template);
 		external.setSelected(true);
-		templateFile.setEnabled(true);
+		updateTemplateOptions();
 		templateFile.addItem(cf);
 		templateFile.setSelectedItem(cf);
 		templateFile.setToolTipText(getFullName(template));
@@ -324,7 +374,9 @@ public class ExportHTMLPanel {
 	private void saveSettings() {
 		Preferences prefs = Preferences.userNodeForPackage(getClass());
 		prefs.putBoolean(PREF_KEY_BUILTIN, builtin.isSelected());
+		prefs.putBoolean(PREF_KEY_DICTIONARY, dictionary.isSelected());
 		prefs.put(PREF_KEY_OUTPUT, outputFile.getText());
+		prefs.putInt(PREF_KEY_BATCH, batchMode.getSelectedIndex());
 
 		// Add any pasted filename to the dropdown's model, so that it
 		// stored correctly in the user preferences
@@ -355,9 +407,15 @@ public class ExportHTMLPanel {
 	private void restoreSettings() {
 		Preferences prefs = Preferences.userNodeForPackage(getClass());
 		final boolean useBuiltin = prefs.getBoolean(PREF_KEY_BUILTIN, true);
+		final boolean useDictionary = !useBuiltin && prefs.getBoolean(PREF_KEY_DICTIONARY, false);
 		builtin.setSelected(useBuiltin);
-		external.setSelected(!useBuiltin);
-		templateFile.setEnabled(!useBuiltin);
+		dictionary.setSelected(useDictionary);
+		external.setSelected(!useBuiltin && !useDictionary);
+		int batch = prefs.getInt(PREF_KEY_BATCH, BATCH_SINGLE_FILE);
+		if (batch >= 0 && batch < batchMode.getItemCount()) {
+			batchMode.setSelectedIndex(batch);
+		}
+		updateTemplateOptions();
 
 		// I'm actively setting the focus, because by default the focus is
 		// set to the "Internal" radio button. I think that initial focus is
@@ -367,6 +425,8 @@ public class ExportHTMLPanel {
 			public void run() {
 				if (useBuiltin) {
 					builtin.requestFocusInWindow();
+				} else if (useDictionary) {
+					dictionary.requestFocusInWindow();
 				} else {
 					external.requestFocusInWindow();
 				}
@@ -443,7 +503,12 @@ public class ExportHTMLPanel {
 
 	private void selectOutput() {
 		JFileChooser chooser = new JFileChooser(session.getProjectLoader().getFile());
-		chooser.addChoosableFileFilter(SPSUtils.HTML_FILE_FILTER);
+		if (isOutputFolder()) {
+			// the data dictionary and batch output are folders of files
+			chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+		} else {
+			chooser.addChoosableFileFilter(SPSUtils.HTML_FILE_FILTER);
+		}
 		chooser.setDialogTitle(Messages.getString("XSLTSelectionPanel.saveAsTitle"));
 
 		int response = chooser.showSaveDialog(session.getArchitectFrame());
@@ -482,7 +547,19 @@ public class ExportHTMLPanel {
 
 		File file = new File(outputFile.getText());
 
-		if (file.exists()) {
+		if (external.isSelected() && batchMode.getSelectedIndex() != BATCH_SINGLE_FILE) {
+			File template = getTemplateFile();
+			if (template == null || !template.getName().toLowerCase().endsWith(".vm")) {
+				JOptionPane.showMessageDialog(dialog,
+				        Messages.getString("XSLTSelectionPanel.batchNeedsVelocity"),
+				        Messages.getString("XSLTSelectionPanel.dialogTitle"), JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+		}
+
+		// The pages of a data dictionary that is already there are updated,
+		// and batch output overwrites only the files it writes
+		if (file.exists() && !isOutputFolder()) {
 			int response = JOptionPane.showConfirmDialog(session.getArchitectFrame(),
 			  Messages.getString("XSLTSelectionPanel.fileAlreadyExists", file.getPath()), //$NON-NLS-1$
 					Messages.getString("XSLTSelectionPanel.fileAlreadyExistsDialogTitle"),
@@ -505,6 +582,14 @@ public class ExportHTMLPanel {
 	}
 
 	protected void _transformFile() {
+		if (dictionary.isSelected()) {
+			generateDataDictionary();
+			return;
+		}
+		if (isOutputFolder()) {
+			transformEach();
+			return;
+		}
 		File file = new File(getOutputFilename());
 
 		final ReportTransformer transformer;
@@ -545,6 +630,43 @@ public class ExportHTMLPanel {
 		setStatusBarText("");
 	}
 
+	/**
+	 * Writes the multi-page data dictionary to the output folder and opens
+	 * its index page.
+	 */
+	private void generateDataDictionary() {
+		try {
+			new DataDictionaryGenerator(session).generate(getOutputFile());
+			setStatusBarText(Messages.getString("XSLTSelectionPanel.msgStartingBrowser"));
+			File index = new File(getOutputFile(), DataDictionaryGenerator.INDEX_PAGE);
+			BrowserUtil.launch(index.toURI().toString());
+		} catch (Exception e) {
+			SPSUtils.showExceptionDialogNoReport(session.getArchitectFrame(), "Transformation error", e);
+		}
+		setStatusBarText("");
+	}
+
+	/**
+	 * Runs the selected Velocity template once for each table or schema and
+	 * writes the files to the output folder.
+	 */
+	private void transformEach() {
+		try {
+			VelocityTransformation transformer = new VelocityTransformation();
+			List<File> files;
+			if (batchMode.getSelectedIndex() == BATCH_EACH_SCHEMA) {
+				files = transformer.transformEachSchema(getTemplateFile(), getOutputFile(), session);
+			} else {
+				files = transformer.transformEachTable(getTemplateFile(), getOutputFile(), session);
+			}
+			setStatusBarText(Messages.getString("XSLTSelectionPanel.msgFilesWritten", String.valueOf(files.size())));
+			return;
+		} catch (Exception e) {
+			SPSUtils.showExceptionDialogNoReport(session.getArchitectFrame(), "Transformation error", e);
+		}
+		setStatusBarText("");
+	}
+
 	protected void setStatusBarText(final String text) {
 		EventQueue.invokeLater(new Runnable() {
 			public void run() {
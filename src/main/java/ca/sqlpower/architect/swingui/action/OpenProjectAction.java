@@ -40,6 +40,7 @@ import ca.sqlpower.architect.swingui.ASUtils;
 import ca.sqlpower.architect.swingui.ArchitectFrame;
 import ca.sqlpower.architect.swingui.ArchitectSwingSession;
 import ca.sqlpower.architect.swingui.ArchitectSwingSessionContext;
+import ca.sqlpower.architect.swingui.SwingUIProjectLoader;
 import ca.sqlpower.architect.swingui.dbtree.DBTreeModel;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.swingui.RecentMenu;
@@ -215,8 +216,19 @@ public class OpenProjectAction extends AbstractArchitectAction {
 
         @Override
         public void doStuff() throws Exception {
-            session.getProjectLoader().load(in, session.getDataSources(), openingSession);
-            session.getProjectLoader().setFile(file);
+            SwingUIProjectLoader loader = session.getProjectLoader();
+            if (file != null && loader.promptToRecoverAutosave(file)) {
+                in.close();
+                InputStream autosaveIn = new BufferedInputStream(new FileInputStream(
+                        SwingUIProjectLoader.getAutosaveFile(file)));
+                loader.load(autosaveIn, session.getDataSources(), openingSession);
+                loader.setFile(file);
+                loader.setModified(true);
+                return;
+            }
+            loader.load(in, session.getDataSources(), openingSession);
+            loader.setFile(file);
+            loader.replayJournal();
         }
 
         @Override
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.swingui.action;
+
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.profile.IndexAdvisor;
+import ca.sqlpower.architect.profile.IndexSuggestion;
+import ca.sqlpower.architect.profile.TableProfileResult;
+import ca.sqlpower.architect.profile.TypeRightSizingAdvisor;
+import ca.sqlpower.architect.profile.TypeSizeSuggestion;
+import ca.sqlpower.architect.swingui.ASUtils;
+import ca.sqlpower.architect.swingui.ArchitectFrame;
+import ca.sqlpower.architect.swingui.PlayPenComponent;
+import ca.sqlpower.architect.swingui.TablePane;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Suggests index and column type changes for the tables in the play pen from
+ * the profiles in the session's profile manager, and applies the suggestions
+ * the user accepts. Only the selected tables are advised on if any tables
+ * are selected. Tables that have not been profiled themselves are advised on
+ * from the profiles of the source tables their columns came from.
+ */
+public class ProfileAdvisorAction extends AbstractArchitectAction {
+    
+    private static final Logger logger = Logger.getLogger(ProfileAdvisorAction.class);
+
+    /**
+     * One suggestion shown to the user, which is either an
+     * {@link IndexSuggestion} or a {@link TypeSizeSuggestion}.
+     */
+    private static class SuggestionRow {
+        private final IndexSuggestion indexSuggestion;
+        private final TypeSizeSuggestion typeSuggestion;
+        private boolean accepted;
+        
+        SuggestionRow(IndexSuggestion indexSuggestion) {
+            this.indexSuggestion = indexSuggestion;
+            this.typeSuggestion = null;
+        }
+        
+        SuggestionRow(TypeSizeSuggestion typeSuggestion) {
+            this.indexSuggestion = null;
+            this.typeSuggestion = typeSuggestion;
+        }
+        
+        String getTableName() {
+            if (indexSuggestion != null) return indexSuggestion.getTable().getName();
+            return typeSuggestion.getColumn().getParent().getName();
+        }
+        
+        String getChange() {
+            if (indexSuggestion != null) {
+                StringBuilder columns = new StringBuilder();
+                for (SQLColumn col : indexSuggestion.getColumns()) {
+                    if (columns.length() > 0) columns.append(", "); //$NON-NLS-1$
+                    columns.append(col.getName());
+                }
+                return Messages.getString("ProfileAdvisorAction." + indexSuggestion.getType().name(), //$NON-NLS-1$
+                        indexSuggestion.getExistingIndex() == null ? "" : indexSuggestion.getExistingIndex().getName(), //$NON-NLS-1$
+                        columns.toString());
+            }
+            if (typeSuggestion.getSuggestedType() != null) {
+                return Messages.getString("ProfileAdvisorAction.changeType", //$NON-NLS-1$
+                        typeSuggestion.getColumn().getName(), typeSuggestion.getSuggestedType().getName());
+            }
+            return Messages.getString("ProfileAdvisorAction.changeLength", //$NON-NLS-1$
+                    typeSuggestion.getColumn().getName(), Integer.toString(typeSuggestion.getSuggestedPrecision()));
+        }
+        
+        String getReason() {
+            if (indexSuggestion != null) return indexSuggestion.getReason();
+            return typeSuggestion.getReason();
+        }
+        
+        long getBytes() {
+            if (indexSuggestion != null) return indexSuggestion.getEstimatedSize();
+            return typeSuggestion.getSavedBytes();
+        }
+    }
+    
+    private static class SuggestionTableModel extends AbstractTableModel {
+        
+        private final List<SuggestionRow> rows;
+        
+        SuggestionTableModel(List<SuggestionRow> rows) {
+            this.rows = rows;
+        }
+
+        public int getColumnCount() {
+            return 5;
+        }
+
+        public int getRowCount() {
+            return rows.size();
+        }
+        
+        @Override
+        public String getColumnName(int column) {
+            switch (column) {
+            case 0: return Messages.getString("ProfileAdvisorAction.applyColumn"); //$NON-NLS-1$
+            case 1: return Messages.getString("ProfileAdvisorAction.tableColumn"); //$NON-NLS-1$
+            case 2: return Messages.getString("ProfileAdvisorAction.changeColumn"); //$NON-NLS-1$
+            case 3: return Messages.getString("ProfileAdvisorAction.bytesColumn"); //$NON-NLS-1$
+            case 4: return Messages.getString("ProfileAdvisorAction.reasonColumn"); //$NON-NLS-1$
+            default: throw new IndexOutOfBoundsException("Unknown column " + column); //$NON-NLS-1$
+            }
+        }
+        
+        @Override
+        public Class<?> getColumnClass(int column) {
+            if (column == 0) return Boolean.class;
+            if (column == 3) return Long.class;
+            return String.class;
+        }
+
+        public Object getValueAt(int rowIndex, int column) {
+            SuggestionRow row = rows.get(rowIndex);
+            switch (column) {
+            case 0: return Boolean.valueOf(row.accepted);
+            case 1: return row.getTableName();
+            case 2: return row.getChange();
+            case 3: return Long.valueOf(row.getBytes());
+            case 4: return row.getReason();
+            default: throw new IndexOutOfBoundsException("Unknown column " + column); //$NON-NLS-1$
+            }
+        }
+        
+        @Override
+        public boolean isCellEditable(int rowIndex, int column) {
+            return column == 0;
+        }
+        
+        @Override
+        public void setValueAt(Object value, int rowIndex, int column) {
+            if (column != 0) return;
+            rows.get(rowIndex).accepted = ((Boolean) value).booleanValue();
+            fireTableCellUpdated(rowIndex, column);
+        }
+    }
+
+    public ProfileAdvisorAction(ArchitectFrame frame) {
+        super(frame, Messages.getString("ProfileAdvisorAction.name"), Messages.getString("ProfileAdvisorAction.description")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    public void actionPerformed(ActionEvent e) {
+        try {
+            List<SQLTable> tables = new ArrayList<SQLTable>();
+            for (PlayPenComponent ppc : getPlaypen().getSelectedItems()) {
+                if (ppc instanceof TablePane) {
+                    tables.add(((TablePane) ppc).getModel());
+                }
+            }
+            if (tables.isEmpty()) {
+                tables.addAll(getSession().getTargetDatabase().getTables());
+            }
+            
+            List<TableProfileResult> results = getSession().getProfileManager().getResults();
+            IndexAdvisor indexAdvisor = new IndexAdvisor(results);
+            TypeRightSizingAdvisor typeAdvisor = new TypeRightSizingAdvisor(results, getSession().getSQLTypes());
+            
+            List<SuggestionRow> rows = new ArrayList<SuggestionRow>();
+            for (IndexSuggestion suggestion : indexAdvisor.suggestIndexes(tables)) {
+                rows.add(new SuggestionRow(suggestion));
+            }
+            for (TypeSizeSuggestion suggestion : typeAdvisor.suggestTypes(tables)) {
+                rows.add(new SuggestionRow(suggestion));
+            }
+            
+            if (rows.isEmpty()) {
+                JOptionPane.showMessageDialog(frame, 
+                        Messages.getString("ProfileAdvisorAction.noSuggestions"), //$NON-NLS-1$
+                        Messages.getString("ProfileAdvisorAction.name"), JOptionPane.INFORMATION_MESSAGE); //$NON-NLS-1$
+                return;
+            }
+            
+            JTable suggestionTable = new JTable(new SuggestionTableModel(rows));
+            JScrollPane scrollPane = new JScrollPane(suggestionTable);
+            scrollPane.setPreferredSize(new Dimension(800, 300));
+            int choice = JOptionPane.showConfirmDialog(frame, scrollPane, 
+                    Messages.getString("ProfileAdvisorAction.name"), //$NON-NLS-1$
+                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (choice != JOptionPane.OK_OPTION) return;
+            if (suggestionTable.isEditing()) {
+                suggestionTable.getCellEditor().stopCellEditing();
+            }
+            
+            List<IndexSuggestion> acceptedIndexes = new ArrayList<IndexSuggestion>();
+            List<TypeSizeSuggestion> acceptedTypes = new ArrayList<TypeSizeSuggestion>();
+            for (SuggestionRow row : rows) {
+                if (!row.accepted) continue;
+                if (row.indexSuggestion != null) {
+                    acceptedIndexes.add(row.indexSuggestion);
+                } else {
+                    acceptedTypes.add(row.typeSuggestion);
+                }
+            }
+            if (acceptedIndexes.isEmpty() && acceptedTypes.isEmpty()) return;
+            
+            SQLDatabase targetDatabase = getSession().getTargetDatabase();
+            targetDatabase.begin(Messages.getString("ProfileAdvisorAction.name")); //$NON-NLS-1$
+            try {
+                indexAdvisor.applySuggestions(acceptedIndexes);
+                typeAdvisor.applySuggestions(acceptedTypes);
+                targetDatabase.commit();
+            } catch (Throwable t) {
+                targetDatabase.rollback(t.getMessage());
+                throw t;
+            }
+        } catch (Throwable t) {
+            logger.error("Error while advising from profiles", t); //$NON-NLS-1$
+            ASUtils.showExceptionDialog(getSession(), Messages.getString("ProfileAdvisorAction.adviceError"), t); //$NON-NLS-1$
+        }
+    }
+}
@@ -23,6 +23,8 @@ import java.awt.Component;
 import java.awt.Window;
 import java.awt.event.ActionEvent;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import javax.swing.AbstractAction;
@@ -35,6 +37,9 @@ import javax.swing.JProgressBar;
 import javax.swing.SwingUtilities;
 import javax.swing.tree.TreePath;
 
+import ca.sqlpower.architect.catalog.CatalogSnapshotCache;
+import ca.sqlpower.architect.catalog.IncrementalCatalogRefresher;
+import ca.sqlpower.architect.catalog.SchemaMetadata;
 import ca.sqlpower.architect.swingui.ASUtils;
 import ca.sqlpower.architect.swingui.ArchitectSwingSession;
 import ca.sqlpower.architect.swingui.DBTree;
@@ -59,6 +64,12 @@ public class RefreshAction extends AbstractArchitectAction {
     /**
      * This will refresh all of the databases on a different thread and
      * allows the refresh to be monitorable.
+     * <p>
+     * Databases whose type has catalog queries are refreshed incrementally:
+     * the schemas that changed are read on the worker thread, and the
+     * SQLObjects are updated to match in {@link #cleanup()} on the Event
+     * Dispatch Thread, so the tree sees each change as it happens. Other
+     * databases are refreshed completely on the worker thread.
      */
     private class RefreshMonitorableWorker extends SPSwingWorker {
         
@@ -66,6 +77,19 @@ public class RefreshAction extends AbstractArchitectAction {
         private final Component parent;
         private SQLDatabase dbBeingRefreshed;
         
+        /**
+         * The changed schemas read by each incremental refresh, to be applied
+         * on the Event Dispatch Thread.
+         */
+        private final Map<IncrementalCatalogRefresher, Map<SQLObject, SchemaMetadata>> changes =
+            new LinkedHashMap<IncrementalCatalogRefresher, Map<SQLObject, SchemaMetadata>>();
+        
+        /**
+         * True if at least one database was refreshed completely, off the
+         * Event Dispatch Thread.
+         */
+        private boolean fullRefresh;
+        
         public RefreshMonitorableWorker(SwingWorkerRegistry registry, Component parent, Set<SQLDatabase> dbs) {
             super(registry);
             this.parent = parent;
@@ -87,7 +111,15 @@ public class RefreshAction extends AbstractArchitectAction {
             try {
                 for (SQLDatabase db : databasesToRefresh) {
                     dbBeingRefreshed = db;
-                    db.refresh();
+                    IncrementalCatalogRefresher refresher = 
+                        new IncrementalCatalogRefresher(db, CatalogSnapshotCache.getDefault());
+                    Map<SQLObject, SchemaMetadata> dbChanges = refresher.findChanges();
+                    if (refresher.isComplete()) {
+                        changes.put(refresher, dbChanges);
+                    } else {
+                        db.refresh();
+                        fullRefresh = true;
+                    }
                     increaseProgress();
                 }
             } catch (SQLObjectException ex) {
@@ -99,6 +131,24 @@ public class RefreshAction extends AbstractArchitectAction {
     
         @Override
         public void cleanup() throws Exception {
+            for (Map.Entry<IncrementalCatalogRefresher, Map<SQLObject, SchemaMetadata>> entry : changes.entrySet()) {
+                try {
+                    entry.getKey().apply(entry.getValue());
+                } catch (SQLObjectException ex) {
+                    setDoStuffException(ex);
+                }
+            }
+            
+            if (fullRefresh) {
+                refreshTreeStructure();
+            }
+            
+            if (getDoStuffException() != null) {
+                ASUtils.showExceptionDialogNoReport(parent, "Refresh failed", getDoStuffException());
+            }
+        }
+        
+        private void refreshTreeStructure() {
             // XXX this is not ideal because it collapses all tree nodes after the refresh is done.
             // However, it is necessary to notify the DBTree (JTree) of the changes, because all the
             // events that happened during the refresh were not on the Event Dispatch Thread,
@@ -119,10 +169,6 @@ public class RefreshAction extends AbstractArchitectAction {
             // deadlock too easily though, since the EDT might already have something in the queue
             // that would block until the invokeAndWait item has run.
             ((DBTreeModel) getSession().getDBTree().getModel()).refreshTreeStructure();
-            
-            if (getDoStuffException() != null) {
-                ASUtils.showExceptionDialogNoReport(parent, "Refresh failed", getDoStuffException());
-            }
         }
     }
 
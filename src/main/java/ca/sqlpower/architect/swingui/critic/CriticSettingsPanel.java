@@ -28,8 +28,11 @@ import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 
 import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
+import ca.sqlpower.architect.ddl.critic.ThresholdCritic;
 import ca.sqlpower.architect.ddl.critic.CriticAndSettings.Severity;
 import ca.sqlpower.architect.ddl.critic.CriticAndSettings.StarterPlatformTypes;
 import ca.sqlpower.object.AbstractSPListener;
@@ -60,6 +63,12 @@ public class CriticSettingsPanel implements DataEntryPanel {
      */
     protected final JComboBox severityCombo;
 
+    /**
+     * Allows users to change the threshold of critics that have one. This is
+     * null if the critic does not have a threshold.
+     */
+    protected final JSpinner thresholdSpinner;
+
     /**
      * The listeners in this list will be notified when there is a change to the
      * model that causes the UI to update. Components that may need to repaint
@@ -80,6 +89,9 @@ public class CriticSettingsPanel implements DataEntryPanel {
                             "severity", oldSeverity, evt.getNewValue()));
                 }
             }
+            if (evt.getPropertyName().equals("threshold") && thresholdSpinner != null) {
+                thresholdSpinner.setValue(evt.getNewValue());
+            }
         }
     };
 
@@ -97,12 +109,23 @@ public class CriticSettingsPanel implements DataEntryPanel {
         DefaultFormBuilder builder = new DefaultFormBuilder(new FormLayout("fill:pref:grow, 5dlu, pref"), panel);
         builder.append(new JLabel(settings.getName()));
         builder.append(severityCombo);
+        if (settings instanceof ThresholdCritic) {
+            ThresholdCritic thresholdCritic = (ThresholdCritic) settings;
+            thresholdSpinner = new JSpinner(new SpinnerNumberModel(thresholdCritic.getThreshold(), 1, Integer.MAX_VALUE, 1));
+            builder.append(new JLabel(thresholdCritic.getThresholdDescription()));
+            builder.append(thresholdSpinner);
+        } else {
+            thresholdSpinner = null;
+        }
         
         settings.addSPListener(severitySettingListener);
     }
 
     public boolean applyChanges() {
         settings.setSeverity(((Severity) severityCombo.getSelectedItem()));
+        if (thresholdSpinner != null) {
+            ((ThresholdCritic) settings).setThreshold(((Number) thresholdSpinner.getValue()).intValue());
+        }
         return true;
     }
 
@@ -116,6 +139,8 @@ public class CriticSettingsPanel implements DataEntryPanel {
 
     public boolean hasUnsavedChanges() {
         if (!((Severity) severityCombo.getSelectedItem()).equals(settings.getSeverity())) return true;
+        if (thresholdSpinner != null && 
+                ((Number) thresholdSpinner.getValue()).intValue() != ((ThresholdCritic) settings).getThreshold()) return true;
         return false;
     }
 
@@ -0,0 +1,687 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.transformation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.json.JSONObject;
+
+import ca.sqlpower.architect.ddl.GenericDDLGenerator;
+import ca.sqlpower.architect.diff.SQLObjectHasher;
+import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.sqlobject.SQLCatalog;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLRelationship.ColumnMapping;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Writes the data dictionary of a session's target database as a directory
+ * of small HTML pages instead of one report: a page for each table, a page
+ * for each schema or catalog listing its tables, an index page, and a
+ * trigram index of the names of the tables and their columns that the index
+ * page searches in the browser.
+ * <p>
+ * The pages are rendered in parallel. The directory keeps a manifest of a
+ * digest of each page, and a page is only written again when its content
+ * differs from what the last run wrote, so generating the dictionary of a
+ * large model again after a few changes only touches the pages of the
+ * changed tables and the pages that list them. The manifest also keeps a
+ * digest of the part of the model each table page shows, made from the
+ * hashes of the {@link SQLObjectHasher}, and a table page whose model digest
+ * has not changed is not even rendered. Pages of objects that no longer
+ * exist are deleted.
+ */
+public class DataDictionaryGenerator {
+
+    private static final Logger logger = Logger.getLogger(DataDictionaryGenerator.class);
+
+    /**
+     * The name of the page the dictionary starts from.
+     */
+    public static final String INDEX_PAGE = "index.html"; //$NON-NLS-1$
+
+    /**
+     * The name of the search index. It holds the title, page and search
+     * terms of each table and, for each trigram of the search terms, the
+     * tables whose terms contain it.
+     */
+    public static final String SEARCH_INDEX = "search-index.json"; //$NON-NLS-1$
+
+    /**
+     * The name of the file that records the digest of each page written.
+     */
+    public static final String MANIFEST = "dictionary.properties"; //$NON-NLS-1$
+
+    private static final String SEARCH_SCRIPT = "search.js"; //$NON-NLS-1$
+
+    private static final String SEARCH_SCRIPT_RESOURCE = "dictionary-search.js"; //$NON-NLS-1$
+
+    private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+
+    /**
+     * Goes into every model digest, so changing how table pages are rendered
+     * can make the next run render them all again.
+     */
+    private static final String MODEL_DIGEST_VERSION = "1"; //$NON-NLS-1$
+
+    private final ArchitectSwingSession session;
+
+    /**
+     * The file name of the page of each table, schema and catalog.
+     */
+    private final Map<SQLObject, String> pageNames = new IdentityHashMap<SQLObject, String>();
+
+    /**
+     * Names the types of columns the same way the profile reports do. Each
+     * thread rendering pages has its own, as the generator is not thread
+     * safe.
+     */
+    private final ThreadLocal<GenericDDLGenerator> typeNames = new ThreadLocal<GenericDDLGenerator>() {
+        @Override
+        protected GenericDDLGenerator initialValue() {
+            try {
+                return new GenericDDLGenerator();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+    /**
+     * Hashes the tables for the model digests of their pages. It watches
+     * nothing, so it keeps no state and can be used by all the threads.
+     */
+    private final SQLObjectHasher hasher = new SQLObjectHasher();
+
+    /**
+     * The number of pages rendered by the last run.
+     */
+    private int renderedPageCount;
+
+    /**
+     * One page of the dictionary, with what happened to it in the last run.
+     */
+    private abstract class Page {
+
+        final String fileName;
+
+        String digest;
+
+        String modelDigest;
+
+        boolean rendered;
+
+        boolean written;
+
+        Page(String fileName) {
+            this.fileName = fileName;
+        }
+
+        abstract String render() throws Exception;
+
+        /**
+         * Returns a digest of everything in the model the page shows, or
+         * null if the page has to be rendered to tell whether it changed.
+         */
+        String digestModel() throws Exception {
+            return null;
+        }
+
+        /**
+         * Returns the manifest entry of the page: its digest, followed by its
+         * model digest if it has one.
+         */
+        String getManifestEntry() {
+            return modelDigest == null ? digest : digest + " " + modelDigest; //$NON-NLS-1$
+        }
+
+        /**
+         * Renders the page and writes it to the given directory unless it
+         * is already there with the digest of the given manifest entry. The
+         * page is not rendered at all if the entry has the page's current
+         * model digest.
+         */
+        Page write(File outputDirectory, String oldEntry) throws Exception {
+            String oldDigest = oldEntry;
+            String oldModelDigest = null;
+            if (oldEntry != null && oldEntry.indexOf(' ') >= 0) {
+                oldDigest = oldEntry.substring(0, oldEntry.indexOf(' '));
+                oldModelDigest = oldEntry.substring(oldEntry.indexOf(' ') + 1);
+            }
+            File file = new File(outputDirectory, fileName);
+            modelDigest = digestModel();
+            if (modelDigest != null && modelDigest.equals(oldModelDigest) && file.exists()) {
+                digest = oldDigest;
+                return this;
+            }
+
+            rendered = true;
+            byte[] content = render().getBytes(ENCODING);
+            digest = sha1(content);
+            if (digest.equals(oldDigest) && file.exists()) {
+                return this;
+            }
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+            written = true;
+            return this;
+        }
+    }
+
+    public DataDictionaryGenerator(ArchitectSwingSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Writes the dictionary to the given directory, creating it if needed,
+     * and returns the pages that were written. Pages that have not changed
+     * since the dictionary was last written there are left alone.
+     */
+    public List<File> generate(final File outputDirectory) throws Exception {
+        outputDirectory.mkdirs();
+        final Properties oldManifest = readManifest(outputDirectory);
+        List<Page> pages = createPages();
+
+        List<Callable<Page>> tasks = new ArrayList<Callable<Page>>();
+        for (final Page page : pages) {
+            tasks.add(new Callable<Page>() {
+                public Page call() throws Exception {
+                    return page.write(outputDirectory, oldManifest.getProperty(page.fileName));
+                }
+            });
+        }
+        runAll(tasks);
+
+        Properties manifest = new Properties();
+        List<File> written = new ArrayList<File>();
+        renderedPageCount = 0;
+        for (Page page : pages) {
+            manifest.setProperty(page.fileName, page.getManifestEntry());
+            if (page.rendered) {
+                renderedPageCount++;
+            }
+            if (page.written) {
+                written.add(new File(outputDirectory, page.fileName));
+            }
+        }
+        for (String oldPage : oldManifest.stringPropertyNames()) {
+            if (!manifest.containsKey(oldPage)) {
+                File stale = new File(outputDirectory, oldPage);
+                if (stale.exists() && !stale.delete()) {
+                    logger.warn("Could not delete " + stale); //$NON-NLS-1$
+                }
+            }
+        }
+        writeManifest(outputDirectory, manifest);
+        logger.debug("Rendered " + renderedPageCount + " and wrote " + written.size() + " of " + pages.size() //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                + " data dictionary pages"); //$NON-NLS-1$
+        return written;
+    }
+
+    /**
+     * Returns the number of pages the last run of
+     * {@link #generate(File)} rendered.
+     */
+    int getRenderedPageCount() {
+        return renderedPageCount;
+    }
+
+    /**
+     * Runs the given tasks, one for each processor at a time.
+     */
+    private void runAll(List<Callable<Page>> tasks) throws Exception {
+        int threadCount = Math.min(Runtime.getRuntime().availableProcessors(), tasks.size());
+        if (threadCount <= 1) {
+            for (Callable<Page> task : tasks) {
+                task.call();
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (Future<Page> result : pool.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Names the pages of all the tables and their containers, and creates
+     * the pages of the dictionary.
+     */
+    private List<Page> createPages() throws Exception {
+        pageNames.clear();
+        Set<String> usedNames = new HashSet<String>();
+        usedNames.add(INDEX_PAGE);
+        usedNames.add(SEARCH_INDEX);
+        usedNames.add(SEARCH_SCRIPT);
+        usedNames.add(MANIFEST);
+
+        final List<SQLTable> tables = new ArrayList<SQLTable>(
+                new SQLObjectDescendants<SQLTable>(session.getTargetDatabase(), SQLTable.class));
+        final List<SQLObject> containers = new ArrayList<SQLObject>();
+        final Map<SQLObject, List<SQLTable>> containerTables = new IdentityHashMap<SQLObject, List<SQLTable>>();
+        final List<SQLTable> topTables = new ArrayList<SQLTable>();
+        for (SQLTable table : tables) {
+            pageNames.put(table, uniqueName("table-" + VelocityTransformation.getFileName(table), usedNames)); //$NON-NLS-1$
+            SQLObject parent = table.getParent();
+            if (parent == null || parent instanceof SQLDatabase) {
+                topTables.add(table);
+                continue;
+            }
+            List<SQLTable> children = containerTables.get(parent);
+            if (children == null) {
+                children = new ArrayList<SQLTable>();
+                containerTables.put(parent, children);
+                containers.add(parent);
+                pageNames.put(parent, uniqueName("schema-" + VelocityTransformation.getFileName(parent), usedNames)); //$NON-NLS-1$
+            }
+            children.add(table);
+        }
+
+        List<Page> pages = new ArrayList<Page>();
+        pages.add(new Page(INDEX_PAGE) {
+            String render() {
+                return renderIndex(containers, containerTables, topTables);
+            }
+        });
+        pages.add(new Page(SEARCH_INDEX) {
+            String render() throws Exception {
+                return renderSearchIndex(tables);
+            }
+        });
+        pages.add(new Page(SEARCH_SCRIPT) {
+            String render() throws IOException {
+                InputStream in = DataDictionaryGenerator.class.getResourceAsStream(SEARCH_SCRIPT_RESOURCE);
+                try {
+                    return IOUtils.toString(in, ENCODING);
+                } finally {
+                    in.close();
+                }
+            }
+        });
+        for (final SQLObject container : containers) {
+            pages.add(new Page(pageNames.get(container)) {
+                String render() {
+                    return renderContainer(container, containerTables.get(container));
+                }
+            });
+        }
+        for (final SQLTable table : tables) {
+            pages.add(new Page(pageNames.get(table)) {
+                String render() throws Exception {
+                    return renderTable(table);
+                }
+
+                String digestModel() throws Exception {
+                    return digestTable(table);
+                }
+            });
+        }
+        return pages;
+    }
+
+    private static String uniqueName(String baseName, Set<String> usedNames) {
+        String name = baseName + ".html"; //$NON-NLS-1$
+        for (int i = 2; !usedNames.add(name.toLowerCase()); i++) {
+            name = baseName + "_" + i + ".html"; //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        return name;
+    }
+
+    private String renderIndex(List<SQLObject> containers, Map<SQLObject, List<SQLTable>> containerTables,
+            List<SQLTable> topTables) {
+        StringBuilder html = new StringBuilder();
+        startPage(html, session.getName());
+        html.append("<script type=\"text/javascript\" src=\"").append(SEARCH_SCRIPT).append("\"></script>\n");
+        html.append("<p><input type=\"text\" id=\"search\" size=\"40\"/></p>\n");
+        html.append("<ul id=\"results\"></ul>\n");
+        html.append("<script type=\"text/javascript\">dictionarySearch(document.getElementById(\"search\"), document.getElementById(\"results\"));</script>\n");
+        if (!containers.isEmpty()) {
+            html.append("<h2>Schemas</h2>\n<ul>\n");
+            for (SQLObject container : containers) {
+                html.append("<li>");
+                link(html, container);
+                html.append(" (").append(containerTables.get(container).size()).append(" tables)</li>\n");
+            }
+            html.append("</ul>\n");
+        }
+        if (!topTables.isEmpty()) {
+            html.append("<h2>Tables</h2>\n");
+            tableList(html, topTables);
+        }
+        endPage(html);
+        return html.toString();
+    }
+
+    private String renderContainer(SQLObject container, List<SQLTable> tables) {
+        StringBuilder html = new StringBuilder();
+        startPage(html, (container instanceof SQLCatalog ? "Catalog " : "Schema ") + container.getName());
+        tableList(html, tables);
+        endPage(html);
+        return html.toString();
+    }
+
+    private String renderTable(SQLTable table) throws Exception {
+        StringBuilder html = new StringBuilder();
+        startPage(html, "Table " + table.getName());
+        if (pageNames.containsKey(table.getParent())) {
+            html.append("<p>In ");
+            link(html, table.getParent());
+            html.append("</p>\n");
+        }
+        html.append("<p>Physical name: ").append(escape(table.getPhysicalName())).append("</p>\n");
+        if (table.getRemarks() != null && table.getRemarks().length() > 0) {
+            html.append("<p>").append(escape(table.getRemarks())).append("</p>\n");
+        }
+
+        html.append("<h2>Columns</h2>\n<table border=\"1\" cellspacing=\"0\" cellpadding=\"2\">\n");
+        html.append("<tr><th>Name</th><th>Physical Name</th><th>Type</th><th>Primary Key</th>"
+                + "<th>Nullable</th><th>Default</th><th>Remarks</th></tr>\n");
+        for (SQLColumn column : table.getColumns()) {
+            html.append("<tr><td>").append(escape(column.getName()));
+            html.append("</td><td>").append(escape(column.getPhysicalName()));
+            html.append("</td><td>").append(escape(typeNames.get().getColumnDataTypeName(column)));
+            html.append("</td><td>").append(column.isPrimaryKey() ? "Yes" : "");
+            html.append("</td><td>").append(column.isDefinitelyNullable() ? "Yes" : "");
+            html.append("</td><td>").append(escape(column.getDefaultValue()));
+            html.append("</td><td>").append(escape(column.getRemarks()));
+            html.append("</td></tr>\n");
+        }
+        html.append("</table>\n");
+
+        List<SQLRelationship> imported = SQLRelationship.getExportedKeys(table.getImportedKeys());
+        if (!imported.isEmpty()) {
+            html.append("<h2>References</h2>\n<ul>\n");
+            for (SQLRelationship relationship : imported) {
+                relationshipItem(html, relationship, relationship.getPkTable());
+            }
+            html.append("</ul>\n");
+        }
+        List<SQLRelationship> exported = table.getExportedKeys();
+        if (!exported.isEmpty()) {
+            html.append("<h2>Referenced By</h2>\n<ul>\n");
+            for (SQLRelationship relationship : exported) {
+                relationshipItem(html, relationship, relationship.getFkTable());
+            }
+            html.append("</ul>\n");
+        }
+
+        List<SQLIndex> indices = table.getIndices();
+        if (!indices.isEmpty()) {
+            html.append("<h2>Indexes</h2>\n<ul>\n");
+            for (SQLIndex index : indices) {
+                html.append("<li>").append(escape(index.getName()));
+                if (index.isUnique()) {
+                    html.append(" (unique)");
+                }
+                html.append(": ");
+                String separator = "";
+                for (SQLIndex.Column column : index.getChildren(SQLIndex.Column.class)) {
+                    html.append(separator).append(escape(column.getName()));
+                    separator = ", ";
+                }
+                html.append("</li>\n");
+            }
+            html.append("</ul>\n");
+        }
+        endPage(html);
+        return html.toString();
+    }
+
+    /**
+     * Returns a digest of everything the page of the given table shows: the
+     * hashes of the table with its columns, of its indexes and of its
+     * relationships, along with what those hashes leave out, which is the
+     * order of the columns and the names and pages of the objects the page
+     * links to.
+     */
+    private String digestTable(SQLTable table) throws Exception {
+        StringBuilder model = new StringBuilder();
+        model.append(MODEL_DIGEST_VERSION).append('\n');
+        model.append(session.getName()).append('\n');
+        SQLObject parent = table.getParent();
+        model.append(parent == null ? null : parent.getName()).append(' ').append(pageNames.get(parent)).append('\n');
+        model.append(hasher.getHash(table)).append('\n');
+        for (SQLColumn column : table.getColumns()) {
+            model.append(column.getName()).append('\n');
+        }
+        for (SQLIndex index : table.getIndices()) {
+            model.append(hasher.getHash(index)).append('\n');
+        }
+        model.append('\n');
+        for (SQLRelationship relationship : SQLRelationship.getExportedKeys(table.getImportedKeys())) {
+            digestRelationship(model, relationship, relationship.getPkTable());
+        }
+        model.append('\n');
+        for (SQLRelationship relationship : table.getExportedKeys()) {
+            digestRelationship(model, relationship, relationship.getFkTable());
+        }
+        return sha1(model.toString().getBytes(ENCODING));
+    }
+
+    private void digestRelationship(StringBuilder model, SQLRelationship relationship, SQLTable other) throws Exception {
+        model.append(hasher.getHash(relationship)).append(' ');
+        model.append(other == null ? null : other.getName()).append(' ').append(pageNames.get(other)).append('\n');
+    }
+
+    private void relationshipItem(StringBuilder html, SQLRelationship relationship, SQLTable other) {
+        html.append("<li>").append(escape(relationship.getName())).append(": ");
+        link(html, other);
+        html.append(" (");
+        String separator = "";
+        for (ColumnMapping mapping : relationship.getChildren(ColumnMapping.class)) {
+            html.append(separator);
+            html.append(escape(mapping.getFkColumn() == null ? null : mapping.getFkColumn().getName()));
+            html.append(" &rarr; ");
+            html.append(escape(mapping.getPkColumn() == null ? null : mapping.getPkColumn().getName()));
+            separator = ", ";
+        }
+        html.append(")</li>\n");
+    }
+
+    private void tableList(StringBuilder html, List<SQLTable> tables) {
+        html.append("<ul>\n");
+        for (SQLTable table : tables) {
+            html.append("<li>");
+            link(html, table);
+            if (table.getRemarks() != null && table.getRemarks().length() > 0) {
+                html.append(" &ndash; ").append(escape(table.getRemarks()));
+            }
+            html.append("</li>\n");
+        }
+        html.append("</ul>\n");
+    }
+
+    /**
+     * Appends a link to the page of the given object, or just its name if
+     * it has no page.
+     */
+    private void link(StringBuilder html, SQLObject object) {
+        String page = object == null ? null : pageNames.get(object);
+        if (page == null) {
+            html.append(escape(object == null ? null : object.getName()));
+        } else {
+            html.append("<a href=\"").append(escape(page)).append("\">");
+            html.append(escape(object.getName())).append("</a>");
+        }
+    }
+
+    private void startPage(StringBuilder html, String title) {
+        html.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD HTML 4.01//EN\" \"http://www.w3.org/TR/html4/strict.dtd\">\n");
+        html.append("<html>\n<head>\n");
+        html.append("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=").append(ENCODING).append("\">\n");
+        html.append("<title>").append(escape(title)).append("</title>\n");
+        html.append("</head>\n<body>\n");
+        html.append("<p><a href=\"").append(INDEX_PAGE).append("\">").append(escape(session.getName())).append("</a></p>\n");
+        html.append("<h1>").append(escape(title)).append("</h1>\n");
+    }
+
+    private void endPage(StringBuilder html) {
+        html.append("</body>\n</html>\n");
+    }
+
+    /**
+     * Returns the name of the given table with the name of its schema or
+     * catalog in front.
+     */
+    private static String getQualifiedName(SQLTable table) {
+        SQLObject parent = table.getParent();
+        if (parent == null || parent instanceof SQLDatabase) {
+            return table.getName();
+        }
+        return parent.getName() + "." + table.getName(); //$NON-NLS-1$
+    }
+
+    private static String escape(String text) {
+        return text == null ? "" : SQLPowerUtils.escapeXML(text);
+    }
+
+    /**
+     * Builds the search index. Each table is searched by its name, physical
+     * name and the names of its columns, in lower case. The pages of each
+     * trigram are in increasing order, so the script can intersect them in
+     * one pass.
+     */
+    private String renderSearchIndex(List<SQLTable> tables) throws Exception {
+        StringBuilder json = new StringBuilder("{\"pages\":[\n");
+        Map<String, SortedSet<Integer>> trigrams = new TreeMap<String, SortedSet<Integer>>();
+        for (int i = 0; i < tables.size(); i++) {
+            SQLTable table = tables.get(i);
+            StringBuilder terms = new StringBuilder(table.getName());
+            if (table.getPhysicalName() != null) {
+                terms.append(' ').append(table.getPhysicalName());
+            }
+            for (SQLColumn column : table.getColumns()) {
+                terms.append(' ').append(column.getName());
+            }
+            String lowerTerms = terms.toString().toLowerCase();
+            for (String term : lowerTerms.split(" ")) {
+                for (int j = 0; j + 3 <= term.length(); j++) {
+                    String trigram = term.substring(j, j + 3);
+                    SortedSet<Integer> pages = trigrams.get(trigram);
+                    if (pages == null) {
+                        pages = new TreeSet<Integer>();
+                        trigrams.put(trigram, pages);
+                    }
+                    pages.add(i);
+                }
+            }
+            if (i > 0) {
+                json.append(",\n");
+            }
+            json.append("{\"title\":").append(JSONObject.quote(getQualifiedName(table)));
+            json.append(",\"url\":").append(JSONObject.quote(pageNames.get(table)));
+            json.append(",\"terms\":").append(JSONObject.quote(lowerTerms)).append('}');
+        }
+        json.append("\n],\n\"trigrams\":{");
+        boolean first = true;
+        for (Map.Entry<String, SortedSet<Integer>> entry : trigrams.entrySet()) {
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append(JSONObject.quote(entry.getKey())).append(":[");
+            String separator = "";
+            for (Integer page : entry.getValue()) {
+                json.append(separator).append(page);
+                separator = ",";
+            }
+            json.append(']');
+        }
+        json.append("\n}}\n");
+        return json.toString();
+    }
+
+    private static Properties readManifest(File outputDirectory) throws IOException {
+        Properties manifest = new Properties();
+        File file = new File(outputDirectory, MANIFEST);
+        if (file.exists()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                manifest.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        return manifest;
+    }
+
+    private static void writeManifest(File outputDirectory, Properties manifest) throws IOException {
+        OutputStream out = new FileOutputStream(new File(outputDirectory, MANIFEST));
+        try {
+            manifest.store(out, "Data dictionary pages and their SHA-1 digests"); //$NON-NLS-1$
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String sha1(byte[] content) throws NoSuchAlgorithmException {
+        return toHex(MessageDigest.getInstance("SHA-1").digest(content)); //$NON-NLS-1$
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.transformation;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.SAXSource;
+
+import org.apache.log4j.Logger;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+
+/**
+ * Reports the XML of a session's project as SAX events while the project is
+ * being saved, so a transformation can read the project without a copy of
+ * the whole file in memory. The project is saved into a pipe on a thread of
+ * its own and parsed from the other end of the pipe as the bytes arrive.
+ * <p>
+ * The input source given to {@link #parse(InputSource)} is ignored; use
+ * {@link #createSource(ArchitectSwingSession)} to get a source for a
+ * transformer.
+ */
+public class ProjectXMLReader extends XMLFilterImpl {
+
+    private static final Logger logger = Logger.getLogger(ProjectXMLReader.class);
+
+    /**
+     * The size of the pipe between the save and the parser.
+     */
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private final ArchitectSwingSession session;
+
+    /**
+     * Creates a reader of the project of the given session.
+     */
+    public ProjectXMLReader(ArchitectSwingSession session) throws SAXException {
+        this.session = session;
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            setParent(factory.newSAXParser().getXMLReader());
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * Returns a source for a transformer that reads the project of the given
+     * session.
+     */
+    public static SAXSource createSource(ArchitectSwingSession session) throws SAXException {
+        return new SAXSource(new ProjectXMLReader(session), new InputSource());
+    }
+
+    @Override
+    public void parse(InputSource ignored) throws SAXException, IOException {
+        final PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        final PipedOutputStream out = new PipedOutputStream(in);
+        final AtomicBoolean parsing = new AtomicBoolean(true);
+        final Exception[] saveError = new Exception[1];
+        Thread saver = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    session.getSaveBehaviour().saveToStream(session, out);
+                } catch (Exception e) {
+                    // Once the parser has stopped the save fails because the
+                    // pipe is closed, which is not worth reporting.
+                    if (parsing.get()) {
+                        saveError[0] = e;
+                    }
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        logger.debug("Could not close the project pipe", e); //$NON-NLS-1$
+                    }
+                }
+            }
+        }, "Project XML writer"); //$NON-NLS-1$
+        saver.setDaemon(true);
+        saver.start();
+
+        SAXException parseError = null;
+        try {
+            super.parse(new InputSource(in));
+        } catch (SAXException e) {
+            parseError = e;
+        } finally {
+            parsing.set(false);
+            // Unblocks the save if the parser stopped before the end.
+            in.close();
+            try {
+                saver.join();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while reading the project"); //$NON-NLS-1$
+            }
+        }
+        // A save that failed cuts the XML off, so its error is the cause of
+        // any parse error.
+        if (saveError[0] instanceof IOException) {
+            throw (IOException) saveError[0];
+        } else if (saveError[0] != null) {
+            throw new SAXException("Could not write the project", saveError[0]); //$NON-NLS-1$
+        } else if (parseError != null) {
+            throw parseError;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.transformation;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+import ca.sqlpower.sqlobject.SQLObject;
+
+/**
+ * The descendants of a SQLObject of one type, in the same order as
+ * {@link ca.sqlpower.sqlobject.SQLObjectUtils#findDescendentsByClass(SQLObject, Class, java.util.List)}
+ * finds them. Each iterator walks the tree as it goes, so a template that
+ * loops over the tables of a huge model never needs a list of all of them.
+ * The descendants of a match are not searched.
+ */
+public class SQLObjectDescendants<T extends SQLObject> extends AbstractCollection<T> {
+
+    private final SQLObject root;
+
+    private final Class<T> type;
+
+    public SQLObjectDescendants(SQLObject root, Class<T> type) {
+        this.root = root;
+        this.type = type;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new DescendantIterator();
+    }
+
+    /**
+     * Counts the descendants by walking them.
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (Iterator<T> it = iterator(); it.hasNext(); it.next()) {
+            size++;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    private class DescendantIterator implements Iterator<T> {
+
+        /**
+         * The iterators over the children of the objects on the path from the
+         * root to the object being searched.
+         */
+        private final LinkedList<Iterator<? extends SQLObject>> path = new LinkedList<Iterator<? extends SQLObject>>();
+
+        private T next;
+
+        DescendantIterator() {
+            path.add(children(root));
+        }
+
+        public boolean hasNext() {
+            while (next == null && !path.isEmpty()) {
+                Iterator<? extends SQLObject> children = path.getLast();
+                if (!children.hasNext()) {
+                    path.removeLast();
+                    continue;
+                }
+                SQLObject child = children.next();
+                if (type.isInstance(child)) {
+                    next = type.cast(child);
+                } else {
+                    path.add(children(child));
+                }
+            }
+            return next != null;
+        }
+
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T result = next;
+            next = null;
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private Iterator<? extends SQLObject> children(SQLObject parent) {
+            // a copy of one list of children, so the walk does not fail if
+            // the children change while a template runs
+            return new ArrayList<SQLObject>(parent.getChildren()).iterator();
+        }
+    }
+}
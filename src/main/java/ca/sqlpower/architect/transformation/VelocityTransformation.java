@@ -21,61 +21,219 @@ package ca.sqlpower.architect.transformation;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.context.Context;
 import org.apache.velocity.tools.generic.AlternatorTool;
 import org.apache.velocity.tools.generic.DateTool;
 import org.apache.velocity.tools.generic.NumberTool;
 import org.apache.velocity.tools.generic.SortTool;
 
 import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLSchema;
+import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.sqlobject.SQLType;
 
 /**
+ * Runs Velocity templates over a session's target database. The
+ * <code>tables</code> and <code>relationships</code> of the context are
+ * walked as a template loops over them instead of being collected first, and
+ * <code>profiles</code> is the profile manager's own list of results.
+ * <p>
+ * Each session keeps one engine, which caches the templates it has parsed and
+ * parses a template file again when it changes. Besides rendering a whole
+ * report into one file, a template can be rendered once for each table or
+ * schema into a directory, with the files written in parallel.
  *
  * @author Thomas Kellerer
  */
 public class VelocityTransformation implements ReportTransformer {
 	private static Logger logger = Logger.getLogger(VelocityTransformation.class);
 
+	private static final String ENCODING = "UTF-8";
+
+	/**
+	 * How often, in seconds, the engines check whether a cached template file
+	 * has changed.
+	 */
+	private static final String MODIFICATION_CHECK_INTERVAL = "2";
+
+	/**
+	 * The engine of each session. Sessions that are no longer used are
+	 * dropped with their engines.
+	 */
+	private static final Map<ArchitectSwingSession, VelocityEngine> engines =
+	    new WeakHashMap<ArchitectSwingSession, VelocityEngine>();
+
+	private final Map<String, Object> parameters = new HashMap<String, Object>();
+
+	/**
+	 * Returns the engine of the given session, creating it the first time.
+	 */
+	static VelocityEngine getEngine(ArchitectSwingSession session) throws Exception {
+		synchronized (engines) {
+			VelocityEngine engine = engines.get(session);
+			if (engine == null) {
+				Properties props = new Properties();
+				props.put("resource.loader", "file");
+				props.put("file.resource.loader.class", "org.apache.velocity.runtime.resource.loader.FileResourceLoader");
+				props.put("file.resource.loader.path", "");
+				props.put("file.resource.loader.cache", "true");
+				props.put("file.resource.loader.modificationCheckInterval", MODIFICATION_CHECK_INTERVAL);
+				props.put("runtime.log.logsystem.log4j.logger", logger.getName());
+
+				engine = new VelocityEngine(props);
+				engines.put(session, engine);
+			}
+			return engine;
+		}
+	}
+
 	public void transform(String builtInTemplate, File result, ArchitectSwingSession session) throws Exception {
 		throw new UnsupportedOperationException("Not supported yet.");
 	}
 	
 	/**
-	 * Performs an external XSLT transformation, sending the results
-	 * to the OutputStream result.
+	 * Runs a Velocity template over the session's project, writing the
+	 * result to the given file.
 	 *
-	 * @param the XSLT that should be run
-	 * @param xml The XML that should be transformed
-	 * @param result the output stream where the result of the transformation should be written to
+	 * @param template the Velocity template that should be run
+	 * @param result the file the result of the template is written to
 	 */
 	public void transform(File template, File result, ArchitectSwingSession session) throws Exception {
-		Properties props = new Properties();
-		props.put("resource.loader", "file");
-		props.put("file.resource.loader.class", "org.apache.velocity.runtime.resource.loader.FileResourceLoader");
-		props.put("file.resource.loader.path", "");
-		props.put("runtime.log.logsystem.log4j.logger", logger.getName());
-		
-		VelocityEngine engine = new VelocityEngine(props);
-		
-		Template t = engine.getTemplate(template.getAbsolutePath(), "UTF-8");
+		Template t = getEngine(session).getTemplate(template.getAbsolutePath(), ENCODING);
+		merge(t, new VelocityContext(createContext(session)), result);
+	}
+
+	/**
+	 * Runs a Velocity template once for each table of the session's target
+	 * database, with the table in <code>$table</code>, and writes each result
+	 * to its own file in the given directory. See
+	 * {@link #transformEach(File, File, ArchitectSwingSession, Class, String)}.
+	 */
+	public List<File> transformEachTable(File template, File outputDirectory, ArchitectSwingSession session) throws Exception {
+		return transformEach(template, outputDirectory, session, SQLTable.class, "table");
+	}
+
+	/**
+	 * Runs a Velocity template once for each schema of the session's target
+	 * database, with the schema in <code>$schema</code> and its tables in
+	 * <code>$tables</code>, and writes each result to its own file in the
+	 * given directory. See
+	 * {@link #transformEach(File, File, ArchitectSwingSession, Class, String)}.
+	 */
+	public List<File> transformEachSchema(File template, File outputDirectory, ArchitectSwingSession session) throws Exception {
+		return transformEach(template, outputDirectory, session, SQLSchema.class, "schema");
+	}
+
+	/**
+	 * Runs a Velocity template once for each object of the given type in the
+	 * session's target database and writes each result to its own file in the
+	 * given directory, one file for each processor at a time. The files are
+	 * named after the objects and their parents, with the extension the
+	 * template name has before <code>.vm</code>.
+	 *
+	 * @param name
+	 *            the name the object has in the context of the template
+	 * @return the files that were written, in the order of the objects
+	 */
+	private <T extends SQLObject> List<File> transformEach(File template, File outputDirectory,
+	        ArchitectSwingSession session, Class<T> type, final String name) throws Exception {
+		final Template t = getEngine(session).getTemplate(template.getAbsolutePath(), ENCODING);
+		final Context baseContext = createContext(session);
+		outputDirectory.mkdirs();
+		String extension = getOutputExtension(template);
+
+		List<Callable<File>> tasks = new ArrayList<Callable<File>>();
+		Set<String> fileNames = new HashSet<String>();
+		for (final T object : new SQLObjectDescendants<T>(session.getTargetDatabase(), type)) {
+			String fileName = getFileName(object);
+			for (int i = 2; !fileNames.add(fileName.toLowerCase()); i++) {
+				fileName = getFileName(object) + "_" + i;
+			}
+			final File output = new File(outputDirectory, fileName + extension);
+			tasks.add(new Callable<File>() {
+				public File call() throws Exception {
+					VelocityContext context = new VelocityContext(baseContext);
+					context.put(name, object);
+					if (!(object instanceof SQLTable)) {
+						context.put("tables", new SQLObjectDescendants<SQLTable>(object, SQLTable.class));
+					}
+					merge(t, context, output);
+					return output;
+				}
+			});
+		}
+
+		int threadCount = Math.min(Runtime.getRuntime().availableProcessors(), tasks.size());
+		if (threadCount <= 1) {
+			List<File> files = new ArrayList<File>();
+			for (Callable<File> task : tasks) {
+				files.add(task.call());
+			}
+			return files;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+		try {
+			List<File> files = new ArrayList<File>();
+			for (Future<File> result : pool.invokeAll(tasks)) {
+				files.add(result.get());
+			}
+			return files;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Creates the context every template of the given session starts from.
+	 */
+	private Context createContext(ArchitectSwingSession session) {
 		VelocityContext context = new VelocityContext();
-		context.put("tables", session.getPlayPen().getTables());
+		context.put("tables", new SQLObjectDescendants<SQLTable>(session.getTargetDatabase(), SQLTable.class));
+		context.put("relationships", new SQLObjectDescendants<SQLRelationship>(session.getTargetDatabase(), SQLRelationship.class));
+		context.put("profiles", Collections.unmodifiableList(session.getProfileManager().getResults()));
 		context.put("projectName", session.getName());
 		context.put("sorter", new SortTool());
 		context.put("dateTool", new DateTool());
 		context.put("numberTool", new NumberTool());
 		context.put("alternator", new AlternatorTool());
 		context.put("sqlTypes", SQLType.class);
-		
+		for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+			context.put(entry.getKey(), entry.getValue());
+		}
+		return context;
+	}
+
+	private void merge(Template t, Context context, File result) throws Exception {
 		FileOutputStream out = new FileOutputStream(result);
-		OutputStreamWriter writer = new OutputStreamWriter(out, "UTF-8");
+		OutputStreamWriter writer = new OutputStreamWriter(out, ENCODING);
 		try {
 			t.merge(context, writer);
 		} catch (Exception e) {
@@ -86,10 +244,38 @@ public class VelocityTransformation implements ReportTransformer {
 		}
 	}
 
+	/**
+	 * Returns the name of the file for the given object: the names of the
+	 * object and the parents it has below the database, separated by dots,
+	 * with the characters that are not safe in file names replaced.
+	 */
+	static String getFileName(SQLObject object) {
+		StringBuilder name = new StringBuilder(object.getName());
+		for (SQLObject parent = object.getParent();
+				parent != null && !(parent instanceof SQLDatabase);
+				parent = parent.getParent()) {
+			name.insert(0, parent.getName() + ".");
+		}
+		return name.toString().replaceAll("[^A-Za-z0-9._-]", "_");
+	}
+
+	/**
+	 * Returns the extension of the files written by a template, which is the
+	 * extension of its name once <code>.vm</code> is taken off, such as
+	 * <code>.html</code> for <code>table.html.vm</code>.
+	 */
+	private static String getOutputExtension(File template) {
+		String name = template.getName();
+		if (name.endsWith(".vm")) {
+			name = name.substring(0, name.length() - ".vm".length());
+		}
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? "" : name.substring(dot);
+	}
+
     @Override
     public void setParameter(String name, Object value) {
-        // TODO Auto-generated method stub
-        
+        parameters.put(name, value);
     }
 
 }
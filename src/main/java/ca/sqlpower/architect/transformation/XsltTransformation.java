@@ -18,8 +18,6 @@
  */
 package ca.sqlpower.architect.transformation;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -30,6 +28,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -43,10 +42,35 @@ import ca.sqlpower.architect.swingui.ArchitectSwingSession;
  * This class transforms xml content from the InputStream passed, into the
  * format specified by the xslt stylesheet and sends the results to an
  * OutputStream.
+ * <p>
+ * The project is read through a {@link ProjectXMLReader} as it is saved, and
+ * compiled stylesheets are kept for the next transformation that uses them.
  */
 public class XsltTransformation
   implements ReportTransformer, URIResolver {
 
+	/**
+	 * The compiled built-in stylesheets and stylesheet files by resource name
+	 * or absolute path. A stylesheet file is compiled again if it was
+	 * modified since it was compiled. Stylesheets imported by a stylesheet
+	 * are not checked.
+	 */
+	private static final Map<String, CompiledStylesheet> stylesheets = new HashMap<String, CompiledStylesheet>();
+
+	/**
+	 * A compiled stylesheet and the time its file was last modified when it
+	 * was compiled.
+	 */
+	private static class CompiledStylesheet {
+		final Templates templates;
+		final long lastModified;
+
+		CompiledStylesheet(Templates templates, long lastModified) {
+			this.templates = templates;
+			this.lastModified = lastModified;
+		}
+	}
+
 	private File baseDir;
 	private File projectDir;
 	
@@ -66,8 +90,21 @@ public class XsltTransformation
 	public void transform(String builtInXsltName, File result, ArchitectSwingSession session)
 	  throws Exception {
 
-		InputStream xsltStylesheet = getClass().getResourceAsStream(builtInXsltName);
-		transform(xsltStylesheet, result, session);
+		Templates templates;
+		synchronized (stylesheets) {
+			CompiledStylesheet compiled = stylesheets.get(builtInXsltName);
+			if (compiled == null) {
+				InputStream xsltStylesheet = getClass().getResourceAsStream(builtInXsltName);
+				try {
+					compiled = new CompiledStylesheet(compile(xsltStylesheet), 0);
+				} finally {
+					xsltStylesheet.close();
+				}
+				stylesheets.put(builtInXsltName, compiled);
+			}
+			templates = compiled.templates;
+		}
+		transform(templates, result, session);
 	}
 
 	/**
@@ -81,9 +118,24 @@ public class XsltTransformation
 	public void transform(File xsltStylesheet, File output, ArchitectSwingSession session)
 	  throws Exception {
 
-		InputStream xslt = new FileInputStream(xsltStylesheet);
 		baseDir = xsltStylesheet.getParentFile();
-		transform(xslt, output, session);
+		String key = xsltStylesheet.getAbsolutePath();
+		long lastModified = xsltStylesheet.lastModified();
+		Templates templates;
+		synchronized (stylesheets) {
+			CompiledStylesheet compiled = stylesheets.get(key);
+			if (compiled == null || compiled.lastModified != lastModified) {
+				InputStream xslt = new FileInputStream(xsltStylesheet);
+				try {
+					compiled = new CompiledStylesheet(compile(xslt), lastModified);
+				} finally {
+					xslt.close();
+				}
+				stylesheets.put(key, compiled);
+			}
+			templates = compiled.templates;
+		}
+		transform(templates, output, session);
 	}
 
 	/**
@@ -96,27 +148,44 @@ public class XsltTransformation
 	 */
 	public void transform(InputStream xsltStylesheet, File output, ArchitectSwingSession session)
 	  throws Exception {
-		ByteArrayOutputStream sessionAsStream = new ByteArrayOutputStream();
-		session.getSaveBehaviour().saveToStream(session, sessionAsStream);
-
-		Source xmlSource = new StreamSource(new ByteArrayInputStream(sessionAsStream.toByteArray()));
-		Source xsltSource = new StreamSource(xsltStylesheet);
-		FileOutputStream result = new FileOutputStream(output);
+		Templates templates = compile(xsltStylesheet);
+		xsltStylesheet.close();
+		transform(templates, output, session);
+	}
 
+	/**
+	 * Compiles the given stylesheet, resolving the stylesheets it imports
+	 * with this transformation.
+	 */
+	private Templates compile(InputStream xsltStylesheet) throws TransformerException {
 		TransformerFactory transFact =
 				TransformerFactory.newInstance();
 
 		transFact.setURIResolver(this);
-		Transformer trans = transFact.newTransformer(xsltSource);
-		
-		for (Entry<String, Object> entry : parameters.entrySet()) {
-		    trans.setParameter(entry.getKey(), entry.getValue());
-		}
+		return transFact.newTemplates(new StreamSource(xsltStylesheet));
+	}
 
-		trans.transform(xmlSource, new StreamResult(result));
-		result.flush();
-		result.close();
-		xsltStylesheet.close();
+	/**
+	 * Transforms the project of the given session with a compiled stylesheet.
+	 * The project is saved into the transformation as it reads it.
+	 */
+	private void transform(Templates templates, File output, ArchitectSwingSession session)
+	  throws Exception {
+		Source xmlSource = ProjectXMLReader.createSource(session);
+		FileOutputStream result = new FileOutputStream(output);
+		try {
+			Transformer trans = templates.newTransformer();
+			trans.setURIResolver(this);
+
+			for (Entry<String, Object> entry : parameters.entrySet()) {
+			    trans.setParameter(entry.getKey(), entry.getValue());
+			}
+
+			trans.transform(xmlSource, new StreamResult(result));
+			result.flush();
+		} finally {
+			result.close();
+		}
 	}
 
 	/**
@@ -19,6 +19,12 @@
 
 package ca.sqlpower.architect.undo;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
+
 import ca.sqlpower.architect.swingui.ArchitectSwingProject;
 import ca.sqlpower.architect.swingui.PlayPen;
 import ca.sqlpower.architect.swingui.PlayPenContentPane;
@@ -86,5 +92,51 @@ public class ArchitectUndoManager extends SPObjectUndoManager implements Notifyi
     public ArchitectUndoManager(SQLObject sqlObjectRoot) throws SQLObjectException {
         super(sqlObjectRoot);
     }
+
+    /**
+     * Returns the edit the next call to {@link #undo()} would undo, or null
+     * if there is nothing to undo.
+     */
+    public synchronized UndoableEdit getEditToBeUndone() {
+        return editToBeUndone();
+    }
+
+    /**
+     * Replaces the given edits with one edit that undoes and redoes all of
+     * them, under the given name. This is for work that is recorded in
+     * several edits, so the user can make other changes between them, but is
+     * one step to the user. The edits are only combined if they are the last
+     * edits, in the given order, and none of them has been undone, so edits
+     * the user made in between stay steps of their own.
+     * 
+     * @return True if the edits were combined.
+     */
+    public synchronized boolean combineEdits(List<UndoableEdit> parts, final String presentationName) {
+        if (parts.size() < 2 || canRedo() || parts.size() > edits.size()) {
+            return false;
+        }
+        List<UndoableEdit> tail = edits.subList(edits.size() - parts.size(), edits.size());
+        if (!tail.equals(parts)) {
+            return false;
+        }
+        final List<UndoableEdit> combinedParts = new ArrayList<UndoableEdit>(parts);
+        CompoundEdit combined = new CompoundEdit() {
+            {
+                // added directly, as addEdit would let the parts absorb each other
+                edits.addAll(combinedParts);
+                end();
+            }
+            
+            @Override
+            public String getPresentationName() {
+                return presentationName;
+            }
+        };
+        // cleared rather than trimmed, as trimming would kill the parts,
+        // and adding the combined edit notifies the listeners
+        tail.clear();
+        addEdit(combined);
+        return true;
+    }
     
 }
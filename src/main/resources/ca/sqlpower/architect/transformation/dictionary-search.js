@@ -0,0 +1,77 @@
+/*
+ * Searches the tables of a data dictionary written by Power*Architect, using
+ * the trigram index in search-index.json. A page with a search box includes
+ * this script and calls dictionarySearch(box, resultList) once the page has
+ * loaded.
+ */
+function dictionarySearch(box, results) {
+    var index = null;
+
+    function trigrams(text) {
+        var found = {};
+        for (var i = 0; i + 3 <= text.length; i++) {
+            found[text.substring(i, i + 3)] = true;
+        }
+        return found;
+    }
+
+    // Intersects the sorted page lists of the trigrams of the query. A query
+    // too short to have trigrams is checked against every page.
+    function candidates(query) {
+        if (query.length < 3) {
+            var all = [];
+            for (var i = 0; i < index.pages.length; i++) all.push(i);
+            return all;
+        }
+        var matches = null;
+        var grams = trigrams(query);
+        for (var gram in grams) {
+            var pages = index.trigrams[gram];
+            if (!pages) return [];
+            if (matches == null) {
+                matches = pages;
+                continue;
+            }
+            var both = [];
+            for (var i = 0, j = 0; i < matches.length && j < pages.length; ) {
+                if (matches[i] < pages[j]) i++;
+                else if (matches[i] > pages[j]) j++;
+                else { both.push(matches[i]); i++; j++; }
+            }
+            matches = both;
+        }
+        return matches == null ? [] : matches;
+    }
+
+    function show() {
+        while (results.firstChild) results.removeChild(results.firstChild);
+        var query = box.value.replace(/^\s+|\s+$/g, "").toLowerCase();
+        if (index == null || query.length == 0) return;
+        var found = candidates(query);
+        var shown = 0;
+        for (var i = 0; i < found.length && shown < 100; i++) {
+            var page = index.pages[found[i]];
+            // pages with all the trigrams of the query may still not
+            // contain the query itself
+            if (page.terms.indexOf(query) < 0) continue;
+            shown++;
+            var link = document.createElement("a");
+            link.href = page.url;
+            link.appendChild(document.createTextNode(page.title));
+            var item = document.createElement("li");
+            item.appendChild(link);
+            results.appendChild(item);
+        }
+    }
+
+    var request = new XMLHttpRequest();
+    request.onreadystatechange = function() {
+        if (request.readyState == 4 && request.responseText) {
+            index = JSON.parse(request.responseText);
+            show();
+        }
+    };
+    request.open("GET", "search-index.json", true);
+    request.send(null);
+    box.onkeyup = show;
+}